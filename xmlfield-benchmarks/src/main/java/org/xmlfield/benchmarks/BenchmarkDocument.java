@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.openjdk.jmh.infra.Blackhole;
+import org.xmlfield.benchmarks.model.Act;
+import org.xmlfield.benchmarks.model.Catalog;
+import org.xmlfield.benchmarks.model.Cd;
+import org.xmlfield.benchmarks.model.Play;
+import org.xmlfield.benchmarks.model.Scene;
+import org.xmlfield.benchmarks.model.Speech;
+
+/**
+ * Documents used by benchmarks, from a tiny catalog to the Shakespeare corpus.
+ * <p>
+ * Catalogs are generated with the given number of cds. The Shakespeare corpus
+ * (Romeo and Juliet, about 200 KB) is read from the classpath.
+ *
+ * @author Nicolas Richeton
+ */
+public enum BenchmarkDocument {
+
+	TINY(1), SMALL(10), MEDIUM(100), LARGE(1000), SHAKESPEARE(-1);
+
+	private static final String[] COUNTRIES = { "EU", "UK", "USA" };
+
+	private static final int TRACKS = 5;
+
+	private static String generateCatalog(final int cds) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("<catalog name=\"catalog-").append(cds).append("\">");
+		for (int i = 0; i < cds; i++) {
+			sb.append("<cd><title>Title ").append(i).append("</title>");
+			sb.append("<artist>Artist ").append(i % 97).append("</artist>");
+			sb.append("<country>").append(COUNTRIES[i % COUNTRIES.length])
+					.append("</country>");
+			sb.append("<price>").append(5 + i % 20).append(".90</price>");
+			sb.append("<year>").append(1950 + i % 60).append("</year>");
+			sb.append("<tracks>");
+			for (int t = 0; t < TRACKS; t++) {
+				sb.append("<track>Track ").append(t).append("</track>");
+			}
+			sb.append("</tracks></cd>");
+		}
+		sb.append("</catalog>");
+		return sb.toString();
+	}
+
+	private static String readResource(final String name) {
+		final InputStream in = BenchmarkDocument.class
+				.getResourceAsStream(name);
+		if (in == null) {
+			throw new IllegalStateException(name + " not found in classpath");
+		}
+		try {
+			final Reader reader = new InputStreamReader(in, "UTF-8");
+			final StringBuilder sb = new StringBuilder();
+			final char[] buffer = new char[8192];
+			int read;
+			while ((read = reader.read(buffer)) >= 0) {
+				sb.append(buffer, 0, read);
+			}
+			reader.close();
+			return sb.toString();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Calls every getter of a catalog or a play, recursively.
+	 */
+	public static void traverse(final Object root, final Blackhole blackhole) {
+		if (root instanceof Catalog) {
+			final Catalog catalog = (Catalog) root;
+			blackhole.consume(catalog.getName());
+			for (final Cd cd : catalog.getCds()) {
+				blackhole.consume(cd.getTitle());
+				blackhole.consume(cd.getArtist());
+				blackhole.consume(cd.getCountry());
+				blackhole.consume(cd.getPrice());
+				blackhole.consume(cd.getYear());
+				for (final String track : cd.getTracks()) {
+					blackhole.consume(track);
+				}
+			}
+		} else {
+			final Play play = (Play) root;
+			blackhole.consume(play.getTitle());
+			for (final Act act : play.getActs()) {
+				blackhole.consume(act.getTitle());
+				blackhole.consume(act.getPrologueTitle());
+				for (final Scene scene : act.getScenes()) {
+					blackhole.consume(scene.getTitle());
+					blackhole.consume(scene.getStageDir());
+					for (final Speech speech : scene.getSpeeches()) {
+						blackhole.consume(speech.getSpeaker());
+						for (final String line : speech.getLines()) {
+							blackhole.consume(line);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private final int cds;
+
+	private String xml;
+
+	private BenchmarkDocument(final int cds) {
+		this.cds = cds;
+	}
+
+	/**
+	 * Returns the number of cds of a catalog, or -1 for the Shakespeare
+	 * corpus.
+	 */
+	public int getCdCount() {
+		return cds;
+	}
+
+	/**
+	 * Returns the xpath of a text field, relative to a repeated element.
+	 */
+	public String getItemFieldXPath() {
+		return cds < 0 ? "SPEAKER" : "title";
+	}
+
+	/**
+	 * Returns the type of the repeated elements.
+	 */
+	public Class<?> getItemType() {
+		return cds < 0 ? Speech.class : Cd.class;
+	}
+
+	/**
+	 * Returns the xpath of the repeated elements : cds or speeches.
+	 */
+	public String getItemXPath() {
+		return cds < 0 ? "/PLAY/ACT/SCENE/SPEECH" : "/catalog/cd";
+	}
+
+	/**
+	 * Returns the type of the root element.
+	 */
+	public Class<?> getType() {
+		return cds < 0 ? Play.class : Catalog.class;
+	}
+
+	/**
+	 * Returns the document.
+	 */
+	public synchronized String getXml() {
+		if (xml == null) {
+			xml = cds < 0 ? readResource("/r_and_j.xml")
+					: generateCatalog(cds);
+		}
+		return xml;
+	}
+}
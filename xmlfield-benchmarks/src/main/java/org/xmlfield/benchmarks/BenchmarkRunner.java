@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks with the allocation profiler enabled.
+ * <p>
+ * Arguments are those of the JMH command line, for instance
+ * <tt>java -jar benchmarks.jar Parse -p document=SHAKESPEARE</tt>, and are
+ * handled by JMH : <tt>-l</tt> lists the benchmarks and <tt>-h</tt> prints
+ * the available options.
+ *
+ * @author Nicolas Richeton
+ */
+public class BenchmarkRunner {
+
+	private static final String GC_PROFILER = "gc";
+
+	private static final String PROFILER_OPTION = "-prof";
+
+	public static void main(final String[] args) throws Exception {
+		final List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+
+		// Add the allocation profiler, unless already requested.
+		boolean gc = false;
+		for (int i = 0; i < arguments.size() - 1; i++) {
+			if (PROFILER_OPTION.equals(arguments.get(i))
+					&& GC_PROFILER.equals(arguments.get(i + 1))) {
+				gc = true;
+			}
+		}
+		if (!gc) {
+			arguments.add(0, PROFILER_OPTION);
+			arguments.add(1, GC_PROFILER);
+		}
+
+		Main.main(arguments.toArray(new String[arguments.size()]));
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldNodeList;
+import org.xmlfield.core.api.XmlFieldSelector;
+import org.xmlfield.core.exception.XmlFieldParsingException;
+import org.xmlfield.core.exception.XmlFieldXPathException;
+import org.xmlfield.core.impl.dom.DomJaxenSelector;
+import org.xmlfield.core.impl.dom.DomXalanSelector;
+import org.xmlfield.core.internal.NamespaceMap;
+
+/**
+ * Comparison of the Jaxen and Xalan selectors.
+ *
+ * @author Nicolas Richeton
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SelectorBenchmark {
+
+	@Param
+	private BenchmarkDocument document;
+
+	private XmlFieldNodeList items;
+
+	private final NamespaceMap namespaces = new NamespaceMap();
+
+	private XmlFieldNode node;
+
+	@Param({ "jaxen", "xalan" })
+	private String selectorName;
+
+	private XmlFieldSelector selector;
+
+	/**
+	 * Evaluates a relative path on each repeated element, as getters do.
+	 */
+	@Benchmark
+	public void selectItemFields(final Blackhole blackhole)
+			throws XmlFieldXPathException {
+		for (int i = 0; i < items.getLength(); i++) {
+			blackhole.consume(selector.selectXPathToString(namespaces,
+					document.getItemFieldXPath(), items.item(i)));
+		}
+	}
+
+	@Benchmark
+	public XmlFieldNodeList selectItems() throws XmlFieldXPathException {
+		return selector.selectXPathToNodeList(namespaces,
+				document.getItemXPath(), node);
+	}
+
+	@Setup
+	public void setUp() throws XmlFieldParsingException,
+			XmlFieldXPathException {
+		selector = "xalan".equals(selectorName) ? new DomXalanSelector()
+				: new DomJaxenSelector();
+		node = new XmlField().xmlToNode(document.getXml());
+		items = selector.selectXPathToNodeList(namespaces,
+				document.getItemXPath(), node);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlfield.benchmarks.model.Catalog;
+import org.xmlfield.benchmarks.model.Cd;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.exception.XmlFieldParsingException;
+
+/**
+ * Modification of catalogs : setters with arrays and creation of new
+ * documents.
+ * <p>
+ * Setters keep the size of the document, so it does not change between
+ * invocations.
+ *
+ * @author Nicolas Richeton
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SetBenchmark {
+
+	private static final String[] TRACKS = { "One", "Two", "Three", "Four",
+			"Five" };
+
+	private Catalog catalog;
+
+	@Param({ "TINY", "SMALL", "MEDIUM", "LARGE" })
+	private BenchmarkDocument document;
+
+	private XmlField xmlField;
+
+	@Setup
+	public void setUp() throws XmlFieldParsingException {
+		xmlField = new XmlField();
+		catalog = xmlField.xmlToObject(document.getXml(), Catalog.class);
+	}
+
+	/**
+	 * Creates a catalog with newObject() and fills it.
+	 */
+	@Benchmark
+	public Catalog newObject() throws XmlFieldParsingException {
+		final Catalog result = xmlField.newObject(Catalog.class);
+		result.setName("new");
+		for (int i = 0; i < document.getCdCount(); i++) {
+			final Cd cd = result.addToCds();
+			cd.setTitle("Title");
+			cd.setTracks(TRACKS);
+		}
+		return result;
+	}
+
+	/**
+	 * Reverses the order of the cds.
+	 */
+	@Benchmark
+	public Catalog setObjectArray() {
+		final Cd[] cds = catalog.getCds();
+		for (int i = 0; i < cds.length / 2; i++) {
+			final Cd cd = cds[i];
+			cds[i] = cds[cds.length - 1 - i];
+			cds[cds.length - 1 - i] = cd;
+		}
+		catalog.setCds(cds);
+		return catalog;
+	}
+
+	/**
+	 * Replaces the tracks of every cd.
+	 */
+	@Benchmark
+	public Catalog setStringArray() {
+		for (final Cd cd : catalog.getCds()) {
+			cd.setTracks(TRACKS);
+		}
+		return catalog;
+	}
+}
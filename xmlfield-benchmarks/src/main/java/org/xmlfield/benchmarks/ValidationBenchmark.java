@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xmlfield.benchmarks.model.Catalog;
+import org.xmlfield.benchmarks.model.Cd;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.exception.XmlFieldParsingException;
+import org.xmlfield.validation.XmlFieldValidator;
+
+/**
+ * Validation of a catalog and all its cds.
+ *
+ * @author Nicolas Richeton
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidationBenchmark {
+
+	private Catalog catalog;
+
+	private Cd[] cds;
+
+	@Param({ "TINY", "SMALL", "MEDIUM", "LARGE" })
+	private BenchmarkDocument document;
+
+	private final XmlFieldValidator validator = new XmlFieldValidator();
+
+	@Setup
+	public void setUp() throws XmlFieldParsingException {
+		catalog = new XmlField().xmlToObject(document.getXml(), Catalog.class);
+		cds = catalog.getCds();
+	}
+
+	@Benchmark
+	public void validate(final Blackhole blackhole)
+			throws IllegalAccessException, InvocationTargetException {
+		blackhole.consume(validator.validate(catalog));
+		for (final Cd cd : cds) {
+			blackhole.consume(validator.validate(cd));
+		}
+	}
+}
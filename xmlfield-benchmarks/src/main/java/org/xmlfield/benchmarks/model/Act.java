@@ -0,0 +1,37 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.benchmarks.model;
+
+import org.xmlfield.annotations.FieldXPath;
+import org.xmlfield.annotations.ResourceXPath;
+
+/**
+ * Act of a play.
+ *
+ * @author Nicolas Richeton
+ */
+@ResourceXPath("/PLAY/ACT")
+public interface Act {
+
+	@FieldXPath("PROLOGUE/TITLE")
+	String getPrologueTitle();
+
+	@FieldXPath("SCENE")
+	Scene[] getScenes();
+
+	@FieldXPath("TITLE")
+	String getTitle();
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.benchmarks.model;
+
+import org.xmlfield.annotations.FieldXPath;
+import org.xmlfield.annotations.ResourceXPath;
+import org.xmlfield.validation.annotations.NotEmpty;
+import org.xmlfield.validation.annotations.Size;
+
+/**
+ * Generated catalog documents.
+ *
+ * @author Nicolas Richeton
+ */
+@ResourceXPath("/catalog")
+public interface Catalog {
+
+	Cd addToCds();
+
+	@Size(min = 1)
+	@FieldXPath("cd")
+	Cd[] getCds();
+
+	@NotEmpty
+	@FieldXPath("@name")
+	String getName();
+
+	void setCds(Cd[] cds);
+
+	void setName(String name);
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.benchmarks.model;
+
+import org.xmlfield.annotations.FieldXPath;
+import org.xmlfield.annotations.ResourceXPath;
+import org.xmlfield.validation.annotations.NotEmpty;
+import org.xmlfield.validation.annotations.Range;
+import org.xmlfield.validation.annotations.Size;
+import org.xmlfield.validation.annotations.Values;
+
+/**
+ * Cd of a generated catalog.
+ *
+ * @author Nicolas Richeton
+ */
+@ResourceXPath("/catalog/cd")
+public interface Cd {
+
+	@NotEmpty
+	@FieldXPath("artist")
+	String getArtist();
+
+	@Values(string = { "EU", "UK", "USA" })
+	@FieldXPath("country")
+	String getCountry();
+
+	@Range(min = 0, max = 100)
+	@FieldXPath("price")
+	Double getPrice();
+
+	@NotEmpty
+	@Size(min = 1, max = 100)
+	@FieldXPath("title")
+	String getTitle();
+
+	@FieldXPath("tracks/track")
+	String[] getTracks();
+
+	@FieldXPath("year")
+	Integer getYear();
+
+	void setArtist(String artist);
+
+	void setCountry(String country);
+
+	void setPrice(Double price);
+
+	void setTitle(String title);
+
+	void setTracks(String[] tracks);
+
+	void setYear(Integer year);
+}
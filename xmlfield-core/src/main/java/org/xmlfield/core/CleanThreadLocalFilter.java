@@ -9,9 +9,15 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 
+import org.xmlfield.core.internal.XmlFieldBinding;
+
 /**
  * This servlet filter cleans XmlField references after each request in order to
- * prevent memory issues in servlet containers.
+ * prevent memory issues in servlet containers. When the filter is destroyed,
+ * cached metadata of the application interfaces is removed and the threads
+ * of the shared parallelMap executor are stopped, so that the application
+ * classes can be unloaded even if XmlField is shared by several
+ * applications.
  * <p>
  * Use it when :
  * <ul>
@@ -39,7 +45,12 @@ public class CleanThreadLocalFilter implements Filter {
 
 	@Override
 	public void destroy() {
-
+		ClassLoader classLoader = Thread.currentThread()
+				.getContextClassLoader();
+		if (classLoader != null) {
+			XmlFieldBinding.clear(classLoader);
+		}
+		XmlField.shutdownDefaultExecutor();
 	}
 
 	@Override
@@ -17,24 +17,45 @@ package org.xmlfield.core;
 
 import static com.google.common.collect.Iterables.toArray;
 import static org.xmlfield.core.internal.XPathUtils.getElementNameWithSelector;
-import static org.xmlfield.core.internal.XmlFieldUtils.getResourceNamespaces;
-import static org.xmlfield.core.internal.XmlFieldUtils.getResourceXPath;
+import static org.xmlfield.core.internal.XmlFieldBinding.getBinding;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 
 import org.xml.sax.SAXException;
+import org.xmlfield.core.api.XmlFieldIterator;
+import org.xmlfield.core.api.XmlFieldMapper;
+import org.xmlfield.core.api.XmlFieldMetrics;
 import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldNodeCopier;
 import org.xmlfield.core.api.XmlFieldNodeList;
 import org.xmlfield.core.api.XmlFieldNodeModifier;
 import org.xmlfield.core.api.XmlFieldNodeModifierFactory;
@@ -46,10 +67,17 @@ import org.xmlfield.core.api.XmlFieldSelectorFactory;
 import org.xmlfield.core.exception.XmlFieldException;
 import org.xmlfield.core.exception.XmlFieldParsingException;
 import org.xmlfield.core.exception.XmlFieldXPathException;
+import org.xmlfield.core.impl.dom.DomJaxenSelector;
+import org.xmlfield.core.impl.dom.DomNodeList;
 import org.xmlfield.core.impl.dom.DomNodeParser;
+import org.xmlfield.core.impl.metrics.MeteredSelector;
+import org.xmlfield.core.impl.metrics.XPathSampler;
 import org.xmlfield.core.internal.NamespaceMap;
 import org.xmlfield.core.internal.XPathUtils;
+import org.xmlfield.core.internal.XmlFieldBinding;
+import org.xmlfield.core.internal.XmlFieldAccessorGenerator;
 import org.xmlfield.core.internal.XmlFieldInvocationHandler;
+import org.xmlfield.core.internal.XmlFieldSnapshot;
 import org.xmlfield.core.internal.XmlFieldUtils;
 
 /**
@@ -83,6 +111,11 @@ public class XmlField {
 	private static final ClassLoader classLoader = Thread.currentThread()
 			.getContextClassLoader();
 
+	/**
+	 * Executor used by parallelMap when none is set.
+	 */
+	private static ExecutorService defaultExecutor = null;
+
 	private static XmlFieldNodeModifierFactory modifierFactory = XmlFieldNodeModifierFactory
 			.newInstance();
 	private static XmlFieldNodeParserFactory parserFactory = XmlFieldNodeParserFactory
@@ -90,6 +123,130 @@ public class XmlField {
 	private static XmlFieldSelectorFactory selectorFactory = XmlFieldSelectorFactory
 			.newInstance();
 
+	/**
+	 * Number of objects sent at once to a thread by parallelMap, when reading
+	 * from an iterator.
+	 */
+	private static final int PARALLEL_CHUNK_SIZE = 256;
+
+	/**
+	 * Executor running the parallelMap task of the current thread, if any.
+	 */
+	private static final ThreadLocal<ExecutorService> parallelExecutor = new ThreadLocal<ExecutorService>();
+
+	/**
+	 * Adds the results of a parallelMap task, and rethrows its failure.
+	 */
+	private static <R> void addResults(final Future<List<R>> future,
+			final List<R> results) {
+		try {
+			results.addAll(future.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Returns the maximum number of parallelMap tasks submitted and not yet
+	 * collected, which bounds the memory used by chunks.
+	 */
+	private static int getMaxPendingTasks() {
+		return Runtime.getRuntime().availableProcessors() * 2;
+	}
+
+	/**
+	 * Submits a parallelMap task. Tasks submitted from a task of the same
+	 * executor are run in the calling thread : waiting for them could block
+	 * every thread of the executor.
+	 */
+	private static <R> Future<List<R>> submitTask(
+			final ExecutorService executorService,
+			final Callable<List<R>> task) {
+		if (parallelExecutor.get() == executorService) {
+			final FutureTask<List<R>> future = new FutureTask<List<R>>(task);
+			future.run();
+			return future;
+		}
+		return executorService.submit(new Callable<List<R>>() {
+			@Override
+			public List<R> call() throws Exception {
+				parallelExecutor.set(executorService);
+				try {
+					return task.call();
+				} finally {
+					parallelExecutor.remove();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Binds an object obtained from XmlField to another XmlField instance.
+	 * Other objects are returned unchanged.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T rebind(final XmlField xmlField, final T object) {
+		final XmlFieldInvocationHandler handler = XmlFieldInvocationHandler
+				.getHandler(object);
+		if (handler == null) {
+			return object;
+		}
+		return (T) xmlField.loadProxy(handler.getNode(), handler.getType());
+	}
+
+	/**
+	 * Returns the shared executor : a daemon thread per processor.
+	 * <p>
+	 * Threads use the XmlField class loader as context class loader, instead
+	 * of the one of the thread which created them.
+	 */
+	private static synchronized ExecutorService getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			defaultExecutor = Executors.newFixedThreadPool(Runtime
+					.getRuntime().availableProcessors(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "xmlfield-parallel-"
+							+ count.incrementAndGet());
+					thread.setDaemon(true);
+					thread.setContextClassLoader(XmlField.class
+							.getClassLoader());
+					return thread;
+				}
+			});
+		}
+		return defaultExecutor;
+	}
+
+	/**
+	 * Stops the threads of the shared parallelMap executor once their current
+	 * tasks are done. A new executor is created if parallelMap is called
+	 * again.
+	 * <p>
+	 * Called by {@link CleanThreadLocalFilter} when an application is stopped,
+	 * so that these threads do not keep its classes in memory.
+	 */
+	public static synchronized void shutdownDefaultExecutor() {
+		if (defaultExecutor != null) {
+			defaultExecutor.shutdown();
+			defaultExecutor = null;
+		}
+	}
+
+	private ExecutorService executor = null;
+
+	private boolean generatedAccessors = false;
 	private boolean getterCache = false;
 	private XmlFieldNodeModifier modifier;
 	/**
@@ -103,6 +260,16 @@ public class XmlField {
 	 */
 	private XmlFieldSelector selector;
 
+	/**
+	 * Selector wrapper used while metrics are enabled.
+	 */
+	private XmlFieldSelector meteredSelector;
+
+	/**
+	 * Empty documents copied by newObject, by type.
+	 */
+	private final ConcurrentMap<Class<?>, XmlFieldNode> templates = new ConcurrentHashMap<Class<?>, XmlFieldNode>();
+
 	/**
 	 * Create XmlField object for xml/object manipulations.
 	 * 
@@ -137,8 +304,8 @@ public class XmlField {
 	 * 
 	 * @param parserConfiguration
 	 *            parser configuration. Allowed keys are specific to the parser
-	 *            implementations. See {@link DomNodeParser} for default
-	 *            implementation.
+	 *            implementations. See {@link DomNodeParser} and
+	 *            {@link DomJaxenSelector} for default implementation.
 	 */
 	public XmlField(Map<String, String> parserConfiguration) {
 		this.parserConfiguration = parserConfiguration;
@@ -180,14 +347,23 @@ public class XmlField {
 	 * Returns the selector associated with this XmlField object.
 	 * <p>
 	 * {@link XmlFieldSelector} instance is created on demand at the first call.
+	 * While {@link XmlFieldMetrics} or the {@link XPathSampler} are enabled, it
+	 * is wrapped by a {@link MeteredSelector}.
 	 * 
 	 * @return
 	 */
 	public XmlFieldSelector _getSelector() {
 		if (selector == null) {
-			selector = selectorFactory.newSelector();
+			selector = selectorFactory.newSelector(parserConfiguration);
 		}
 
+		if (XmlFieldMetrics.getInstance().isEnabled()
+				|| XPathSampler.getInstance() != null) {
+			if (meteredSelector == null) {
+				meteredSelector = new MeteredSelector(selector);
+			}
+			return meteredSelector;
+		}
 		return selector;
 	}
 
@@ -204,6 +380,15 @@ public class XmlField {
 		return loadProxy(XmlFieldUtils.getXmlFieldNode(o), type);
 	}
 
+	/**
+	 * Returns the executor used by parallelMap.
+	 * 
+	 * @return
+	 */
+	public ExecutorService getExecutor() {
+		return executor == null ? getDefaultExecutor() : executor;
+	}
+
 	/**
 	 * Returns the current parser configuration.
 	 * <p>
@@ -215,10 +400,62 @@ public class XmlField {
 		return new HashMap<String, String>(parserConfiguration);
 	}
 
+	public boolean isGeneratedAccessors() {
+		return generatedAccessors;
+	}
+
 	public boolean isGetterCache() {
 		return getterCache;
 	}
 
+	/**
+	 * Copies the document of a node, with the modifier if it supports it.
+	 * Otherwise the node is serialized and parsed again.
+	 */
+	private XmlFieldNode copyDocument(final XmlFieldNode node)
+			throws XmlFieldParsingException {
+		final XmlFieldNodeModifier modifier = _getModifier();
+		if (modifier instanceof XmlFieldNodeCopier) {
+			return ((XmlFieldNodeCopier) modifier).cloneDocument(node);
+		}
+		return xmlToNode(nodeToXml(node));
+	}
+
+	/**
+	 * Copies nodes to new documents, with the modifier if it supports it.
+	 * Otherwise each node is serialized and parsed in its own document.
+	 */
+	private XmlFieldNodeList copyNodes(final XmlFieldNodeList nodes,
+			final int start, final int end) {
+		final XmlFieldNodeModifier modifier = _getModifier();
+		if (modifier instanceof XmlFieldNodeCopier) {
+			return ((XmlFieldNodeCopier) modifier).copyNodes(nodes, start, end);
+		}
+
+		final List<XmlFieldNode> copies = new ArrayList<XmlFieldNode>(end
+				- start);
+		try {
+			for (int i = start; i < end; i++) {
+				copies.add(xmlToNode(nodeToXml(nodes.item(i))));
+			}
+		} catch (XmlFieldParsingException e) {
+			throw new IllegalStateException(e);
+		}
+		return new DomNodeList(copies);
+	}
+
+	/**
+	 * Returns a new XmlField with the same configuration, used by a
+	 * parallelMap task : XmlField instances are not thread safe.
+	 */
+	private XmlField newTaskXmlField() {
+		final XmlField xmlField = new XmlField(parserConfiguration);
+		xmlField.executor = executor;
+		xmlField.generatedAccessors = generatedAccessors;
+		xmlField.getterCache = getterCache;
+		return xmlField;
+	}
+
 	private <T> T loadProxy(final XmlFieldNode node, final Class<T> type) {
 
 		// Handle case when requested type is String.
@@ -226,11 +463,22 @@ public class XmlField {
 			return type.cast(node.getTextContent());
 		}
 
-		final Class<?>[] types = new Class<?>[] { type, XmlFieldObject.class };
+		final XmlFieldMetrics metrics = XmlFieldMetrics.getInstance();
+		if (metrics.isEnabled()) {
+			metrics.proxyCreated(type);
+		}
 
-		final InvocationHandler invocationHandler = new XmlFieldInvocationHandler(
+		final XmlFieldInvocationHandler invocationHandler = new XmlFieldInvocationHandler(
 				this, node, type);
 
+		final T accessor = XmlFieldAccessorGenerator.newInstance(type,
+				invocationHandler, generatedAccessors);
+		if (accessor != null) {
+			return accessor;
+		}
+
+		final Class<?>[] types = new Class<?>[] { type, XmlFieldObject.class };
+
 		final T proxy = type.cast(Proxy.newProxyInstance(classLoader, types,
 				invocationHandler));
 
@@ -243,6 +491,10 @@ public class XmlField {
 	 * the return object can be manipulated by Xmlfield like any object obtained
 	 * by {@link #bind} methods
 	 * 
+	 * <p>
+	 * The empty document is parsed once per type and XmlField instance, and
+	 * copied for each new object.
+	 * 
 	 * @param <T>
 	 *            Class of interface to instantiate
 	 * @param type
@@ -257,22 +509,37 @@ public class XmlField {
 	 */
 	public <T> T newObject(Class<T> type) throws XmlFieldParsingException {
 
-		// Create a new xml document with an empty tag (based on the
-		// annotation).
-		String resourceXPath = getResourceXPath(type);
-		String tag = getElementNameWithSelector(resourceXPath);
-		NamespaceMap namespaces = getResourceNamespaces(type);
-		String xml = XmlFieldUtils.emptyTag(tag, namespaces);
+		XmlFieldNode template = templates.get(type);
+		if (template == null) {
+			// Create a new xml document with an empty tag (based on the
+			// annotation).
+			XmlFieldBinding binding = getBinding(type);
+			String tag = getElementNameWithSelector(binding
+					.getResourceXPath());
+			NamespaceMap namespaces = binding.getNamespaces();
+			String xml = XmlFieldUtils.emptyTag(tag, namespaces);
+
+			template = xmlToNode(xml);
+			XmlFieldNode existing = templates.putIfAbsent(type, template);
+			if (existing != null) {
+				template = existing;
+			}
+		}
 
-		// Create object from this document
-		return xmlToObject(xml, type);
+		// Create object from a copy of this document. DOM implementations are
+		// not thread safe, even for reading.
+		XmlFieldNode node;
+		synchronized (template) {
+			node = copyDocument(template);
+		}
+		return nodeToObject(node, type);
 	}
 
 	public <T> T[] nodeToArray(final String resourceXPath,
 			final XmlFieldNode node, final Class<T> type)
 			throws XmlFieldXPathException {
 
-		final NamespaceMap namespaces = getResourceNamespaces(type);
+		final NamespaceMap namespaces = getBinding(type).getNamespaces();
 
 		final XmlFieldNodeList xmlFieldNodes = _getSelector()
 				.selectXPathToNodeList(namespaces, resourceXPath, node);
@@ -289,7 +556,7 @@ public class XmlField {
 	public <T> T[] nodeToArray(final XmlFieldNode node, final Class<T> type)
 			throws XmlFieldXPathException {
 
-		final String resourceXPath = getResourceXPath(type);
+		final String resourceXPath = getBinding(type).getResourceXPath();
 
 		return nodeToArray(resourceXPath, node, type);
 	}
@@ -320,7 +587,7 @@ public class XmlField {
 		// TODO
 		// See https://sourceforge.net/apps/mantisbt/xmlfield/view.php?id=46
 
-		final NamespaceMap namespaces = getResourceNamespaces(null);
+		final NamespaceMap namespaces = null;
 
 		final XmlFieldNodeList xmlFieldNodes = _getSelector()
 				.selectXPathToNodeList(namespaces, resourceXPathGlobal, node);
@@ -354,7 +621,8 @@ public class XmlField {
 	public <T> T nodeToObject(final String resourceXPath,
 			final XmlFieldNode node, final Class<T> resourceType) {
 
-		final NamespaceMap namespaces = getResourceNamespaces(resourceType);
+		final NamespaceMap namespaces = getBinding(resourceType)
+				.getNamespaces();
 
 		final XmlFieldNode subNode;
 
@@ -396,7 +664,7 @@ public class XmlField {
 	 */
 	public <T> T nodeToObject(final XmlFieldNode node, final Class<T> type) {
 		// Get the root tag and create an object from it.
-		return nodeToObject(getResourceXPath(type), node, type);
+		return nodeToObject(getBinding(type).getResourceXPath(), node, type);
 	}
 
 	public String nodeToXml(final XmlFieldNode node)
@@ -404,6 +672,47 @@ public class XmlField {
 		return _getParser().nodeToXml(node);
 	}
 
+	/**
+	 * Writes a node to a byte buffer, in the configured encoding. The buffer
+	 * position is advanced by the number of bytes written.
+	 * 
+	 * @param node
+	 * @param buffer
+	 * @throws XmlFieldParsingException
+	 *             if the document cannot be written or if the buffer has not
+	 *             enough space remaining.
+	 */
+	public void nodeToXml(final XmlFieldNode node, ByteBuffer buffer)
+			throws XmlFieldParsingException {
+		_getParser().nodeToXml(node, buffer);
+	}
+
+	/**
+	 * Writes a node to an output stream, in the configured encoding.
+	 * 
+	 * @param node
+	 * @param out
+	 *            output stream, not closed.
+	 * @throws XmlFieldParsingException
+	 */
+	public void nodeToXml(final XmlFieldNode node, OutputStream out)
+			throws XmlFieldParsingException {
+		_getParser().nodeToXml(node, out);
+	}
+
+	/**
+	 * Writes a node to a channel, in the configured encoding.
+	 * 
+	 * @param node
+	 * @param channel
+	 *            channel, not closed.
+	 * @throws XmlFieldParsingException
+	 */
+	public void nodeToXml(final XmlFieldNode node, WritableByteChannel channel)
+			throws XmlFieldParsingException {
+		_getParser().nodeToXml(node, channel);
+	}
+
 	public void nodeToXml(final XmlFieldNode node, Writer writer)
 			throws XmlFieldParsingException {
 		_getParser().nodeToXml(node, writer);
@@ -417,18 +726,252 @@ public class XmlField {
 		return _getParser().nodeToXml(objectToNode(o));
 	}
 
+	/**
+	 * Writes an object to a byte buffer, in the configured encoding. The
+	 * buffer position is advanced by the number of bytes written.
+	 * 
+	 * @param o
+	 *            an object obtained from XmlField.
+	 * @param buffer
+	 * @throws XmlFieldParsingException
+	 *             if the document cannot be written or if the buffer has not
+	 *             enough space remaining.
+	 */
+	public void objectToXml(Object o, ByteBuffer buffer)
+			throws XmlFieldParsingException {
+		_getParser().nodeToXml(objectToNode(o), buffer);
+	}
+
+	/**
+	 * Writes an object to an output stream, in the configured encoding,
+	 * without building an intermediate String.
+	 * 
+	 * @param o
+	 *            an object obtained from XmlField.
+	 * @param out
+	 *            output stream, not closed.
+	 * @throws XmlFieldParsingException
+	 */
+	public void objectToXml(Object o, OutputStream out)
+			throws XmlFieldParsingException {
+		_getParser().nodeToXml(objectToNode(o), out);
+	}
+
+	/**
+	 * Writes an object to a channel, in the configured encoding.
+	 * 
+	 * @param o
+	 *            an object obtained from XmlField.
+	 * @param channel
+	 *            channel, not closed.
+	 * @throws XmlFieldParsingException
+	 */
+	public void objectToXml(Object o, WritableByteChannel channel)
+			throws XmlFieldParsingException {
+		_getParser().nodeToXml(objectToNode(o), channel);
+	}
+
 	public void objectToXml(Object o, Writer writer)
 			throws XmlFieldParsingException {
 		_getParser().nodeToXml(objectToNode(o), writer);
 	}
 
+	/**
+	 * Apply a function to every object of an iterator, using several threads.
+	 * <p>
+	 * Objects are read from the calling thread, and sent by chunks to the
+	 * executor. Each object must be bound to its own document, like the ones
+	 * returned by {@link #streamObjects(InputStream, Class)} : DOM
+	 * implementations are not thread safe, even for reading.
+	 * <p>
+	 * XmlField instances are not thread safe : each task binds the objects to
+	 * its own XmlField, with the configuration of this one. The mapper must not
+	 * use this XmlField.
+	 * <p>
+	 * The mapper may call parallelMap on another XmlField : calls made from a
+	 * thread running a parallelMap task of the same executor are processed in
+	 * that thread.
+	 * 
+	 * @param objects
+	 *            objects to process
+	 * @param mapper
+	 *            a thread safe function
+	 * @return results, in the iteration order
+	 */
+	public <T, R> List<R> parallelMap(final Iterator<T> objects,
+			final XmlFieldMapper<? super T, ? extends R> mapper) {
+		final ExecutorService executorService = getExecutor();
+		final int maxPending = getMaxPendingTasks();
+
+		final List<R> results = new ArrayList<R>();
+		final List<Future<List<R>>> pending = new ArrayList<Future<List<R>>>();
+		try {
+			while (objects.hasNext()) {
+				final List<T> chunk = new ArrayList<T>(PARALLEL_CHUNK_SIZE);
+				while (chunk.size() < PARALLEL_CHUNK_SIZE && objects.hasNext()) {
+					chunk.add(objects.next());
+				}
+				pending.add(submitTask(executorService, new Callable<List<R>>() {
+					@Override
+					public List<R> call() {
+						final XmlField xmlField = newTaskXmlField();
+						final List<R> chunkResults = new ArrayList<R>(chunk
+								.size());
+						for (final T object : chunk) {
+							chunkResults.add(mapper.map(rebind(xmlField,
+									object)));
+						}
+						return chunkResults;
+					}
+				}));
+
+				// Do not read the whole input ahead of the threads.
+				if (pending.size() >= maxPending) {
+					addResults(pending.remove(0), results);
+				}
+			}
+			while (!pending.isEmpty()) {
+				addResults(pending.remove(0), results);
+			}
+		} finally {
+			for (final Future<List<R>> future : pending) {
+				future.cancel(true);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Bind the nodes selected by an xpath and apply a function to each
+	 * object, using several threads.
+	 * <p>
+	 * DOM implementations are not thread safe, even for reading : nodes are
+	 * split in chunks, and each chunk is copied to its own document before
+	 * being sent to the executor. Objects given to the mapper are bound to
+	 * these copies, changes are not reflected to the original document.
+	 * Chunks are copied as the threads process them, a limited number of
+	 * chunks is waiting at any time.
+	 * <p>
+	 * XmlField instances are not thread safe : each task binds the objects to
+	 * its own XmlField, with the configuration of this one. The mapper must not
+	 * use this XmlField.
+	 * <p>
+	 * The mapper may call parallelMap on another XmlField : calls made from a
+	 * thread running a parallelMap task of the same executor are processed in
+	 * that thread.
+	 * 
+	 * @param resourceXPath
+	 *            xpath to the nodes, relative to node
+	 * @param node
+	 *            context node
+	 * @param type
+	 *            interface to bind to
+	 * @param mapper
+	 *            a thread safe function
+	 * @return results, in document order
+	 * @throws XmlFieldXPathException
+	 */
+	public <T, R> List<R> parallelMap(final String resourceXPath,
+			final XmlFieldNode node, final Class<T> type,
+			final XmlFieldMapper<? super T, ? extends R> mapper)
+			throws XmlFieldXPathException {
+		final XmlFieldNodeList nodes = _getSelector().selectXPathToNodeList(
+				getBinding(type).getNamespaces(), resourceXPath, node);
+		final int length = nodes.getLength();
+		final int chunkSize = Math.max(1, length
+				/ (Runtime.getRuntime().availableProcessors() * 4));
+		final ExecutorService executorService = getExecutor();
+		final int maxPending = getMaxPendingTasks();
+
+		final List<R> results = new ArrayList<R>(length);
+		final List<Future<List<R>>> pending = new ArrayList<Future<List<R>>>();
+		try {
+			for (int start = 0; start < length; start += chunkSize) {
+				final XmlFieldNodeList copies = copyNodes(nodes, start,
+						Math.min(length, start + chunkSize));
+				pending.add(submitTask(executorService, new Callable<List<R>>() {
+					@Override
+					public List<R> call() {
+						final XmlField xmlField = newTaskXmlField();
+						final List<R> chunkResults = new ArrayList<R>(copies
+								.getLength());
+						for (int i = 0; i < copies.getLength(); i++) {
+							chunkResults.add(mapper.map(xmlField.loadProxy(
+									copies.item(i), type)));
+						}
+						return chunkResults;
+					}
+				}));
+
+				// Do not copy the whole node list ahead of the threads.
+				if (pending.size() >= maxPending) {
+					addResults(pending.remove(0), results);
+				}
+			}
+
+			while (!pending.isEmpty()) {
+				addResults(pending.remove(0), results);
+			}
+			return results;
+		} finally {
+			for (final Future<List<R>> future : pending) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Bind the nodes selected by the resource xpath of a type and apply a
+	 * function to each object, using several threads.
+	 * 
+	 * @see #parallelMap(String, XmlFieldNode, Class, XmlFieldMapper)
+	 */
+	public <T, R> List<R> parallelMap(final XmlFieldNode node,
+			final Class<T> type,
+			final XmlFieldMapper<? super T, ? extends R> mapper)
+			throws XmlFieldXPathException {
+		return parallelMap(getBinding(type).getResourceXPath(), node, type,
+				mapper);
+	}
+
+	/**
+	 * Sets the executor used by parallelMap. By default, a shared pool with a
+	 * daemon thread per processor is used.
+	 * 
+	 * @param executor
+	 *            executor, or <code>null</code> to use the shared pool.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Uses generated classes instead of {@link Proxy} for the objects returned
+	 * by XmlField.
+	 * 
+	 * <p>
+	 * A class is generated once per interface, with direct method bodies which
+	 * can be inlined by the JIT. This requires javassist on the classpath, and
+	 * proxies are still used for interfaces which cannot be generated.
+	 * <p>
+	 * Accessors generated at build time by the xmlfield annotation processor
+	 * are always used, even if this option is disabled.
+	 * 
+	 * @param generatedAccessors
+	 */
+	public void setGeneratedAccessors(boolean generatedAccessors) {
+		this.generatedAccessors = generatedAccessors;
+	}
+
 	/**
 	 * Enables caching for get methods.
 	 * 
 	 * <p>
-	 * Warning : this cache is experimental and cannot get changes mades when
-	 * using different objects to access the same XML Node. The use of this
-	 * cache is NOT recommended at the moment.
+	 * Values are cached by document, node and field, and shared by all the
+	 * objects bound to the same node. Every change made through XmlField
+	 * clears the cache of the document. Changes made directly on the
+	 * underlying document (for example on the DOM node returned by
+	 * {@link XmlFieldNode#getNode()}) are not detected.
 	 * 
 	 * @param getterCache
 	 */
@@ -436,6 +979,31 @@ public class XmlField {
 		this.getterCache = getterCache;
 	}
 
+	/**
+	 * Reads all the values of a bound object at once, and returns them as an
+	 * immutable object, which does not reference the xml document anymore.
+	 * 
+	 * <p>
+	 * Getters annotated with FieldXPath, isNullXxx() and sizeOfXxx() methods
+	 * are evaluated, recursively through nested objects and arrays. Other
+	 * methods, like setters, throw UnsupportedOperationException. Later
+	 * changes to the document are not visible in the snapshot.
+	 * 
+	 * <p>
+	 * Snapshots are thread safe and much smaller than the document, which
+	 * makes them suitable for data kept in memory for a long time.
+	 * 
+	 * @param o
+	 *            an object obtained from XmlField.
+	 * @param type
+	 *            interface of the snapshot.
+	 * @return a snapshot implementing the given interface, or
+	 *         <code>null</code> if o is <code>null</code>.
+	 */
+	public <T> T snapshot(Object o, Class<T> type) {
+		return XmlFieldSnapshot.newSnapshot(classLoader, o, type);
+	}
+
 	/**
 	 * Bind an xml string to an array of entities.
 	 * 
@@ -456,12 +1024,69 @@ public class XmlField {
 			throws XmlFieldException {
 
 		XmlFieldNode node = xmlToNode(xml);
-		T[] resultArray = nodeToArray(
-				getElementNameWithSelector(getResourceXPath(type)), node, type);
+		T[] resultArray = nodeToArray(getElementNameWithSelector(getBinding(
+				type).getResourceXPath()), node, type);
 		return resultArray;
 
 	}
 
+	/**
+	 * Read a list of entities from an input stream, one at a time.
+	 * <p>
+	 * Works like {@link #xmlToArray(String, Class)} but the document is never
+	 * loaded as a whole : the stream is read as the iterator advances, and
+	 * each entity is bound to its own small document. Entities which are not
+	 * referenced anymore can be garbage collected, which allows to process
+	 * huge documents.
+	 * <p>
+	 * The resource xpath of the type must be a simple element path (names and
+	 * attribute predicates only).
+	 * 
+	 * @param <T>
+	 *            interface type
+	 * @param xmlContent
+	 *            input stream on an xml document with a root element
+	 *            enclosing a list of node to bind. Not closed.
+	 * @param type
+	 *            interface to bind to
+	 * @return an iterator. Reading errors are thrown as
+	 *         IllegalStateException. The iterator releases its resources
+	 *         when the last entity has been read : callers which stop
+	 *         before the end must close it.
+	 * @throws XmlFieldParsingException
+	 *             if the resource xpath is not supported or the stream cannot
+	 *             be read.
+	 */
+	public <T> XmlFieldIterator<T> streamObjects(InputStream xmlContent,
+			final Class<T> type) throws XmlFieldParsingException {
+		final XmlFieldBinding binding = getBinding(type);
+		final XmlFieldIterator<XmlFieldNode> nodes = _getParser().xmlToNodes(
+				xmlContent, binding.getNamespaces(),
+				getElementNameWithSelector(binding.getResourceXPath()));
+
+		return new XmlFieldIterator<T>() {
+			@Override
+			public void close() {
+				nodes.close();
+			}
+
+			@Override
+			public boolean hasNext() {
+				return nodes.hasNext();
+			}
+
+			@Override
+			public T next() {
+				return loadProxy(nodes.next(), type);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
 	/**
 	 * Load the XML document from an input stream, load it internally in a tree
 	 * and return the root node.
@@ -486,6 +1111,55 @@ public class XmlField {
 		return _getParser().xmlToNode(xmlInputStream);
 	}
 
+	/**
+	 * Load the XML document from bytes, and return the root node. The
+	 * encoding is detected from the byte order mark or the xml declaration.
+	 * 
+	 * @param xmlContent
+	 *            XML document, from the position to the limit of the buffer.
+	 *            The position of the buffer is not changed.
+	 * @return Root node of the XML document tree.
+	 * @throws XmlFieldParsingException
+	 *             When document is invalid and cannot be parsed.
+	 */
+	public XmlFieldNode xmlToNode(final ByteBuffer xmlContent)
+			throws XmlFieldParsingException {
+		return _getParser().xmlToNode(xmlContent);
+	}
+
+	/**
+	 * Load the XML document from a file, and return the root node.
+	 * <p>
+	 * The file is mapped in memory and the parser reads the mapped bytes
+	 * directly. The encoding is detected from the byte order mark or the xml
+	 * declaration. Files larger than 2GB are read as a stream.
+	 * 
+	 * @param file
+	 *            XML file.
+	 * @return Root node of the XML document tree.
+	 * @throws XmlFieldParsingException
+	 *             When the file cannot be read, or when document is invalid
+	 *             and cannot be parsed.
+	 */
+	public XmlFieldNode xmlToNode(final File file)
+			throws XmlFieldParsingException {
+		try {
+			final FileInputStream in = new FileInputStream(file);
+			try {
+				final FileChannel channel = in.getChannel();
+				final long size = channel.size();
+				if (size > Integer.MAX_VALUE) {
+					return xmlToNode(new BufferedInputStream(in));
+				}
+				return xmlToNode(channel.map(MapMode.READ_ONLY, 0, size));
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new XmlFieldParsingException(e);
+		}
+	}
+
 	/**
 	 * Load the XML document from a string, load it internally in a tree and
 	 * return the root node.
@@ -520,6 +1194,24 @@ public class XmlField {
 		return nodeToObject(xmlToNode(xmlContent), type);
 	}
 
+	/**
+	 * Create an interface for the given xml file and matching the given
+	 * interface.
+	 * 
+	 * @param file
+	 *            the xml file to load, see {@link #xmlToNode(File)}.
+	 * @param type
+	 *            the expected interface
+	 * @return a proxy object responding to given type, return null if type
+	 *         does'n match the xml file.
+	 * @throws XmlFieldParsingException
+	 *             when reading or parsing the file failed
+	 */
+	public <T> T xmlToObject(File file, Class<T> type)
+			throws XmlFieldParsingException {
+		return nodeToObject(xmlToNode(file), type);
+	}
+
 	/**
 	 * Create an interface for the given xml and matching the given interface.
 	 * 
@@ -8,17 +8,24 @@ import java.util.Map;
  * This factory is thread safe and can be configured to use ThreadLocal to reuse
  * XmlField instances for performance reasons.
  * <p>
- * When using ThreadLocal, configuration ( parserConfiguration and getter cache)
- * is unique (static) across all XmlFieldFactory instances.
+ * When using ThreadLocal, configuration ( parserConfiguration, getter cache and
+ * generated accessors) is unique (static) across all XmlFieldFactory
+ * instances.
+ * <p>
+ * ThreadLocal creates one XmlField instance per thread. When many
+ * short-lived threads are used, share a bounded {@link XmlFieldPool} created
+ * from a factory without ThreadLocal instead.
  * 
  * 
  * @see CleanThreadLocalFilter
+ * @see XmlFieldPool
  * 
  * @author Nicolas Richeton
  * 
  */
 public class XmlFieldFactory {
 
+	private static Boolean staticGeneratedAccessors = null;
 	private static Boolean staticGetterCache = null;
 	private static Map<String, String> staticParserConfiguration = null;
 	/**
@@ -32,10 +39,14 @@ public class XmlFieldFactory {
 			if (staticGetterCache != null) {
 				xf.setGetterCache(staticGetterCache);
 			}
+			if (staticGeneratedAccessors != null) {
+				xf.setGeneratedAccessors(staticGeneratedAccessors);
+			}
 			return xf;
 		}
 	};
 
+	private Boolean generatedAccessors = null;
 	private Boolean getterCache = null;
 	private Map<String, String> parserConfiguration = null;
 
@@ -91,10 +102,36 @@ public class XmlFieldFactory {
 		if (getterCache != null) {
 			xf.setGetterCache(getterCache);
 		}
+		if (generatedAccessors != null) {
+			xf.setGeneratedAccessors(generatedAccessors);
+		}
 
 		return xf;
 	}
 
+	/**
+	 * Check if this factory returns one XmlField instance per thread.
+	 * 
+	 * @return true if ThreadLocal is used.
+	 */
+	public boolean isUseThreadLocal() {
+		return useThreadLocal;
+	}
+
+	/**
+	 * Enable generated accessors.
+	 * 
+	 * @see XmlField#setGeneratedAccessors(boolean)
+	 * @param enabled
+	 */
+	public void setGeneratedAccessors(boolean enabled) {
+		if (useThreadLocal) {
+			staticGeneratedAccessors = enabled;
+		} else {
+			this.generatedAccessors = enabled;
+		}
+	}
+
 	/**
 	 * Enable Getter cache.
 	 * 
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core;
+
+import java.io.Closeable;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of XmlField instances.
+ * <p>
+ * Instances are leased with {@link #lease()} and returned by closing the
+ * lease, which makes leases usable in try-with-resources statements. At most
+ * maxSize instances are created, when they are all leased, {@link #lease()}
+ * waits until one is returned. Instances are created lazily by an
+ * XmlFieldFactory, and the last returned instance is leased first.
+ * <p>
+ * Unlike the ThreadLocal mode of {@link XmlFieldFactory}, the number of
+ * instances does not depend on the number of threads, which suits
+ * applications using many short-lived threads. No cleanup is needed after
+ * each request, and waiting threads are not blocked in synchronized blocks.
+ * Compiled xpath expressions are cached by the selectors, which are shared by
+ * all threads : new threads do not compile them again.
+ * <p>
+ * Instances are returned as is : settings changed while leased, such as the
+ * getter cache, are kept by the next leases.
+ * 
+ * <pre>
+ * XmlFieldPool pool = new XmlFieldPool(16);
+ * 
+ * XmlFieldPool.Lease lease = pool.lease();
+ * try {
+ * 	MyObject o = lease.getXmlField().xmlToObject(xml, MyObject.class);
+ * } finally {
+ * 	lease.close();
+ * }
+ * </pre>
+ * 
+ * @see XmlFieldFactory
+ * 
+ * @author Nicolas Richeton
+ */
+public class XmlFieldPool {
+
+	/**
+	 * An XmlField instance leased from the pool. Closing the lease returns
+	 * the instance to the pool, the instance must not be used after that.
+	 */
+	public final class Lease implements Closeable {
+
+		private final AtomicBoolean closed = new AtomicBoolean(false);
+
+		private final XmlField xmlField;
+
+		private Lease(XmlField xmlField) {
+			this.xmlField = xmlField;
+		}
+
+		/**
+		 * Returns the instance to the pool. Subsequent calls have no effect.
+		 */
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				release(xmlField);
+			}
+		}
+
+		/**
+		 * Get the leased XmlField instance.
+		 * 
+		 * @return the instance
+		 * @throws IllegalStateException
+		 *             if the lease has been closed.
+		 */
+		public XmlField getXmlField() {
+			if (closed.get()) {
+				throw new IllegalStateException("Lease is closed");
+			}
+			return xmlField;
+		}
+	}
+
+	/**
+	 * Number of instances created by the factory.
+	 */
+	private final AtomicInteger created = new AtomicInteger(0);
+
+	private final XmlFieldFactory factory;
+
+	/**
+	 * Instances not leased, most recently returned first.
+	 */
+	private final LinkedBlockingDeque<XmlField> idle = new LinkedBlockingDeque<XmlField>();
+
+	private final int maxSize;
+
+	/**
+	 * One permit per instance which can be leased.
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * Create a pool of XmlField instances with the default configuration.
+	 * 
+	 * @param maxSize
+	 *            maximum number of instances.
+	 */
+	public XmlFieldPool(int maxSize) {
+		this(new XmlFieldFactory(), maxSize);
+	}
+
+	/**
+	 * Create a pool of XmlField instances.
+	 * 
+	 * @param factory
+	 *            factory used to create instances. Configuration changes of
+	 *            the factory apply to instances created afterwards.
+	 * @param maxSize
+	 *            maximum number of instances.
+	 * @throws IllegalArgumentException
+	 *             if the factory uses ThreadLocal or if maxSize is not
+	 *             positive.
+	 */
+	public XmlFieldPool(XmlFieldFactory factory, int maxSize) {
+		if (factory.isUseThreadLocal()) {
+			throw new IllegalArgumentException(
+					"Pooled instances cannot be created by a ThreadLocal factory");
+		}
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Invalid pool size : "
+					+ maxSize);
+		}
+		this.factory = factory;
+		this.maxSize = maxSize;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Remove idle instances. They will be created again when needed.
+	 */
+	public void clear() {
+		while (idle.pollFirst() != null) {
+			created.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Get the number of instances currently created, leased or idle.
+	 */
+	public int getCreated() {
+		return created.get();
+	}
+
+	/**
+	 * Get the number of idle instances.
+	 */
+	public int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * Get the number of leased instances.
+	 */
+	public int getLeased() {
+		return maxSize - permits.availablePermits();
+	}
+
+	/**
+	 * Get the maximum number of instances.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Lease an instance, waiting if all instances are leased.
+	 * 
+	 * @return the lease, which must be closed.
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting.
+	 */
+	public Lease lease() throws InterruptedException {
+		permits.acquire();
+		return newLease();
+	}
+
+	/**
+	 * Lease an instance, waiting at most the given time if all instances are
+	 * leased.
+	 * 
+	 * @param timeout
+	 *            maximum time to wait
+	 * @param unit
+	 *            unit of timeout
+	 * @return the lease, which must be closed, or <code>null</code> if no
+	 *         instance was available in time.
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting.
+	 */
+	public Lease lease(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		if (!permits.tryAcquire(timeout, unit)) {
+			return null;
+		}
+		return newLease();
+	}
+
+	/**
+	 * Create a lease, once a permit has been acquired.
+	 */
+	private Lease newLease() {
+		XmlField xf = idle.pollFirst();
+		if (xf == null) {
+			try {
+				xf = factory.getXmlField();
+			} catch (RuntimeException e) {
+				permits.release();
+				throw e;
+			}
+			created.incrementAndGet();
+		}
+		return new Lease(xf);
+	}
+
+	private void release(XmlField xf) {
+		idle.offerFirst(xf);
+		permits.release();
+	}
+}
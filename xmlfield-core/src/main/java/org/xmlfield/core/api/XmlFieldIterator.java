@@ -0,0 +1,41 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.api;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterator reading its elements from a resource, such as an xml stream.
+ * <p>
+ * Resources are released when the last element has been read. Callers which
+ * stop iterating before the end must call {@link #close()}.
+ *
+ * @author Nicolas Richeton
+ *
+ * @param <T>
+ *            element type
+ */
+public interface XmlFieldIterator<T> extends Iterator<T>, Closeable {
+
+	/**
+	 * Releases the resources used by the iterator. Subsequent calls have no
+	 * effect, and hasNext() returns false once closed. Streams given by the
+	 * caller are not closed.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.api;
+
+import org.xmlfield.core.impl.metrics.NoOpXmlFieldMetrics;
+import org.xmlfield.core.internal.XmlFieldFactory;
+
+/**
+ * <p>
+ * Receives timings and counts from XmlField : parsing, xpath evaluations,
+ * proxy creations and serialization.
+ * </p>
+ * 
+ * <p>
+ * The instance is shared by all XmlField objects. It is looked up like
+ * factories, using the <code>org.xmlfield.core.api.XmlFieldMetrics</code> key
+ * of <code>xmlfield-factory.properties</code>, or set with
+ * {@link #setInstance(XmlFieldMetrics)}. The default instance is
+ * {@link NoOpXmlFieldMetrics} : when {@link #isEnabled()} returns false, no
+ * timing is done at all.
+ * </p>
+ * 
+ * <p>
+ * XPath evaluations are measured by wrapping the selector of each XmlField
+ * object while metrics are enabled.
+ * </p>
+ * 
+ * <p>
+ * Implementations <b>must</b> be thread safe.
+ * </p>
+ * 
+ * @author Nicolas Richeton
+ */
+public abstract class XmlFieldMetrics extends XmlFieldFactory {
+
+	private static volatile XmlFieldMetrics instance = null;
+
+	/**
+	 * Returns the current instance.
+	 * 
+	 * @return the instance set with {@link #setInstance(XmlFieldMetrics)}, or
+	 *         the configured one.
+	 */
+	public static final XmlFieldMetrics getInstance() {
+		XmlFieldMetrics result = instance;
+		if (result == null) {
+			result = newInstance(XmlFieldMetrics.class);
+			if (result == null) {
+				result = new NoOpXmlFieldMetrics();
+			}
+			instance = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Replaces the current instance.
+	 * 
+	 * @param metrics
+	 *            the new instance, or <code>null</code> to restore the
+	 *            configured one.
+	 */
+	public static final void setInstance(XmlFieldMetrics metrics) {
+		instance = metrics;
+	}
+
+	/**
+	 * Returns false if events should not be measured nor sent.
+	 * <p>
+	 * Default implementation returns true.
+	 */
+	public boolean isEnabled() {
+		return true;
+	}
+
+	/**
+	 * Called after a document has been parsed.
+	 * 
+	 * @param size
+	 *            size of the input in bytes, or -1 if unknown (string
+	 *            input).
+	 * @param nanos
+	 *            parsing duration, in nanoseconds.
+	 */
+	public abstract void parsed(long size, long nanos);
+
+	/**
+	 * Called when a proxy or a generated accessor is created.
+	 * 
+	 * @param type
+	 *            interface of the object.
+	 */
+	public abstract void proxyCreated(Class<?> type);
+
+	/**
+	 * Called after a node has been serialized.
+	 * 
+	 * @param size
+	 *            size of the output in bytes, or -1 if unknown (string or
+	 *            writer output).
+	 * @param nanos
+	 *            serialization duration, in nanoseconds.
+	 */
+	public abstract void serialized(long size, long nanos);
+
+	/**
+	 * Called when a compiled xpath expression is searched in a cache. Simple
+	 * paths evaluated without an xpath engine are not reported.
+	 * 
+	 * @param xpath
+	 *            xpath expression.
+	 * @param hit
+	 *            true if the expression was in cache.
+	 */
+	public abstract void xpathCacheLookup(String xpath, boolean hit);
+
+	/**
+	 * Called after an xpath expression has been evaluated.
+	 * 
+	 * @param xpath
+	 *            xpath expression, as given to the selector.
+	 * @param nanos
+	 *            evaluation duration, in nanoseconds.
+	 */
+	public abstract void xpathEvaluated(String xpath, long nanos);
+}
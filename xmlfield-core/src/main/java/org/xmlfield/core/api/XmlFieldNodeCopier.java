@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.api;
+
+/**
+ * Optional interface of a {@link XmlFieldNodeModifier} which can copy nodes
+ * without serializing them.
+ * <p>
+ * When the modifier does not implement it, XmlField serializes the nodes and
+ * parses them again.
+ *
+ * @author Nicolas Richeton
+ */
+public interface XmlFieldNodeCopier {
+
+	/**
+	 * Copy the whole document of a node.
+	 *
+	 * @param node
+	 *            a node of the document
+	 * @return the root element of the copy
+	 */
+	XmlFieldNode cloneDocument(final XmlFieldNode node);
+
+	/**
+	 * Copy nodes to a new document. Nodes are copied with their content, as
+	 * children of a copy of the parent of the first node.
+	 * <p>
+	 * The copy is not linked to the original document : it can be read by
+	 * another thread while the original document is used.
+	 *
+	 * @param nodes
+	 *            node list
+	 * @param start
+	 *            index of the first node to copy
+	 * @param end
+	 *            index following the last node to copy
+	 * @return the copies
+	 */
+	XmlFieldNodeList copyNodes(final XmlFieldNodeList nodes, final int start,
+			final int end);
+}
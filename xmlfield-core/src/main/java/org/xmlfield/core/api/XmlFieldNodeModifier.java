@@ -20,6 +20,8 @@ import org.xmlfield.core.internal.NamespaceMap;
 /**
  * Modifier interface, this interface describe the diffrent operation needed to
  * be done on an XML document.
+ * <p>
+ * Implementations may also implement {@link XmlFieldNodeCopier}.
  * 
  * @author Guillaume Mary <guillaume.mary@capgemini.com>
  * 
@@ -16,9 +16,13 @@
 package org.xmlfield.core.api;
 
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import org.xmlfield.core.exception.XmlFieldParsingException;
+import org.xmlfield.core.internal.NamespaceMap;
 
 /**
  * Interface of a xml field node parser.
@@ -53,6 +57,50 @@ public interface XmlFieldNodeParser {
 	 */
 	String nodeToXml(XmlFieldNode node) throws XmlFieldParsingException;
 
+	/**
+	 * Writes an xml field node to a byte buffer, in the configured encoding.
+	 * The buffer position is advanced by the number of bytes written. If
+	 * writing fails, the position is left unchanged, but bytes after the
+	 * position may have been overwritten.
+	 * 
+	 * @param node
+	 *            xml field node
+	 * @param buffer
+	 *            destination
+	 * @throws XmlFieldParsingException
+	 *             parsing exception, or not enough space remaining in the
+	 *             buffer.
+	 */
+	void nodeToXml(XmlFieldNode node, ByteBuffer buffer)
+			throws XmlFieldParsingException;
+
+	/**
+	 * Writes an xml field node to an output stream, in the configured
+	 * encoding.
+	 * 
+	 * @param node
+	 *            xml field node
+	 * @param out
+	 *            destination. Not closed.
+	 * @throws XmlFieldParsingException
+	 *             parsing exception
+	 */
+	void nodeToXml(XmlFieldNode node, OutputStream out)
+			throws XmlFieldParsingException;
+
+	/**
+	 * Writes an xml field node to a channel, in the configured encoding.
+	 * 
+	 * @param node
+	 *            xml field node
+	 * @param channel
+	 *            destination. Not closed.
+	 * @throws XmlFieldParsingException
+	 *             parsing exception
+	 */
+	void nodeToXml(XmlFieldNode node, WritableByteChannel channel)
+			throws XmlFieldParsingException;
+
 	void nodeToXml(XmlFieldNode node, Writer writer)
 			throws XmlFieldParsingException;
 
@@ -68,6 +116,42 @@ public interface XmlFieldNodeParser {
 	XmlFieldNode xmlToNode(InputStream xmlContent)
 			throws XmlFieldParsingException;
 
+	/**
+	 * Transform xml bytes to an xml field node. The encoding is detected from
+	 * the byte order mark or the xml declaration.
+	 * 
+	 * @param xmlContent
+	 *            xml bytes, from the position to the limit of the buffer. The
+	 *            position of the buffer is not changed.
+	 * @return xml field node
+	 * @throws XmlFieldParsingException
+	 *             parsing exception
+	 */
+	XmlFieldNode xmlToNode(ByteBuffer xmlContent)
+			throws XmlFieldParsingException;
+
+	/**
+	 * Reads an xml input stream and returns the elements matching a simple
+	 * element path, one at a time, without loading the whole document.
+	 * 
+	 * @param xmlContent
+	 *            xml input stream. Not closed.
+	 * @param namespaces
+	 *            namespaces used in the path
+	 * @param xpath
+	 *            element path, made of names with optional attribute
+	 *            predicates. Relative paths are evaluated from the root
+	 *            element.
+	 * @return an iterator on the matching elements, which must be closed if
+	 *         it is not read until the end. Reading errors are thrown as
+	 *         IllegalStateException.
+	 * @throws XmlFieldParsingException
+	 *             if the path is not supported or the stream cannot be read.
+	 */
+	XmlFieldIterator<XmlFieldNode> xmlToNodes(InputStream xmlContent,
+			NamespaceMap namespaces, String xpath)
+			throws XmlFieldParsingException;
+
 	/**
 	 * Transform an xml string to an xml field node.
 	 * 
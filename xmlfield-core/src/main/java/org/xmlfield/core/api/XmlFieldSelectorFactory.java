@@ -15,6 +15,8 @@
  */
 package org.xmlfield.core.api;
 
+import java.util.Map;
+
 import org.xmlfield.core.internal.XmlFieldFactory;
 
 /**
@@ -66,4 +68,22 @@ public abstract class XmlFieldSelectorFactory extends XmlFieldFactory {
 	 * @return New instance of an <code>XmlFieldSelector</code>.
 	 */
 	public abstract XmlFieldSelector newSelector();
+
+	/**
+	 * <p>
+	 * Return a new <code>XmlFieldSelector</code> using the XmlField
+	 * configuration. Allowed keys are specific to the implementation.
+	 * </p>
+	 * <p>
+	 * Default implementation ignores configuration and calls
+	 * {@link #newSelector()}.
+	 * </p>
+	 * 
+	 * @param configuration
+	 *            XmlField configuration, may be <code>null</code>.
+	 * @return New instance of an <code>XmlFieldSelector</code>.
+	 */
+	public XmlFieldSelector newSelector(Map<String, String> configuration) {
+		return newSelector();
+	}
 }
@@ -17,10 +17,8 @@ package org.xmlfield.core.impl.dom;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 
-import org.apache.commons.lang.StringUtils;
 import org.jaxen.JaxenException;
 import org.jaxen.XPath;
 import org.jaxen.dom.DOMXPath;
@@ -31,11 +29,12 @@ import org.xmlfield.core.api.XmlFieldSelector;
 import org.xmlfield.core.exception.XmlFieldXPathException;
 import org.xmlfield.core.internal.NamespaceMap;
 
-import com.google.common.collect.MapMaker;
-
 /**
  * Default xml field selector implementation. Use the jaxp implementation.
  * <p>
+ * Simple paths (see {@link SimpleXPath}) are evaluated by walking the DOM tree
+ * directly, other expressions are evaluated by Jaxen.
+ * <p>
  * DomJaxenSelector is thread safe.
  * 
  * @author Guillaume Mary <guillaume.mary@capgemini.com>
@@ -44,13 +43,30 @@ import com.google.common.collect.MapMaker;
 public class DomJaxenSelector implements XmlFieldSelector {
 
 	/**
-	 * Enable cache for XPath objects. Warning : this is for testing only. XPath
-	 * objects are not always thread safe. You should not enable caching without
-	 * knowing EXACTLY what you are doing.
+	 * Enable cache for compiled XPath objects. Set to "true" to enable.
+	 * <p>
+	 * XPath objects are not always thread safe (see
+	 * http://sourceforge.net/apps/mantisbt/xmlfield/view.php?id=41) : the
+	 * cache is shared by all threads, but an XPath object is only used by one
+	 * thread at a time.
+	 * 
+	 * @see XPathCache
+	 */
+	public static final String CONFIG_XPATH_CACHE = "xmlfield.dom.xpathCache";
+
+	/**
+	 * Maximum number of xpaths kept in cache. Default is
+	 * {@link XPathCache#DEFAULT_SIZE}.
+	 */
+	public static final String CONFIG_XPATH_CACHE_SIZE = "xmlfield.dom.xpathCacheSize";
+
+	/**
+	 * Evaluate simple paths without Jaxen. Enabled by default, set to "false"
+	 * to disable.
 	 * 
-	 * @see http://sourceforge.net/apps/mantisbt/xmlfield/view.php?id=41
+	 * @see SimpleXPath
 	 */
-	static boolean useCache = false;
+	public static final String CONFIG_SIMPLE_XPATH = "xmlfield.dom.simpleXPath";
 
 	public static XPath addNamespace(final NamespaceMap namespaces, XPath xp)
 			throws JaxenException {
@@ -63,11 +79,46 @@ public class DomJaxenSelector implements XmlFieldSelector {
 	}
 
 	/**
-	 * Cache for XPath selectors. Uses soft values to let the garbage collector
-	 * free unused selectors.
+	 * Evaluate simple paths without Jaxen.
 	 */
-	private Map<String, XPath> xpathCache = new MapMaker().softValues()
-			.makeMap();
+	private final boolean simpleXPath;
+
+	/**
+	 * Cache for XPath selectors, or <code>null</code> if disabled.
+	 */
+	private final XPathCache<XPath> xpathCache;
+
+	/**
+	 * Create a selector without cache.
+	 */
+	public DomJaxenSelector() {
+		this(0);
+	}
+
+	/**
+	 * Create a selector.
+	 * 
+	 * @param cacheSize
+	 *            maximum number of xpaths kept in cache, or 0 to disable
+	 *            cache.
+	 */
+	public DomJaxenSelector(int cacheSize) {
+		this(cacheSize, true);
+	}
+
+	/**
+	 * Create a selector.
+	 * 
+	 * @param cacheSize
+	 *            maximum number of xpaths kept in cache, or 0 to disable
+	 *            cache.
+	 * @param simpleXPath
+	 *            evaluate simple paths without Jaxen.
+	 */
+	public DomJaxenSelector(int cacheSize, boolean simpleXPath) {
+		xpathCache = cacheSize > 0 ? new XPathCache<XPath>(cacheSize) : null;
+		this.simpleXPath = simpleXPath;
+	}
 
 	private void checkXPathNotNull(String xpath) throws XmlFieldXPathException {
 		if (xpath == null) {
@@ -75,9 +126,23 @@ public class DomJaxenSelector implements XmlFieldSelector {
 		}
 	}
 
+	/**
+	 * Returns the parsed simple path.
+	 * 
+	 * @return the path or <code>null</code> if xpath is not a simple path or
+	 *         if simple paths are disabled.
+	 */
+	private SimpleXPath getSimpleXPath(NamespaceMap namespaces, String xpath) {
+		if (!simpleXPath) {
+			return null;
+		}
+		return SimpleXPath.compile(namespaces, xpath);
+	}
+
 	/**
 	 * Get XPath selector, trying to reuse an item from the cache or create a
-	 * new one.
+	 * new one. The selector must be given back with
+	 * {@link #releaseXPath(NamespaceMap, String, XPath)}.
 	 * 
 	 * @param namespaces
 	 * @param xpath
@@ -87,38 +152,61 @@ public class DomJaxenSelector implements XmlFieldSelector {
 	private XPath getXPath(NamespaceMap namespaces, String xpath)
 			throws JaxenException {
 		XPath result = null;
-		if (useCache) {
-			// Build cache key
-			String key = StringUtils.EMPTY;
-			if (namespaces != null) {
-				key = key + namespaces.toString();
-			}
-			key = key + "|" + xpath;
-
+		if (xpathCache != null) {
 			// Get from cache
-			result = xpathCache.get(key);
+			result = xpathCache.get(namespaces, xpath);
+		}
 
-			// If not in cache, create new selector and add it to the cache.
-			if (result == null) {
-				result = new DOMXPath(xpath);
-				addNamespace(namespaces, result);
-				xpathCache.put(key, result);
-			}
-		} else {
+		// If not in cache, create new selector. It is added to the cache when
+		// released.
+		if (result == null) {
 			result = new DOMXPath(xpath);
 			addNamespace(namespaces, result);
 		}
 		return result;
 	}
 
+	/**
+	 * Gives back an XPath selector to the cache.
+	 */
+	private void releaseXPath(NamespaceMap namespaces, String xpath, XPath xp) {
+		if (xpathCache != null) {
+			xpathCache.put(namespaces, xpath, xp);
+		}
+	}
+
+	/**
+	 * Returns the cache of compiled XPath objects.
+	 * 
+	 * @return the cache or <code>null</code> if disabled.
+	 */
+	public XPathCache<XPath> getXPathCache() {
+		return xpathCache;
+	}
+
+	/**
+	 * Returns true if simple paths are evaluated without Jaxen.
+	 */
+	public boolean isSimpleXPath() {
+		return simpleXPath;
+	}
+
 	@Override
 	public Boolean selectXPathToBoolean(NamespaceMap namespaces, String xpath,
 			XmlFieldNode node) throws XmlFieldXPathException {
 		checkXPathNotNull(xpath);
+		final SimpleXPath simple = getSimpleXPath(namespaces, xpath);
+		if (simple != null) {
+			return simple.selectSingleNode((Node) node.getNode()) != null;
+		}
 		final Boolean value;
 		try {
 			final XPath xp = getXPath(namespaces, xpath);
-			value = xp.booleanValueOf(node.getNode());
+			try {
+				value = xp.booleanValueOf(node.getNode());
+			} finally {
+				releaseXPath(namespaces, xpath, xp);
+			}
 		} catch (JaxenException e) {
 			throw new XmlFieldXPathException(e);
 		}
@@ -129,12 +217,21 @@ public class DomJaxenSelector implements XmlFieldSelector {
 	public XmlFieldNode selectXPathToNode(NamespaceMap namespaces,
 			String xpath, XmlFieldNode node) throws XmlFieldXPathException {
 		checkXPathNotNull(xpath);
+		final SimpleXPath simple = getSimpleXPath(namespaces, xpath);
 		final Node value;
-		try {
-			final XPath xp = getXPath(namespaces, xpath);
-			value = (Node) xp.selectSingleNode(node.getNode());
-		} catch (JaxenException e) {
-			throw new XmlFieldXPathException(e);
+		if (simple != null) {
+			value = simple.selectSingleNode((Node) node.getNode());
+		} else {
+			try {
+				final XPath xp = getXPath(namespaces, xpath);
+				try {
+					value = (Node) xp.selectSingleNode(node.getNode());
+				} finally {
+					releaseXPath(namespaces, xpath, xp);
+				}
+			} catch (JaxenException e) {
+				throw new XmlFieldXPathException(e);
+			}
 		}
 		if (value == null) {
 			return null;
@@ -147,12 +244,21 @@ public class DomJaxenSelector implements XmlFieldSelector {
 	public XmlFieldNodeList selectXPathToNodeList(NamespaceMap namespaces,
 			String xpath, XmlFieldNode node) throws XmlFieldXPathException {
 		checkXPathNotNull(xpath);
+		final SimpleXPath simple = getSimpleXPath(namespaces, xpath);
 		final List<Node> values;
-		try {
-			final XPath xp = getXPath(namespaces, xpath);
-			values = xp.selectNodes(node.getNode());
-		} catch (JaxenException e) {
-			throw new XmlFieldXPathException(e);
+		if (simple != null) {
+			values = simple.selectNodes((Node) node.getNode());
+		} else {
+			try {
+				final XPath xp = getXPath(namespaces, xpath);
+				try {
+					values = xp.selectNodes(node.getNode());
+				} finally {
+					releaseXPath(namespaces, xpath, xp);
+				}
+			} catch (JaxenException e) {
+				throw new XmlFieldXPathException(e);
+			}
 		}
 		final int nodeCount = values.size();
 
@@ -174,7 +280,11 @@ public class DomJaxenSelector implements XmlFieldSelector {
 		final Double value;
 		try {
 			final XPath xp = getXPath(namespaces, xpath);
-			value = xp.numberValueOf(node.getNode()).doubleValue();
+			try {
+				value = xp.numberValueOf(node.getNode()).doubleValue();
+			} finally {
+				releaseXPath(namespaces, xpath, xp);
+			}
 		} catch (JaxenException e) {
 			throw new XmlFieldXPathException(e);
 		}
@@ -185,10 +295,19 @@ public class DomJaxenSelector implements XmlFieldSelector {
 	public String selectXPathToString(NamespaceMap namespaces, String xpath,
 			XmlFieldNode node) throws XmlFieldXPathException {
 		checkXPathNotNull(xpath);
+		final SimpleXPath simple = getSimpleXPath(namespaces, xpath);
+		if (simple != null) {
+			final Node value = simple.selectSingleNode((Node) node.getNode());
+			return value == null ? "" : SimpleXPath.getStringValue(value);
+		}
 		final String value;
 		try {
 			final XPath xp = getXPath(namespaces, xpath);
-			value = xp.stringValueOf(node.getNode());
+			try {
+				value = xp.stringValueOf(node.getNode());
+			} finally {
+				releaseXPath(namespaces, xpath, xp);
+			}
 		} catch (JaxenException e) {
 			throw new XmlFieldXPathException(e);
 		}
@@ -15,9 +15,12 @@
  */
 package org.xmlfield.core.impl.dom;
 
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xmlfield.core.api.XmlFieldNode;
 import org.xmlfield.core.impl.dom.cleanup.InputSanitizer;
+import org.xmlfield.core.internal.XmlFieldCachedNode;
+import org.xmlfield.core.internal.XmlFieldDocumentCache;
 
 /**
  * Default xml field node implementation
@@ -25,7 +28,38 @@ import org.xmlfield.core.impl.dom.cleanup.InputSanitizer;
  * @author Guillaume Mary <guillaume.mary@capgemini.com>
  * 
  */
-public class DomNode implements XmlFieldNode {
+public class DomNode implements XmlFieldNode, XmlFieldCachedNode {
+
+	/**
+	 * User data key of the document cache.
+	 */
+	private static final String CACHE_KEY = XmlFieldDocumentCache.class
+			.getName();
+
+	/**
+	 * Records a change of the document of a node, in its cache.
+	 * 
+	 * @param node
+	 *            changed node
+	 */
+	static void documentModified(final Node node) {
+		final Document document = getDocument(node);
+		if (document != null) {
+			final XmlFieldDocumentCache cache = (XmlFieldDocumentCache) document
+					.getUserData(CACHE_KEY);
+			if (cache != null) {
+				cache.modified();
+			}
+		}
+	}
+
+	private static Document getDocument(final Node node) {
+		if (node == null) {
+			return null;
+		}
+		return node.getNodeType() == Node.DOCUMENT_NODE ? (Document) node
+				: node.getOwnerDocument();
+	}
 
 	private Node node;
 
@@ -34,6 +68,24 @@ public class DomNode implements XmlFieldNode {
 		this.node = node;
 	}
 
+	@Override
+	public XmlFieldDocumentCache getDocumentCache() {
+		final Document document = getDocument(this.node);
+		if (document == null) {
+			return null;
+		}
+		synchronized (document) {
+			XmlFieldDocumentCache cache = (XmlFieldDocumentCache) document
+					.getUserData(CACHE_KEY);
+			if (cache == null) {
+				// User data is not copied when the document is cloned.
+				cache = new XmlFieldDocumentCache();
+				document.setUserData(CACHE_KEY, cache, null);
+			}
+			return cache;
+		}
+	}
+
 	@Override
 	public XmlFieldNode getDocumentNode() {
 		if (this.node != null) {
@@ -109,6 +161,7 @@ public class DomNode implements XmlFieldNode {
 	public void setTextContent(String textContent) {
 		if (this.node != null) {
 			this.node.setTextContent(InputSanitizer.sanitizeText(textContent));
+			documentModified(this.node);
 		}
 	}
 
@@ -19,6 +19,9 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.commons.lang.StringUtils.substringAfter;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.commons.lang.StringUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
@@ -26,6 +29,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldNodeCopier;
 import org.xmlfield.core.api.XmlFieldNodeList;
 import org.xmlfield.core.api.XmlFieldNodeModifier;
 import org.xmlfield.core.impl.dom.cleanup.InputSanitizer;
@@ -40,7 +44,8 @@ import org.xmlfield.core.internal.XPathUtils;
  * @author Guillaume Mary <guillaume.mary@capgemini.com>
  * 
  */
-public class DomNodeModifier implements XmlFieldNodeModifier {
+public class DomNodeModifier implements XmlFieldNodeModifier,
+		XmlFieldNodeCopier {
 
 	private static Element _createElement(final NamespaceMap namespaces,
 			final Document document, final String elementName) {
@@ -69,6 +74,52 @@ public class DomNodeModifier implements XmlFieldNodeModifier {
 
 	}
 
+	@Override
+	public XmlFieldNode cloneDocument(final XmlFieldNode node) {
+		checkNotNull(node, "node");
+		final Document copy = (Document) getNodeDocument(
+				(Node) node.getNode()).cloneNode(true);
+		return new DomNode(copy.getDocumentElement());
+	}
+
+	@Override
+	public XmlFieldNodeList copyNodes(final XmlFieldNodeList nodes,
+			final int start, final int end) {
+		checkNotNull(nodes, "nodes");
+		final List<XmlFieldNode> copies = new ArrayList<XmlFieldNode>();
+		if (start >= end) {
+			return new DomNodeList(copies);
+		}
+
+		final Node first = (Node) nodes.item(start).getNode();
+		final Node parent = first.getParentNode();
+		final boolean hasParentElement = parent != null
+				&& parent.getNodeType() == Node.ELEMENT_NODE;
+
+		Document document = null;
+		Node root = null;
+		for (int i = start; i < end; i++) {
+			final Node node = (Node) nodes.item(i).getNode();
+			if (document == null || !hasParentElement) {
+				// Without parent element, each node gets its own document.
+				document = getNodeDocument(node).getImplementation()
+						.createDocument(null, null, null);
+				root = document;
+				if (hasParentElement) {
+					root = document.importNode(parent, false);
+					document.appendChild(root);
+				}
+			}
+
+			final Node copy = document.importNode(node, true);
+			if (copy.getNodeType() != Node.ATTRIBUTE_NODE) {
+				root.appendChild(copy);
+			}
+			copies.add(new DomNode(copy));
+		}
+		return new DomNodeList(copies);
+	}
+
 	@Override
 	public void createAttribute(XmlFieldNode node, String attributeName,
 			String textContent) {
@@ -84,7 +135,7 @@ public class DomNodeModifier implements XmlFieldNodeModifier {
 
 			attribute.setTextContent(InputSanitizer.sanitizeText(textContent));
 		}
-
+		DomNode.documentModified(document);
 	}
 
 	@Override
@@ -114,6 +165,7 @@ public class DomNodeModifier implements XmlFieldNodeModifier {
 			element.appendChild(document.createTextNode(InputSanitizer
 					.sanitizeText(textContent)));
 		}
+		DomNode.documentModified(document);
 
 		return new DomNode(element);
 	}
@@ -141,6 +193,7 @@ public class DomNodeModifier implements XmlFieldNodeModifier {
 		checkNotNull(refChild, "refChild");
 		Node insertedNode = ((Node) contextNode.getNode()).insertBefore(
 				(Node) newChild.getNode(), (Node) refChild.getNode());
+		DomNode.documentModified(insertedNode);
 		return new DomNode(insertedNode);
 	}
 
@@ -152,7 +205,9 @@ public class DomNodeModifier implements XmlFieldNodeModifier {
 		if (nnMap.getNamedItem(attributeName) == null) {
 			return null;
 		}
-		return new DomNode(nnMap.removeNamedItem(attributeName));
+		Node removedNode = nnMap.removeNamedItem(attributeName);
+		DomNode.documentModified((Node) node.getNode());
+		return new DomNode(removedNode);
 	}
 
 	@Override
@@ -161,6 +216,7 @@ public class DomNodeModifier implements XmlFieldNodeModifier {
 		checkNotNull(oldChild, "oldChild");
 		Node removedNode = ((Node) node.getNode()).removeChild((Node) oldChild
 				.getNode());
+		DomNode.documentModified((Node) node.getNode());
 		if (removedNode != null) {
 			return oldChild;
 		}
@@ -173,6 +229,7 @@ public class DomNodeModifier implements XmlFieldNodeModifier {
 		for (int i = nodesToRemove.getLength() - 1; i >= 0; i--) {
 			final Node currentNode = (Node) nodesToRemove.item(i).getNode();
 			currentNode.getParentNode().removeChild(currentNode);
+			DomNode.documentModified(currentNode);
 		}
 	}
 }
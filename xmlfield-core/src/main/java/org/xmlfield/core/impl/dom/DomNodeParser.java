@@ -17,20 +17,26 @@ package org.xmlfield.core.impl.dom;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.ErrorListener;
 import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Result;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
@@ -41,18 +47,26 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xmlfield.core.api.XmlFieldIterator;
+import org.xmlfield.core.api.XmlFieldMetrics;
 import org.xmlfield.core.api.XmlFieldNode;
 import org.xmlfield.core.api.XmlFieldNodeParser;
 import org.xmlfield.core.exception.XmlFieldParsingException;
 import org.xmlfield.core.impl.dom.cleanup.EntitySanitizingInputStream;
 import org.xmlfield.core.impl.dom.cleanup.InputSanitizer;
+import org.xmlfield.core.internal.ByteBufferInputStream;
+import org.xmlfield.core.internal.ByteBufferOutputStream;
+import org.xmlfield.core.internal.CountingInputStream;
+import org.xmlfield.core.internal.CountingOutputStream;
+import org.xmlfield.core.internal.NamespaceMap;
 
 /**
  * Default xml field node parser. This implementation deal with a {@link Node}
  * object.
  * <p>
  * <p>
- * DomNodeParser is not thread safe.
+ * DomNodeParser is not thread safe. See {@link PooledDomNodeParser} for a
+ * thread safe implementation.
  * 
  * @author Guillaume Mary <guillaume.mary@capgemini.com>
  * @author Nicolas Richeton
@@ -70,6 +84,22 @@ public class DomNodeParser implements XmlFieldNodeParser {
 	 */
 	public static final String CONFIG_CLEANUP_XML = "xmlfield.dom.cleanupXmlFirst";
 
+	/**
+	 * Prefix of XmlField configuration keys. Other keys are forwarded to the
+	 * transformer.
+	 */
+	public static final String CONFIG_PREFIX = "xmlfield.";
+
+	/**
+	 * Serialize nodes with {@link DomXmlWriter} instead of a transformer. Set
+	 * to "true" to enable.
+	 * <p>
+	 * Only the output keys supported by {@link DomXmlWriter} are used. The
+	 * character buffer size can be set with
+	 * {@link DomXmlWriter#CONFIG_BUFFER_SIZE}.
+	 */
+	public static final String CONFIG_STREAMING_WRITER = "xmlfield.dom.streamingWriter";
+
 	/**
 	 * Switch XML implementation.
 	 * 
@@ -79,6 +109,30 @@ public class DomNodeParser implements XmlFieldNodeParser {
 	@Deprecated
 	public static String CONFIG_INDENT_XML = OutputKeys.INDENT;
 
+	/**
+	 * Error listener of transformers : errors are thrown to the caller
+	 * instead of being printed on the standard error stream.
+	 */
+	private static final ErrorListener ERROR_LISTENER = new ErrorListener() {
+		@Override
+		public void error(TransformerException exception)
+				throws TransformerException {
+			throw exception;
+		}
+
+		@Override
+		public void fatalError(TransformerException exception)
+				throws TransformerException {
+			throw exception;
+		}
+
+		@Override
+		public void warning(TransformerException exception) {
+			logger.debug("Transformer warning : {}",
+					exception.getMessageAndLocation());
+		}
+	};
+
 	private static final Logger logger = LoggerFactory
 			.getLogger(DomNodeParser.class);
 
@@ -93,6 +147,11 @@ public class DomNodeParser implements XmlFieldNodeParser {
 
 	Transformer t = null;
 
+	/**
+	 * Writer used instead of the transformer, or <code>null</code> if disabled.
+	 */
+	DomXmlWriter xmlWriter = null;
+
 	public DomNodeParser() throws TransformerConfigurationException,
 			TransformerFactoryConfigurationError {
 		this(null);
@@ -130,37 +189,50 @@ public class DomNodeParser implements XmlFieldNodeParser {
 				configuration.remove(CONFIG_CLEANUP_XML);
 			}
 
+			if ("true".equals(configuration.get(CONFIG_STREAMING_WRITER))) {
+				xmlWriter = new DomXmlWriter(configuration);
+			}
+
 		}
 	}
 
-	private void ensureBuilder() throws ParserConfigurationException {
-
+	/**
+	 * Returns a document builder for the current call.
+	 */
+	DocumentBuilder acquireBuilder() throws ParserConfigurationException {
 		if (documentBuilder == null) {
-			DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
-					.newInstance();
-
-			documentBuilderFactory.setNamespaceAware(true);
-			// Prevent XXE
-			documentBuilderFactory.setExpandEntityReferences(false);
-			documentBuilderFactory.setValidating(false);
-
-			documentBuilder = documentBuilderFactory.newDocumentBuilder();
-
+			documentBuilder = DomNodeParserFactory.newDocumentBuilder();
 		}
+		return documentBuilder;
 	}
 
-	private void ensureTransformer() throws TransformerConfigurationException,
+	/**
+	 * Returns a transformer for the current call.
+	 */
+	Transformer acquireTransformer() throws TransformerConfigurationException,
 			TransformerFactoryConfigurationError {
 		if (t == null) {
-			t = TransformerFactory.newInstance().newTransformer();
-
-			// Default for this key
-			t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+			t = DomNodeParserFactory.newTransformer();
+			configureTransformer(t);
+		}
+		return t;
+	}
 
-			// Apply configuration
-			if (configuration != null) {
-				for (String key : configuration.keySet()) {
-					t.setOutputProperty(key, configuration.get(key));
+	/**
+	 * Sets the output properties of a new or reset transformer.
+	 */
+	void configureTransformer(Transformer transformer) {
+		transformer.setErrorListener(ERROR_LISTENER);
+
+		// Default for this key
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+
+		// Apply configuration. XmlField keys are not forwarded to the
+		// transformer.
+		if (configuration != null) {
+			for (String key : configuration.keySet()) {
+				if (!key.startsWith(CONFIG_PREFIX)) {
+					transformer.setOutputProperty(key, configuration.get(key));
 				}
 			}
 		}
@@ -168,34 +240,103 @@ public class DomNodeParser implements XmlFieldNodeParser {
 
 	@Override
 	public String nodeToXml(XmlFieldNode node) throws XmlFieldParsingException {
-		StringWriter sw;
+		StringWriter sw = new StringWriter();
+		XmlFieldMetrics metrics = XmlFieldMetrics.getInstance();
+		if (!metrics.isEnabled()) {
+			write(node, sw);
+			return sw.toString();
+		}
+
+		long start = System.nanoTime();
+		write(node, sw);
+		// Size in bytes is not known for strings.
+		metrics.serialized(-1, System.nanoTime() - start);
+		return sw.toString();
+	}
+
+	@Override
+	public void nodeToXml(XmlFieldNode node, ByteBuffer buffer)
+			throws XmlFieldParsingException {
+		int position = buffer.position();
 		try {
+			nodeToXml(node, new ByteBufferOutputStream(buffer));
+		} catch (XmlFieldParsingException e) {
+			// Drop partial output.
+			buffer.position(position);
+			throw e;
+		}
+	}
 
-			sw = new StringWriter();
-			ensureTransformer();
-			t.transform(new DOMSource((Node) node.getNode()), new StreamResult(
-					sw));
-		} catch (TransformerConfigurationException e) {
-			throw new XmlFieldParsingException(e);
-		} catch (IllegalArgumentException e) {
-			throw new XmlFieldParsingException(e);
-		} catch (TransformerFactoryConfigurationError e) {
-			throw new XmlFieldParsingException(e);
-		} catch (TransformerException e) {
-			throw new XmlFieldParsingException(e);
+	@Override
+	public void nodeToXml(XmlFieldNode node, OutputStream out)
+			throws XmlFieldParsingException {
+		XmlFieldMetrics metrics = XmlFieldMetrics.getInstance();
+		if (!metrics.isEnabled()) {
+			write(node, out);
+			return;
 		}
 
-		return sw.toString();
+		long start = System.nanoTime();
+		CountingOutputStream counter = new CountingOutputStream(out);
+		write(node, counter);
+		metrics.serialized(counter.getCount(), System.nanoTime() - start);
 	}
 
 	@Override
-	public void nodeToXml(XmlFieldNode node, Writer writer)
+	public void nodeToXml(XmlFieldNode node, WritableByteChannel channel)
 			throws XmlFieldParsingException {
+		OutputStream out = Channels.newOutputStream(channel);
+		nodeToXml(node, out);
 		try {
-			ensureTransformer();
+			out.flush();
+		} catch (IOException e) {
+			throw new XmlFieldParsingException(e);
+		}
+	}
 
-			t.transform(new DOMSource((Node) node.getNode()), new StreamResult(
-					writer));
+	@Override
+	public void nodeToXml(XmlFieldNode node, Writer writer)
+			throws XmlFieldParsingException {
+		XmlFieldMetrics metrics = XmlFieldMetrics.getInstance();
+		if (!metrics.isEnabled()) {
+			write(node, writer);
+			return;
+		}
+
+		long start = System.nanoTime();
+		write(node, writer);
+		metrics.serialized(-1, System.nanoTime() - start);
+	}
+
+	/**
+	 * Called when a document builder returned by {@link #acquireBuilder()} is
+	 * no longer used.
+	 */
+	void releaseBuilder(DocumentBuilder builder) {
+		// Builder is kept for next calls.
+	}
+
+	/**
+	 * Called when a transformer returned by {@link #acquireTransformer()} is no
+	 * longer used.
+	 */
+	void releaseTransformer(Transformer transformer) {
+		// Transformer is kept for next calls.
+	}
+
+	/**
+	 * Writes a node to a stream result, using a transformer.
+	 */
+	private void transform(XmlFieldNode node, Result result)
+			throws XmlFieldParsingException {
+		try {
+			Transformer transformer = acquireTransformer();
+			try {
+				transformer.transform(new DOMSource((Node) node.getNode()),
+						result);
+			} finally {
+				releaseTransformer(transformer);
+			}
 		} catch (TransformerConfigurationException e) {
 			throw new XmlFieldParsingException(e);
 		} catch (IllegalArgumentException e) {
@@ -205,7 +346,35 @@ public class DomNodeParser implements XmlFieldNodeParser {
 		} catch (TransformerException e) {
 			throw new XmlFieldParsingException(e);
 		}
+	}
+
+	private void write(XmlFieldNode node, OutputStream out)
+			throws XmlFieldParsingException {
+		if (xmlWriter != null) {
+			try {
+				xmlWriter.write((Node) node.getNode(), out);
+			} catch (IOException e) {
+				throw new XmlFieldParsingException(e);
+			}
+			return;
+		}
 
+		// The transformer encodes directly to the stream.
+		transform(node, new StreamResult(out));
+	}
+
+	private void write(XmlFieldNode node, Writer writer)
+			throws XmlFieldParsingException {
+		if (xmlWriter != null) {
+			try {
+				xmlWriter.write((Node) node.getNode(), writer);
+			} catch (IOException e) {
+				throw new XmlFieldParsingException(e);
+			}
+			return;
+		}
+
+		transform(node, new StreamResult(writer));
 	}
 
 	/**
@@ -218,13 +387,14 @@ public class DomNodeParser implements XmlFieldNodeParser {
 	private Node xmlToNode(final InputSource xmlInputSource)
 			throws XmlFieldParsingException {
 
-		new InputSource() {
-
-		};
 		Document document = null;
 		try {
-			ensureBuilder();
-			document = documentBuilder.parse(xmlInputSource);
+			DocumentBuilder builder = acquireBuilder();
+			try {
+				document = builder.parse(xmlInputSource);
+			} finally {
+				releaseBuilder(builder);
+			}
 		} catch (ParserConfigurationException e) {
 			throw new XmlFieldParsingException(e);
 		} catch (SAXException e) {
@@ -240,22 +410,96 @@ public class DomNodeParser implements XmlFieldNodeParser {
 	public XmlFieldNode xmlToNode(InputStream xmlContent)
 			throws XmlFieldParsingException {
 
+		XmlFieldMetrics metrics = XmlFieldMetrics.getInstance();
+		CountingInputStream counter = null;
 		InputStream stream = xmlContent;
+		if (metrics.isEnabled()) {
+			counter = new CountingInputStream(stream);
+			stream = counter;
+		}
 		if (cleanupXmlFirst) {
 			stream = new EntitySanitizingInputStream(stream);
 		}
 
-		return new DomNode(xmlToNode(new InputSource(stream)));
+		if (counter == null) {
+			return new DomNode(xmlToNode(new InputSource(stream)));
+		}
+
+		long start = System.nanoTime();
+		Node node = xmlToNode(new InputSource(stream));
+		metrics.parsed(counter.getCount(), System.nanoTime() - start);
+		return new DomNode(node);
+	}
+
+	@Override
+	public XmlFieldNode xmlToNode(ByteBuffer xmlContent)
+			throws XmlFieldParsingException {
+		// The parser detects the encoding.
+		return xmlToNode(new ByteBufferInputStream(xmlContent));
+	}
+
+	@Override
+	public XmlFieldIterator<XmlFieldNode> xmlToNodes(InputStream xmlContent,
+			NamespaceMap namespaces, String xpath)
+			throws XmlFieldParsingException {
+		SimpleXPath path = SimpleXPath.compile(namespaces, xpath);
+		if (path == null || !path.isElementPath()) {
+			throw new XmlFieldParsingException(
+					"Only simple element paths can be streamed : " + xpath);
+		}
+
+		InputStream stream = xmlContent;
+		if (cleanupXmlFirst) {
+			stream = new EntitySanitizingInputStream(stream);
+		}
+
+		final XMLStreamReader reader;
+		try {
+			reader = DomNodeParserFactory.newXMLStreamReader(stream);
+		} catch (XMLStreamException e) {
+			throw new XmlFieldParsingException(e);
+		}
+
+		// The iterator releases the builder and closes the reader.
+		DocumentBuilder builder = null;
+		boolean created = false;
+		try {
+			builder = acquireBuilder();
+			StaxNodeIterator iterator = new StaxNodeIterator(this, builder,
+					reader, path);
+			created = true;
+			return iterator;
+		} catch (ParserConfigurationException e) {
+			throw new XmlFieldParsingException(e);
+		} finally {
+			if (!created) {
+				if (builder != null) {
+					releaseBuilder(builder);
+				}
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					logger.debug("Unable to close stream reader", e);
+				}
+			}
+		}
 	}
 
 	@Override
 	public XmlFieldNode xmlToNode(String xml) throws XmlFieldParsingException {
+		XmlFieldMetrics metrics = XmlFieldMetrics.getInstance();
+		long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
 		String xmlData = xml;
 		if (cleanupXmlFirst) {
 			xmlData = InputSanitizer.sanitizeXml(xml);
 		}
 
-		return new DomNode(
-				xmlToNode(new InputSource(new StringReader(xmlData))));
+		Node node = xmlToNode(new InputSource(new StringReader(xmlData)));
+		if (metrics.isEnabled()) {
+			// Size in bytes is not known for strings.
+			metrics.parsed(-1, System.nanoTime() - start);
+		}
+		return new DomNode(node);
 	}
 }
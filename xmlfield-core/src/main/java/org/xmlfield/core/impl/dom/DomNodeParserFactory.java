@@ -15,9 +15,22 @@
  */
 package org.xmlfield.core.impl.dom;
 
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
 
 import org.xmlfield.core.api.XmlFieldNodeParser;
@@ -25,6 +38,13 @@ import org.xmlfield.core.api.XmlFieldNodeParserFactory;
 
 /**
  * Default xml field node parser factory implementation.
+ * <p>
+ * Returns thread safe {@link PooledDomNodeParser} objects, shared by all
+ * XmlField instances with the same configuration. Set
+ * {@link #CONFIG_POOLED_PARSER} to "false" to get a new {@link DomNodeParser}
+ * instead.
+ * <p>
+ * JAXP factories are looked up once, and used by every parser.
  * 
  * @author Guillaume Mary <guillaume.mary@capgemini.com>
  * @author Nicolas Richeton
@@ -32,10 +52,99 @@ import org.xmlfield.core.api.XmlFieldNodeParserFactory;
  */
 public class DomNodeParserFactory extends XmlFieldNodeParserFactory {
 
+	/**
+	 * Use a shared thread safe parser. Enabled by default, set to "false" to
+	 * disable.
+	 */
+	public static final String CONFIG_POOLED_PARSER = "xmlfield.dom.pooledParser";
+
+	private static DocumentBuilderFactory documentBuilderFactory = null;
+
+	/**
+	 * Shared parsers, by configuration.
+	 */
+	private static final ConcurrentMap<Map<String, String>, PooledDomNodeParser> pooledParsers = new ConcurrentHashMap<Map<String, String>, PooledDomNodeParser>();
+
+	private static TransformerFactory transformerFactory = null;
+
+	private static XMLInputFactory xmlInputFactory = null;
+
+	/**
+	 * Creates a namespace aware, non validating document builder.
+	 * <p>
+	 * JAXP factories are not thread safe, calls are synchronized.
+	 */
+	static synchronized DocumentBuilder newDocumentBuilder()
+			throws ParserConfigurationException {
+		if (documentBuilderFactory == null) {
+			DocumentBuilderFactory factory = DocumentBuilderFactory
+					.newInstance();
+			factory.setNamespaceAware(true);
+			// Prevent XXE
+			factory.setExpandEntityReferences(false);
+			factory.setValidating(false);
+			documentBuilderFactory = factory;
+		}
+		return documentBuilderFactory.newDocumentBuilder();
+	}
+
+	/**
+	 * Creates an identity transformer.
+	 * <p>
+	 * JAXP factories are not thread safe, calls are synchronized.
+	 */
+	static synchronized Transformer newTransformer()
+			throws TransformerConfigurationException,
+			TransformerFactoryConfigurationError {
+		if (transformerFactory == null) {
+			transformerFactory = TransformerFactory.newInstance();
+		}
+		return transformerFactory.newTransformer();
+	}
+
+	/**
+	 * Creates a namespace aware stream reader, which does not support DTDs.
+	 * <p>
+	 * JAXP factories are not thread safe, calls are synchronized.
+	 */
+	static synchronized XMLStreamReader newXMLStreamReader(InputStream in)
+			throws XMLStreamException {
+		if (xmlInputFactory == null) {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE,
+					Boolean.TRUE);
+			// Prevent XXE
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			factory.setProperty(
+					XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+					Boolean.FALSE);
+			xmlInputFactory = factory;
+		}
+		return xmlInputFactory.createXMLStreamReader(in);
+	}
+
 	@Override
 	public XmlFieldNodeParser newParser(Map<String, String> configuration) {
 		try {
-			return new DomNodeParser(configuration);
+			if (configuration != null
+					&& "false".equals(configuration.get(CONFIG_POOLED_PARSER))) {
+				return new DomNodeParser(configuration);
+			}
+
+			// Parsers are thread safe, they are shared to share their pools.
+			Map<String, String> key = configuration == null ? Collections
+					.<String, String> emptyMap() : new HashMap<String, String>(
+					configuration);
+			PooledDomNodeParser parser = pooledParsers.get(key);
+			if (parser == null) {
+				parser = new PooledDomNodeParser(configuration);
+				PooledDomNodeParser existing = pooledParsers.putIfAbsent(key,
+						parser);
+				if (existing != null) {
+					parser = existing;
+				}
+			}
+			return parser;
 		} catch (TransformerConfigurationException e) {
 			throw new IllegalStateException(
 					"Unable to create XmlField xml document parser", e);
@@ -15,6 +15,10 @@
  */
 package org.xmlfield.core.impl.dom;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.xmlfield.core.api.XmlFieldSelector;
 import org.xmlfield.core.api.XmlFieldSelectorFactory;
 
@@ -27,8 +31,66 @@ import org.xmlfield.core.api.XmlFieldSelectorFactory;
  */
 public class DomSelectorFactory extends XmlFieldSelectorFactory {
 
+	/**
+	 * Selectors with a specific configuration, by cache size and simple path
+	 * support.
+	 */
+	static private final ConcurrentMap<String, DomJaxenSelector> cachedSelectors = new ConcurrentHashMap<String, DomJaxenSelector>();
+
 	static private DomJaxenSelector selector = new DomJaxenSelector();
 
+	/**
+	 * Returns the XPath cache size set in configuration.
+	 * 
+	 * @param configuration
+	 *            XmlField configuration, may be <code>null</code>.
+	 * @return cache size or 0 if cache is disabled.
+	 */
+	static int getXPathCacheSize(Map<String, String> configuration) {
+		if (configuration == null
+				|| !"true".equals(configuration
+						.get(DomJaxenSelector.CONFIG_XPATH_CACHE))) {
+			return 0;
+		}
+
+		return parseXPathCacheSize(configuration);
+	}
+
+	/**
+	 * Returns false if {@link DomJaxenSelector#CONFIG_SIMPLE_XPATH} is set to
+	 * "false".
+	 * 
+	 * @param configuration
+	 *            XmlField configuration, may be <code>null</code>.
+	 */
+	static boolean isSimpleXPath(Map<String, String> configuration) {
+		return configuration == null
+				|| !"false".equals(configuration
+						.get(DomJaxenSelector.CONFIG_SIMPLE_XPATH));
+	}
+
+	/**
+	 * Returns the value of {@link DomJaxenSelector#CONFIG_XPATH_CACHE_SIZE},
+	 * or {@link XPathCache#DEFAULT_SIZE} if not set.
+	 * 
+	 * @param configuration
+	 *            XmlField configuration, not <code>null</code>.
+	 */
+	static int parseXPathCacheSize(Map<String, String> configuration) {
+		String size = configuration
+				.get(DomJaxenSelector.CONFIG_XPATH_CACHE_SIZE);
+		if (size == null) {
+			return XPathCache.DEFAULT_SIZE;
+		}
+		try {
+			return Integer.parseInt(size.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for "
+					+ DomJaxenSelector.CONFIG_XPATH_CACHE_SIZE + " : " + size,
+					e);
+		}
+	}
+
 	@Override
 	public XmlFieldSelector newSelector() {
 		// DomJaxenSelector is thread safe, we can always return the same
@@ -36,4 +98,26 @@ public class DomSelectorFactory extends XmlFieldSelectorFactory {
 		return selector;
 	}
 
+	@Override
+	public XmlFieldSelector newSelector(Map<String, String> configuration) {
+		int cacheSize = getXPathCacheSize(configuration);
+		boolean simpleXPath = isSimpleXPath(configuration);
+		if (cacheSize <= 0 && simpleXPath) {
+			return selector;
+		}
+
+		// Selectors are shared to share their caches.
+		String key = cacheSize + "/" + simpleXPath;
+		DomJaxenSelector cached = cachedSelectors.get(key);
+		if (cached == null) {
+			cached = new DomJaxenSelector(cacheSize, simpleXPath);
+			DomJaxenSelector existing = cachedSelectors.putIfAbsent(key,
+					cached);
+			if (existing != null) {
+				cached = existing;
+			}
+		}
+		return cached;
+	}
+
 }
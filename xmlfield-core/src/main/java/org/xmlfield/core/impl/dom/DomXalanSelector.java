@@ -21,8 +21,10 @@ import java.util.List;
 import java.util.Map;
 
 import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
@@ -35,84 +37,117 @@ import org.xmlfield.core.exception.XmlFieldXPathException;
 import org.xmlfield.core.internal.NamespaceMap;
 
 /**
- * Default xml field selector implementation. Use the jaxp implementation.
+ * Alternative xml field selector implementation, using the jaxp XPath API
+ * instead of Jaxen.
+ * <p>
+ * Compiled expressions are kept in an {@link XPathCache} shared by all
+ * threads, so expressions are parsed again only when several threads use
+ * them at the same time.
+ * <p>
+ * DomXalanSelector is thread safe.
  * 
+ * @see DomXalanSelectorFactory
  * @author Guillaume Mary <guillaume.mary@capgemini.com>
  * 
  */
-@Deprecated
 public class DomXalanSelector implements XmlFieldSelector {
-	private static final ThreadLocal<XPathFactory> xPathFactory = new ThreadLocal<XPathFactory>() {
 
-		@Override
-		protected XPathFactory initialValue() {
-			return XPathFactory.newInstance();
-		}
+	/**
+	 * Namespace context backed by a {@link NamespaceMap}.
+	 */
+	private static class NamespaceMapContext implements NamespaceContext {
+		private final Map<String, String> prefixesURIs;
 
-	};
-
-	public static XPath getXPath(final NamespaceMap namespaces) {
+		NamespaceMapContext(final NamespaceMap namespaces) {
+			this.prefixesURIs = namespaces.getPrefixesURIs();
+		}
 
-		final XPath xpath = getXPathFactory().newXPath();
+		@Override
+		public String getNamespaceURI(final String prefix) {
 
-		if (namespaces != null) {
+			if (prefix == null) {
 
-			final Map<String, String> prefixesURIs = namespaces
-					.getPrefixesURIs();
+				return null;
+			}
 
-			final NamespaceContext ns = new NamespaceContext() {
+			final String nsURI = prefixesURIs.get(prefix);
 
-				@Override
-				public String getNamespaceURI(final String prefix) {
+			return nsURI;
+		}
 
-					if (prefix == null) {
+		@Override
+		public String getPrefix(final String namespaceURI) {
 
-						return null;
-					}
+			if (namespaceURI == null) {
 
-					final String nsURI = prefixesURIs.get(prefix);
+				return null;
+			}
 
-					return nsURI;
-				}
+			if (prefixesURIs.containsValue(namespaceURI)) {
 
-				@Override
-				public String getPrefix(final String namespaceURI) {
+				for (final Map.Entry<String, String> e : prefixesURIs
+						.entrySet()) {
 
-					if (namespaceURI == null) {
+					if (namespaceURI.equals(e.getValue())) {
 
-						return null;
+						return e.getKey();
 					}
+				}
+			}
 
-					if (prefixesURIs.containsValue(namespaceURI)) {
-
-						for (final Map.Entry<String, String> e : prefixesURIs
-								.entrySet()) {
+			return null;
+		}
 
-							if (namespaceURI.equals(e.getValue())) {
+		@Override
+		public Iterator<?> getPrefixes(final String namespaceURI) {
 
-								return e.getKey();
-							}
-						}
-					}
+			return prefixesURIs.keySet().iterator();
+		}
+	}
 
-					return null;
-				}
+	/**
+	 * Factory shared by all threads. It is not thread safe, but only used to
+	 * compile expressions which are not in cache.
+	 */
+	private static final XPathFactory xPathFactory = XPathFactory
+			.newInstance();
 
-				@Override
-				public Iterator<?> getPrefixes(final String namespaceURI) {
+	public static XPath getXPath(final NamespaceMap namespaces) {
 
-					return prefixesURIs.keySet().iterator();
-				}
-			};
+		final XPath xpath;
+		synchronized (xPathFactory) {
+			xpath = xPathFactory.newXPath();
+		}
 
-			xpath.setNamespaceContext(ns);
+		if (namespaces != null) {
+			xpath.setNamespaceContext(new NamespaceMapContext(namespaces));
 		}
 
 		return xpath;
 	}
 
-	private static XPathFactory getXPathFactory() {
-		return xPathFactory.get();
+	/**
+	 * Cache for compiled expressions, or <code>null</code> if disabled.
+	 */
+	private final XPathCache<XPathExpression> xpathCache;
+
+	/**
+	 * Create a selector with a cache of default size.
+	 */
+	public DomXalanSelector() {
+		this(XPathCache.DEFAULT_SIZE);
+	}
+
+	/**
+	 * Create a selector.
+	 * 
+	 * @param cacheSize
+	 *            maximum number of xpaths kept in cache, or 0 to disable
+	 *            cache.
+	 */
+	public DomXalanSelector(int cacheSize) {
+		xpathCache = cacheSize > 0 ? new XPathCache<XPathExpression>(cacheSize)
+				: null;
 	}
 
 	private void checkXPathNotNull(String xpath) throws XmlFieldXPathException {
@@ -121,18 +156,64 @@ public class DomXalanSelector implements XmlFieldSelector {
 		}
 	}
 
+	/**
+	 * Get compiled expression, trying to reuse an item from the cache or
+	 * compile a new one.
+	 * 
+	 * @param namespaces
+	 * @param xpath
+	 * @return
+	 * @throws XPathExpressionException
+	 */
+	private XPathExpression getExpression(NamespaceMap namespaces, String xpath)
+			throws XPathExpressionException {
+		XPathExpression result = null;
+		if (xpathCache != null) {
+			result = xpathCache.get(namespaces, xpath);
+		}
+
+		// Added to the cache once evaluated.
+		if (result == null) {
+			result = getXPath(namespaces).compile(xpath);
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluates an expression, leased from the cache.
+	 */
+	private Object evaluate(NamespaceMap namespaces, String xpath,
+			XmlFieldNode node, QName returnType) throws XmlFieldXPathException {
+		try {
+			final XPathExpression expression = getExpression(namespaces, xpath);
+			try {
+				return expression.evaluate(node.getNode(), returnType);
+			} finally {
+				if (xpathCache != null) {
+					xpathCache.put(namespaces, xpath, expression);
+				}
+			}
+		} catch (XPathExpressionException e) {
+			throw new XmlFieldXPathException(e);
+		}
+	}
+
+	/**
+	 * Returns the cache of compiled expressions.
+	 * 
+	 * @return the cache or <code>null</code> if disabled.
+	 */
+	public XPathCache<XPathExpression> getXPathCache() {
+		return xpathCache;
+	}
+
 	@Override
 	public Boolean selectXPathToBoolean(NamespaceMap namespaces, String xpath,
 			XmlFieldNode node) throws XmlFieldXPathException {
 		checkXPathNotNull(xpath);
-		final XPath xp = getXPath(namespaces);
 		final Boolean value;
-		try {
-			value = (Boolean) xp.evaluate(xpath, node.getNode(),
-					XPathConstants.BOOLEAN);
-		} catch (XPathExpressionException e) {
-			throw new XmlFieldXPathException(e);
-		}
+		value = (Boolean) evaluate(namespaces, xpath, node,
+				XPathConstants.BOOLEAN);
 		return value;
 	}
 
@@ -140,14 +221,9 @@ public class DomXalanSelector implements XmlFieldSelector {
 	public XmlFieldNode selectXPathToNode(NamespaceMap namespaces,
 			String xpath, XmlFieldNode node) throws XmlFieldXPathException {
 		checkXPathNotNull(xpath);
-		final XPath xp = getXPath(namespaces);
 		final Node selectedNode;
-		try {
-			selectedNode = (Node) xp.evaluate(xpath, node.getNode(),
-					XPathConstants.NODE);
-		} catch (XPathExpressionException e) {
-			throw new XmlFieldXPathException(e);
-		}
+		selectedNode = (Node) evaluate(namespaces, xpath, node,
+				XPathConstants.NODE);
 		if (selectedNode == null) {
 			return null;
 		}
@@ -158,15 +234,10 @@ public class DomXalanSelector implements XmlFieldSelector {
 	public XmlFieldNodeList selectXPathToNodeList(NamespaceMap namespaces,
 			String xpath, XmlFieldNode node) throws XmlFieldXPathException {
 		checkXPathNotNull(xpath);
-		final XPath xp = getXPath(namespaces);
 
 		final NodeList nodeList;
-		try {
-			nodeList = (NodeList) xp.evaluate(xpath, node.getNode(),
-					XPathConstants.NODESET);
-		} catch (XPathExpressionException e) {
-			throw new XmlFieldXPathException(e);
-		}
+		nodeList = (NodeList) evaluate(namespaces, xpath, node,
+				XPathConstants.NODESET);
 
 		final int nodeCount = nodeList.getLength();
 
@@ -185,14 +256,9 @@ public class DomXalanSelector implements XmlFieldSelector {
 	public Double selectXPathToNumber(NamespaceMap namespaces, String xpath,
 			XmlFieldNode node) throws XmlFieldXPathException {
 		checkXPathNotNull(xpath);
-		final XPath xp = getXPath(namespaces);
 		final Double value;
-		try {
-			value = (Double) xp.evaluate(xpath, node.getNode(),
-					XPathConstants.NUMBER);
-		} catch (XPathExpressionException e) {
-			throw new XmlFieldXPathException(e);
-		}
+		value = (Double) evaluate(namespaces, xpath, node,
+				XPathConstants.NUMBER);
 		return value;
 	}
 
@@ -200,14 +266,9 @@ public class DomXalanSelector implements XmlFieldSelector {
 	public String selectXPathToString(NamespaceMap namespaces, String xpath,
 			XmlFieldNode node) throws XmlFieldXPathException {
 		checkXPathNotNull(xpath);
-		final XPath xp = getXPath(namespaces);
 		final String value;
-		try {
-			value = (String) xp.evaluate(xpath, node.getNode(),
-					XPathConstants.STRING);
-		} catch (XPathExpressionException e) {
-			throw new XmlFieldXPathException(e);
-		}
+		value = (String) evaluate(namespaces, xpath, node,
+				XPathConstants.STRING);
 		return value;
 	}
 
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.core.impl.dom;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.xmlfield.core.api.XmlFieldSelector;
+import org.xmlfield.core.api.XmlFieldSelectorFactory;
+
+/**
+ * Xml field selector factory using the jaxp XPath API. To use this factory,
+ * add the following line to <tt>xmlfield-factory.properties</tt> :
+ * 
+ * <pre>
+ * org.xmlfield.core.api.XmlFieldSelectorFactory=org.xmlfield.core.impl.dom.DomXalanSelectorFactory
+ * </pre>
+ * <p>
+ * Compiled expressions are always cached. Cache size can be set with
+ * {@link DomJaxenSelector#CONFIG_XPATH_CACHE_SIZE}.
+ * 
+ * @author Nicolas Richeton
+ * 
+ */
+public class DomXalanSelectorFactory extends XmlFieldSelectorFactory {
+
+	/**
+	 * Selectors by cache size.
+	 */
+	static private final ConcurrentMap<Integer, DomXalanSelector> selectors = new ConcurrentHashMap<Integer, DomXalanSelector>();
+
+	static private DomXalanSelector selector = new DomXalanSelector();
+
+	@Override
+	public XmlFieldSelector newSelector() {
+		// DomXalanSelector is thread safe, we can always return the same
+		// object.
+		return selector;
+	}
+
+	@Override
+	public XmlFieldSelector newSelector(Map<String, String> configuration) {
+		if (configuration == null) {
+			return selector;
+		}
+
+		int cacheSize = DomSelectorFactory.parseXPathCacheSize(configuration);
+		if (cacheSize == XPathCache.DEFAULT_SIZE) {
+			return selector;
+		}
+
+		// Selectors are shared to share their caches.
+		DomXalanSelector cached = selectors.get(cacheSize);
+		if (cached == null) {
+			cached = new DomXalanSelector(cacheSize);
+			DomXalanSelector existing = selectors.putIfAbsent(cacheSize,
+					cached);
+			if (existing != null) {
+				cached = existing;
+			}
+		}
+		return cached;
+	}
+
+}
@@ -0,0 +1,536 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.dom;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.transform.OutputKeys;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Serializes DOM nodes without a {@link javax.xml.transform.Transformer}.
+ * <p>
+ * Supported configuration keys are {@link OutputKeys#OMIT_XML_DECLARATION}
+ * (default "yes"), {@link OutputKeys#ENCODING} (default UTF-8),
+ * {@link OutputKeys#STANDALONE}, {@link OutputKeys#INDENT} and
+ * <tt>{http://xml.apache.org/xslt}indent-amount</tt>, with the same meaning
+ * as for the transformer. Other output keys are ignored.
+ * <p>
+ * Missing namespace declarations are added to the output, so detached or
+ * programmatically built nodes are serialized as well-formed XML.
+ * Characters which cannot be represented in the output encoding are written
+ * as character references.
+ * <p>
+ * DomXmlWriter is thread safe.
+ *
+ * @author Nicolas Richeton
+ */
+public class DomXmlWriter {
+
+	/**
+	 * Character buffer, flushed to the underlying writer when full.
+	 */
+	private static final class Output {
+		private final char[] buffer;
+		private final CharsetEncoder encoder;
+		private int length = 0;
+		private final Writer writer;
+
+		Output(final Writer writer, final int bufferSize,
+				final CharsetEncoder encoder) {
+			this.writer = writer;
+			this.buffer = new char[bufferSize];
+			this.encoder = encoder;
+		}
+
+		void flush() throws IOException {
+			if (length > 0) {
+				writer.write(buffer, 0, length);
+				length = 0;
+			}
+		}
+
+		void write(final char c) throws IOException {
+			if (length == buffer.length) {
+				flush();
+			}
+			buffer[length++] = c;
+		}
+
+		void write(final String s) throws IOException {
+			final int count = s.length();
+			if (count > buffer.length - length) {
+				flush();
+				if (count > buffer.length) {
+					writer.write(s);
+					return;
+				}
+			}
+			s.getChars(0, count, buffer, length);
+			length += count;
+		}
+
+		/**
+		 * Writes the character at index i of s, which may not be supported by
+		 * the encoding.
+		 *
+		 * @return the index of the last character written : surrogate pairs
+		 *         are written at once.
+		 */
+		int writeChar(final String s, final int i) throws IOException {
+			final char c = s.charAt(i);
+			if (c < 0x80 || encoder == null) {
+				write(c);
+				return i;
+			}
+			if (Character.isHighSurrogate(c) && i + 1 < s.length()
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				final String pair = s.substring(i, i + 2);
+				if (encoder.canEncode(pair)) {
+					write(pair);
+				} else {
+					write("&#" + pair.codePointAt(0) + ";");
+				}
+				return i + 1;
+			}
+			if (encoder.canEncode(c)) {
+				write(c);
+			} else {
+				write("&#" + (int) c + ";");
+			}
+			return i;
+		}
+	}
+
+	/**
+	 * Buffer size, in characters. Default is 8192.
+	 */
+	public static final String CONFIG_BUFFER_SIZE = "xmlfield.dom.writerBufferSize";
+
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private static final String INDENT_AMOUNT = "{http://xml.apache.org/xslt}indent-amount";
+
+	private static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+
+	private static int getInt(final Map<String, String> configuration,
+			final String key, final int defaultValue) {
+		final String value = configuration == null ? null : configuration
+				.get(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + key
+					+ " : " + value, e);
+		}
+	}
+
+	private static boolean isWhitespace(final String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (!Character.isWhitespace(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private final int bufferSize;
+	private final Charset charset;
+	private final String encoding;
+	private final boolean indent;
+	private final int indentAmount;
+	private final boolean omitDeclaration;
+	private final String standalone;
+
+	public DomXmlWriter() {
+		this(null);
+	}
+
+	/**
+	 * @param configuration
+	 *            output configuration, may be <code>null</code>.
+	 */
+	public DomXmlWriter(final Map<String, String> configuration) {
+		final Map<String, String> config = configuration == null ? new HashMap<String, String>()
+				: configuration;
+		omitDeclaration = !"no".equals(config
+				.get(OutputKeys.OMIT_XML_DECLARATION));
+		indent = "yes".equals(config.get(OutputKeys.INDENT));
+		indentAmount = getInt(config, INDENT_AMOUNT, 0);
+		standalone = config.get(OutputKeys.STANDALONE);
+		encoding = config.get(OutputKeys.ENCODING) == null ? "UTF-8" : config
+				.get(OutputKeys.ENCODING);
+		charset = Charset.forName(encoding);
+		bufferSize = getInt(config, CONFIG_BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Invalid buffer size "
+					+ bufferSize);
+		}
+	}
+
+	/**
+	 * Returns the prefix bound to uri in the current scope, or null.
+	 */
+	private String findPrefix(final List<String[]> namespaces, final String uri) {
+		for (int i = namespaces.size() - 1; i >= 0; i--) {
+			final String[] ns = namespaces.get(i);
+			if (ns[1].equals(uri) && ns[0].length() > 0
+					&& uri.equals(getNamespace(namespaces, ns[0]))) {
+				return ns[0];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the prefix declared by a namespace declaration attribute, or ""
+	 * for the default namespace.
+	 */
+	private String getDeclaredPrefix(final Attr attr) {
+		final String name = attr.getNodeName();
+		return name.length() > 5 ? name.substring(6) : "";
+	}
+
+	public String getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Returns the uri bound to prefix in the current scope, or null.
+	 */
+	private String getNamespace(final List<String[]> namespaces,
+			final String prefix) {
+		for (int i = namespaces.size() - 1; i >= 0; i--) {
+			if (namespaces.get(i)[0].equals(prefix)) {
+				return namespaces.get(i)[1];
+			}
+		}
+		return null;
+	}
+
+	private boolean isNamespaceDeclaration(final Attr attr) {
+		final String name = attr.getNodeName();
+		return XMLNS_URI.equals(attr.getNamespaceURI()) || name.equals("xmlns")
+				|| name.startsWith("xmlns:");
+	}
+
+	private void newLine(final Output out, final int depth)
+			throws IOException {
+		out.write('\n');
+		for (int i = depth * indentAmount; i > 0; i--) {
+			out.write(' ');
+		}
+	}
+
+	/**
+	 * Writes a node to an output stream, using the configured encoding.
+	 *
+	 * @param node
+	 *            node to serialize
+	 * @param stream
+	 *            output stream. Not closed.
+	 * @throws IOException
+	 */
+	public void write(final Node node, final OutputStream stream)
+			throws IOException {
+		final Writer writer = new OutputStreamWriter(stream, charset
+				.newEncoder());
+		write(node, writer);
+		writer.flush();
+	}
+
+	/**
+	 * Writes a node to a writer.
+	 *
+	 * @param node
+	 *            node to serialize
+	 * @param writer
+	 *            destination. Not closed.
+	 * @throws IOException
+	 */
+	public void write(final Node node, final Writer writer) throws IOException {
+		final CharsetEncoder encoder = encoding.toUpperCase().startsWith("UTF") ? null
+				: charset.newEncoder();
+		final Output out = new Output(writer, bufferSize, encoder);
+
+		if (!omitDeclaration) {
+			out.write("<?xml version=\"1.0\" encoding=\"");
+			out.write(encoding);
+			out.write('"');
+			if (standalone != null) {
+				out.write(" standalone=\"");
+				out.write(standalone);
+				out.write('"');
+			}
+			out.write("?>");
+			if (indent) {
+				out.write('\n');
+			}
+		}
+
+		writeNode(out, node, new ArrayList<String[]>(), 0);
+		out.flush();
+	}
+
+	private void writeAttribute(final Output out, final String name,
+			final String value) throws IOException {
+		out.write(' ');
+		out.write(name);
+		out.write("=\"");
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+			case '&':
+				out.write("&amp;");
+				break;
+			case '<':
+				out.write("&lt;");
+				break;
+			case '>':
+				out.write("&gt;");
+				break;
+			case '"':
+				out.write("&quot;");
+				break;
+			case '\n':
+				out.write("&#10;");
+				break;
+			case '\r':
+				out.write("&#13;");
+				break;
+			case '\t':
+				out.write("&#9;");
+				break;
+			default:
+				i = out.writeChar(value, i);
+			}
+		}
+		out.write('"');
+	}
+
+	/**
+	 * Writes the children of a node. Children are indented if indentation is
+	 * enabled and the node has no text content.
+	 */
+	private void writeChildren(final Output out, final Node node,
+			final List<String[]> namespaces, final int depth)
+			throws IOException {
+		boolean indentChildren = indent;
+		for (Node child = node.getFirstChild(); indentChildren && child != null; child = child
+				.getNextSibling()) {
+			final short type = child.getNodeType();
+			if (type == Node.CDATA_SECTION_NODE
+					|| type == Node.ENTITY_REFERENCE_NODE
+					|| type == Node.TEXT_NODE
+					&& !isWhitespace(child.getNodeValue())) {
+				indentChildren = false;
+			}
+		}
+
+		for (Node child = node.getFirstChild(); child != null; child = child
+				.getNextSibling()) {
+			if (indentChildren) {
+				if (child.getNodeType() == Node.TEXT_NODE) {
+					continue;
+				}
+				if (depth > 0 || child != node.getFirstChild()) {
+					newLine(out, depth);
+				}
+			}
+			writeNode(out, child, namespaces, depth);
+		}
+		if (indentChildren && depth > 0 && node.getFirstChild() != null) {
+			newLine(out, depth - 1);
+		}
+	}
+
+	private void writeElement(final Output out, final Node element,
+			final List<String[]> namespaces, final int depth)
+			throws IOException {
+		final int scope = namespaces.size();
+		final String name = element.getNodeName();
+
+		out.write('<');
+		out.write(name);
+
+		// Namespace declarations first, starting with the element namespace,
+		// then other attributes.
+		final NamedNodeMap attributes = element.getAttributes();
+		final int count = attributes.getLength();
+		final String prefix = element.getPrefix() == null ? "" : element
+				.getPrefix();
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < count; i++) {
+				final Attr attr = (Attr) attributes.item(i);
+				if (isNamespaceDeclaration(attr)
+						&& prefix.equals(getDeclaredPrefix(attr)) == (pass == 0)) {
+					namespaces.add(new String[] { getDeclaredPrefix(attr),
+							attr.getValue() });
+					writeAttribute(out, attr.getNodeName(), attr.getValue());
+				}
+			}
+		}
+
+		// Namespace fixup for the element.
+		if (element.getLocalName() != null) {
+			final String uri = element.getNamespaceURI() == null ? ""
+					: element.getNamespaceURI();
+			final String bound = getNamespace(namespaces, prefix);
+			if (!uri.equals(bound == null ? "" : bound)) {
+				namespaces.add(new String[] { prefix, uri });
+				writeAttribute(out, prefix.length() == 0 ? "xmlns" : "xmlns:"
+						+ prefix, uri);
+			}
+		}
+
+		for (int i = 0; i < count; i++) {
+			final Attr attr = (Attr) attributes.item(i);
+			final String attrName = attr.getNodeName();
+			final String attrUri = attr.getNamespaceURI();
+			if (isNamespaceDeclaration(attr)) {
+				continue;
+			}
+
+			String qName = attrName;
+			if (attrUri != null && attr.getLocalName() != null) {
+				// Namespace fixup for the attribute.
+				String attrPrefix = attr.getPrefix();
+				if (attrPrefix == null
+						|| !attrUri.equals(getNamespace(namespaces, attrPrefix))) {
+					String existing = findPrefix(namespaces, attrUri);
+					if (existing != null) {
+						attrPrefix = existing;
+					} else {
+						if (attrPrefix == null
+								|| getNamespace(namespaces, attrPrefix) != null) {
+							int n = 0;
+							while (getNamespace(namespaces, "ns" + n) != null) {
+								n++;
+							}
+							attrPrefix = "ns" + n;
+						}
+						namespaces.add(new String[] { attrPrefix, attrUri });
+						writeAttribute(out, "xmlns:" + attrPrefix, attrUri);
+					}
+				}
+				qName = attrPrefix + ":" + attr.getLocalName();
+			}
+			writeAttribute(out, qName, attr.getValue());
+		}
+
+		if (element.getFirstChild() == null) {
+			out.write("/>");
+		} else {
+			out.write('>');
+			writeChildren(out, element, namespaces, depth + 1);
+			out.write("</");
+			out.write(name);
+			out.write('>');
+		}
+
+		// Leave element scope.
+		while (namespaces.size() > scope) {
+			namespaces.remove(namespaces.size() - 1);
+		}
+	}
+
+	private void writeNode(final Output out, final Node node,
+			final List<String[]> namespaces, final int depth)
+			throws IOException {
+		switch (node.getNodeType()) {
+		case Node.ELEMENT_NODE:
+			writeElement(out, node, namespaces, depth);
+			break;
+		case Node.TEXT_NODE:
+			writeText(out, node.getNodeValue());
+			break;
+		case Node.CDATA_SECTION_NODE:
+			final String data = node.getNodeValue();
+			out.write("<![CDATA[");
+			out.write(data.replace("]]>", "]]]]><![CDATA[>"));
+			out.write("]]>");
+			break;
+		case Node.COMMENT_NODE:
+			out.write("<!--");
+			out.write(node.getNodeValue());
+			out.write("-->");
+			break;
+		case Node.PROCESSING_INSTRUCTION_NODE:
+			out.write("<?");
+			out.write(node.getNodeName());
+			if (node.getNodeValue() != null
+					&& node.getNodeValue().length() > 0) {
+				out.write(' ');
+				out.write(node.getNodeValue());
+			}
+			out.write("?>");
+			break;
+		case Node.ENTITY_REFERENCE_NODE:
+			out.write('&');
+			out.write(node.getNodeName());
+			out.write(';');
+			break;
+		case Node.DOCUMENT_NODE:
+		case Node.DOCUMENT_FRAGMENT_NODE:
+			writeChildren(out, node, namespaces, depth);
+			break;
+		case Node.ATTRIBUTE_NODE:
+			writeText(out, node.getNodeValue());
+			break;
+		default:
+			// Document types, entities and notations are not serialized.
+			break;
+		}
+	}
+
+	private void writeText(final Output out, final String text)
+			throws IOException {
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				out.write("&amp;");
+				break;
+			case '<':
+				out.write("&lt;");
+				break;
+			case '>':
+				out.write("&gt;");
+				break;
+			case '\r':
+				out.write("&#13;");
+				break;
+			default:
+				i = out.writeChar(text, i);
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.dom;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactoryConfigurationError;
+
+/**
+ * Thread safe xml field node parser.
+ * <p>
+ * Document builders and transformers are taken from bounded pools and reset
+ * after each use. When a pool is empty, a new object is created ; when it is
+ * full, the returned object is dropped. Pools never block.
+ * <p>
+ * Configuration is the same as {@link DomNodeParser}, with the additional
+ * {@link #CONFIG_POOL_SIZE} key.
+ * <p>
+ * PooledDomNodeParser is thread safe.
+ *
+ * @author Nicolas Richeton
+ */
+public class PooledDomNodeParser extends DomNodeParser {
+
+	/**
+	 * Maximum number of idle document builders and transformers kept by the
+	 * parser. Default is twice the number of processors.
+	 */
+	public static final String CONFIG_POOL_SIZE = "xmlfield.dom.poolSize";
+
+	private static int getPoolSize(Map<String, String> configuration) {
+		String size = configuration == null ? null : configuration
+				.get(CONFIG_POOL_SIZE);
+		if (size == null) {
+			return Runtime.getRuntime().availableProcessors() * 2;
+		}
+		try {
+			return Integer.parseInt(size.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for "
+					+ CONFIG_POOL_SIZE + " : " + size, e);
+		}
+	}
+
+	private final BlockingQueue<DocumentBuilder> builders;
+
+	private final BlockingQueue<Transformer> transformers;
+
+	public PooledDomNodeParser() throws TransformerConfigurationException,
+			TransformerFactoryConfigurationError {
+		this(null);
+	}
+
+	/**
+	 * Create document parser and writer.
+	 *
+	 * @param configuration
+	 *            see {@link DomNodeParser#DomNodeParser(Map)}.
+	 * @throws TransformerConfigurationException
+	 * @throws TransformerFactoryConfigurationError
+	 */
+	public PooledDomNodeParser(Map<String, String> configuration)
+			throws TransformerConfigurationException,
+			TransformerFactoryConfigurationError {
+		super(configuration);
+		int poolSize = getPoolSize(configuration);
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("Invalid pool size " + poolSize);
+		}
+		builders = new ArrayBlockingQueue<DocumentBuilder>(poolSize);
+		transformers = new ArrayBlockingQueue<Transformer>(poolSize);
+	}
+
+	@Override
+	DocumentBuilder acquireBuilder() throws ParserConfigurationException {
+		DocumentBuilder builder = builders.poll();
+		if (builder == null) {
+			builder = DomNodeParserFactory.newDocumentBuilder();
+		}
+		return builder;
+	}
+
+	@Override
+	Transformer acquireTransformer() throws TransformerConfigurationException,
+			TransformerFactoryConfigurationError {
+		Transformer transformer = transformers.poll();
+		if (transformer == null) {
+			transformer = DomNodeParserFactory.newTransformer();
+			configureTransformer(transformer);
+		}
+		return transformer;
+	}
+
+	/**
+	 * Returns the number of idle document builders.
+	 */
+	public int getIdleBuilders() {
+		return builders.size();
+	}
+
+	/**
+	 * Returns the number of idle transformers.
+	 */
+	public int getIdleTransformers() {
+		return transformers.size();
+	}
+
+	@Override
+	void releaseBuilder(DocumentBuilder builder) {
+		builder.reset();
+		builders.offer(builder);
+	}
+
+	@Override
+	void releaseTransformer(Transformer transformer) {
+		// Reset also clears output properties.
+		transformer.reset();
+		configureTransformer(transformer);
+		transformers.offer(transformer);
+	}
+}
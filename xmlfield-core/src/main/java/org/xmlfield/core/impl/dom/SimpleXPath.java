@@ -0,0 +1,527 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.dom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xmlfield.core.internal.NamespaceMap;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Evaluator for simple location paths, which walks DOM children and attributes
+ * directly instead of using an XPath engine.
+ * <p>
+ * Supported paths are made of steps separated by '/', with an optional leading
+ * '/'. Each step is one of :
+ * <ul>
+ * <li><tt>.</tt>
+ * <li><tt>name</tt>, <tt>prefix:name</tt> or <tt>*</tt>, optionally followed
+ * by predicates <tt>[@attr]</tt>, <tt>[@attr='value']</tt> or
+ * <tt>[@attr="value"]</tt>
+ * <li><tt>@attr</tt>, <tt>@prefix:attr</tt> or <tt>@*</tt>, as the last step
+ * only
+ * </ul>
+ * Names are matched as Jaxen does : namespace URI and local name, or node name
+ * for nodes created without namespace support. Other expressions (functions,
+ * positions, axes, '//', whitespace...) are left to the XPath engine.
+ * <p>
+ * Instances are immutable and thread safe.
+ *
+ * @author Nicolas Richeton
+ */
+public final class SimpleXPath {
+
+	/**
+	 * A location step.
+	 */
+	private static final class Step {
+		private final String localName;
+		private final String[] predicateNames;
+		private final String[] predicateUris;
+		private final String[] predicateValues;
+		private final int type;
+		private final String uri;
+
+		Step(final int type, final String uri, final String localName,
+				final List<String[]> predicates) {
+			this.type = type;
+			this.uri = uri;
+			this.localName = localName;
+			final int count = predicates.size();
+			predicateUris = new String[count];
+			predicateNames = new String[count];
+			predicateValues = new String[count];
+			for (int i = 0; i < count; i++) {
+				predicateUris[i] = predicates.get(i)[0];
+				predicateNames[i] = predicates.get(i)[1];
+				predicateValues[i] = predicates.get(i)[2];
+			}
+		}
+
+		boolean matchesPredicates(final Node element) {
+			for (int i = 0; i < predicateNames.length; i++) {
+				final Node attr = getAttribute(element, predicateUris[i],
+						predicateNames[i]);
+				if (attr == null || predicateValues[i] != null
+						&& !predicateValues[i].equals(attr.getNodeValue())) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		boolean matchesPredicates(final XMLStreamReader reader) {
+			for (int i = 0; i < predicateNames.length; i++) {
+				final String value = getAttributeValue(reader,
+						predicateUris[i], predicateNames[i]);
+				if (value == null || predicateValues[i] != null
+						&& !predicateValues[i].equals(value)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static final int ATTRIBUTE = 3;
+
+	private static final int CHILD = 2;
+
+	/**
+	 * Parsed paths, by namespaces and xpath. Uses soft values to let the
+	 * garbage collector free unused paths.
+	 */
+	private static final Map<XPathKey, Object> compiled = new MapMaker()
+			.softValues().makeMap();
+
+	/**
+	 * Marker for paths which are not simple.
+	 */
+	private static final Object NOT_SIMPLE = new Object();
+
+	private static final int SELF = 1;
+
+	private static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+
+	/**
+	 * Returns the parsed form of a simple path.
+	 *
+	 * @param namespaces
+	 *            namespaces used to resolve prefixes, may be <code>null</code>
+	 * @param xpath
+	 *            xpath
+	 * @return the parsed path or <code>null</code> if the xpath is not a
+	 *         simple path.
+	 */
+	public static SimpleXPath compile(final NamespaceMap namespaces,
+			final String xpath) {
+		final XPathKey key = new XPathKey(namespaces, xpath);
+		Object result = compiled.get(key);
+		if (result == null) {
+			final SimpleXPath path = parse(namespaces, xpath);
+			result = path == null ? NOT_SIMPLE : path;
+			compiled.put(key, result);
+		}
+		return result == NOT_SIMPLE ? null : (SimpleXPath) result;
+	}
+
+	private static Node getAttribute(final Node element, final String uri,
+			final String localName) {
+		final NamedNodeMap attributes = element.getAttributes();
+		if (attributes == null) {
+			return null;
+		}
+		for (int i = 0; i < attributes.getLength(); i++) {
+			final Node attr = attributes.item(i);
+			if (!XMLNS_URI.equals(attr.getNamespaceURI())
+					&& matches(attr, uri, localName)) {
+				return attr;
+			}
+		}
+		return null;
+	}
+
+	private static String getAttributeValue(final XMLStreamReader reader,
+			final String uri, final String localName) {
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			if (matches(reader.getAttributeNamespace(i),
+					reader.getAttributeLocalName(i), uri, localName)) {
+				return reader.getAttributeValue(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the index of the end of a name, or -1 if the name is invalid.
+	 * Names may contain one ':' but not start or end with it.
+	 */
+	private static int indexOfNameEnd(final String s, final int start) {
+		int i = start;
+		boolean colon = false;
+		while (i < s.length()) {
+			final char c = s.charAt(i);
+			if (c == ':' && !colon && i > start && i + 1 < s.length()
+					&& isNameStart(s.charAt(i + 1))) {
+				colon = true;
+			} else if (i == start ? !isNameStart(c) : !isNamePart(c)) {
+				break;
+			}
+			i++;
+		}
+		return i == start ? -1 : i;
+	}
+
+	private static boolean isNamePart(final char c) {
+		return isNameStart(c) || Character.isDigit(c) || c == '-' || c == '.';
+	}
+
+	private static boolean isNameStart(final char c) {
+		return Character.isLetter(c) || c == '_';
+	}
+
+	private static boolean matches(final Node node, final String uri,
+			final String localName) {
+		return matches(node.getNamespaceURI(),
+				node.getLocalName() == null ? node.getNodeName() : node
+						.getLocalName(), uri, localName);
+	}
+
+	private static boolean matches(final String nodeUri,
+			final String nodeName, final String uri, final String localName) {
+		if (localName == null) {
+			return true;
+		}
+		final boolean noUri = nodeUri == null || nodeUri.length() == 0;
+		if (uri == null ? !noUri : !uri.equals(nodeUri)) {
+			return false;
+		}
+		return localName.equals(nodeName);
+	}
+
+	private static SimpleXPath parse(final NamespaceMap namespaces,
+			final String xpath) {
+		if (xpath == null || xpath.length() == 0) {
+			return null;
+		}
+		final boolean absolute = xpath.charAt(0) == '/';
+		final List<Step> steps = new ArrayList<Step>();
+
+		int pos = absolute ? 1 : 0;
+		while (true) {
+			final int end = parseStep(namespaces, xpath, pos, steps);
+			if (end < 0) {
+				return null;
+			}
+			if (end == xpath.length()) {
+				break;
+			}
+			if (xpath.charAt(end) != '/'
+					|| steps.get(steps.size() - 1).type == ATTRIBUTE) {
+				return null;
+			}
+			pos = end + 1;
+		}
+		return new SimpleXPath(absolute, steps);
+	}
+
+	/**
+	 * Parses a step starting at pos and adds it to steps.
+	 *
+	 * @return the index following the step, or -1 if the step is not simple.
+	 */
+	private static int parseStep(final NamespaceMap namespaces,
+			final String xpath, final int pos, final List<Step> steps) {
+		if (pos >= xpath.length()) {
+			return -1;
+		}
+
+		final List<String[]> predicates = Collections.emptyList();
+		final char c = xpath.charAt(pos);
+
+		if (c == '.') {
+			if (pos + 1 < xpath.length() && xpath.charAt(pos + 1) != '/') {
+				return -1;
+			}
+			steps.add(new Step(SELF, null, null, predicates));
+			return pos + 1;
+		}
+
+		final int type = c == '@' ? ATTRIBUTE : CHILD;
+		int i = type == ATTRIBUTE ? pos + 1 : pos;
+		final String[] name = new String[2];
+		i = parseName(namespaces, xpath, i, name, true);
+		if (i < 0) {
+			return -1;
+		}
+
+		final List<String[]> stepPredicates = new ArrayList<String[]>();
+		while (type == CHILD && i < xpath.length() && xpath.charAt(i) == '[') {
+			i = parsePredicate(namespaces, xpath, i, stepPredicates);
+			if (i < 0) {
+				return -1;
+			}
+		}
+
+		steps.add(new Step(type, name[0], name[1], stepPredicates));
+		return i;
+	}
+
+	/**
+	 * Parses a name or a wildcard and resolves its prefix.
+	 *
+	 * @param result
+	 *            receives namespace URI and local name (<code>null</code> for
+	 *            a wildcard).
+	 * @return the index following the name or -1.
+	 */
+	private static int parseName(final NamespaceMap namespaces,
+			final String xpath, final int pos, final String[] result,
+			final boolean allowWildcard) {
+		if (allowWildcard && pos < xpath.length() && xpath.charAt(pos) == '*') {
+			result[0] = null;
+			result[1] = null;
+			return pos + 1;
+		}
+
+		final int end = indexOfNameEnd(xpath, pos);
+		if (end < 0) {
+			return -1;
+		}
+		final String qName = xpath.substring(pos, end);
+		final int colon = qName.indexOf(':');
+		if (colon < 0) {
+			result[0] = null;
+			result[1] = qName;
+		} else {
+			final String uri = namespaces == null ? null : namespaces
+					.get(qName.substring(0, colon));
+			if (uri == null) {
+				// Let the XPath engine report the unresolved prefix.
+				return -1;
+			}
+			result[0] = uri;
+			result[1] = qName.substring(colon + 1);
+		}
+		return end;
+	}
+
+	/**
+	 * Parses [@name], [@name='value'] or [@name="value"].
+	 *
+	 * @return the index following the predicate or -1.
+	 */
+	private static int parsePredicate(final NamespaceMap namespaces,
+			final String xpath, final int pos, final List<String[]> predicates) {
+		int i = pos + 1;
+		if (i >= xpath.length() || xpath.charAt(i) != '@') {
+			return -1;
+		}
+		final String[] name = new String[2];
+		i = parseName(namespaces, xpath, i + 1, name, false);
+		if (i < 0 || i >= xpath.length()) {
+			return -1;
+		}
+
+		String value = null;
+		if (xpath.charAt(i) == '=') {
+			i++;
+			if (i >= xpath.length()) {
+				return -1;
+			}
+			final char quote = xpath.charAt(i);
+			if (quote != '\'' && quote != '"') {
+				return -1;
+			}
+			final int close = xpath.indexOf(quote, i + 1);
+			if (close < 0) {
+				return -1;
+			}
+			value = xpath.substring(i + 1, close);
+			i = close + 1;
+		}
+
+		if (i >= xpath.length() || xpath.charAt(i) != ']') {
+			return -1;
+		}
+		predicates.add(new String[] { name[0], name[1], value });
+		return i + 1;
+	}
+
+	private final boolean absolute;
+
+	private final Step[] steps;
+
+	private SimpleXPath(final boolean absolute, final List<Step> steps) {
+		this.absolute = absolute;
+		this.steps = steps.toArray(new Step[steps.size()]);
+	}
+
+	/**
+	 * Returns the string value of a node, as defined by XPath.
+	 */
+	static String getStringValue(final Node node) {
+		Node n = node;
+		if (n.getNodeType() == Node.DOCUMENT_NODE) {
+			n = ((Document) n).getDocumentElement();
+			if (n == null) {
+				return "";
+			}
+		}
+		if (n.getNodeType() == Node.ATTRIBUTE_NODE) {
+			return n.getNodeValue();
+		}
+		final String text = n.getTextContent();
+		return text == null ? "" : text;
+	}
+
+	/**
+	 * Returns the number of steps of this path.
+	 */
+	int getStepCount() {
+		return steps.length;
+	}
+
+	boolean isAbsolute() {
+		return absolute;
+	}
+
+	/**
+	 * Returns true if this path only contains element steps, and can be
+	 * matched against a stream of elements.
+	 */
+	public boolean isElementPath() {
+		for (final Step step : steps) {
+			if (step.type != CHILD) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the current start element of a stream reader matches a step
+	 * of this path.
+	 *
+	 * @param index
+	 *            step index
+	 * @param reader
+	 *            reader positioned on a start element
+	 */
+	boolean matchesStep(final int index, final XMLStreamReader reader) {
+		final Step step = steps[index];
+		return matches(reader.getNamespaceURI(), reader.getLocalName(),
+				step.uri, step.localName) && step.matchesPredicates(reader);
+	}
+
+	/**
+	 * Selects the nodes matching this path, in document order.
+	 *
+	 * @param context
+	 *            context node
+	 * @return matching nodes
+	 */
+	public List<Node> selectNodes(final Node context) {
+		return select(context, false);
+	}
+
+	/**
+	 * Selects the first node matching this path, in document order.
+	 *
+	 * @param context
+	 *            context node
+	 * @return the first matching node or <code>null</code>
+	 */
+	public Node selectSingleNode(final Node context) {
+		final List<Node> nodes = select(context, true);
+		return nodes.isEmpty() ? null : nodes.get(0);
+	}
+
+	private List<Node> select(final Node context, final boolean first) {
+		List<Node> current = new ArrayList<Node>(1);
+		if (absolute) {
+			current.add(context.getNodeType() == Node.DOCUMENT_NODE ? context
+					: context.getOwnerDocument());
+		} else {
+			current.add(context);
+		}
+
+		for (int s = 0; s < steps.length && !current.isEmpty(); s++) {
+			final Step step = steps[s];
+			// On the last step, stop at the first match if only one node is
+			// requested.
+			final boolean stopAtFirst = first && s == steps.length - 1;
+
+			if (step.type == SELF) {
+				continue;
+			}
+
+			final List<Node> next = new ArrayList<Node>();
+			for (final Node node : current) {
+				if (step.type == ATTRIBUTE) {
+					if (node.getNodeType() == Node.ELEMENT_NODE) {
+						selectAttributes(node, step, next);
+					}
+				} else {
+					for (Node child = node.getFirstChild(); child != null; child = child
+							.getNextSibling()) {
+						if (child.getNodeType() == Node.ELEMENT_NODE
+								&& matches(child, step.uri, step.localName)
+								&& step.matchesPredicates(child)) {
+							next.add(child);
+							if (stopAtFirst) {
+								return next;
+							}
+						}
+					}
+				}
+				if (stopAtFirst && !next.isEmpty()) {
+					return next;
+				}
+			}
+			current = next;
+		}
+		return current;
+	}
+
+	private void selectAttributes(final Node element, final Step step,
+			final List<Node> result) {
+		if (step.localName != null) {
+			final Node attr = getAttribute(element, step.uri, step.localName);
+			if (attr != null) {
+				result.add(attr);
+			}
+			return;
+		}
+
+		final NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			final Node attr = attributes.item(i);
+			if (!XMLNS_URI.equals(attr.getNamespaceURI())) {
+				result.add(attr);
+			}
+		}
+	}
+}
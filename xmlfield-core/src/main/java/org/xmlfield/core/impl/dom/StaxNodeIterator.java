@@ -0,0 +1,316 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.dom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+import org.xmlfield.core.api.XmlFieldIterator;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.exception.XmlFieldParsingException;
+
+/**
+ * Iterator on the elements of an xml stream matching a simple element path.
+ * <p>
+ * The stream is read with StAX, and each matching element is copied in its
+ * own small DOM document when the iterator reaches it. Previous elements are
+ * not referenced anymore and can be garbage collected. Matching elements are
+ * not searched inside other matching elements.
+ * <p>
+ * The stream reader is closed, and the document builder released, when the
+ * last element has been read or when the iterator is closed. The input stream
+ * itself is never closed.
+ *
+ * @author Nicolas Richeton
+ */
+final class StaxNodeIterator implements XmlFieldIterator<XmlFieldNode> {
+
+	private static String emptyToNull(final String s) {
+		return s == null || s.length() == 0 ? null : s;
+	}
+
+	private final DocumentBuilder builder;
+
+	/**
+	 * Depth of the current element, the root element has depth 1.
+	 */
+	private int depth = 0;
+
+	/**
+	 * matched[d] is true when the element at depth d and all its ancestors
+	 * match the path.
+	 */
+	private final boolean[] matched;
+
+	/**
+	 * Number of namespace declarations, by depth.
+	 */
+	private final int[] namespaceCounts;
+
+	/**
+	 * In scope namespace declarations (prefix, uri), outer first.
+	 */
+	private final List<String> namespaces = new ArrayList<String>();
+
+	private XmlFieldNode next = null;
+
+	private final DomNodeParser parser;
+
+	private final SimpleXPath path;
+
+	private XMLStreamReader reader;
+
+	/**
+	 * Depth of the first element matched by a step of the path.
+	 */
+	private final int stepDepth;
+
+	/**
+	 * Depth of the matching elements.
+	 */
+	private final int targetDepth;
+
+	/**
+	 * Creates an iterator.
+	 *
+	 * @param parser
+	 *            parser which provided the document builder, which is
+	 *            released when the stream has been fully read.
+	 * @param builder
+	 *            document builder used to create element documents.
+	 * @param reader
+	 *            stream reader, positioned at the beginning of the document.
+	 * @param path
+	 *            element path. Relative paths are evaluated from the root
+	 *            element.
+	 */
+	StaxNodeIterator(final DomNodeParser parser,
+			final DocumentBuilder builder, final XMLStreamReader reader,
+			final SimpleXPath path) {
+		this.parser = parser;
+		this.builder = builder;
+		this.reader = reader;
+		this.path = path;
+		stepDepth = path.isAbsolute() ? 1 : 2;
+		targetDepth = path.getStepCount() + stepDepth - 1;
+		matched = new boolean[targetDepth + 1];
+		matched[0] = true;
+		namespaceCounts = new int[targetDepth + 1];
+	}
+
+	@Override
+	public void close() {
+		if (reader == null) {
+			return;
+		}
+		next = null;
+		try {
+			reader.close();
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException(new XmlFieldParsingException(e));
+		} finally {
+			reader = null;
+			parser.releaseBuilder(builder);
+		}
+	}
+
+	/**
+	 * Copies the element at the current position, and its content, in a new
+	 * document. The reader is left on the end of the element.
+	 */
+	private Element copyElement() throws XMLStreamException {
+		final Document document = builder.newDocument();
+		final Element element = document.createElementNS(
+				emptyToNull(reader.getNamespaceURI()), getQName());
+
+		// Declare namespaces inherited from ancestors.
+		for (int i = 0; i < namespaces.size(); i += 2) {
+			declareNamespace(element, namespaces.get(i),
+					namespaces.get(i + 1));
+		}
+		copyAttributes(element);
+		document.appendChild(element);
+
+		Node parent = element;
+		while (true) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				final Element child = document.createElementNS(
+						emptyToNull(reader.getNamespaceURI()), getQName());
+				copyAttributes(child);
+				parent.appendChild(child);
+				parent = child;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				if (parent == element) {
+					return element;
+				}
+				parent = parent.getParentNode();
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.SPACE:
+				// Readers may split text, keep a single node as DOM does.
+				final Node last = parent.getLastChild();
+				if (last != null && last.getNodeType() == Node.TEXT_NODE) {
+					((Text) last).appendData(reader.getText());
+				} else {
+					parent.appendChild(document.createTextNode(reader
+							.getText()));
+				}
+				break;
+			case XMLStreamConstants.CDATA:
+				parent.appendChild(document.createCDATASection(reader
+						.getText()));
+				break;
+			case XMLStreamConstants.COMMENT:
+				parent.appendChild(document.createComment(reader.getText()));
+				break;
+			case XMLStreamConstants.PROCESSING_INSTRUCTION:
+				parent.appendChild(document.createProcessingInstruction(
+						reader.getPITarget(), reader.getPIData()));
+				break;
+			case XMLStreamConstants.ENTITY_REFERENCE:
+				parent.appendChild(document.createEntityReference(reader
+						.getLocalName()));
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Copies namespace declarations and attributes of the current element.
+	 */
+	private void copyAttributes(final Element element) {
+		for (int i = 0; i < reader.getNamespaceCount(); i++) {
+			declareNamespace(element, reader.getNamespacePrefix(i),
+					reader.getNamespaceURI(i));
+		}
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			final String prefix = emptyToNull(reader.getAttributePrefix(i));
+			final String localName = reader.getAttributeLocalName(i);
+			element.setAttributeNS(
+					emptyToNull(reader.getAttributeNamespace(i)),
+					prefix == null ? localName : prefix + ":" + localName,
+					reader.getAttributeValue(i));
+		}
+	}
+
+	private void declareNamespace(final Element element, final String prefix,
+			final String uri) {
+		final String p = emptyToNull(prefix);
+		element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+				p == null ? XMLConstants.XMLNS_ATTRIBUTE
+						: XMLConstants.XMLNS_ATTRIBUTE + ":" + p,
+				uri == null ? "" : uri);
+	}
+
+	/**
+	 * Reads the stream up to the next matching element.
+	 *
+	 * @return the element or <code>null</code> at the end of the stream.
+	 */
+	private XmlFieldNode fetch() throws XMLStreamException {
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				if (depth > targetDepth) {
+					break;
+				}
+
+				matched[depth] = matched[depth - 1]
+						&& (depth < stepDepth || path.matchesStep(depth
+								- stepDepth, reader));
+				if (depth == targetDepth && matched[depth]) {
+					final Element element = copyElement();
+					depth--;
+					return new DomNode(element);
+				}
+
+				namespaceCounts[depth] = reader.getNamespaceCount();
+				for (int i = 0; i < reader.getNamespaceCount(); i++) {
+					namespaces.add(reader.getNamespacePrefix(i));
+					namespaces.add(reader.getNamespaceURI(i));
+				}
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				if (depth <= targetDepth) {
+					for (int i = 0; i < namespaceCounts[depth] * 2; i++) {
+						namespaces.remove(namespaces.size() - 1);
+					}
+				}
+				depth--;
+				break;
+			default:
+				break;
+			}
+		}
+		close();
+		return null;
+	}
+
+	private String getQName() {
+		final String prefix = emptyToNull(reader.getPrefix());
+		return prefix == null ? reader.getLocalName() : prefix + ":"
+				+ reader.getLocalName();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && reader != null) {
+			try {
+				next = fetch();
+			} catch (XMLStreamException e) {
+				try {
+					close();
+				} catch (IllegalStateException closeError) {
+					// Report the reading error.
+				}
+				throw new IllegalStateException(new XmlFieldParsingException(
+						e));
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public XmlFieldNode next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		final XmlFieldNode result = next;
+		next = null;
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.dom;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xmlfield.core.api.XmlFieldMetrics;
+import org.xmlfield.core.internal.NamespaceMap;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded cache of compiled xpath expressions, keyed by namespaces and xpath.
+ * <p>
+ * The cache is shared by all threads, so that short lived threads reuse the
+ * expressions compiled by others. Compiled expressions are usually not thread
+ * safe : they are leased. {@link #get(NamespaceMap, String)} takes an idle
+ * expression out of the cache, and the caller gives it back with
+ * {@link #put(NamespaceMap, String, Object)} once evaluated. An expression
+ * used by several threads at the same time is compiled for each of them.
+ * <p>
+ * Least recently used xpaths are evicted. Lookups are sent to
+ * {@link XmlFieldMetrics}.
+ * <p>
+ * XPathCache is thread safe.
+ *
+ * @param <V>
+ *            compiled expression type
+ * @author Nicolas Richeton
+ */
+public class XPathCache<V> {
+
+	/**
+	 * Default maximum number of xpaths.
+	 */
+	public static final int DEFAULT_SIZE = 256;
+
+	/**
+	 * Idle expressions by xpath.
+	 */
+	private final ConcurrentMap<XPathKey, Queue<V>> expressions;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final int maxSize;
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxSize
+	 *            maximum number of xpaths.
+	 */
+	public XPathCache(final int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Invalid cache size " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.expressions = CacheBuilder.newBuilder().concurrencyLevel(1)
+				.maximumSize(maxSize).<XPathKey, Queue<V>> build().asMap();
+	}
+
+	/**
+	 * Removes all the expressions.
+	 */
+	public void clear() {
+		expressions.clear();
+	}
+
+	/**
+	 * Takes an idle compiled expression out of the cache. It must be given
+	 * back with {@link #put(NamespaceMap, String, Object)} once evaluated.
+	 *
+	 * @return the expression or <code>null</code> if none is available.
+	 */
+	public V get(final NamespaceMap namespaces, final String xpath) {
+		final Queue<V> idle = expressions.get(new XPathKey(namespaces, xpath));
+		final V value = idle == null ? null : idle.poll();
+		if (value == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+
+		final XmlFieldMetrics metrics = XmlFieldMetrics.getInstance();
+		if (metrics.isEnabled()) {
+			metrics.xpathCacheLookup(xpath, value != null);
+		}
+		return value;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Adds a compiled expression to the cache, or gives back an expression
+	 * obtained from {@link #get(NamespaceMap, String)}. The expression must
+	 * not be used by the caller anymore.
+	 */
+	public void put(final NamespaceMap namespaces, final String xpath,
+			final V value) {
+		final XPathKey key = new XPathKey(namespaces, xpath);
+		Queue<V> idle = expressions.get(key);
+		if (idle == null) {
+			idle = new ConcurrentLinkedQueue<V>();
+			final Queue<V> existing = expressions.putIfAbsent(key, idle);
+			if (existing != null) {
+				idle = existing;
+			}
+		}
+		idle.offer(value);
+	}
+
+	@Override
+	public String toString() {
+		return "XPathCache [maxSize=" + maxSize + ", hits=" + hits
+				+ ", misses=" + misses + "]";
+	}
+}
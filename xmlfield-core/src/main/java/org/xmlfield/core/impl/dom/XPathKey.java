@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.dom;
+
+import org.xmlfield.core.internal.NamespaceMap;
+
+/**
+ * Key of a compiled expression : namespaces and xpath.
+ * <p>
+ * Uses the string form of the namespaces, which is computed once by
+ * {@link NamespaceMap}, so that creating a key does not build any string.
+ *
+ * @author Nicolas Richeton
+ */
+final class XPathKey {
+
+	private final int hash;
+	private final String namespaces;
+	private final String xpath;
+
+	XPathKey(final NamespaceMap namespaces, final String xpath) {
+		this.namespaces = namespaces == null ? "" : namespaces.toString();
+		this.xpath = xpath;
+		this.hash = this.namespaces.hashCode() * 31 + xpath.hashCode();
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof XPathKey)) {
+			return false;
+		}
+		final XPathKey other = (XPathKey) obj;
+		return hash == other.hash && xpath.equals(other.xpath)
+				&& namespaces.equals(other.namespaces);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return namespaces + "|" + xpath;
+	}
+}
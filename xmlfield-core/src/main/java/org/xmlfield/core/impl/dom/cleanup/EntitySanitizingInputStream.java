@@ -20,53 +20,97 @@ import java.io.InputStream;
 
 /**
  * An input stream which remove invalid numeric entities from an XML input
- * stream. Invalid values are replaced by the 'unknown character'.
+ * stream. Invalid values are replaced by the 'unknown character'. Decimal
+ * (&amp;#25;) and hexadecimal (&amp;#x19;) entities are supported.
  * <p>
  * This input stream does not try to understand encoding and process only ASCII
  * values. As a result, it should work with UTF-8 and ASCII streams bu will not
  * work with UTF-16 streams.
- * 
+ * <p>
+ * Data is read from the wrapped stream by blocks, and copied in bulk to the
+ * caller buffer between entities.
+ *
  * @author Nicolas Richeton
- * 
+ *
  */
 public class EntitySanitizingInputStream extends InputStream {
+
 	/**
-	 * Maximum length for read ahead.
+	 * Default size of the read buffer.
 	 */
-	static int MAX_ENTITY_SIZE = 15;
+	static final int DEFAULT_BUFFER_SIZE = 8192;
+
 	/**
-	 * the generic unknown entity buffer.
+	 * Maximum length for read ahead. Longer entities are not checked.
 	 */
-	static int[] readHeadUndefined = new int[] { '&', '#', '6', '5', '5', '3',
-			'3', ';' };
+	static final int MAX_ENTITY_SIZE = 15;
 
 	/**
-	 * Current buffer. Contains null if no character has been read ahead of the
-	 * stream.
+	 * the generic unknown entity.
 	 */
-	int[] readAheadBuffer = null;
-	int readAheadCount = 0;
-	int readAheadPosition = 0;
+	private static final byte[] UNKNOWN_ENTITY = new byte[] { '&', '#', '6',
+			'5', '5', '3', '3', ';' };
 
-	private InputStream wrappedInputstream;
+	private static int digit(final byte b, final boolean hex) {
+		if (b >= '0' && b <= '9') {
+			return b - '0';
+		}
+		if (hex && b >= 'a' && b <= 'f') {
+			return b - 'a' + 10;
+		}
+		if (hex && b >= 'A' && b <= 'F') {
+			return b - 'A' + 10;
+		}
+		return -1;
+	}
+
+	/**
+	 * Data read from the wrapped stream. Bytes between position and limit are
+	 * not yet returned.
+	 */
+	private final byte[] buffer;
+	private boolean eof = false;
+	private int limit = 0;
+
+	/**
+	 * Replacement entity not yet returned, or null.
+	 */
+	private byte[] pending = null;
+	private int pendingPosition = 0;
+	private int position = 0;
+	private final byte[] singleByte = new byte[1];
+	private final InputStream wrappedInputstream;
 
 	/**
 	 * Wrap an input stream with XMLentity sanitizing.
-	 * 
+	 *
 	 * @param xmlStream
 	 *            The original xml input stream
 	 */
 	public EntitySanitizingInputStream(InputStream xmlStream) {
+		this(xmlStream, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Wrap an input stream with XMLentity sanitizing.
+	 *
+	 * @param xmlStream
+	 *            The original xml input stream
+	 * @param bufferSize
+	 *            size of the read buffer.
+	 */
+	public EntitySanitizingInputStream(InputStream xmlStream, int bufferSize) {
 		this.wrappedInputstream = xmlStream;
+		this.buffer = new byte[Math.max(bufferSize, MAX_ENTITY_SIZE)];
 	}
 
 	@Override
 	public int available() throws IOException {
-		if (readAheadCount == 0) {
-			return super.available();
+		int count = limit - position + wrappedInputstream.available();
+		if (pending != null) {
+			count += pending.length - pendingPosition;
 		}
-
-		return readAheadCount - readAheadPosition + super.available();
+		return count;
 	}
 
 	@Override
@@ -74,85 +118,135 @@ public class EntitySanitizingInputStream extends InputStream {
 		wrappedInputstream.close();
 	}
 
-	@Override
-	public int read() throws IOException {
-
-		// If the readAheadBuffer exists, return data from the buffer.
-		if (readAheadCount > 0) {
-			int current = readAheadBuffer[readAheadPosition];
-			readAheadPosition++;
-			// If we reach the end of the buffer, cleanup and return to the
-			// standard behavior.
-			if (readAheadPosition == readAheadCount) {
-				readAheadCount = 0;
-				readAheadPosition = 0;
-				readAheadBuffer = null;
+	/**
+	 * Moves unread data to the beginning of the buffer and reads until at
+	 * least count bytes are available or the end of the stream is reached.
+	 */
+	private void ensure(final int count) throws IOException {
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		while (limit < count && !eof) {
+			final int read = wrappedInputstream.read(buffer, limit,
+					buffer.length - limit);
+			if (read < 0) {
+				eof = true;
+			} else {
+				limit += read;
 			}
-			return current;
+		}
+	}
+
+	/**
+	 * Checks the entity starting at the current position.
+	 *
+	 * @return the index following an invalid numeric entity, or -1 if the
+	 *         data is not a numeric entity or is a valid entity.
+	 */
+	private int getInvalidEntityEnd() {
+		final int max = Math.min(limit, position + MAX_ENTITY_SIZE);
+		int i = position + 1;
+		if (i >= max || buffer[i] != '#') {
+			return -1;
+		}
+		i++;
+		final boolean hex = i < max && (buffer[i] == 'x');
+		if (hex) {
+			i++;
 		}
 
-		int current = wrappedInputstream.read();
-
-		// If we just read the begining of an entity, start reading ahead.
-		if (current == '&') {
-			readAheadBuffer = new int[MAX_ENTITY_SIZE];
-			readAheadBuffer[0] = current;
-			current = 0;
-			readAheadCount++;
-
-			// Read until buffer is full / no more data available / end of the
-			// entity
-			while (readAheadCount < MAX_ENTITY_SIZE && current != -1
-					&& current != ';') {
-				current = wrappedInputstream.read();
-				readAheadBuffer[readAheadCount] = current;
-				readAheadCount++;
-
-				// Not an entity number ? -> stop reading.
-				if (!(readAheadBuffer[1] == '#')) {
-					break;
-				}
+		final int start = i;
+		long value = 0;
+		int digit;
+		while (i < max && (digit = digit(buffer[i], hex)) >= 0) {
+			value = value * (hex ? 16 : 10) + digit;
+			i++;
+		}
 
-				// Reached the end of the entity
-				if (readAheadCount > 3 && current == ';') {
-					// Get the entity value
-					StringBuilder number = new StringBuilder();
-					for (int i = 2; i < readAheadCount - 1; i++) {
-						number.append((char) readAheadBuffer[i]);
-					}
+		if (i == start || i >= max || buffer[i] != ';'
+				|| InputSanitizer.isValidXmlChar(value)) {
+			return -1;
+		}
+		return i + 1;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read;
+		do {
+			read = read(singleByte, 0, 1);
+		} while (read == 0);
+
+		return read < 0 ? -1 : singleByte[0] & 0xFF;
+	}
 
-					try {
-						int entity = Integer.parseInt(number.toString());
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+			throws IOException {
+		if (len == 0) {
+			return 0;
+		}
 
-						// If entity is in invalid range, replace by the
-						// 'unknown entity"
-						if (!(entity == 9 || entity == 10 || entity == 13
-								|| entity >= 32 && entity <= 55295
-								|| entity >= 57344 && entity <= 65533
-								|| entity == 55296 || entity >= 56320
-								&& entity <= 56319 || entity == 57343)) {
-							readAheadBuffer = readHeadUndefined;
-							readAheadCount = readAheadBuffer.length;
+		int count = 0;
+		while (count < len) {
+			// Replacement entity first
+			if (pending != null) {
+				final int n = Math.min(len - count, pending.length
+						- pendingPosition);
+				System.arraycopy(pending, pendingPosition, b, off + count, n);
+				count += n;
+				pendingPosition += n;
+				if (pendingPosition == pending.length) {
+					pending = null;
+				}
+				continue;
+			}
 
-						}
+			// Do not block if some data can already be returned.
+			if (position == limit) {
+				if (count > 0 || eof) {
+					break;
+				}
+				ensure(1);
+				if (position == limit) {
+					break;
+				}
+			}
 
-					} catch (NumberFormatException e) {
-						// this was not a number, the XML is probably invalid.
-						// Nothing to do, just start to output the buffer.
+			if (buffer[position] == '&') {
+				if (limit - position < MAX_ENTITY_SIZE && !eof) {
+					if (count > 0) {
+						break;
 					}
+					ensure(MAX_ENTITY_SIZE);
 				}
 
+				final int end = getInvalidEntityEnd();
+				if (end > 0) {
+					pending = UNKNOWN_ENTITY;
+					pendingPosition = 0;
+					position = end;
+				} else {
+					b[off + count] = '&';
+					count++;
+					position++;
+				}
+				continue;
 			}
 
-			current = readAheadBuffer[0];
-			readAheadPosition++;
+			// Copy data up to the next entity.
+			final int max = Math.min(limit, position + len - count);
+			int i = position;
+			while (i < max && buffer[i] != '&') {
+				i++;
+			}
+			System.arraycopy(buffer, position, b, off + count, i - position);
+			count += i - position;
+			position = i;
 		}
-		return current;
-	}
 
-	@Override
-	public synchronized void reset() throws IOException {
-		wrappedInputstream.reset();
+		return count == 0 ? -1 : count;
 	}
-
 }
@@ -15,65 +15,165 @@
  */
 package org.xmlfield.core.impl.dom.cleanup;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * Utility class for handling invalid XML entities and characters.
  * <p>
  * Invalid characters/entity are replaced by the "unknown" character (\uFFFD).
+ * <p>
+ * Inputs are scanned once, and returned unchanged when they contain nothing to
+ * replace. Otherwise, a copy is built from the first invalid character/entity.
  * 
  * @author Nicolas Richeton
  */
 public class InputSanitizer {
 
-	static Pattern INVALID_XML_CHARS = Pattern
-			.compile("[^\\u0009\\u000A\\u000D\\u0020-\\uD7FF\\uE000-\\uFFFD\uD800\uDC00-\uDBFF\uDFFF]");
+	private static final String UNKNOWN_ENTITY = "&#65533;";
+
+	/**
+	 * Returns the value of an ASCII digit, or -1.
+	 */
+	private static int digit(char c, boolean hex) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (hex && c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (hex && c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index following an invalid numeric entity starting at
+	 * index, or -1 if there is no numeric entity or if it is valid.
+	 */
+	private static int getInvalidEntityEnd(String xml, int index) {
+		final int length = xml.length();
+		int i = index + 1;
+		if (i >= length || xml.charAt(i) != '#') {
+			return -1;
+		}
+		i++;
+		final boolean hex = i < length && xml.charAt(i) == 'x';
+		if (hex) {
+			i++;
+		}
+
+		final int start = i;
+		long value = 0;
+		int digit;
+		while (i < length && (digit = digit(xml.charAt(i), hex)) >= 0) {
+			// Saturate to keep out of range values invalid.
+			value = Math.min(value * (hex ? 16 : 10) + digit, Integer.MAX_VALUE);
+			i++;
+		}
+
+		if (i == start || i >= length || xml.charAt(i) != ';'
+				|| isValidXmlChar(value)) {
+			return -1;
+		}
+		return i + 1;
+	}
+
+	/**
+	 * Returns the length of the invalid character at index, or 0 if the
+	 * character is valid. Surrogate pairs are valid, unpaired surrogates are
+	 * not.
+	 */
+	private static int getInvalidLength(String s, int index) {
+		final char c = s.charAt(index);
+		if (c >= 0x20 && c <= 0xD7FF || c >= 0xE000 && c <= 0xFFFD
+				|| c == 0x9 || c == 0xA || c == 0xD) {
+			return 0;
+		}
+		if (Character.isHighSurrogate(c) && index + 1 < s.length()
+				&& Character.isLowSurrogate(s.charAt(index + 1))) {
+			return 0;
+		}
+		return 1;
+	}
 
-	static Pattern XML_ENTITY = Pattern.compile("&#([0-9]+);");
+	/**
+	 * Checks if a character code point is allowed in XML documents.
+	 * 
+	 * @param c
+	 *            code point
+	 * @return true if valid.
+	 */
+	public static boolean isValidXmlChar(long c) {
+		return c == 0x9 || c == 0xA || c == 0xD || c >= 0x20 && c <= 0xD7FF
+				|| c >= 0xE000 && c <= 0xFFFD || c >= 0x10000 && c <= 0x10FFFF;
+	}
 
 	/**
 	 * Replace invalid characters by the unknown character (\uFFFD).
 	 * 
 	 * @param s
 	 *            text to sanitize.
-	 * @return sanitized text.
+	 * @return sanitized text, or s if it contains only valid characters.
 	 */
 	public static String sanitizeText(String s) {
 		if (s == null) {
 			return null;
 		}
-		return INVALID_XML_CHARS.matcher(s).replaceAll("\uFFFD");
+
+		final int length = s.length();
+		StringBuilder sb = null;
+		int copied = 0;
+		for (int i = 0; i < length; i++) {
+			if (getInvalidLength(s, i) > 0) {
+				if (sb == null) {
+					sb = new StringBuilder(length);
+				}
+				sb.append(s, copied, i).append('\uFFFD');
+				copied = i + 1;
+			} else if (Character.isHighSurrogate(s.charAt(i))) {
+				// Valid pair, skip low surrogate.
+				i++;
+			}
+		}
+
+		if (sb == null) {
+			return s;
+		}
+		return sb.append(s, copied, length).toString();
 	}
 
 	/**
 	 * Replace invalid entities by the entity corresponding to the unknown
-	 * character (\uFFFD).
+	 * character (\uFFFD). Decimal and hexadecimal entities are supported.
 	 * 
 	 * @param xml
 	 *            XML input to sanitize.
-	 * @return sanitized XML input
+	 * @return sanitized XML input, or xml if all entities are valid.
 	 */
 	public static String sanitizeXml(String xml) {
 		if (xml == null) {
 			return null;
 		}
-		Matcher m = XML_ENTITY.matcher(xml);
-		StringBuffer sb = new StringBuffer();
-		while (m.find()) {
 
-			String entityValue = m.group(1);
-			int entity = Integer.parseInt(entityValue);
-
-			if (!(entity == 9 || entity == 10 || entity == 13 || entity >= 32
-					&& entity <= 55295 || entity >= 57344 && entity <= 65533
-					|| entity == 55296 || entity >= 56320 && entity <= 56319 || entity == 57343)) {
-				entityValue = "65533";
+		StringBuilder sb = null;
+		int copied = 0;
+		int i = xml.indexOf('&');
+		while (i >= 0) {
+			final int end = getInvalidEntityEnd(xml, i);
+			if (end > 0) {
+				if (sb == null) {
+					sb = new StringBuilder(xml.length());
+				}
+				sb.append(xml, copied, i).append(UNKNOWN_ENTITY);
+				copied = end;
+				i = xml.indexOf('&', end);
+			} else {
+				i = xml.indexOf('&', i + 1);
 			}
-			m.appendReplacement(sb, "&#" + entityValue + ";");
 		}
-		m.appendTail(sb);
 
-		return sb.toString();
+		if (sb == null) {
+			return xml;
+		}
+		return sb.append(xml, copied, xml.length()).toString();
 	}
 }
@@ -0,0 +1,423 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.index;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.xmlfield.core.internal.XmlFieldDocumentCache;
+
+/**
+ * Parsed document : the UTF-8 bytes of the document and a table of node
+ * records.
+ * <p>
+ * Each node is a record of {@link #RECORD_SIZE} ints in {@link #records},
+ * identified by the index of its first int divided by the record size. Node 0
+ * is the document. Names are shared symbols, and values are offsets and
+ * lengths in the original bytes, which are decoded only when requested.
+ * <p>
+ * Bytes and records are kept in buffers, which may be outside of the java
+ * heap (see {@link IndexStorage}). In that case, node objects are only
+ * referenced while they are used, so heap usage does not depend on the size
+ * of the document.
+ * <p>
+ * IndexDocument is immutable, and thread safe.
+ *
+ * @author Nicolas Richeton
+ */
+final class IndexDocument {
+
+	static final int ATTRIBUTE = 2;
+
+	static final int COMMENT = 8;
+
+	static final int DOCUMENT = 9;
+
+	static final int ELEMENT = 1;
+
+	/**
+	 * Value contains character or entity references.
+	 */
+	static final int F_ENTITIES = 1;
+
+	/**
+	 * Value contains carriage returns.
+	 */
+	static final int F_RETURN = 2;
+
+	/**
+	 * Attribute value contains white spaces to normalize.
+	 */
+	static final int F_WHITESPACE = 4;
+
+	static final int FIRST_ATTRIBUTE = 4;
+
+	static final int FIRST_CHILD = 3;
+
+	static final int FLAGS = 9;
+
+	/**
+	 * Length of the value, or of the element, from the start tag to the end
+	 * tag.
+	 */
+	static final int LENGTH = 8;
+
+	/**
+	 * Name symbol of elements, attributes and processing instructions.
+	 */
+	static final int NAME = 5;
+
+	/**
+	 * Namespace declaration : xmlns attribute.
+	 */
+	static final int NAMESPACE = 13;
+
+	static final int NEXT = 2;
+
+	static final int NONE = -1;
+
+	/**
+	 * Namespace uri id of elements and attributes.
+	 */
+	static final int NS = 6;
+
+	/**
+	 * Offset of the value, or of the start tag for elements.
+	 */
+	static final int OFFSET = 7;
+
+	static final int PARENT = 1;
+
+	static final int PROCESSING_INSTRUCTION = 7;
+
+	static final int RECORD_SIZE = 10;
+
+	static final int TEXT = 3;
+
+	static final int TYPE = 0;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int WRITE_BUFFER_SIZE = 8192;
+
+	/**
+	 * Weak reference to a node object, with the index of the node.
+	 */
+	private static final class NodeReference extends WeakReference<IndexNode> {
+		private final int index;
+
+		NodeReference(final IndexNode node,
+				final ReferenceQueue<IndexNode> queue) {
+			super(node, queue);
+			this.index = node.getIndex();
+		}
+	}
+
+	private XmlFieldDocumentCache cache = null;
+
+	private final ByteBuffer data;
+
+	private final int nodeCount;
+
+	/**
+	 * Node objects, created on demand, for heap documents.
+	 */
+	private final IndexNode[] nodes;
+
+	/**
+	 * Node objects in use, for documents outside of the heap.
+	 */
+	private final ConcurrentMap<Integer, NodeReference> nodeReferences;
+
+	private final ReferenceQueue<IndexNode> queue;
+
+	private final String[] prefixes;
+
+	private final String[] qnames;
+
+	private final String[] localNames;
+
+	private final IntBuffer records;
+
+	private final String[] uris;
+
+	/**
+	 * @param data
+	 *            UTF-8 bytes of the document
+	 * @param records
+	 *            node records
+	 * @param nodeCount
+	 *            number of nodes
+	 * @param qnames
+	 *            name symbols
+	 * @param uris
+	 *            namespace uris, by id.
+	 * @param heap
+	 *            true if buffers are in the java heap : node objects are then
+	 *            kept with the document.
+	 */
+	IndexDocument(final ByteBuffer data, final IntBuffer records,
+			final int nodeCount, final String[] qnames, final String[] uris,
+			final boolean heap) {
+		this.data = data;
+		this.records = records;
+		this.nodeCount = nodeCount;
+		if (heap) {
+			this.nodes = new IndexNode[nodeCount];
+			this.nodeReferences = null;
+			this.queue = null;
+		} else {
+			this.nodes = null;
+			this.nodeReferences = new ConcurrentHashMap<Integer, NodeReference>();
+			this.queue = new ReferenceQueue<IndexNode>();
+		}
+		this.qnames = qnames;
+		this.uris = uris;
+		this.prefixes = new String[qnames.length];
+		this.localNames = new String[qnames.length];
+		for (int i = 0; i < qnames.length; i++) {
+			final int colon = qnames[i].indexOf(':');
+			prefixes[i] = colon < 0 ? null : qnames[i].substring(0, colon);
+			localNames[i] = qnames[i].substring(colon + 1);
+		}
+	}
+
+	private void appendText(final int node, final StringBuilder sb) {
+		for (int child = get(node, FIRST_CHILD); child != NONE; child = get(
+				child, NEXT)) {
+			final int type = get(child, TYPE);
+			if (type == TEXT) {
+				sb.append(getValue(child));
+			} else if (type == ELEMENT) {
+				appendText(child, sb);
+			}
+		}
+	}
+
+	int get(final int node, final int field) {
+		return records.get(node * RECORD_SIZE + field);
+	}
+
+	/**
+	 * Returns a byte of the document.
+	 */
+	byte getByte(final int offset) {
+		return data.get(offset);
+	}
+
+	/**
+	 * Returns a copy of bytes of the document.
+	 */
+	private byte[] getBytes(final int offset, final int length) {
+		final byte[] bytes = new byte[length];
+		final ByteBuffer slice = data.duplicate();
+		slice.position(offset);
+		slice.get(bytes);
+		return bytes;
+	}
+
+	synchronized XmlFieldDocumentCache getDocumentCache() {
+		if (cache == null) {
+			cache = new XmlFieldDocumentCache();
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns the document element.
+	 */
+	int getDocumentElement() {
+		for (int child = get(0, FIRST_CHILD); child != NONE; child = get(
+				child, NEXT)) {
+			if (get(child, TYPE) == ELEMENT) {
+				return child;
+			}
+		}
+		return NONE;
+	}
+
+	String getLocalName(final int node) {
+		return localNames[get(node, NAME)];
+	}
+
+	String getNamespaceUri(final int node) {
+		return uris[get(node, NS)];
+	}
+
+	/**
+	 * Returns the object of a node, always the same for a node.
+	 */
+	IndexNode getNode(final int node) {
+		if (nodes == null) {
+			return getNodeReference(node);
+		}
+
+		IndexNode result = nodes[node];
+		if (result == null) {
+			synchronized (nodes) {
+				result = nodes[node];
+				if (result == null) {
+					result = new IndexNode(this, node);
+					nodes[node] = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the object of a node, which is kept while it is referenced.
+	 */
+	private IndexNode getNodeReference(final int node) {
+		// Forget collected nodes.
+		NodeReference collected;
+		while ((collected = (NodeReference) queue.poll()) != null) {
+			nodeReferences.remove(collected.index, collected);
+		}
+
+		final Integer key = Integer.valueOf(node);
+		while (true) {
+			final NodeReference reference = nodeReferences.get(key);
+			IndexNode result = reference == null ? null : reference.get();
+			if (result != null) {
+				return result;
+			}
+			result = new IndexNode(this, node);
+			final NodeReference created = new NodeReference(result, queue);
+			if (reference == null ? nodeReferences.putIfAbsent(key, created) == null
+					: nodeReferences.replace(key, reference, created)) {
+				return result;
+			}
+		}
+	}
+
+	String getPrefix(final int node) {
+		return prefixes[get(node, NAME)];
+	}
+
+	String getQName(final int node) {
+		return qnames[get(node, NAME)];
+	}
+
+	/**
+	 * Returns the text content of a node : its value, or the text of all
+	 * descendant text nodes for elements and the document.
+	 */
+	String getTextContent(final int node) {
+		final int type = get(node, TYPE);
+		if (type != ELEMENT && type != DOCUMENT) {
+			return getValue(node);
+		}
+
+		// Single text child : no copy.
+		final int first = get(node, FIRST_CHILD);
+		if (first == NONE) {
+			return "";
+		}
+		if (get(first, NEXT) == NONE && get(first, TYPE) == TEXT) {
+			return getValue(first);
+		}
+
+		final StringBuilder sb = new StringBuilder();
+		appendText(node, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Decodes the value of a text, attribute, comment or processing
+	 * instruction.
+	 */
+	String getValue(final int node) {
+		final int flags = get(node, FLAGS);
+		final int offset = get(node, OFFSET);
+		final int length = get(node, LENGTH);
+		String value = data.hasArray() ? new String(data.array(),
+				data.arrayOffset() + offset, length, UTF8) : new String(
+				getBytes(offset, length), UTF8);
+		if ((flags & F_RETURN) != 0) {
+			value = value.replace("\r\n", "\n").replace('\r', '\n');
+		}
+		if ((flags & F_WHITESPACE) != 0) {
+			value = value.replace('\t', ' ').replace('\n', ' ');
+		}
+		if ((flags & F_ENTITIES) != 0) {
+			value = IndexParser.decodeReferences(value);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the uri of a namespace prefix, for an element.
+	 *
+	 * @param prefix
+	 *            prefix, or the empty string for the default namespace.
+	 * @return the uri, or <code>null</code> if the prefix is not declared.
+	 */
+	String lookupNamespaceUri(final int element, final String prefix) {
+		if ("xml".equals(prefix)) {
+			return IndexParser.XML_NAMESPACE;
+		}
+		for (int e = element; e != NONE && get(e, TYPE) == ELEMENT; e = get(
+				e, PARENT)) {
+			for (int a = get(e, FIRST_ATTRIBUTE); a != NONE; a = get(a, NEXT)) {
+				if (get(a, TYPE) != NAMESPACE) {
+					continue;
+				}
+				final String declared = getPrefix(a) == null ? "" : localNames[get(
+						a, NAME)];
+				if (declared.equals(prefix)) {
+					final String uri = getValue(a);
+					return uri.length() == 0 ? null : uri;
+				}
+			}
+		}
+		return null;
+	}
+
+	int size() {
+		return nodeCount;
+	}
+
+	/**
+	 * Writes bytes of the document.
+	 */
+	void write(final OutputStream out, final int offset, final int length)
+			throws IOException {
+		if (data.hasArray()) {
+			out.write(data.array(), data.arrayOffset() + offset, length);
+			return;
+		}
+
+		// Copy by blocks, large elements are not copied in the heap.
+		final byte[] buffer = new byte[Math.min(length, WRITE_BUFFER_SIZE)];
+		final ByteBuffer slice = data.duplicate();
+		slice.position(offset);
+		int remaining = length;
+		while (remaining > 0) {
+			final int n = Math.min(remaining, buffer.length);
+			slice.get(buffer, 0, n);
+			out.write(buffer, 0, n);
+			remaining -= n;
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.index;
+
+import static org.xmlfield.core.impl.index.IndexDocument.ATTRIBUTE;
+import static org.xmlfield.core.impl.index.IndexDocument.COMMENT;
+import static org.xmlfield.core.impl.index.IndexDocument.DOCUMENT;
+import static org.xmlfield.core.impl.index.IndexDocument.ELEMENT;
+import static org.xmlfield.core.impl.index.IndexDocument.FIRST_ATTRIBUTE;
+import static org.xmlfield.core.impl.index.IndexDocument.FIRST_CHILD;
+import static org.xmlfield.core.impl.index.IndexDocument.NAMESPACE;
+import static org.xmlfield.core.impl.index.IndexDocument.NEXT;
+import static org.xmlfield.core.impl.index.IndexDocument.NONE;
+import static org.xmlfield.core.impl.index.IndexDocument.PARENT;
+import static org.xmlfield.core.impl.index.IndexDocument.PROCESSING_INSTRUCTION;
+import static org.xmlfield.core.impl.index.IndexDocument.TEXT;
+import static org.xmlfield.core.impl.index.IndexDocument.TYPE;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.jaxen.BaseXPath;
+import org.jaxen.DefaultNavigator;
+import org.jaxen.JaxenConstants;
+import org.jaxen.XPath;
+import org.jaxen.saxpath.SAXPathException;
+
+/**
+ * Jaxen navigator on index documents.
+ * <p>
+ * Nodes are {@link IndexNode} objects. The namespace axis is not supported.
+ *
+ * @author Nicolas Richeton
+ */
+final class IndexNavigator extends DefaultNavigator {
+
+	/**
+	 * Iterator on linked records, skipping namespace declarations.
+	 */
+	private static final class RecordIterator implements Iterator<Object> {
+		private final IndexDocument document;
+		private int next;
+
+		RecordIterator(final IndexDocument document, final int first) {
+			this.document = document;
+			this.next = skip(first);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != NONE;
+		}
+
+		@Override
+		public Object next() {
+			if (next == NONE) {
+				throw new NoSuchElementException();
+			}
+			final IndexNode result = document.getNode(next);
+			next = skip(document.get(next, NEXT));
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private int skip(final int node) {
+			int n = node;
+			while (n != NONE && document.get(n, TYPE) == NAMESPACE) {
+				n = document.get(n, NEXT);
+			}
+			return n;
+		}
+	}
+
+	static final IndexNavigator INSTANCE = new IndexNavigator();
+
+	private static final long serialVersionUID = 1L;
+
+	private static int type(final Object node) {
+		if (!(node instanceof IndexNode)) {
+			return NONE;
+		}
+		final IndexNode n = (IndexNode) node;
+		return n.getDocument().get(n.getIndex(), TYPE);
+	}
+
+	private IndexNavigator() {
+	}
+
+	@Override
+	public Iterator<?> getAttributeAxisIterator(final Object contextNode) {
+		if (type(contextNode) != ELEMENT) {
+			return JaxenConstants.EMPTY_ITERATOR;
+		}
+		final IndexNode n = (IndexNode) contextNode;
+		return new RecordIterator(n.getDocument(), n.getDocument().get(
+				n.getIndex(), FIRST_ATTRIBUTE));
+	}
+
+	@Override
+	public String getAttributeName(final Object attr) {
+		final IndexNode n = (IndexNode) attr;
+		return n.getDocument().getLocalName(n.getIndex());
+	}
+
+	@Override
+	public String getAttributeNamespaceUri(final Object attr) {
+		final IndexNode n = (IndexNode) attr;
+		return n.getDocument().getNamespaceUri(n.getIndex());
+	}
+
+	@Override
+	public String getAttributeQName(final Object attr) {
+		final IndexNode n = (IndexNode) attr;
+		return n.getDocument().getQName(n.getIndex());
+	}
+
+	@Override
+	public String getAttributeStringValue(final Object attr) {
+		final IndexNode n = (IndexNode) attr;
+		return n.getDocument().getValue(n.getIndex());
+	}
+
+	@Override
+	public Iterator<?> getChildAxisIterator(final Object contextNode) {
+		final int type = type(contextNode);
+		if (type != ELEMENT && type != DOCUMENT) {
+			return JaxenConstants.EMPTY_ITERATOR;
+		}
+		final IndexNode n = (IndexNode) contextNode;
+		return new RecordIterator(n.getDocument(), n.getDocument().get(
+				n.getIndex(), FIRST_CHILD));
+	}
+
+	@Override
+	public String getCommentStringValue(final Object comment) {
+		final IndexNode n = (IndexNode) comment;
+		return n.getDocument().getValue(n.getIndex());
+	}
+
+	@Override
+	public Object getDocumentNode(final Object contextNode) {
+		return ((IndexNode) contextNode).getDocument().getNode(0);
+	}
+
+	@Override
+	public String getElementName(final Object element) {
+		final IndexNode n = (IndexNode) element;
+		return n.getDocument().getLocalName(n.getIndex());
+	}
+
+	@Override
+	public String getElementNamespaceUri(final Object element) {
+		final IndexNode n = (IndexNode) element;
+		return n.getDocument().getNamespaceUri(n.getIndex());
+	}
+
+	@Override
+	public String getElementQName(final Object element) {
+		final IndexNode n = (IndexNode) element;
+		return n.getDocument().getQName(n.getIndex());
+	}
+
+	@Override
+	public String getElementStringValue(final Object element) {
+		final IndexNode n = (IndexNode) element;
+		return n.getDocument().getTextContent(n.getIndex());
+	}
+
+	@Override
+	public String getNamespacePrefix(final Object ns) {
+		return null;
+	}
+
+	@Override
+	public String getNamespaceStringValue(final Object ns) {
+		return null;
+	}
+
+	@Override
+	public Iterator<?> getParentAxisIterator(final Object contextNode) {
+		final Object parent = getParentNode(contextNode);
+		return parent == null ? JaxenConstants.EMPTY_ITERATOR : Collections
+				.singletonList(parent).iterator();
+	}
+
+	@Override
+	public Object getParentNode(final Object contextNode) {
+		if (!(contextNode instanceof IndexNode)) {
+			return null;
+		}
+		final IndexNode n = (IndexNode) contextNode;
+		final int parent = n.getDocument().get(n.getIndex(), PARENT);
+		return parent == NONE ? null : n.getDocument().getNode(parent);
+	}
+
+	@Override
+	public String getProcessingInstructionData(final Object pi) {
+		final IndexNode n = (IndexNode) pi;
+		return n.getDocument().getValue(n.getIndex());
+	}
+
+	@Override
+	public String getProcessingInstructionTarget(final Object pi) {
+		final IndexNode n = (IndexNode) pi;
+		return n.getDocument().getQName(n.getIndex());
+	}
+
+	@Override
+	public String getTextStringValue(final Object text) {
+		final IndexNode n = (IndexNode) text;
+		return n.getDocument().getValue(n.getIndex());
+	}
+
+	@Override
+	public boolean isAttribute(final Object object) {
+		return type(object) == ATTRIBUTE;
+	}
+
+	@Override
+	public boolean isComment(final Object object) {
+		return type(object) == COMMENT;
+	}
+
+	@Override
+	public boolean isDocument(final Object object) {
+		return type(object) == DOCUMENT;
+	}
+
+	@Override
+	public boolean isElement(final Object object) {
+		return type(object) == ELEMENT;
+	}
+
+	@Override
+	public boolean isNamespace(final Object object) {
+		return false;
+	}
+
+	@Override
+	public boolean isProcessingInstruction(final Object object) {
+		return type(object) == PROCESSING_INSTRUCTION;
+	}
+
+	@Override
+	public boolean isText(final Object object) {
+		return type(object) == TEXT;
+	}
+
+	@Override
+	public XPath parseXPath(final String xpath) throws SAXPathException {
+		return new BaseXPath(xpath, this);
+	}
+
+	@Override
+	public String translateNamespacePrefixToUri(final String prefix,
+			final Object element) {
+		if (type(element) != ELEMENT) {
+			return null;
+		}
+		final IndexNode n = (IndexNode) element;
+		return n.getDocument().lookupNamespaceUri(n.getIndex(), prefix);
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.index;
+
+import static org.xmlfield.core.impl.index.IndexDocument.ATTRIBUTE;
+import static org.xmlfield.core.impl.index.IndexDocument.ELEMENT;
+import static org.xmlfield.core.impl.index.IndexDocument.FIRST_ATTRIBUTE;
+import static org.xmlfield.core.impl.index.IndexDocument.NONE;
+import static org.xmlfield.core.impl.index.IndexDocument.PARENT;
+import static org.xmlfield.core.impl.index.IndexDocument.TEXT;
+import static org.xmlfield.core.impl.index.IndexDocument.TYPE;
+
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.internal.XmlFieldCachedNode;
+import org.xmlfield.core.internal.XmlFieldDocumentCache;
+
+/**
+ * Node of an index document : a document and the index of a record.
+ * <p>
+ * There is a single IndexNode object for each node of a document, and
+ * {@link #getNode()} returns the node itself. Index documents are read only :
+ * {@link #setTextContent(String)} throws UnsupportedOperationException.
+ *
+ * @author Nicolas Richeton
+ */
+public final class IndexNode implements XmlFieldNode, XmlFieldCachedNode {
+
+	private final IndexDocument document;
+
+	private final int index;
+
+	IndexNode(final IndexDocument document, final int index) {
+		this.document = document;
+		this.index = index;
+	}
+
+	IndexDocument getDocument() {
+		return document;
+	}
+
+	@Override
+	public XmlFieldDocumentCache getDocumentCache() {
+		return document.getDocumentCache();
+	}
+
+	@Override
+	public XmlFieldNode getDocumentNode() {
+		final int element = document.getDocumentElement();
+		return element == NONE ? null : document.getNode(element);
+	}
+
+	int getIndex() {
+		return index;
+	}
+
+	@Override
+	public Object getNode() {
+		return this;
+	}
+
+	@Override
+	public String getNodeName() {
+		switch (document.get(index, TYPE)) {
+		case ELEMENT:
+		case ATTRIBUTE:
+			return document.getQName(index);
+		case TEXT:
+			return "#text";
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public short getNodeType() {
+		switch (document.get(index, TYPE)) {
+		case ELEMENT:
+			return XmlFieldNode.ELEMENT_NODE;
+		case ATTRIBUTE:
+			return XmlFieldNode.ATTRIBUTE_NODE;
+		case TEXT:
+			return XmlFieldNode.TEXT_NODE;
+		default:
+			return XmlFieldNode.UNKNOW_NODE;
+		}
+	}
+
+	@Override
+	public XmlFieldNode getParentNode() {
+		final int parent = document.get(index, PARENT);
+		return parent == NONE ? null : document.getNode(parent);
+	}
+
+	@Override
+	public String getTextContent() {
+		return document.getTextContent(index);
+	}
+
+	@Override
+	public boolean hasAttributes() {
+		return document.get(index, TYPE) == ELEMENT
+				&& document.get(index, FIRST_ATTRIBUTE) != NONE;
+	}
+
+	@Override
+	public void setTextContent(final String textContent) {
+		throw new UnsupportedOperationException(
+				"Index documents are read only");
+	}
+
+	@Override
+	public String toString() {
+		return "IndexNode[" + getNodeName() + "]";
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldNodeCopier;
+import org.xmlfield.core.api.XmlFieldNodeList;
+import org.xmlfield.core.api.XmlFieldNodeModifier;
+import org.xmlfield.core.impl.dom.DomNodeList;
+import org.xmlfield.core.internal.NamespaceMap;
+
+/**
+ * Modifier of index documents, which are read only.
+ * <p>
+ * Copies return the original nodes, as they cannot be changed. Other methods
+ * throw UnsupportedOperationException.
+ *
+ * @author Nicolas Richeton
+ */
+public class IndexNodeModifier implements XmlFieldNodeModifier,
+		XmlFieldNodeCopier {
+
+	private static UnsupportedOperationException readOnly() {
+		return new UnsupportedOperationException(
+				"Index documents are read only");
+	}
+
+	@Override
+	public XmlFieldNode cloneDocument(final XmlFieldNode node) {
+		return node.getDocumentNode();
+	}
+
+	@Override
+	public XmlFieldNodeList copyNodes(final XmlFieldNodeList nodes,
+			final int start, final int end) {
+		final List<XmlFieldNode> copies = new ArrayList<XmlFieldNode>(end
+				- start);
+		for (int i = start; i < end; i++) {
+			copies.add(nodes.item(i));
+		}
+		return new DomNodeList(copies);
+	}
+
+	@Override
+	public void createAttribute(final XmlFieldNode contextNode,
+			final String attributeName, final String textContent) {
+		throw readOnly();
+	}
+
+	@Override
+	public XmlFieldNode createElement(final NamespaceMap namespaces,
+			final XmlFieldNode node, final String elementName) {
+		throw readOnly();
+	}
+
+	@Override
+	public XmlFieldNode createElement(final NamespaceMap namespaces,
+			final XmlFieldNode node, final String elementName,
+			final String textContent) {
+		throw readOnly();
+	}
+
+	@Override
+	public XmlFieldNode insertBefore(final XmlFieldNode parentNode,
+			final XmlFieldNode newChild, final XmlFieldNode refChild) {
+		throw readOnly();
+	}
+
+	@Override
+	public XmlFieldNode removeAttribute(final XmlFieldNode node,
+			final String attributeName) {
+		throw readOnly();
+	}
+
+	@Override
+	public XmlFieldNode removeChild(final XmlFieldNode contextNode,
+			final XmlFieldNode oldChild) {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeChildren(final XmlFieldNodeList nodesToRemove) {
+		throw readOnly();
+	}
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.index;
+
+import static org.xmlfield.core.impl.index.IndexDocument.DOCUMENT;
+import static org.xmlfield.core.impl.index.IndexDocument.ELEMENT;
+import static org.xmlfield.core.impl.index.IndexDocument.FIRST_ATTRIBUTE;
+import static org.xmlfield.core.impl.index.IndexDocument.LENGTH;
+import static org.xmlfield.core.impl.index.IndexDocument.NAMESPACE;
+import static org.xmlfield.core.impl.index.IndexDocument.NEXT;
+import static org.xmlfield.core.impl.index.IndexDocument.NONE;
+import static org.xmlfield.core.impl.index.IndexDocument.OFFSET;
+import static org.xmlfield.core.impl.index.IndexDocument.PARENT;
+import static org.xmlfield.core.impl.index.IndexDocument.TYPE;
+import static org.xmlfield.core.impl.index.IndexDocument.UTF8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.xmlfield.core.api.XmlFieldIterator;
+import org.xmlfield.core.api.XmlFieldMetrics;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldNodeList;
+import org.xmlfield.core.api.XmlFieldNodeParser;
+import org.xmlfield.core.exception.XmlFieldParsingException;
+import org.xmlfield.core.exception.XmlFieldXPathException;
+import org.xmlfield.core.impl.dom.DomNodeParser;
+import org.xmlfield.core.impl.dom.SimpleXPath;
+import org.xmlfield.core.impl.dom.cleanup.EntitySanitizingInputStream;
+import org.xmlfield.core.impl.dom.cleanup.InputSanitizer;
+import org.xmlfield.core.internal.ByteBufferInputStream;
+import org.xmlfield.core.internal.ByteBufferOutputStream;
+import org.xmlfield.core.internal.CountingInputStream;
+import org.xmlfield.core.internal.NamespaceMap;
+
+/**
+ * Parser of read only index documents.
+ * <p>
+ * The document is kept as UTF-8 bytes and a table of node records with
+ * offsets into the bytes : values are only decoded when they are read.
+ * Serialization copies the original bytes of the node, with the namespace
+ * declarations inherited from its ancestors, and without xml declaration.
+ * <p>
+ * Documents are stored in the java heap by default. Set {@link #CONFIG_STORAGE}
+ * to keep large read only documents outside of the heap.
+ * <p>
+ * Supports {@link DomNodeParser#CONFIG_CLEANUP_XML}. IndexNodeParser is thread
+ * safe.
+ *
+ * @author Nicolas Richeton
+ */
+public class IndexNodeParser implements XmlFieldNodeParser {
+
+	/**
+	 * Memory used by parsed documents : "heap" (default), "direct" for direct
+	 * buffers, or "mapped" for buffers mapped on temporary files.
+	 */
+	public static final String CONFIG_STORAGE = "xmlfield.index.storage";
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final boolean cleanupXmlFirst;
+
+	private final IndexStorage storage;
+
+	private final IndexSelector selector = new IndexSelector();
+
+	public IndexNodeParser() {
+		this(null);
+	}
+
+	public IndexNodeParser(final Map<String, String> configuration) {
+		cleanupXmlFirst = configuration != null
+				&& "true".equals(configuration
+						.get(DomNodeParser.CONFIG_CLEANUP_XML));
+		storage = IndexStorage.parse(configuration == null ? null
+				: configuration.get(CONFIG_STORAGE));
+	}
+
+	private IndexNode checkNode(final XmlFieldNode node)
+			throws XmlFieldParsingException {
+		if (!(node instanceof IndexNode)) {
+			throw new XmlFieldParsingException("Not an index node : " + node);
+		}
+		return (IndexNode) node;
+	}
+
+	@Override
+	public String nodeToXml(final XmlFieldNode node)
+			throws XmlFieldParsingException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		nodeToXml(node, out);
+		return new String(out.toByteArray(), UTF8);
+	}
+
+	@Override
+	public void nodeToXml(final XmlFieldNode node, final ByteBuffer buffer)
+			throws XmlFieldParsingException {
+		final int position = buffer.position();
+		try {
+			nodeToXml(node, new ByteBufferOutputStream(buffer));
+		} catch (XmlFieldParsingException e) {
+			// Drop partial output.
+			buffer.position(position);
+			throw e;
+		}
+	}
+
+	@Override
+	public void nodeToXml(final XmlFieldNode node, final OutputStream out)
+			throws XmlFieldParsingException {
+		final IndexNode n = checkNode(node);
+		final XmlFieldMetrics metrics = XmlFieldMetrics.getInstance();
+		final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		final long size;
+		try {
+			size = write(n.getDocument(), n.getIndex(), out);
+		} catch (IOException e) {
+			throw new XmlFieldParsingException(e);
+		}
+		if (metrics.isEnabled()) {
+			metrics.serialized(size, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public void nodeToXml(final XmlFieldNode node,
+			final WritableByteChannel channel) throws XmlFieldParsingException {
+		final OutputStream out = Channels.newOutputStream(channel);
+		nodeToXml(node, out);
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new XmlFieldParsingException(e);
+		}
+	}
+
+	@Override
+	public void nodeToXml(final XmlFieldNode node, final Writer writer)
+			throws XmlFieldParsingException {
+		try {
+			writer.write(nodeToXml(node));
+		} catch (IOException e) {
+			throw new XmlFieldParsingException(e);
+		}
+	}
+
+	/**
+	 * Parses UTF-8 bytes.
+	 */
+	private IndexNode parse(final byte[] data) throws XmlFieldParsingException {
+		final IndexDocument document = new IndexParser(data).parse(storage);
+		return document.getNode(document.getDocumentElement());
+	}
+
+	private byte[] readFully(final InputStream in)
+			throws XmlFieldParsingException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(
+				BUFFER_SIZE);
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			throw new XmlFieldParsingException(e);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Writes the bytes of a node.
+	 *
+	 * @return the number of bytes written.
+	 */
+	private long write(final IndexDocument document, final int node,
+			final OutputStream out) throws IOException {
+		int n = node;
+		if (document.get(n, TYPE) == DOCUMENT) {
+			n = document.getDocumentElement();
+		}
+		final int offset = document.get(n, OFFSET);
+		final int length = document.get(n, LENGTH);
+		if (document.get(n, TYPE) != ELEMENT
+				|| document.get(n, PARENT) == NONE
+				|| document.get(document.get(n, PARENT), TYPE) != ELEMENT) {
+			document.write(out, offset, length);
+			return length;
+		}
+
+		// Start tag name, then inherited namespace declarations.
+		final int nameEnd = offset + 1
+				+ document.getQName(n).getBytes(UTF8).length;
+		document.write(out, offset, nameEnd - offset);
+		long size = length;
+
+		final Set<String> declared = new HashSet<String>();
+		for (int e = n; e != NONE && document.get(e, TYPE) == ELEMENT; e = document
+				.get(e, PARENT)) {
+			for (int a = document.get(e, FIRST_ATTRIBUTE); a != NONE; a = document
+					.get(a, NEXT)) {
+				if (document.get(a, TYPE) != NAMESPACE
+						|| !declared.add(document.getQName(a)) || e == n) {
+					continue;
+				}
+				final int valueOffset = document.get(a, OFFSET);
+				final int valueLength = document.get(a, LENGTH);
+				byte quote = '"';
+				for (int i = valueOffset; i < valueOffset + valueLength; i++) {
+					if (document.getByte(i) == '"') {
+						quote = '\'';
+						break;
+					}
+				}
+				final byte[] name = (" " + document.getQName(a) + "=")
+						.getBytes(UTF8);
+				out.write(name);
+				out.write(quote);
+				document.write(out, valueOffset, valueLength);
+				out.write(quote);
+				size += name.length + valueLength + 2;
+			}
+		}
+
+		document.write(out, nameEnd, offset + length - nameEnd);
+		return size;
+	}
+
+	@Override
+	public XmlFieldNode xmlToNode(final InputStream xmlContent)
+			throws XmlFieldParsingException {
+		final XmlFieldMetrics metrics = XmlFieldMetrics.getInstance();
+		CountingInputStream counter = null;
+		InputStream stream = xmlContent;
+		if (metrics.isEnabled()) {
+			counter = new CountingInputStream(stream);
+			stream = counter;
+		}
+		if (cleanupXmlFirst) {
+			stream = new EntitySanitizingInputStream(stream);
+		}
+
+		final long start = System.nanoTime();
+		final IndexNode node = parse(IndexParser.toUtf8(readFully(stream)));
+		if (counter != null) {
+			metrics.parsed(counter.getCount(), System.nanoTime() - start);
+		}
+		return node;
+	}
+
+	/**
+	 * Parses xml bytes. Bytes are copied once, without decoding, unless
+	 * {@link DomNodeParser#CONFIG_CLEANUP_XML} is set or the document is not
+	 * in UTF-8.
+	 */
+	@Override
+	public XmlFieldNode xmlToNode(final ByteBuffer xmlContent)
+			throws XmlFieldParsingException {
+		if (cleanupXmlFirst) {
+			return xmlToNode(new ByteBufferInputStream(xmlContent));
+		}
+
+		final XmlFieldMetrics metrics = XmlFieldMetrics.getInstance();
+		final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		final byte[] data = new byte[xmlContent.remaining()];
+		xmlContent.duplicate().get(data);
+		final IndexNode node = parse(IndexParser.toUtf8(data));
+		if (metrics.isEnabled()) {
+			metrics.parsed(data.length, System.nanoTime() - start);
+		}
+		return node;
+	}
+
+	@Override
+	public XmlFieldNode xmlToNode(final String xml)
+			throws XmlFieldParsingException {
+		final XmlFieldMetrics metrics = XmlFieldMetrics.getInstance();
+		final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
+		String xmlData = xml;
+		if (cleanupXmlFirst) {
+			xmlData = InputSanitizer.sanitizeXml(xml);
+		}
+
+		// Characters are already decoded : the declared encoding is ignored.
+		final IndexNode node = parse(xmlData.getBytes(UTF8));
+		if (metrics.isEnabled()) {
+			// Size of the input string in bytes is not known.
+			metrics.parsed(-1, System.nanoTime() - start);
+		}
+		return node;
+	}
+
+	/**
+	 * Returns the elements matching a simple element path.
+	 * <p>
+	 * Index documents are compact, so the whole stream is indexed, then
+	 * elements are selected.
+	 */
+	@Override
+	public XmlFieldIterator<XmlFieldNode> xmlToNodes(
+			final InputStream xmlContent, final NamespaceMap namespaces,
+			final String xpath)
+			throws XmlFieldParsingException {
+		final SimpleXPath path = SimpleXPath.compile(namespaces, xpath);
+		if (path == null || !path.isElementPath()) {
+			throw new XmlFieldParsingException(
+					"Only simple element paths can be streamed : " + xpath);
+		}
+
+		final XmlFieldNode root = xmlToNode(xmlContent);
+		final XmlFieldNodeList nodes;
+		try {
+			nodes = selector.selectXPathToNodeList(namespaces, xpath, root);
+		} catch (XmlFieldXPathException e) {
+			throw new XmlFieldParsingException(e);
+		}
+		return new XmlFieldIterator<XmlFieldNode>() {
+			private int index = 0;
+
+			@Override
+			public void close() {
+				// The document is already in memory.
+				index = nodes.getLength();
+			}
+
+			@Override
+			public boolean hasNext() {
+				return index < nodes.getLength();
+			}
+
+			@Override
+			public XmlFieldNode next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return nodes.item(index++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.index;
+
+import java.util.Map;
+
+import org.xmlfield.core.api.XmlFieldNodeParser;
+import org.xmlfield.core.api.XmlFieldNodeParserFactory;
+
+/**
+ * Factory of read only index document parsers.
+ * <p>
+ * Index documents are only supported by {@link IndexSelectorFactory} and
+ * {@link IndexNodeModifierFactory}. To use them, set in
+ * xmlfield-factory.properties :
+ *
+ * <pre>
+ * XmlFieldNodeParserFactory=org.xmlfield.core.impl.index.IndexNodeParserFactory
+ * XmlFieldSelectorFactory=org.xmlfield.core.impl.index.IndexSelectorFactory
+ * XmlFieldNodeModifierFactory=org.xmlfield.core.impl.index.IndexNodeModifierFactory
+ * </pre>
+ *
+ * @author Nicolas Richeton
+ */
+public class IndexNodeParserFactory extends XmlFieldNodeParserFactory {
+
+	@Override
+	public XmlFieldNodeParser newParser(final Map<String, String> configuration) {
+		return new IndexNodeParser(configuration);
+	}
+}
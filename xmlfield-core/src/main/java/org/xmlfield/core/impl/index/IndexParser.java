@@ -0,0 +1,852 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.index;
+
+import static org.xmlfield.core.impl.index.IndexDocument.ATTRIBUTE;
+import static org.xmlfield.core.impl.index.IndexDocument.COMMENT;
+import static org.xmlfield.core.impl.index.IndexDocument.DOCUMENT;
+import static org.xmlfield.core.impl.index.IndexDocument.ELEMENT;
+import static org.xmlfield.core.impl.index.IndexDocument.FIRST_ATTRIBUTE;
+import static org.xmlfield.core.impl.index.IndexDocument.FIRST_CHILD;
+import static org.xmlfield.core.impl.index.IndexDocument.FLAGS;
+import static org.xmlfield.core.impl.index.IndexDocument.F_ENTITIES;
+import static org.xmlfield.core.impl.index.IndexDocument.F_RETURN;
+import static org.xmlfield.core.impl.index.IndexDocument.F_WHITESPACE;
+import static org.xmlfield.core.impl.index.IndexDocument.LENGTH;
+import static org.xmlfield.core.impl.index.IndexDocument.NAME;
+import static org.xmlfield.core.impl.index.IndexDocument.NAMESPACE;
+import static org.xmlfield.core.impl.index.IndexDocument.NEXT;
+import static org.xmlfield.core.impl.index.IndexDocument.NONE;
+import static org.xmlfield.core.impl.index.IndexDocument.NS;
+import static org.xmlfield.core.impl.index.IndexDocument.OFFSET;
+import static org.xmlfield.core.impl.index.IndexDocument.PARENT;
+import static org.xmlfield.core.impl.index.IndexDocument.PROCESSING_INSTRUCTION;
+import static org.xmlfield.core.impl.index.IndexDocument.RECORD_SIZE;
+import static org.xmlfield.core.impl.index.IndexDocument.TEXT;
+import static org.xmlfield.core.impl.index.IndexDocument.TYPE;
+import static org.xmlfield.core.impl.index.IndexDocument.UTF8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xmlfield.core.exception.XmlFieldParsingException;
+import org.xmlfield.core.impl.dom.cleanup.InputSanitizer;
+
+/**
+ * Builds an {@link IndexDocument} from UTF-8 bytes, in a single pass.
+ * <p>
+ * Only the structure of the document is read : names become shared symbols
+ * and namespaces are resolved, but text and attribute values are only checked,
+ * not decoded. DTDs are skipped and only predefined entities and character
+ * references are supported.
+ * <p>
+ * IndexParser is not thread safe, use one instance per document.
+ *
+ * @author Nicolas Richeton
+ */
+final class IndexParser {
+
+	/**
+	 * Largest array or buffer size supported by JVMs.
+	 */
+	private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+	static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+
+	private static final String XMLNS_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+
+	/**
+	 * Decodes character and predefined entity references. References must be
+	 * valid, they are checked while parsing.
+	 */
+	static String decodeReferences(final String value) {
+		final StringBuilder sb = new StringBuilder(value.length());
+		int i = 0;
+		while (i < value.length()) {
+			final char c = value.charAt(i);
+			if (c != '&') {
+				sb.append(c);
+				i++;
+				continue;
+			}
+			final int end = value.indexOf(';', i);
+			final String ref = value.substring(i + 1, end);
+			if (ref.charAt(0) == '#') {
+				sb.appendCodePoint((int) characterCode(ref));
+			} else {
+				sb.append(predefinedEntity(ref));
+			}
+			i = end + 1;
+		}
+		return sb.toString();
+	}
+
+	private static boolean isNameEnd(final byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '/'
+				|| b == '>' || b == '=' || b == '<' || b == '"' || b == '\'';
+	}
+
+	private static boolean isWhitespace(final byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	private static char predefinedEntity(final String name) {
+		if ("lt".equals(name)) {
+			return '<';
+		} else if ("gt".equals(name)) {
+			return '>';
+		} else if ("amp".equals(name)) {
+			return '&';
+		} else if ("quot".equals(name)) {
+			return '"';
+		} else if ("apos".equals(name)) {
+			return '\'';
+		}
+		return 0;
+	}
+
+	/**
+	 * Converts a document to UTF-8, using its byte order mark or its xml
+	 * declaration.
+	 */
+	static byte[] toUtf8(final byte[] data) throws XmlFieldParsingException {
+		if (data.length >= 2
+				&& (data[0] == (byte) 0xFE && data[1] == (byte) 0xFF || data[0] == (byte) 0xFF
+						&& data[1] == (byte) 0xFE)) {
+			return new String(data, Charset.forName("UTF-16")).getBytes(UTF8);
+		}
+
+		// Read the encoding from the declaration, which is ASCII.
+		if (data.length < 5 || data[0] != '<' || data[1] != '?'
+				|| data[2] != 'x' || data[3] != 'm' || data[4] != 'l') {
+			return data;
+		}
+		int end = 5;
+		while (end < data.length && data[end] != '>') {
+			end++;
+		}
+		final String declaration = new String(data, 0, end, UTF8);
+		final int index = declaration.indexOf("encoding");
+		if (index < 0) {
+			return data;
+		}
+		int start = index + 8;
+		while (start < declaration.length()
+				&& declaration.charAt(start) != '"'
+				&& declaration.charAt(start) != '\'') {
+			start++;
+		}
+		final int stop = start + 1 < declaration.length() ? declaration
+				.indexOf(declaration.charAt(start), start + 1) : -1;
+		if (stop < 0) {
+			throw new XmlFieldParsingException("Invalid xml declaration : "
+					+ declaration);
+		}
+		final String encoding = declaration.substring(start + 1, stop);
+		if ("UTF-8".equalsIgnoreCase(encoding)
+				|| "US-ASCII".equalsIgnoreCase(encoding)
+				|| "ASCII".equalsIgnoreCase(encoding)) {
+			return data;
+		}
+		try {
+			return new String(data, Charset.forName(encoding)).getBytes(UTF8);
+		} catch (IllegalArgumentException e) {
+			throw new XmlFieldParsingException(e);
+		}
+	}
+
+	// Attributes of the current start tag.
+	private int attributeCount = 0;
+	private int[] attributeFlags = new int[8];
+	private int[] attributeLengths = new int[8];
+	private int[] attributeNames = new int[8];
+	private int[] attributeOffsets = new int[8];
+
+	private final byte[] data;
+
+	private int depth = 0;
+
+	/**
+	 * Last child of the open elements, by depth.
+	 */
+	private int[] lastChildren = new int[16];
+
+	/**
+	 * Open elements, by depth. The document is at depth 0.
+	 */
+	private int[] openElements = new int[16];
+
+	private int nodeCount = 0;
+
+	/**
+	 * Namespace scopes : number of declarations, by depth.
+	 */
+	private int[] scopeSizes = new int[16];
+
+	/**
+	 * In scope declarations : prefix ("" for default) and uri id.
+	 */
+	private final List<String> scopePrefixes = new ArrayList<String>();
+	private final List<Integer> scopeUris = new ArrayList<Integer>();
+
+	private int pos = 0;
+
+	private int[] records;
+
+	// Symbols : qualified names, hashed by bytes.
+	private int[] symbolHashes = new int[256];
+	private int[] symbolLengths = new int[64];
+	private int[] symbolOffsets = new int[64];
+	private final List<String> symbols = new ArrayList<String>();
+
+	private final Map<String, Integer> uriIds = new HashMap<String, Integer>();
+	private final List<String> uris = new ArrayList<String>();
+
+	IndexParser(final byte[] data) {
+		this.data = data;
+		this.records = new int[Math.max(64, data.length / 24) * RECORD_SIZE];
+		Arrays.fill(symbolHashes, NONE);
+		uris.add("");
+		uriIds.put("", 0);
+	}
+
+	private void addChild(final int node) {
+		final int parent = openElements[depth];
+		set(node, PARENT, parent);
+		if (lastChildren[depth] == NONE) {
+			set(parent, FIRST_CHILD, node);
+		} else {
+			set(lastChildren[depth], NEXT, node);
+		}
+		lastChildren[depth] = node;
+	}
+
+	/**
+	 * Checks the references of a value and returns its flags.
+	 */
+	private int checkValue(final int start, final int end,
+			final boolean attribute) throws XmlFieldParsingException {
+		int flags = 0;
+		for (int i = start; i < end; i++) {
+			final byte b = data[i];
+			if (b == '&') {
+				flags |= F_ENTITIES;
+				i = checkReference(i, end);
+			} else if (b == '\r') {
+				flags |= F_RETURN;
+				if (attribute) {
+					flags |= F_WHITESPACE;
+				}
+			} else if (attribute && (b == '\n' || b == '\t')) {
+				flags |= F_WHITESPACE;
+			} else if (attribute && b == '<') {
+				throw error("'<' in attribute value");
+			}
+		}
+		return flags;
+	}
+
+	/**
+	 * Returns the code point of a character reference such as <tt>#65</tt> or
+	 * <tt>#x41</tt>, or -1 if it contains anything else than digits.
+	 */
+	static long characterCode(final String ref) {
+		final boolean hex = ref.length() > 1 && ref.charAt(1) == 'x';
+		int i = hex ? 2 : 1;
+		if (i >= ref.length()) {
+			return -1;
+		}
+		long value = 0;
+		for (; i < ref.length(); i++) {
+			final char c = ref.charAt(i);
+			final int digit;
+			if (c >= '0' && c <= '9') {
+				digit = c - '0';
+			} else if (hex && c >= 'a' && c <= 'f') {
+				digit = c - 'a' + 10;
+			} else if (hex && c >= 'A' && c <= 'F') {
+				digit = c - 'A' + 10;
+			} else {
+				return -1;
+			}
+			// Saturate to keep out of range values invalid.
+			value = Math.min(value * (hex ? 16 : 10) + digit, Integer.MAX_VALUE);
+		}
+		return value;
+	}
+
+	/**
+	 * Checks a reference.
+	 *
+	 * @return the index of the terminating semicolon.
+	 */
+	private int checkReference(final int start, final int end)
+			throws XmlFieldParsingException {
+		int i = start + 1;
+		while (i < end && data[i] != ';' && i - start < 32) {
+			i++;
+		}
+		if (i >= end || data[i] != ';') {
+			throw error("Invalid reference");
+		}
+		final String ref = new String(data, start + 1, i - start - 1, UTF8);
+		if (ref.startsWith("#")) {
+			if (!InputSanitizer.isValidXmlChar(characterCode(ref))) {
+				throw error("Invalid character reference &" + ref + ";");
+			}
+		} else if (predefinedEntity(ref) == 0) {
+			throw error("Undefined entity &" + ref + ";");
+		}
+		return i;
+	}
+
+	private void declareNamespace(final String prefix, final String uri) {
+		Integer id = uriIds.get(uri);
+		if (id == null) {
+			id = uris.size();
+			uris.add(uri);
+			uriIds.put(uri, id);
+		}
+		scopePrefixes.add(prefix);
+		scopeUris.add(id);
+		scopeSizes[depth]++;
+	}
+
+	private XmlFieldParsingException error(final String message) {
+		return new XmlFieldParsingException(message + " at offset " + pos);
+	}
+
+	private void expect(final String s) throws XmlFieldParsingException {
+		for (int i = 0; i < s.length(); i++) {
+			if (pos + i >= data.length || data[pos + i] != s.charAt(i)) {
+				throw error("Expected " + s);
+			}
+		}
+		pos += s.length();
+	}
+
+	/**
+	 * Returns the index of a string from the current position.
+	 */
+	private int indexOf(final String s) throws XmlFieldParsingException {
+		final byte first = (byte) s.charAt(0);
+		outer: for (int i = pos; i <= data.length - s.length(); i++) {
+			if (data[i] != first) {
+				continue;
+			}
+			for (int j = 1; j < s.length(); j++) {
+				if (data[i + j] != s.charAt(j)) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		throw error("Missing " + s);
+	}
+
+	private int newNode(final int type) throws XmlFieldParsingException {
+		final long size = (long) (nodeCount + 1) * RECORD_SIZE;
+		if (size > records.length) {
+			if (size > MAX_SIZE) {
+				throw error("Document too large : more than "
+						+ (MAX_SIZE / RECORD_SIZE) + " nodes");
+			}
+			records = Arrays.copyOf(records,
+					(int) Math.min(records.length * 2L, MAX_SIZE));
+		}
+		final int node = nodeCount++;
+		final int base = node * RECORD_SIZE;
+		records[base + TYPE] = type;
+		records[base + PARENT] = NONE;
+		records[base + NEXT] = NONE;
+		records[base + FIRST_CHILD] = NONE;
+		records[base + FIRST_ATTRIBUTE] = NONE;
+		records[base + NAME] = 0;
+		records[base + NS] = 0;
+		records[base + OFFSET] = 0;
+		records[base + LENGTH] = 0;
+		records[base + FLAGS] = 0;
+		return node;
+	}
+
+	/**
+	 * Parses the document.
+	 *
+	 * @param storage
+	 *            memory used by the document.
+	 */
+	IndexDocument parse(final IndexStorage storage)
+			throws XmlFieldParsingException {
+		// Skip UTF-8 byte order mark.
+		if (data.length >= 3 && data[0] == (byte) 0xEF
+				&& data[1] == (byte) 0xBB && data[2] == (byte) 0xBF) {
+			pos = 3;
+		}
+
+		openElements[0] = newNode(DOCUMENT);
+		lastChildren[0] = NONE;
+		boolean rootFound = false;
+
+		while (pos < data.length) {
+			if (data[pos] != '<') {
+				parseText();
+			} else if (pos + 1 < data.length && data[pos + 1] == '/') {
+				parseEndTag();
+			} else if (pos + 1 < data.length && data[pos + 1] == '?') {
+				parseProcessingInstruction();
+			} else if (startsWith("<!--")) {
+				parseComment();
+			} else if (startsWith("<![CDATA[")) {
+				if (depth == 0) {
+					throw error("CDATA section outside of the root element");
+				}
+				parseCData();
+			} else if (startsWith("<!DOCTYPE")) {
+				skipDoctype();
+			} else {
+				if (depth == 0) {
+					if (rootFound) {
+						throw error("Several root elements");
+					}
+					rootFound = true;
+				}
+				parseStartTag();
+			}
+		}
+
+		if (depth != 0) {
+			throw error("Element " + symbols.get(records[openElements[depth]
+					* RECORD_SIZE + NAME])
+					+ " is not closed");
+		}
+		if (!rootFound) {
+			throw error("No root element");
+		}
+
+		final String[] qnames = symbols.toArray(new String[symbols.size()]);
+		final String[] uriArray = uris.toArray(new String[uris.size()]);
+		if (storage == IndexStorage.HEAP) {
+			return new IndexDocument(ByteBuffer.wrap(data), IntBuffer.wrap(Arrays
+					.copyOf(records, nodeCount * RECORD_SIZE)), nodeCount,
+					qnames, uriArray, true);
+		}
+
+		// Records first, then bytes, in a single buffer.
+		final long size = (long) nodeCount * RECORD_SIZE * 4 + data.length;
+		if (size > MAX_SIZE) {
+			throw new XmlFieldParsingException("Document too large for "
+					+ storage + " storage : " + size
+					+ " bytes required, a buffer is limited to " + MAX_SIZE
+					+ " bytes. Use HEAP storage.");
+		}
+		final int recordBytes = nodeCount * RECORD_SIZE * 4;
+		final ByteBuffer buffer;
+		try {
+			buffer = storage.allocate((int) size);
+		} catch (IOException e) {
+			throw new XmlFieldParsingException(e);
+		}
+		buffer.asIntBuffer().put(records, 0, nodeCount * RECORD_SIZE);
+		buffer.position(recordBytes);
+		buffer.put(data);
+
+		buffer.position(0).limit(recordBytes);
+		final IntBuffer recordBuffer = buffer.slice().order(buffer.order())
+				.asIntBuffer();
+		buffer.limit(recordBytes + data.length).position(recordBytes);
+		final ByteBuffer dataBuffer = buffer.slice();
+		return new IndexDocument(dataBuffer, recordBuffer, nodeCount, qnames,
+				uriArray, false);
+	}
+
+	private void parseCData() throws XmlFieldParsingException {
+		pos += 9;
+		final int end = indexOf("]]>");
+		final int node = newNode(TEXT);
+		set(node, OFFSET, pos);
+		set(node, LENGTH, end - pos);
+		for (int i = pos; i < end; i++) {
+			if (data[i] == '\r') {
+				set(node, FLAGS, F_RETURN);
+				break;
+			}
+		}
+		addChild(node);
+		pos = end + 3;
+	}
+
+	private void parseComment() throws XmlFieldParsingException {
+		pos += 4;
+		final int end = indexOf("-->");
+		final int node = newNode(COMMENT);
+		set(node, OFFSET, pos);
+		set(node, LENGTH, end - pos);
+		addChild(node);
+		pos = end + 3;
+	}
+
+	private void parseEndTag() throws XmlFieldParsingException {
+		pos += 2;
+		final int name = parseName();
+		skipWhitespace();
+		expect(">");
+		if (depth == 0) {
+			throw error("Unexpected end tag " + symbols.get(name));
+		}
+		final int element = openElements[depth];
+		if (get(element, NAME) != name) {
+			throw error("End tag " + symbols.get(name) + " does not match "
+					+ symbols.get(get(element, NAME)));
+		}
+		set(element, LENGTH, pos - get(element, OFFSET));
+		popScope();
+	}
+
+	/**
+	 * Parses a name and returns its symbol.
+	 */
+	private int parseName() throws XmlFieldParsingException {
+		final int start = pos;
+		int hash = 0;
+		while (pos < data.length && !isNameEnd(data[pos])) {
+			hash = 31 * hash + data[pos];
+			pos++;
+		}
+		if (pos == start) {
+			throw error("Name expected");
+		}
+		return symbol(start, pos - start, hash);
+	}
+
+	private void parseProcessingInstruction() throws XmlFieldParsingException {
+		pos += 2;
+		final int name = parseName();
+		final int end = indexOf("?>");
+		if (!"xml".equalsIgnoreCase(symbols.get(name))) {
+			skipWhitespace();
+			final int node = newNode(PROCESSING_INSTRUCTION);
+			set(node, NAME, name);
+			set(node, OFFSET, Math.min(pos, end));
+			set(node, LENGTH, Math.max(0, end - pos));
+			addChild(node);
+		}
+		pos = end + 2;
+	}
+
+	private void parseStartTag() throws XmlFieldParsingException {
+		final int start = pos;
+		pos++;
+		final int name = parseName();
+
+		// Attributes
+		attributeCount = 0;
+		boolean empty = false;
+		while (true) {
+			skipWhitespace();
+			if (pos >= data.length) {
+				throw error("Unexpected end of document");
+			}
+			if (data[pos] == '>') {
+				pos++;
+				break;
+			}
+			if (data[pos] == '/') {
+				pos++;
+				expect(">");
+				empty = true;
+				break;
+			}
+			final int attributeName = parseName();
+			skipWhitespace();
+			expect("=");
+			skipWhitespace();
+			if (pos >= data.length || data[pos] != '"' && data[pos] != '\'') {
+				throw error("Attribute value expected");
+			}
+			final byte quote = data[pos++];
+			final int valueStart = pos;
+			while (pos < data.length && data[pos] != quote) {
+				pos++;
+			}
+			if (pos >= data.length) {
+				throw error("Unexpected end of document");
+			}
+			for (int i = 0; i < attributeCount; i++) {
+				if (attributeNames[i] == attributeName) {
+					throw error("Duplicate attribute "
+							+ symbols.get(attributeName));
+				}
+			}
+			if (attributeCount == attributeNames.length) {
+				final int size = attributeCount * 2;
+				attributeNames = Arrays.copyOf(attributeNames, size);
+				attributeOffsets = Arrays.copyOf(attributeOffsets, size);
+				attributeLengths = Arrays.copyOf(attributeLengths, size);
+				attributeFlags = Arrays.copyOf(attributeFlags, size);
+			}
+			attributeNames[attributeCount] = attributeName;
+			attributeOffsets[attributeCount] = valueStart;
+			attributeLengths[attributeCount] = pos - valueStart;
+			attributeFlags[attributeCount] = checkValue(valueStart, pos, true);
+			attributeCount++;
+			pos++;
+		}
+
+		final int element = newNode(ELEMENT);
+		set(element, NAME, name);
+		set(element, OFFSET, start);
+		addChild(element);
+		pushScope(element);
+
+		// Namespace declarations first, they apply to the element and its
+		// attributes.
+		for (int i = 0; i < attributeCount; i++) {
+			final String qname = symbols.get(attributeNames[i]);
+			if ("xmlns".equals(qname)) {
+				declareNamespace("", decodeAttribute(i));
+			} else if (qname.startsWith("xmlns:")) {
+				declareNamespace(qname.substring(6), decodeAttribute(i));
+			}
+		}
+		set(element, NS, resolve(symbols.get(name), true));
+
+		int last = NONE;
+		for (int i = 0; i < attributeCount; i++) {
+			final String qname = symbols.get(attributeNames[i]);
+			final boolean declaration = "xmlns".equals(qname)
+					|| qname.startsWith("xmlns:");
+			final int attribute = newNode(declaration ? NAMESPACE : ATTRIBUTE);
+			set(attribute, PARENT, element);
+			set(attribute, NAME, attributeNames[i]);
+			set(attribute, NS, declaration ? uriId(XMLNS_NAMESPACE) : resolve(
+					qname, false));
+			set(attribute, OFFSET, attributeOffsets[i]);
+			set(attribute, LENGTH, attributeLengths[i]);
+			set(attribute, FLAGS, attributeFlags[i]);
+			if (last == NONE) {
+				set(element, FIRST_ATTRIBUTE, attribute);
+			} else {
+				set(last, NEXT, attribute);
+			}
+			last = attribute;
+		}
+
+		if (empty) {
+			set(element, LENGTH, pos - start);
+			popScope();
+		}
+	}
+
+	private String decodeAttribute(final int i) {
+		String value = new String(data, attributeOffsets[i],
+				attributeLengths[i], UTF8);
+		if ((attributeFlags[i] & F_ENTITIES) != 0) {
+			value = decodeReferences(value);
+		}
+		return value;
+	}
+
+	private void parseText() throws XmlFieldParsingException {
+		final int start = pos;
+		while (pos < data.length && data[pos] != '<') {
+			pos++;
+		}
+		if (depth == 0) {
+			for (int i = start; i < pos; i++) {
+				if (!isWhitespace(data[i])) {
+					throw error("Text outside of the root element");
+				}
+			}
+			return;
+		}
+		final int node = newNode(TEXT);
+		set(node, OFFSET, start);
+		set(node, LENGTH, pos - start);
+		set(node, FLAGS, checkValue(start, pos, false));
+		addChild(node);
+	}
+
+	private void popScope() {
+		for (int i = 0; i < scopeSizes[depth]; i++) {
+			scopePrefixes.remove(scopePrefixes.size() - 1);
+			scopeUris.remove(scopeUris.size() - 1);
+		}
+		depth--;
+	}
+
+	private void pushScope(final int element) {
+		depth++;
+		if (depth == openElements.length) {
+			openElements = Arrays.copyOf(openElements, depth * 2);
+			lastChildren = Arrays.copyOf(lastChildren, depth * 2);
+			scopeSizes = Arrays.copyOf(scopeSizes, depth * 2);
+		}
+		openElements[depth] = element;
+		lastChildren[depth] = NONE;
+		scopeSizes[depth] = 0;
+	}
+
+	/**
+	 * Returns the namespace uri id of a qualified name.
+	 */
+	private int resolve(final String qname, final boolean element)
+			throws XmlFieldParsingException {
+		final int colon = qname.indexOf(':');
+		if (colon < 0 && !element) {
+			// Unprefixed attributes have no namespace.
+			return 0;
+		}
+		final String prefix = colon < 0 ? "" : qname.substring(0, colon);
+		if ("xml".equals(prefix)) {
+			return uriId(XML_NAMESPACE);
+		}
+		for (int i = scopePrefixes.size() - 1; i >= 0; i--) {
+			if (scopePrefixes.get(i).equals(prefix)) {
+				return scopeUris.get(i);
+			}
+		}
+		if (colon < 0) {
+			return 0;
+		}
+		throw error("Undeclared namespace prefix " + prefix);
+	}
+
+	private int get(final int node, final int field) {
+		return records[node * RECORD_SIZE + field];
+	}
+
+	private void set(final int node, final int field, final int value) {
+		records[node * RECORD_SIZE + field] = value;
+	}
+
+	private void skipDoctype() throws XmlFieldParsingException {
+		// Skip the declaration, including the internal subset.
+		pos += 9;
+		byte quote = 0;
+		int brackets = 0;
+		while (pos < data.length) {
+			final byte b = data[pos++];
+			if (quote != 0) {
+				if (b == quote) {
+					quote = 0;
+				}
+			} else if (b == '"' || b == '\'') {
+				quote = b;
+			} else if (b == '[') {
+				brackets++;
+			} else if (b == ']') {
+				brackets--;
+			} else if (b == '>' && brackets == 0) {
+				return;
+			}
+		}
+		throw error("Unexpected end of document");
+	}
+
+	private void skipWhitespace() {
+		while (pos < data.length && isWhitespace(data[pos])) {
+			pos++;
+		}
+	}
+
+	private boolean startsWith(final String s) {
+		if (pos + s.length() > data.length) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (data[pos + i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the symbol of a name, adding it if needed.
+	 */
+	private int symbol(final int offset, final int length, final int hash) {
+		final int mask = symbolHashes.length - 1;
+		int slot = hash & mask;
+		while (symbolHashes[slot] != NONE) {
+			final int symbol = symbolHashes[slot];
+			if (symbolLengths[symbol] == length
+					&& regionMatches(symbolOffsets[symbol], offset, length)) {
+				return symbol;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		final int symbol = symbols.size();
+		symbols.add(new String(data, offset, length, UTF8));
+		if (symbol == symbolOffsets.length) {
+			symbolOffsets = Arrays.copyOf(symbolOffsets, symbol * 2);
+			symbolLengths = Arrays.copyOf(symbolLengths, symbol * 2);
+		}
+		symbolOffsets[symbol] = offset;
+		symbolLengths[symbol] = length;
+		symbolHashes[slot] = symbol;
+
+		// Keep the table half empty.
+		if (symbols.size() * 2 > symbolHashes.length) {
+			rehash();
+		}
+		return symbol;
+	}
+
+	private boolean regionMatches(final int offset1, final int offset2,
+			final int length) {
+		for (int i = 0; i < length; i++) {
+			if (data[offset1 + i] != data[offset2 + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		symbolHashes = new int[symbolHashes.length * 2];
+		Arrays.fill(symbolHashes, NONE);
+		final int mask = symbolHashes.length - 1;
+		for (int symbol = 0; symbol < symbols.size(); symbol++) {
+			int hash = 0;
+			for (int i = 0; i < symbolLengths[symbol]; i++) {
+				hash = 31 * hash + data[symbolOffsets[symbol] + i];
+			}
+			int slot = hash & mask;
+			while (symbolHashes[slot] != NONE) {
+				slot = (slot + 1) & mask;
+			}
+			symbolHashes[slot] = symbol;
+		}
+	}
+
+	private int uriId(final String uri) {
+		Integer id = uriIds.get(uri);
+		if (id == null) {
+			id = uris.size();
+			uris.add(uri);
+			uriIds.put(uri, id);
+		}
+		return id;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jaxen.BaseXPath;
+import org.jaxen.JaxenException;
+import org.jaxen.XPath;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldNodeList;
+import org.xmlfield.core.api.XmlFieldSelector;
+import org.xmlfield.core.exception.XmlFieldXPathException;
+import org.xmlfield.core.impl.dom.DomJaxenSelector;
+import org.xmlfield.core.impl.dom.DomNodeList;
+import org.xmlfield.core.impl.dom.XPathCache;
+import org.xmlfield.core.internal.NamespaceMap;
+
+/**
+ * Selector on index documents, using Jaxen with {@link IndexNavigator}.
+ * <p>
+ * Compiled expressions are kept in an {@link XPathCache}, shared by all
+ * threads. IndexSelector is thread safe.
+ *
+ * @author Nicolas Richeton
+ */
+public class IndexSelector implements XmlFieldSelector {
+
+	private final XPathCache<XPath> xpathCache = new XPathCache<XPath>(
+			XPathCache.DEFAULT_SIZE);
+
+	private void checkNode(final XmlFieldNode node)
+			throws XmlFieldXPathException {
+		if (!(node instanceof IndexNode)) {
+			throw new XmlFieldXPathException("Not an index node : " + node);
+		}
+	}
+
+	/**
+	 * Returns a compiled expression, which must be given back to the cache
+	 * once evaluated.
+	 */
+	private XPath getXPath(final NamespaceMap namespaces, final String xpath)
+			throws XmlFieldXPathException {
+		if (xpath == null) {
+			throw new XmlFieldXPathException("The requested xpath is null");
+		}
+		XPath result = xpathCache.get(namespaces, xpath);
+		if (result == null) {
+			try {
+				result = new BaseXPath(xpath, IndexNavigator.INSTANCE);
+				DomJaxenSelector.addNamespace(namespaces, result);
+			} catch (JaxenException e) {
+				throw new XmlFieldXPathException(e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the cache of compiled XPath objects.
+	 */
+	public XPathCache<XPath> getXPathCache() {
+		return xpathCache;
+	}
+
+	@Override
+	public Boolean selectXPathToBoolean(final NamespaceMap namespaces,
+			final String xpath, final XmlFieldNode node)
+			throws XmlFieldXPathException {
+		checkNode(node);
+		final XPath xp = getXPath(namespaces, xpath);
+		try {
+			return xp.booleanValueOf(node);
+		} catch (JaxenException e) {
+			throw new XmlFieldXPathException(e);
+		} finally {
+			xpathCache.put(namespaces, xpath, xp);
+		}
+	}
+
+	@Override
+	public XmlFieldNode selectXPathToNode(final NamespaceMap namespaces,
+			final String xpath, final XmlFieldNode node)
+			throws XmlFieldXPathException {
+		checkNode(node);
+		final XPath xp = getXPath(namespaces, xpath);
+		try {
+			return (XmlFieldNode) xp.selectSingleNode(node);
+		} catch (JaxenException e) {
+			throw new XmlFieldXPathException(e);
+		} finally {
+			xpathCache.put(namespaces, xpath, xp);
+		}
+	}
+
+	@Override
+	public XmlFieldNodeList selectXPathToNodeList(
+			final NamespaceMap namespaces, final String xpath,
+			final XmlFieldNode node) throws XmlFieldXPathException {
+		checkNode(node);
+		final XPath xp = getXPath(namespaces, xpath);
+		final List<?> values;
+		try {
+			values = xp.selectNodes(node);
+		} catch (JaxenException e) {
+			throw new XmlFieldXPathException(e);
+		} finally {
+			xpathCache.put(namespaces, xpath, xp);
+		}
+		final List<XmlFieldNode> list = new ArrayList<XmlFieldNode>(
+				values.size());
+		for (final Object value : values) {
+			list.add((XmlFieldNode) value);
+		}
+		return new DomNodeList(list);
+	}
+
+	@Override
+	public Double selectXPathToNumber(final NamespaceMap namespaces,
+			final String xpath, final XmlFieldNode node)
+			throws XmlFieldXPathException {
+		checkNode(node);
+		final XPath xp = getXPath(namespaces, xpath);
+		try {
+			return xp.numberValueOf(node).doubleValue();
+		} catch (JaxenException e) {
+			throw new XmlFieldXPathException(e);
+		} finally {
+			xpathCache.put(namespaces, xpath, xp);
+		}
+	}
+
+	@Override
+	public String selectXPathToString(final NamespaceMap namespaces,
+			final String xpath, final XmlFieldNode node)
+			throws XmlFieldXPathException {
+		checkNode(node);
+		final XPath xp = getXPath(namespaces, xpath);
+		try {
+			return xp.stringValueOf(node);
+		} catch (JaxenException e) {
+			throw new XmlFieldXPathException(e);
+		} finally {
+			xpathCache.put(namespaces, xpath, xp);
+		}
+	}
+}
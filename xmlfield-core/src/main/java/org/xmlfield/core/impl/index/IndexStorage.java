@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Memory used to store the records and bytes of index documents.
+ *
+ * @author Nicolas Richeton
+ */
+enum IndexStorage {
+
+	/**
+	 * Java arrays.
+	 */
+	HEAP,
+
+	/**
+	 * Direct buffer, outside of the java heap. Memory is released when the
+	 * document is garbage collected.
+	 */
+	DIRECT,
+
+	/**
+	 * Buffer mapped on a temporary file : the operating system pages the
+	 * document in and out. The file is deleted as soon as it is mapped when
+	 * the platform allows it, or when the JVM exits.
+	 */
+	MAPPED;
+
+	/**
+	 * Returns the storage set in configuration.
+	 *
+	 * @param value
+	 *            value of {@link IndexNodeParser#CONFIG_STORAGE}, may be
+	 *            <code>null</code>.
+	 */
+	static IndexStorage parse(final String value) {
+		if (value == null) {
+			return HEAP;
+		}
+		try {
+			return valueOf(value.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid value for "
+					+ IndexNodeParser.CONFIG_STORAGE + " : " + value, e);
+		}
+	}
+
+	/**
+	 * Allocates a buffer, in native byte order. Not used for {@link #HEAP}.
+	 */
+	ByteBuffer allocate(final int size) throws IOException {
+		final ByteBuffer buffer;
+		if (this == MAPPED) {
+			final File file = File.createTempFile("xmlfield", ".index");
+			final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(size);
+				buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+			} finally {
+				raf.close();
+				if (!file.delete()) {
+					file.deleteOnExit();
+				}
+			}
+		} else {
+			buffer = ByteBuffer.allocateDirect(size);
+		}
+		return buffer.order(ByteOrder.nativeOrder());
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xmlfield.core.api.XmlFieldMetrics;
+
+/**
+ * Metrics kept in memory, as histograms. Mainly useful for tests and to find
+ * hot xpath expressions.
+ * <p>
+ * Usage :
+ * 
+ * <pre>
+ * InMemoryXmlFieldMetrics metrics = new InMemoryXmlFieldMetrics();
+ * XmlFieldMetrics.setInstance(metrics);
+ * ...
+ * for (String xpath : metrics.getHotXPaths(10)) {
+ * 	System.out.println(xpath + &quot; : &quot; + metrics.getXPathStatistics(xpath));
+ * }
+ * </pre>
+ * 
+ * @author Nicolas Richeton
+ */
+public class InMemoryXmlFieldMetrics extends XmlFieldMetrics {
+
+	/**
+	 * Distribution of values, with power of two buckets.
+	 */
+	public static class Histogram {
+
+		private final long[] buckets = new long[64];
+
+		private long count = 0;
+
+		private long max = 0;
+
+		private long min = Long.MAX_VALUE;
+
+		private long total = 0;
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized long getMax() {
+			return max;
+		}
+
+		public synchronized long getMean() {
+			return count == 0 ? 0 : total / count;
+		}
+
+		public synchronized long getMin() {
+			return count == 0 ? 0 : min;
+		}
+
+		/**
+		 * Returns an upper bound of a percentile : the highest value of the
+		 * bucket containing the percentile, or the maximum value if lower.
+		 * 
+		 * @param percentile
+		 *            percentile, between 0 and 100.
+		 */
+		public synchronized long getPercentile(double percentile) {
+			final long rank = (long) Math.ceil(count * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) {
+					return Math.min(max, i == 0 ? 0 : (1L << i) - 1);
+				}
+			}
+			return max;
+		}
+
+		public synchronized long getTotal() {
+			return total;
+		}
+
+		/**
+		 * Adds a value. Negative values are recorded as 0.
+		 */
+		public synchronized void record(long value) {
+			final long v = Math.max(0, value);
+			// Bucket i holds values lower than 2^i.
+			buckets[64 - Long.numberOfLeadingZeros(v)]++;
+			count++;
+			total += v;
+			max = Math.max(max, v);
+			min = Math.min(min, v);
+		}
+
+		@Override
+		public synchronized String toString() {
+			return "count=" + count + ", mean=" + getMean() + ", min="
+					+ getMin() + ", p50=" + getPercentile(50) + ", p99="
+					+ getPercentile(99) + ", max=" + max;
+		}
+	}
+
+	/**
+	 * Evaluations and cache lookups of an xpath expression.
+	 */
+	public static class XPathStatistics {
+
+		private final AtomicLong cacheHits = new AtomicLong();
+
+		private final AtomicLong cacheMisses = new AtomicLong();
+
+		private final Histogram durations = new Histogram();
+
+		public long getCacheHits() {
+			return cacheHits.get();
+		}
+
+		public long getCacheMisses() {
+			return cacheMisses.get();
+		}
+
+		/**
+		 * Returns evaluation durations, in nanoseconds.
+		 */
+		public Histogram getDurations() {
+			return durations;
+		}
+
+		@Override
+		public String toString() {
+			return durations + ", cacheHits=" + cacheHits + ", cacheMisses="
+					+ cacheMisses;
+		}
+	}
+
+	private volatile Histogram parseDurations = new Histogram();
+
+	private volatile Histogram parseSizes = new Histogram();
+
+	private final ConcurrentMap<Class<?>, AtomicLong> proxies = new ConcurrentHashMap<Class<?>, AtomicLong>();
+
+	private volatile Histogram serializeDurations = new Histogram();
+
+	private volatile Histogram serializeSizes = new Histogram();
+
+	private final ConcurrentMap<String, XPathStatistics> xpaths = new ConcurrentHashMap<String, XPathStatistics>();
+
+	/**
+	 * Returns the xpath expressions with the highest total evaluation time.
+	 * 
+	 * @param max
+	 *            maximum number of expressions.
+	 * @return expressions, slowest first.
+	 */
+	public List<String> getHotXPaths(int max) {
+		final Map<String, Long> totals = new HashMap<String, Long>();
+		for (final Map.Entry<String, XPathStatistics> entry : xpaths
+				.entrySet()) {
+			totals.put(entry.getKey(), entry.getValue().getDurations()
+					.getTotal());
+		}
+		final List<String> result = new ArrayList<String>(totals.keySet());
+		Collections.sort(result, new Comparator<String>() {
+			@Override
+			public int compare(String o1, String o2) {
+				final long t1 = totals.get(o1);
+				final long t2 = totals.get(o2);
+				return t1 < t2 ? 1 : t1 == t2 ? 0 : -1;
+			}
+		});
+		return result.size() > max ? result.subList(0, max) : result;
+	}
+
+	/**
+	 * Returns parsing durations, in nanoseconds.
+	 */
+	public Histogram getParseDurations() {
+		return parseDurations;
+	}
+
+	/**
+	 * Returns the size of parsed documents in bytes, when known.
+	 */
+	public Histogram getParseSizes() {
+		return parseSizes;
+	}
+
+	/**
+	 * Returns the number of objects created for a type.
+	 */
+	public long getProxyCount(Class<?> type) {
+		final AtomicLong count = proxies.get(type);
+		return count == null ? 0 : count.get();
+	}
+
+	/**
+	 * Returns serialization durations, in nanoseconds.
+	 */
+	public Histogram getSerializeDurations() {
+		return serializeDurations;
+	}
+
+	/**
+	 * Returns the size of serialized documents in bytes, when known.
+	 */
+	public Histogram getSerializeSizes() {
+		return serializeSizes;
+	}
+
+	/**
+	 * Returns the statistics of an xpath expression.
+	 * 
+	 * @return statistics or <code>null</code> if the expression was never
+	 *         evaluated nor looked up.
+	 */
+	public XPathStatistics getXPathStatistics(String xpath) {
+		return xpaths.get(xpath);
+	}
+
+	/**
+	 * Returns the statistics of every xpath expression.
+	 */
+	public Map<String, XPathStatistics> getXPathStatistics() {
+		return Collections.unmodifiableMap(xpaths);
+	}
+
+	private XPathStatistics getOrCreateStatistics(String xpath) {
+		XPathStatistics statistics = xpaths.get(xpath);
+		if (statistics == null) {
+			statistics = new XPathStatistics();
+			final XPathStatistics existing = xpaths.putIfAbsent(xpath,
+					statistics);
+			if (existing != null) {
+				statistics = existing;
+			}
+		}
+		return statistics;
+	}
+
+	@Override
+	public void parsed(long size, long nanos) {
+		if (size >= 0) {
+			parseSizes.record(size);
+		}
+		parseDurations.record(nanos);
+	}
+
+	@Override
+	public void proxyCreated(Class<?> type) {
+		AtomicLong count = proxies.get(type);
+		if (count == null) {
+			count = new AtomicLong();
+			final AtomicLong existing = proxies.putIfAbsent(type, count);
+			if (existing != null) {
+				count = existing;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	public void reset() {
+		parseDurations = new Histogram();
+		parseSizes = new Histogram();
+		serializeDurations = new Histogram();
+		serializeSizes = new Histogram();
+		proxies.clear();
+		xpaths.clear();
+	}
+
+	@Override
+	public void serialized(long size, long nanos) {
+		if (size >= 0) {
+			serializeSizes.record(size);
+		}
+		serializeDurations.record(nanos);
+	}
+
+	@Override
+	public void xpathCacheLookup(String xpath, boolean hit) {
+		final XPathStatistics statistics = getOrCreateStatistics(xpath);
+		if (hit) {
+			statistics.cacheHits.incrementAndGet();
+		} else {
+			statistics.cacheMisses.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void xpathEvaluated(String xpath, long nanos) {
+		getOrCreateStatistics(xpath).durations.record(nanos);
+	}
+}
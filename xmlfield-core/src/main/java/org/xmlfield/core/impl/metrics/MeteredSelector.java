@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.metrics;
+
+import org.xmlfield.core.api.XmlFieldMetrics;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldNodeList;
+import org.xmlfield.core.api.XmlFieldSelector;
+import org.xmlfield.core.exception.XmlFieldXPathException;
+import org.xmlfield.core.internal.NamespaceMap;
+
+/**
+ * Selector sending the duration of every evaluation to
+ * {@link XmlFieldMetrics} and to the {@link XPathSampler}, when enabled.
+ * 
+ * @author Nicolas Richeton
+ */
+public class MeteredSelector implements XmlFieldSelector {
+
+	private final XmlFieldSelector selector;
+
+	/**
+	 * @param selector
+	 *            selector doing the evaluations.
+	 */
+	public MeteredSelector(XmlFieldSelector selector) {
+		this.selector = selector;
+	}
+
+	private static void evaluated(String xpath, long start, int nodes) {
+		final long nanos = System.nanoTime() - start;
+		final XmlFieldMetrics metrics = XmlFieldMetrics.getInstance();
+		if (metrics.isEnabled()) {
+			metrics.xpathEvaluated(xpath, nanos);
+		}
+		final XPathSampler sampler = XPathSampler.getInstance();
+		if (sampler != null) {
+			sampler.evaluated(xpath, nanos, nodes);
+		}
+	}
+
+	/**
+	 * Returns the wrapped selector.
+	 */
+	public XmlFieldSelector getSelector() {
+		return selector;
+	}
+
+	@Override
+	public Boolean selectXPathToBoolean(NamespaceMap namespaces, String xpath,
+			XmlFieldNode node) throws XmlFieldXPathException {
+		final long start = System.nanoTime();
+		try {
+			return selector.selectXPathToBoolean(namespaces, xpath, node);
+		} finally {
+			evaluated(xpath, start, 0);
+		}
+	}
+
+	@Override
+	public XmlFieldNode selectXPathToNode(NamespaceMap namespaces,
+			String xpath, XmlFieldNode node) throws XmlFieldXPathException {
+		final long start = System.nanoTime();
+		XmlFieldNode result = null;
+		try {
+			result = selector.selectXPathToNode(namespaces, xpath, node);
+			return result;
+		} finally {
+			evaluated(xpath, start, result == null ? 0 : 1);
+		}
+	}
+
+	@Override
+	public XmlFieldNodeList selectXPathToNodeList(NamespaceMap namespaces,
+			String xpath, XmlFieldNode node) throws XmlFieldXPathException {
+		final long start = System.nanoTime();
+		XmlFieldNodeList result = null;
+		try {
+			result = selector.selectXPathToNodeList(namespaces, xpath, node);
+			return result;
+		} finally {
+			evaluated(xpath, start, result == null ? 0 : result.getLength());
+		}
+	}
+
+	@Override
+	public Double selectXPathToNumber(NamespaceMap namespaces, String xpath,
+			XmlFieldNode node) throws XmlFieldXPathException {
+		final long start = System.nanoTime();
+		try {
+			return selector.selectXPathToNumber(namespaces, xpath, node);
+		} finally {
+			evaluated(xpath, start, 0);
+		}
+	}
+
+	@Override
+	public String selectXPathToString(NamespaceMap namespaces, String xpath,
+			XmlFieldNode node) throws XmlFieldXPathException {
+		final long start = System.nanoTime();
+		try {
+			return selector.selectXPathToString(namespaces, xpath, node);
+		} finally {
+			evaluated(xpath, start, 0);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.metrics;
+
+import org.xmlfield.core.api.XmlFieldMetrics;
+
+/**
+ * Default metrics : disabled, nothing is measured.
+ * 
+ * @author Nicolas Richeton
+ */
+public class NoOpXmlFieldMetrics extends XmlFieldMetrics {
+
+	@Override
+	public boolean isEnabled() {
+		return false;
+	}
+
+	@Override
+	public void parsed(long size, long nanos) {
+	}
+
+	@Override
+	public void proxyCreated(Class<?> type) {
+	}
+
+	@Override
+	public void serialized(long size, long nanos) {
+	}
+
+	@Override
+	public void xpathCacheLookup(String xpath, boolean hit) {
+	}
+
+	@Override
+	public void xpathEvaluated(String xpath, long nanos) {
+	}
+}
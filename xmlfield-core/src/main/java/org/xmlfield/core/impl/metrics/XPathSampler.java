@@ -0,0 +1,372 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.impl.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sampling profiler of xpath expressions, by interface and method.
+ * <p>
+ * When a sampler is set with {@link #setInstance(XPathSampler)}, one call out
+ * of <tt>sampleInterval</tt> to the methods of bound objects is sampled : every
+ * xpath evaluated by the selector during this call is recorded, with its
+ * duration and the number of returned nodes. Samples are kept by interface,
+ * method and xpath.
+ * <p>
+ * Usage :
+ * 
+ * <pre>
+ * XPathSampler sampler = new XPathSampler(100);
+ * XPathSampler.setInstance(sampler);
+ * sampler.startLogging(5, TimeUnit.MINUTES, 20);
+ * </pre>
+ * <p>
+ * Expressions which scan the whole document, like <tt>//SPEECH</tt>, show up
+ * with a high cumulative time and node count.
+ * <p>
+ * XPathSampler is thread safe.
+ * 
+ * @author Nicolas Richeton
+ */
+public class XPathSampler {
+
+	/**
+	 * Interface and method being sampled on a thread.
+	 */
+	private static final class Context {
+		private final String method;
+		private final Class<?> type;
+
+		Context(final Class<?> type, final String method) {
+			this.type = type;
+			this.method = method;
+		}
+	}
+
+	/**
+	 * Interface, method and xpath.
+	 */
+	private static final class Key {
+		private final String method;
+		private final Class<?> type;
+		private final String xpath;
+
+		Key(final Class<?> type, final String method, final String xpath) {
+			this.type = type;
+			this.method = method;
+			this.xpath = xpath;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return type == other.type && method.equals(other.method)
+					&& xpath.equals(other.xpath);
+		}
+
+		@Override
+		public int hashCode() {
+			return (type.hashCode() * 31 + method.hashCode()) * 31
+					+ xpath.hashCode();
+		}
+	}
+
+	/**
+	 * Recorded evaluations of an xpath expression, for a method of an
+	 * interface.
+	 */
+	public static final class Sample {
+		private final AtomicLong count = new AtomicLong();
+		private final String method;
+		private final AtomicLong nanos = new AtomicLong();
+		private final AtomicLong nodes = new AtomicLong();
+		private final Class<?> type;
+		private final String xpath;
+
+		Sample(final Key key) {
+			this.type = key.type;
+			this.method = key.method;
+			this.xpath = key.xpath;
+		}
+
+		/**
+		 * Returns the number of sampled evaluations.
+		 */
+		public long getCount() {
+			return count.get();
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		/**
+		 * Returns the cumulative duration of sampled evaluations, in
+		 * nanoseconds.
+		 */
+		public long getNanos() {
+			return nanos.get();
+		}
+
+		/**
+		 * Returns the number of nodes returned by sampled evaluations. Only
+		 * node and node list selections return nodes.
+		 */
+		public long getNodes() {
+			return nodes.get();
+		}
+
+		public Class<?> getType() {
+			return type;
+		}
+
+		public String getXPath() {
+			return xpath;
+		}
+
+		@Override
+		public String toString() {
+			final long c = count.get();
+			return type.getName() + "#" + method + "() " + xpath + " : count="
+					+ c + ", totalUs=" + nanos.get() / 1000 + ", meanUs="
+					+ (c == 0 ? 0 : nanos.get() / c / 1000) + ", nodes="
+					+ nodes.get();
+		}
+	}
+
+	private static final ThreadLocal<Context> current = new ThreadLocal<Context>();
+
+	private static volatile XPathSampler instance = null;
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(XPathSampler.class);
+
+	/**
+	 * Returns the current sampler.
+	 * 
+	 * @return the sampler or <code>null</code> if sampling is disabled.
+	 */
+	public static XPathSampler getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Enables or disables sampling.
+	 * 
+	 * @param sampler
+	 *            the sampler, or <code>null</code> to disable sampling.
+	 */
+	public static void setInstance(final XPathSampler sampler) {
+		instance = sampler;
+	}
+
+	private final AtomicLong calls = new AtomicLong();
+
+	private ScheduledExecutorService logExecutor = null;
+
+	private final int sampleInterval;
+
+	private final ConcurrentMap<Key, Sample> samples = new ConcurrentHashMap<Key, Sample>();
+
+	/**
+	 * @param sampleInterval
+	 *            one method call out of sampleInterval is sampled. Use 1 to
+	 *            sample every call.
+	 */
+	public XPathSampler(final int sampleInterval) {
+		if (sampleInterval < 1) {
+			throw new IllegalArgumentException("Invalid sample interval "
+					+ sampleInterval);
+		}
+		this.sampleInterval = sampleInterval;
+	}
+
+	/**
+	 * Called by bound objects before a sampled call. Xpath evaluations of the
+	 * current thread are recorded for this method until {@link #exit(Object)}
+	 * is called.
+	 * 
+	 * @return a value to give to {@link #exit(Object)}.
+	 */
+	public Object enter(final Class<?> type, final String method) {
+		final Context previous = current.get();
+		current.set(new Context(type, method));
+		return previous;
+	}
+
+	/**
+	 * Called by the selector after an xpath evaluation. The evaluation is
+	 * recorded if a sampled call is in progress on the current thread.
+	 */
+	public void evaluated(final String xpath, final long nanos,
+			final int nodes) {
+		final Context context = current.get();
+		if (context == null) {
+			return;
+		}
+
+		final Key key = new Key(context.type, context.method, xpath);
+		Sample sample = samples.get(key);
+		if (sample == null) {
+			sample = new Sample(key);
+			final Sample existing = samples.putIfAbsent(key, sample);
+			if (existing != null) {
+				sample = existing;
+			}
+		}
+		sample.count.incrementAndGet();
+		sample.nanos.addAndGet(nanos);
+		sample.nodes.addAndGet(nodes);
+	}
+
+	/**
+	 * Called by bound objects after a sampled call.
+	 * 
+	 * @param previous
+	 *            value returned by {@link #enter(Class, String)}.
+	 */
+	public void exit(final Object previous) {
+		if (previous == null) {
+			current.remove();
+		} else {
+			current.set((Context) previous);
+		}
+	}
+
+	/**
+	 * Returns the samples with the highest cumulative time.
+	 * 
+	 * @param max
+	 *            maximum number of samples.
+	 * @return samples, most expensive first.
+	 */
+	public List<Sample> getReport(final int max) {
+		final List<Sample> result = new ArrayList<Sample>(samples.values());
+		// Sort on a copy of the times, which change concurrently.
+		final Map<Sample, Long> times = new HashMap<Sample, Long>();
+		for (final Sample sample : result) {
+			times.put(sample, sample.getNanos());
+		}
+		Collections.sort(result, new Comparator<Sample>() {
+			@Override
+			public int compare(final Sample o1, final Sample o2) {
+				final long t1 = times.get(o1);
+				final long t2 = times.get(o2);
+				return t1 < t2 ? 1 : t1 == t2 ? 0 : -1;
+			}
+		});
+		return result.size() > max ? result.subList(0, max) : result;
+	}
+
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Writes the most expensive samples to the log, at info level.
+	 * 
+	 * @param max
+	 *            maximum number of samples.
+	 */
+	public void log(final int max) {
+		if (!logger.isInfoEnabled()) {
+			return;
+		}
+		final List<Sample> report = getReport(max);
+		final StringBuilder sb = new StringBuilder();
+		sb.append("Most expensive xpath expressions (1 call out of ")
+				.append(sampleInterval).append(" sampled) :");
+		for (final Sample sample : report) {
+			sb.append("\n  ").append(sample);
+		}
+		logger.info(sb.toString());
+	}
+
+	/**
+	 * Removes all samples.
+	 */
+	public void reset() {
+		samples.clear();
+	}
+
+	/**
+	 * Returns true if the next method call should be sampled.
+	 */
+	public boolean sample() {
+		return sampleInterval == 1
+				|| calls.getAndIncrement() % sampleInterval == 0;
+	}
+
+	/**
+	 * Starts writing the report to the log periodically, from a daemon
+	 * thread.
+	 * 
+	 * @param period
+	 *            period between two reports.
+	 * @param unit
+	 *            unit of period.
+	 * @param max
+	 *            maximum number of samples in each report.
+	 */
+	public synchronized void startLogging(final long period,
+			final TimeUnit unit, final int max) {
+		stopLogging();
+		logExecutor = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r,
+								"xmlfield-xpath-sampler");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		logExecutor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				log(max);
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * Stops writing the report to the log.
+	 */
+	public synchronized void stopLogging() {
+		if (logExecutor != null) {
+			logExecutor.shutdown();
+			logExecutor = null;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Output stream writing to a {@link ByteBuffer}, starting at its current
+ * position.
+ * <p>
+ * An IOException is thrown when the buffer has not enough space remaining.
+ *
+ * @author Nicolas Richeton
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+	private final ByteBuffer buffer;
+
+	public ByteBufferOutputStream(final ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	private void checkRemaining(final int length) throws IOException {
+		if (buffer.remaining() < length) {
+			throw new IOException("Not enough space in buffer : "
+					+ buffer.remaining() + " bytes remaining, " + length
+					+ " required");
+		}
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len)
+			throws IOException {
+		checkRemaining(len);
+		buffer.put(b, off, len);
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		checkRemaining(1);
+		buffer.put((byte) b);
+	}
+}
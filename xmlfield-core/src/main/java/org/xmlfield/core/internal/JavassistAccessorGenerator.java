@@ -0,0 +1,198 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.internal;
+
+import java.lang.reflect.Method;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.List;
+
+import javassist.CannotCompileException;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+import javassist.util.proxy.DefineClassHelper;
+
+import org.xmlfield.core.internal.XmlFieldMethod.Kind;
+
+/**
+ * Generates accessor classes at runtime with javassist.
+ * <p>
+ * Kept apart from {@link XmlFieldAccessorGenerator} so that javassist is only
+ * loaded when runtime generation is enabled.
+ *
+ * @author Nicolas Richeton
+ */
+final class JavassistAccessorGenerator {
+
+	/**
+	 * Class loader defining a single accessor class.
+	 */
+	private static final class AccessorClassLoader extends ClassLoader {
+
+		AccessorClassLoader(final ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(final String name, final byte[] bytecode,
+				final ProtectionDomain domain) {
+			return defineClass(name, bytecode, 0, bytecode.length, domain);
+		}
+	}
+
+	private static final boolean LOOKUP_DEFINE = isLookupDefineAvailable();
+
+	private static String getBody(final XmlFieldMethod m, final String field) {
+		final boolean isVoid = void.class.equals(m.getReturnType());
+
+		if (m.getKind() == Kind.GET && !isVoid) {
+			return "{ return ($r) get(" + field + "); }";
+		}
+		if (m.getKind() == Kind.SET && isVoid) {
+			return "{ set(" + field + ", ($w) $1); }";
+		}
+		if (isVoid) {
+			return "{ invoke(" + field + ", $args); }";
+		}
+		return "{ return ($r) invoke(" + field + ", $args); }";
+	}
+
+	static Class<?> generate(final Class<?> type) throws Exception {
+		if (!type.isInterface()) {
+			throw new IllegalArgumentException(type.getName()
+					+ " is not an interface");
+		}
+
+		final XmlFieldBinding binding = XmlFieldBinding.getBinding(type);
+
+		final ClassPool pool = new ClassPool(false);
+		pool.appendClassPath(new ClassClassPath(XmlFieldAccessor.class));
+		pool.appendClassPath(new LoaderClassPath(type.getClassLoader()));
+		pool.appendSystemPath();
+
+		final CtClass cc = pool.makeClass(type.getName()
+				+ XmlFieldAccessorGenerator.CLASS_SUFFIX,
+				pool.get(XmlFieldAccessor.class.getName()));
+		cc.addInterface(pool.get(type.getName()));
+
+		final CtClass handlerClass = pool.get(XmlFieldInvocationHandler.class
+				.getName());
+		final CtConstructor constructor = CtNewConstructor.make(
+				new CtClass[] { handlerClass }, null, "{ super($1); }", cc);
+		cc.addConstructor(constructor);
+
+		final List<XmlFieldMethod> fields = new ArrayList<XmlFieldMethod>();
+		for (final Method method : type.getMethods()) {
+			if (isImplemented(method)) {
+				continue;
+			}
+
+			final XmlFieldMethod m = binding.getMethod(method);
+			final String field = "m" + fields.size();
+			fields.add(m);
+			cc.addField(CtField.make("public static "
+					+ XmlFieldMethod.class.getName() + " " + field + ";", cc));
+
+			final CtClass[] params = new CtClass[method.getParameterTypes().length];
+			for (int i = 0; i < params.length; i++) {
+				params[i] = getCtClass(pool, method.getParameterTypes()[i]);
+			}
+			final CtMethod ctMethod = CtNewMethod.make(
+					getCtClass(pool, method.getReturnType()),
+					method.getName(), params, null, getBody(m, field), cc);
+			cc.addMethod(ctMethod);
+		}
+
+		final Class<?> generated;
+		try {
+			generated = define(type, cc);
+		} finally {
+			cc.detach();
+		}
+
+		for (int i = 0; i < fields.size(); i++) {
+			generated.getField("m" + i).set(null, fields.get(i));
+		}
+
+		return generated;
+	}
+
+	/**
+	 * Defines the accessor class next to its interface.
+	 * <p>
+	 * Uses a lookup on the interface when the JVM supports it (Java 9+), so
+	 * that no reflective access to {@link ClassLoader} internals is required.
+	 * Otherwise the class is defined by a child loader of the interface
+	 * loader.
+	 */
+	private static Class<?> define(final Class<?> type, final CtClass cc)
+			throws Exception {
+		final byte[] bytecode = cc.toBytecode();
+		if (LOOKUP_DEFINE && type.getClassLoader() != null) {
+			try {
+				return DefineClassHelper.toClass(type, bytecode);
+			} catch (CannotCompileException e) {
+				// Package not open to javassist.
+			}
+		}
+		return new AccessorClassLoader(type.getClassLoader()).define(
+				cc.getName(), bytecode, type.getProtectionDomain());
+	}
+
+	private static boolean isLookupDefineAvailable() {
+		try {
+			Class.forName("java.lang.invoke.MethodHandles$Lookup").getMethod(
+					"defineClass", byte[].class);
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Methods already implemented by {@link XmlFieldAccessor}.
+	 */
+	private static boolean isImplemented(final Method method) {
+		final Class<?>[] params = method.getParameterTypes();
+		final String name = method.getName();
+
+		if (params.length == 0) {
+			return "toString".equals(name) || "hashCode".equals(name)
+					|| "toNode".equals(name);
+		}
+		return params.length == 1 && "equals".equals(name)
+				&& Object.class.equals(params[0]);
+	}
+
+	private static CtClass getCtClass(final ClassPool pool, final Class<?> c)
+			throws NotFoundException {
+		if (c.isArray()) {
+			return pool.get(getCtClass(pool, c.getComponentType()).getName()
+					+ "[]");
+		}
+		return pool.get(c.getName());
+	}
+
+	private JavassistAccessorGenerator() {
+	}
+}
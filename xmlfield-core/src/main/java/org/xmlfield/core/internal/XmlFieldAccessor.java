@@ -0,0 +1,153 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.internal;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldObject;
+
+/**
+ * Base class of the accessors generated by {@link XmlFieldAccessorGenerator}.
+ * <p>
+ * Generated accessors call the {@link XmlFieldInvocationHandler} directly
+ * with a precomputed {@link XmlFieldMethod}, which avoids the reflective
+ * dispatch and argument arrays of {@link java.lang.reflect.Proxy}. Exceptions
+ * are reported the same way as with proxies.
+ * <p>
+ * This class is not intended to be used directly.
+ *
+ * @author Nicolas Richeton
+ */
+public abstract class XmlFieldAccessor implements XmlFieldObject {
+
+	private static final Method EQUALS;
+	private static final Method HASH_CODE;
+	private static final Method TO_STRING;
+
+	static {
+		try {
+			EQUALS = Object.class.getMethod("equals", Object.class);
+			HASH_CODE = Object.class.getMethod("hashCode");
+			TO_STRING = Object.class.getMethod("toString");
+		} catch (NoSuchMethodException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Returns the descriptor of a method of an XmlField interface. Used by
+	 * generated accessors to resolve their methods once.
+	 */
+	protected static XmlFieldMethod method(final Class<?> type,
+			final String name, final Class<?>... parameterTypes) {
+		try {
+			return XmlFieldBinding.getBinding(type).getMethod(
+					type.getMethod(name, parameterTypes));
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("Generated accessor for "
+					+ type.getName() + " is out of date", e);
+		}
+	}
+
+	protected final XmlFieldInvocationHandler handler;
+
+	protected XmlFieldAccessor(final XmlFieldInvocationHandler handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		return (Boolean) invoke(handler.getBinding().getMethod(EQUALS),
+				new Object[] { obj });
+	}
+
+	/**
+	 * Invokes a getter.
+	 */
+	protected final Object get(final XmlFieldMethod method) {
+		try {
+			return handler.get(method);
+		} catch (Exception e) {
+			throw toUnchecked(method, e);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return (Integer) invoke(handler.getBinding().getMethod(HASH_CODE), null);
+	}
+
+	/**
+	 * Invokes any method of the interface.
+	 */
+	protected final Object invoke(final XmlFieldMethod method,
+			final Object[] args) {
+		try {
+			return handler.invoke(this, method, args);
+		} catch (Throwable t) {
+			throw toUnchecked(method, t);
+		}
+	}
+
+	/**
+	 * Invokes a setter.
+	 */
+	protected final void set(final XmlFieldMethod method, final Object value) {
+		try {
+			handler.set(method, value);
+		} catch (Exception e) {
+			throw toUnchecked(method, e);
+		}
+	}
+
+	public final XmlFieldNode toNode() {
+		return handler.getNode();
+	}
+
+	@Override
+	public String toString() {
+		return (String) invoke(handler.getBinding().getMethod(TO_STRING), null);
+	}
+
+	/**
+	 * Rethrows runtime exceptions and errors as is, and wraps checked
+	 * exceptions as {@link java.lang.reflect.Proxy} does. Checked exceptions
+	 * declared by the method are rethrown unchanged.
+	 */
+	private RuntimeException toUnchecked(final XmlFieldMethod method,
+			final Throwable t) {
+		if (t instanceof RuntimeException) {
+			return (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		for (Class<?> declared : method.getMethod().getExceptionTypes()) {
+			if (declared.isInstance(t)) {
+				XmlFieldAccessor.<RuntimeException> rethrow(t);
+			}
+		}
+		return new UndeclaredThrowableException(t);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends Throwable> void rethrow(final Throwable t)
+			throws T {
+		throw (T) t;
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.internal;
+
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides concrete classes implementing XmlField interfaces with direct method
+ * bodies, as an alternative to {@link java.lang.reflect.Proxy}.
+ * <p>
+ * Accessor classes extend {@link XmlFieldAccessor}. They are either generated
+ * at build time by the xmlfield annotation processor and listed by a
+ * {@link XmlFieldAccessorRegistry}, or generated at runtime, once per
+ * interface. Runtime generation relies on javassist, which is an optional
+ * dependency : when javassist is not available or an interface cannot be
+ * generated, {@link #newInstance(Class, XmlFieldInvocationHandler, boolean)}
+ * returns <code>null</code> and proxies should be used instead.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Nicolas Richeton
+ */
+public class XmlFieldAccessorGenerator {
+
+	/**
+	 * Suffix of accessor class names.
+	 */
+	public static final String CLASS_SUFFIX = "$$XmlFieldAccessor";
+
+	/**
+	 * Accessors generated at build time, loaded on first use.
+	 */
+	private static volatile Map<Class<?>, Class<? extends XmlFieldAccessor>> compiledAccessors;
+
+	private static final ConcurrentMap<Class<?>, Constructor<?>> constructors = new ConcurrentHashMap<Class<?>, Constructor<?>>();
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(XmlFieldAccessorGenerator.class);
+
+	/**
+	 * Interfaces which cannot be generated.
+	 */
+	private static final Set<Class<?>> unsupported = Collections
+			.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+	/**
+	 * Removes the accessors of the interfaces loaded by a class loader or its
+	 * descendants.
+	 *
+	 * @see XmlFieldBinding#clear(ClassLoader)
+	 */
+	static synchronized void clear(final ClassLoader classLoader) {
+		final Map<Class<?>, Class<? extends XmlFieldAccessor>> accessors = compiledAccessors;
+		if (accessors != null) {
+			for (final Class<?> type : accessors.keySet()) {
+				if (XmlFieldBinding.isLoadedBy(type, classLoader)) {
+					// Loaded again on next use.
+					compiledAccessors = null;
+					break;
+				}
+			}
+		}
+		removeLoadedBy(constructors.keySet(), classLoader);
+		removeLoadedBy(unsupported, classLoader);
+	}
+
+	private static Map<Class<?>, Class<? extends XmlFieldAccessor>> getCompiledAccessors() {
+		Map<Class<?>, Class<? extends XmlFieldAccessor>> accessors = compiledAccessors;
+		if (accessors == null) {
+			accessors = new HashMap<Class<?>, Class<? extends XmlFieldAccessor>>();
+			try {
+				for (XmlFieldAccessorRegistry registry : ServiceLoader
+						.load(XmlFieldAccessorRegistry.class)) {
+					accessors.putAll(registry.getAccessors());
+				}
+			} catch (ServiceConfigurationError e) {
+				logger.warn("Unable to load generated accessors : {}",
+						e.toString());
+			}
+			compiledAccessors = accessors;
+		}
+		return accessors;
+	}
+
+	private static synchronized Constructor<?> getConstructor(
+			final Class<?> type, final boolean generate) {
+		Constructor<?> constructor = constructors.get(type);
+		if (constructor != null) {
+			return constructor;
+		}
+
+		final Class<?> compiled = getCompiledAccessors().get(type);
+		if (compiled != null) {
+			try {
+				constructor = compiled
+						.getConstructor(XmlFieldInvocationHandler.class);
+				constructors.put(type, constructor);
+				return constructor;
+			} catch (NoSuchMethodException e) {
+				logger.warn("Invalid generated accessor {}", compiled.getName());
+			}
+		}
+
+		if (!generate || unsupported.contains(type)) {
+			return null;
+		}
+
+		try {
+			constructor = JavassistAccessorGenerator.generate(type)
+					.getConstructor(XmlFieldInvocationHandler.class);
+			constructors.put(type, constructor);
+		} catch (Exception e) {
+			logger.warn("Unable to generate accessor for {}, using proxies : {}",
+					type.getName(), e.toString());
+			unsupported.add(type);
+		} catch (LinkageError e) {
+			// Includes NoClassDefFoundError when javassist is missing.
+			logger.warn("Unable to generate accessor for {}, using proxies : {}",
+					type.getName(), e.toString());
+			unsupported.add(type);
+		}
+		return constructor;
+	}
+
+	/**
+	 * Creates an accessor for an interface.
+	 *
+	 * @param type
+	 *            XmlField interface
+	 * @param handler
+	 *            handler bound to the node
+	 * @param generate
+	 *            <code>true</code> to generate an accessor class at runtime if
+	 *            none was generated at build time.
+	 * @return the accessor or <code>null</code> if no accessor class is
+	 *         available for this interface.
+	 */
+	public static <T> T newInstance(final Class<T> type,
+			final XmlFieldInvocationHandler handler, final boolean generate) {
+		Constructor<?> constructor = constructors.get(type);
+		if (constructor == null) {
+			if (!generate && !getCompiledAccessors().containsKey(type)) {
+				return null;
+			}
+			constructor = getConstructor(type, generate);
+			if (constructor == null) {
+				return null;
+			}
+		}
+
+		try {
+			return type.cast(constructor.newInstance(handler));
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to create accessor for "
+					+ type.getName(), e);
+		}
+	}
+
+	private static void removeLoadedBy(final Set<Class<?>> types,
+			final ClassLoader classLoader) {
+		final Iterator<Class<?>> it = types.iterator();
+		while (it.hasNext()) {
+			if (XmlFieldBinding.isLoadedBy(it.next(), classLoader)) {
+				it.remove();
+			}
+		}
+	}
+
+	private XmlFieldAccessorGenerator() {
+	}
+}
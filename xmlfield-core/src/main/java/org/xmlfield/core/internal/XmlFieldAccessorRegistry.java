@@ -0,0 +1,38 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.internal;
+
+import java.util.Map;
+
+/**
+ * Registry of accessor classes generated at build time by the xmlfield
+ * annotation processor.
+ * <p>
+ * Implementations are generated along with the accessors and found with
+ * {@link java.util.ServiceLoader}. They are used by XmlField before falling
+ * back to dynamic proxies.
+ *
+ * @author Nicolas Richeton
+ */
+public interface XmlFieldAccessorRegistry {
+
+	/**
+	 * Returns the generated accessor classes, by interface. Accessor classes
+	 * must have a public constructor taking a
+	 * {@link XmlFieldInvocationHandler}.
+	 */
+	Map<Class<?>, Class<? extends XmlFieldAccessor>> getAccessors();
+}
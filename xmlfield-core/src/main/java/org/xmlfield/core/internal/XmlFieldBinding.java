@@ -0,0 +1,242 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.internal;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.xmlfield.annotations.FieldXPath;
+import org.xmlfield.core.internal.XmlFieldMethod.Kind;
+
+/**
+ * Binding model of an XmlField interface.
+ * <p>
+ * The binding is built once per interface and holds the resource xpath, the
+ * namespaces merged from the interface and its super interfaces, and a
+ * {@link XmlFieldMethod} for each method, so that proxies can dispatch calls
+ * without looking at method names and annotations again.
+ * <p>
+ * Bindings are kept by class, not by class name, and are never evicted. When
+ * XmlField is loaded by a parent of the class loader of the interfaces (for
+ * instance a shared library of an application server), call
+ * {@link #clear(ClassLoader)} when the application is stopped so that its
+ * classes can be unloaded.
+ * <p>
+ * XmlFieldBinding is thread safe.
+ *
+ * @author Nicolas Richeton
+ */
+public class XmlFieldBinding {
+
+	private static final ConcurrentMap<Class<?>, XmlFieldBinding> bindings = new ConcurrentHashMap<Class<?>, XmlFieldBinding>();
+
+	/**
+	 * Removes the bindings of the interfaces loaded by a class loader or its
+	 * descendants, and the accessors generated for them.
+	 *
+	 * @param classLoader
+	 *            class loader of an application being stopped
+	 */
+	public static void clear(final ClassLoader classLoader) {
+		final Iterator<Class<?>> it = bindings.keySet().iterator();
+		while (it.hasNext()) {
+			if (isLoadedBy(it.next(), classLoader)) {
+				it.remove();
+			}
+		}
+		XmlFieldAccessorGenerator.clear(classLoader);
+	}
+
+	/**
+	 * Returns the binding of an interface, building it on the first call.
+	 *
+	 * @param type
+	 *            XmlField interface
+	 * @return binding model of the interface
+	 */
+	public static XmlFieldBinding getBinding(final Class<?> type) {
+		XmlFieldBinding binding = bindings.get(type);
+		if (binding == null) {
+			binding = new XmlFieldBinding(type);
+			XmlFieldBinding existing = bindings.putIfAbsent(type, binding);
+			if (existing != null) {
+				binding = existing;
+			}
+		}
+		return binding;
+	}
+
+	/**
+	 * Checks if a class has been loaded by a class loader or one of its
+	 * descendants.
+	 */
+	static boolean isLoadedBy(final Class<?> type,
+			final ClassLoader classLoader) {
+		for (ClassLoader cl = type.getClassLoader(); cl != null; cl = cl
+				.getParent()) {
+			if (cl == classLoader) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Getters annotated with @FieldXPath, sorted by name. Used by equals,
+	 * hashCode and toString.
+	 */
+	private final List<XmlFieldMethod> fieldGetters;
+
+	/**
+	 * Descriptors of the methods of the interface. Methods which are not
+	 * declared by the interface (Object and XmlFieldObject methods) are added
+	 * on demand.
+	 */
+	private final ConcurrentMap<Method, XmlFieldMethod> methods = new ConcurrentHashMap<Method, XmlFieldMethod>();
+
+	/**
+	 * Descriptors of methods without parameters, by name.
+	 */
+	private final Map<String, XmlFieldMethod> noArgMethods = new HashMap<String, XmlFieldMethod>();
+
+	/**
+	 * Namespaces of the interface and its super interfaces, or
+	 * <code>null</code>.
+	 */
+	private final NamespaceMap namespaces;
+
+	private final String resourceXPath;
+
+	private final Class<?> type;
+
+	private XmlFieldBinding(final Class<?> type) {
+		this.type = type;
+		this.resourceXPath = XmlFieldUtils.getResourceXPath(type);
+
+		final NamespaceMap ns = XmlFieldUtils.getResourceNamespaces(type);
+		this.namespaces = ns == null || ns.isEmpty() ? null : ns;
+
+		final Method[] typeMethods = type.getMethods();
+		final List<Method> deferred = new ArrayList<Method>();
+
+		// First pass : everything but methods relying on a getter.
+		for (final Method method : typeMethods) {
+			final Kind kind = XmlFieldMethod.getKind(method.getName(),
+					method.getParameterTypes().length);
+			if (kind == Kind.IS_NULL || kind == Kind.SIZE_OF) {
+				deferred.add(method);
+			} else {
+				register(new XmlFieldMethod(method, null));
+			}
+		}
+
+		// Second pass : isNullXxx() and sizeOfXxx() targeting getXxx().
+		for (final Method method : deferred) {
+			final XmlFieldMethod getter = noArgMethods.get("get"
+					+ method.getName().substring(6));
+			register(new XmlFieldMethod(method, getter));
+		}
+
+		final SortedMap<String, XmlFieldMethod> getters = new TreeMap<String, XmlFieldMethod>();
+		for (final Method method : typeMethods) {
+			final XmlFieldMethod m = methods.get(method);
+			if (m.getKind() == Kind.GET
+					&& method.isAnnotationPresent(FieldXPath.class)) {
+				getters.put(m.getName(), m);
+			}
+		}
+		fieldGetters = Collections.unmodifiableList(new ArrayList<XmlFieldMethod>(
+				getters.values()));
+	}
+
+	/**
+	 * Returns the getters annotated with @FieldXPath, sorted by name.
+	 */
+	public List<XmlFieldMethod> getFieldGetters() {
+		return fieldGetters;
+	}
+
+	/**
+	 * Returns the descriptor of a method.
+	 *
+	 * @param method
+	 *            a method which can be invoked on a proxy of this interface
+	 * @return descriptor of the method
+	 */
+	public XmlFieldMethod getMethod(final Method method) {
+		XmlFieldMethod m = methods.get(method);
+		if (m == null) {
+			m = new XmlFieldMethod(method, null);
+			XmlFieldMethod existing = methods.putIfAbsent(method, m);
+			if (existing != null) {
+				m = existing;
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Returns the descriptor of a method without parameters.
+	 *
+	 * @param name
+	 *            method name
+	 * @return descriptor or <code>null</code> if the interface has no such
+	 *         method
+	 */
+	public XmlFieldMethod getMethod(final String name) {
+		return noArgMethods.get(name);
+	}
+
+	/**
+	 * Returns the namespaces declared by the interface and its super
+	 * interfaces.
+	 *
+	 * @return namespaces, or <code>null</code> if there are none
+	 */
+	public NamespaceMap getNamespaces() {
+		return namespaces;
+	}
+
+	/**
+	 * Returns the value of the @ResourceXPath annotation of the interface.
+	 *
+	 * @return resource xpath, or <code>null</code>
+	 */
+	public String getResourceXPath() {
+		return resourceXPath;
+	}
+
+	public Class<?> getType() {
+		return type;
+	}
+
+	private void register(final XmlFieldMethod m) {
+		methods.put(m.getMethod(), m);
+		if (m.getMethod().getParameterTypes().length == 0
+				&& !noArgMethods.containsKey(m.getName())) {
+			noArgMethods.put(m.getName(), m);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.internal;
+
+/**
+ * Node of a backend which provides a getter cache per document.
+ * <p>
+ * Optional : the getter cache is disabled for nodes which do not implement
+ * this interface.
+ *
+ * @author Nicolas Richeton
+ */
+public interface XmlFieldCachedNode {
+
+	/**
+	 * Get the getter cache of the document of this node, shared by all the
+	 * nodes of the document.
+	 *
+	 * @return the cache, created on first call, or null if the node is null.
+	 */
+	XmlFieldDocumentCache getDocumentCache();
+}
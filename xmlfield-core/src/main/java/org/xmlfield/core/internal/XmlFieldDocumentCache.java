@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Getter values of a document, by node and field.
+ * <p>
+ * There is one cache per document, shared by all the objects bound to the
+ * document. Every change made through XmlField increments the modification
+ * count of the document and clears the cache, so cached values are always
+ * those the getters would return. Changes made directly on the underlying
+ * document are not detected.
+ *
+ * @author Nicolas Richeton
+ */
+public class XmlFieldDocumentCache {
+
+	/**
+	 * Node identity and field.
+	 */
+	private static final class Key {
+		private final Object field;
+		private final Object node;
+
+		Key(final Object node, final Object field) {
+			this.node = node;
+			this.field = field;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return node == other.node && field.equals(other.field);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(node) * 31 + field.hashCode();
+		}
+	}
+
+	/**
+	 * Returned by {@link #get(Object, Object)} when no value is cached.
+	 */
+	public static final Object NOT_CACHED = new Object();
+
+	/**
+	 * Stored instead of null values.
+	 */
+	private static final Object NULL = new Object();
+
+	private volatile int modificationCount = 0;
+
+	private final ConcurrentMap<Key, Object> values = new ConcurrentHashMap<Key, Object>();
+
+	/**
+	 * Returns a cached value.
+	 *
+	 * @param node
+	 *            underlying node
+	 * @param field
+	 *            field descriptor
+	 * @return the value, which may be <code>null</code>, or
+	 *         {@link #NOT_CACHED}.
+	 */
+	public Object get(final Object node, final Object field) {
+		final Object value = values.get(new Key(node, field));
+		if (value == null) {
+			return NOT_CACHED;
+		}
+		return value == NULL ? null : value;
+	}
+
+	/**
+	 * Returns the number of changes made to the document through XmlField.
+	 */
+	public int getModificationCount() {
+		return modificationCount;
+	}
+
+	/**
+	 * Records a change to the document : every value is removed.
+	 */
+	public void modified() {
+		modificationCount++;
+		values.clear();
+	}
+
+	/**
+	 * Stores a value, unless the document has been changed since the value
+	 * was read.
+	 *
+	 * @param node
+	 *            underlying node
+	 * @param field
+	 *            field descriptor
+	 * @param value
+	 *            value
+	 * @param readModificationCount
+	 *            modification count before the value was read.
+	 */
+	public void put(final Object node, final Object field, final Object value,
+			final int readModificationCount) {
+		if (readModificationCount != modificationCount) {
+			return;
+		}
+		values.put(new Key(node, field), value == null ? NULL : value);
+
+		// A change may have happened while storing.
+		if (readModificationCount != modificationCount) {
+			values.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of cached values.
+	 */
+	public int size() {
+		return values.size();
+	}
+}
@@ -25,12 +25,14 @@ import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xmlfield.core.api.XmlFieldMetrics;
 import org.xmlfield.core.api.XmlFieldNodeModifierFactory;
 import org.xmlfield.core.api.XmlFieldNodeParserFactory;
 import org.xmlfield.core.api.XmlFieldSelectorFactory;
 import org.xmlfield.core.impl.dom.DomNodeModifierFactory;
 import org.xmlfield.core.impl.dom.DomNodeParserFactory;
 import org.xmlfield.core.impl.dom.DomSelectorFactory;
+import org.xmlfield.core.impl.metrics.NoOpXmlFieldMetrics;
 
 /**
  * XmlFieldFactory finder instanciate an XmlFieldFactory instance. This finder lookup in the classpath a file named
@@ -66,6 +68,7 @@ public class XmlFieldFactoryFinder {
         defaultFactoriesClass.put(XmlFieldNodeParserFactory.class.getName(), DomNodeParserFactory.class);
         defaultFactoriesClass
                 .put(XmlFieldNodeModifierFactory.class.getName(), DomNodeModifierFactory.class);
+        defaultFactoriesClass.put(XmlFieldMetrics.class.getName(), NoOpXmlFieldMetrics.class);
     }
 
     private final ClassLoader classloader;
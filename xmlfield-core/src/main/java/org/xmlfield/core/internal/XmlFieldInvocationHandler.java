@@ -19,43 +19,29 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.commons.lang.StringUtils.isBlank;
 import static org.apache.commons.lang.StringUtils.substringAfterLast;
 import static org.apache.commons.lang.StringUtils.substringBeforeLast;
-import static org.xmlfield.core.internal.XmlFieldUtils.getExplicitCollections;
-import static org.xmlfield.core.internal.XmlFieldUtils.getFieldFormat;
-import static org.xmlfield.core.internal.XmlFieldUtils.getFieldXPath;
-import static org.xmlfield.core.internal.XmlFieldUtils.getFieldXPathType;
-import static org.xmlfield.core.internal.XmlFieldUtils.getResourceNamespaces;
 
-import java.lang.reflect.Field;
+import java.lang.reflect.Array;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.NotImplementedException;
 import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
-import org.joda.time.chrono.ISOChronology;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xmlfield.annotations.FieldXPath;
 import org.xmlfield.core.XmlField;
 import org.xmlfield.core.api.XmlFieldNode;
 import org.xmlfield.core.api.XmlFieldNodeList;
 import org.xmlfield.core.api.XmlFieldObject;
-import org.xmlfield.core.exception.XmlFieldTechnicalException;
 import org.xmlfield.core.exception.XmlFieldXPathException;
-
-import com.google.common.collect.MapMaker;
+import org.xmlfield.core.impl.metrics.XPathSampler;
 
 /**
  * l'objet {@link InvocationHandler} à utiliser sur les proxies chargés à la
@@ -67,82 +53,26 @@ import com.google.common.collect.MapMaker;
  */
 public class XmlFieldInvocationHandler implements InvocationHandler {
 
-	private static final Logger logger = LoggerFactory
-			.getLogger(XmlFieldInvocationHandler.class);
-
-	private static Map<String, Set<String>> methodnamesCache = new MapMaker()
-			.softValues().makeMap();
-
-	private static Map<String, NamespaceMap> namespaceCache = new MapMaker()
-			.softValues().makeMap();
-
 	/**
-	 * vérifie qu'un type réel est compatible avec un type déclaré.
+	 * Sampler and sampling context of the calling method, restored when a
+	 * sampled call ends.
 	 */
-	private static boolean isCompatible(final Class<?> realType,
-			final Class<?> declaredType) {
+	private static final class SampledCall {
+		final Object previous;
+		final XPathSampler sampler;
 
-		if (declaredType.isAssignableFrom(realType)) {
-
-			return true;
+		SampledCall(final XPathSampler sampler, final Object previous) {
+			this.sampler = sampler;
+			this.previous = previous;
 		}
-
-		if (declaredType.isPrimitive()) {
-
-			// TODO : voir si on peut faire mieux
-
-			final Field primitiveTypeField;
-
-			try {
-
-				primitiveTypeField = realType.getField("TYPE");
-
-			} catch (final NoSuchFieldException e) {
-
-				return false;
-			}
-
-			final int modifiers = primitiveTypeField.getModifiers();
-
-			if (!Modifier.isStatic(modifiers) || !Modifier.isFinal(modifiers)
-					|| !Modifier.isPublic(modifiers)) {
-
-				return false;
-			}
-
-			final Object primitiveType;
-
-			try {
-
-				primitiveType = primitiveTypeField.get(null);
-
-			} catch (final IllegalAccessException e) {
-
-				return false;
-			}
-
-			return declaredType.equals(primitiveType);
-		}
-
-		return false;
 	}
 
-	/**
-	 * vérifie qu'un nom de méthode est un nom de getter, en <tt>"getXxx()"</tt>
-	 * , <tt>"hasXxx()"</tt> ou <tt>"isXxx()"</tt>, mais pas
-	 * <tt>"isNullXxx()"</tt>.
-	 */
-	private static boolean isMethodNameGetter(final String methodName) {
-		return methodName.startsWith("get") || methodName.startsWith("has")
-				|| methodName.startsWith("is")
-				&& !methodName.startsWith("isNull");
-	}
-
-	private final Map<String, Object> cache = new HashMap<String, Object>();
+	private static final Logger logger = LoggerFactory
+			.getLogger(XmlFieldInvocationHandler.class);
 
-	private Set<String> methodNames = null;
+	private final XmlFieldBinding binding;
 
-	private NamespaceMap namespaces;
+	private final NamespaceMap namespaces;
 
 	private final XmlFieldNode node;
 
@@ -171,42 +101,9 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 		this.node = checkNotNull(node, "node");
 		this.type = checkNotNull(type, "type");
 
-		String typeName = type.getName();
-		// Load namespaces
-
-		namespaces = namespaceCache.get(typeName);
-		if (namespaces == null) {
-			this.namespaces = getResourceNamespaces(type);
-			if (namespaces != null) {
-				namespaceCache.put(typeName, namespaces);
-			} else {
-				namespaceCache.put(typeName, new NamespaceMap());
-			}
-		} else if (namespaces.isEmpty()) {
-			namespaces = null;
-		}
-
-		// Load method names
-		methodNames = methodnamesCache.get(typeName);
-		if (methodNames == null) {
-			methodNames = new TreeSet<String>();
-			for (final Method method : type.getMethods()) {
-
-				final String methodName = method.getName();
-
-				if (method.isAnnotationPresent(FieldXPath.class)
-						&& isMethodNameGetter(methodName)) {
-
-					final Class<?>[] paramTypes = method.getParameterTypes();
-
-					if (paramTypes == null || paramTypes.length == 0) {
-
-						methodNames.add(methodName);
-					}
-				}
-			}
-			methodnamesCache.put(typeName, methodNames);
-		}
+		// Load binding model
+		binding = XmlFieldBinding.getBinding(type);
+		namespaces = binding.getNamespaces();
 	}
 
 	/**
@@ -245,9 +142,7 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 
 		final XmlFieldNode node = addNode(root, xpath, type);
 
-		final XmlField binder = new XmlField();
-
-		return binder.nodeToObject(null, node, type);
+		return xmlField.nodeToObject(null, node, type);
 	}
 
 	/**
@@ -268,7 +163,8 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 			final String fieldXPath, final Class<?> type)
 			throws XmlFieldXPathException {
 
-		final NamespaceMap namespaces = getResourceNamespaces(type);
+		final NamespaceMap namespaces = XmlFieldBinding.getBinding(type)
+				.getNamespaces();
 		final XmlFieldNode parentNode = addParentNodes(root, fieldXPath, type);
 
 		// Create requested node.
@@ -295,7 +191,8 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 			final String fieldXPath, final Class<?> type)
 			throws XmlFieldXPathException {
 
-		final NamespaceMap namespaces = getResourceNamespaces(type);
+		final NamespaceMap namespaces = XmlFieldBinding.getBinding(type)
+				.getNamespaces();
 
 		final XmlFieldNode parentNode;
 
@@ -394,26 +291,24 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 	}
 
 	/**
-	 * Is there a value in cache associated to the specified invoked method?
-	 * 
-	 * @param methodName
-	 *            invoked method name.
-	 * @return <code>true</code> if a value exists, <code>false</code> otherwise
+	 * Returns the getter cache of the document, or null if the cache is
+	 * disabled.
 	 */
-	private boolean cacheExists(final String methodName) {
-		return cache.containsKey(getCacheKey(methodName));
+	private XmlFieldDocumentCache getCache() {
+		if (xmlField.isGetterCache() && node instanceof XmlFieldCachedNode) {
+			return ((XmlFieldCachedNode) node).getDocumentCache();
+		}
+		return null;
 	}
 
 	/**
 	 * invoque une méthode "<tt>addToXxx()</tt>".
 	 */
-	private Object doAddTo(final Object proxy, final Method method,
+	private Object doAddTo(final Object proxy, final XmlFieldMethod method,
 			final Class<?> type) throws Exception {
 		removeFromCache(method);
 
-		final String fieldXPath = getFieldXPath(method);
-
-		return add(proxy, fieldXPath, type);
+		return add(proxy, method.getFieldXPath(), type);
 	}
 
 	/**
@@ -427,15 +322,16 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 	 * </p>
 	 * 
 	 */
-	private Object doAddTo(final Object proxy, final Method method,
+	private Object doAddTo(final Object proxy, final XmlFieldMethod method,
 			final Object objectType) throws Exception {
 		removeFromCache(method);
 
-		final String fieldXPath = getFieldXPath(method);
+		final String fieldXPath = method.getFieldXPath();
 
 		final Class<?> objectClass = (Class<?>) objectType;
 
-		Map<String, Class<?>> explicitCollectionAssociations = getExplicitCollections(method);
+		Map<String, Class<?>> explicitCollectionAssociations = method
+				.getExplicitAssociations();
 
 		Set<String> keysAssociations = explicitCollectionAssociations.keySet();
 
@@ -477,16 +373,12 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 			return false;
 		}
 
-		for (final String methodName : methodNames) {
+		for (final XmlFieldMethod getter : binding.getFieldGetters()) {
 
-			if (!isMethodNameGetter(methodName)) {
-
-				continue;
-			}
+			final Object value = getMethodValue(getter);
 
-			final Object value = getMethodValue(methodName);
-
-			final Object obValue = obClass.getMethod(methodName).invoke(ob);
+			final Object obValue = obClass.getMethod(getter.getName()).invoke(
+					ob);
 
 			if (value == null && obValue == null) {
 				continue;
@@ -504,36 +396,56 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 		return true;
 	}
 
+	/**
+	 * Returns a copy of an array, other values are returned as is.
+	 */
+	private static Object copyArray(final Object value) {
+		if (value == null || !value.getClass().isArray()) {
+			return value;
+		}
+		final int length = Array.getLength(value);
+		final Object copy = Array.newInstance(value.getClass()
+				.getComponentType(), length);
+		System.arraycopy(value, 0, copy, 0, length);
+		return copy;
+	}
+
 	/**
 	 * invoque une méthode "<tt>getXxx()</tt>".
 	 * 
 	 * @throws XmlFieldXPathException
 	 */
-	private Object doGet(final String methodName) throws NoSuchMethodException,
-			XmlFieldXPathException {
-		if (xmlField.isGetterCache() && cacheExists(methodName)) {
-			return getFromCache(methodName);
+	private Object doGet(final XmlFieldMethod method)
+			throws XmlFieldXPathException {
+		final XmlFieldDocumentCache cache = getCache();
+		int modificationCount = 0;
+		if (cache != null) {
+			modificationCount = cache.getModificationCount();
+			final Object cached = cache.get(node.getNode(), method);
+			if (cached != XmlFieldDocumentCache.NOT_CACHED) {
+				return copyArray(cached);
+			}
 		}
 
-		final Object value = getMethodValue(methodName);
+		final Object value = getMethodValue(method);
 
 		if (value == null) {
-			setIntoCache(methodName, value);
+			setIntoCache(cache, method, value, modificationCount);
 			return null;
 		}
 
-		final Class<?> returnType = type.getMethod(methodName).getReturnType();
+		if (!method.getBoxedReturnType().isInstance(value)) {
 
-		final Class<? extends Object> valueClass = value.getClass();
-
-		if (!isCompatible(valueClass, returnType)) {
-
-			throw new RuntimeException("Expected: " + returnType.getName()
-					+ " on method " + methodName
-					+ "(), but stored value has type: " + valueClass.getName()
-					+ " for class: " + type.getName());
+			throw new RuntimeException("Expected: "
+					+ method.getReturnType().getName() + " on method "
+					+ method.getName() + "(), but stored value has type: "
+					+ value.getClass().getName() + " for class: "
+					+ type.getName());
+		}
+		if (cache != null) {
+			// Arrays are mutable : callers never get the cached array.
+			setIntoCache(cache, method, copyArray(value), modificationCount);
 		}
-		setIntoCache(methodName, value);
 		return value;
 	}
 
@@ -545,18 +457,13 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 	private Object doHashCode() throws XmlFieldXPathException {
 		int hash = 0;
 
-		for (final String methodName : methodNames) {
+		for (final XmlFieldMethod getter : binding.getFieldGetters()) {
 
-			if (!isMethodNameGetter(methodName)) {
-
-				continue;
-			}
-
-			final Object value = getMethodValue(methodName);
+			final Object value = getMethodValue(getter);
 
 			hash *= 5;
 
-			hash += methodName.hashCode();
+			hash += getter.getName().hashCode();
 
 			hash *= 3;
 
@@ -574,42 +481,45 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 	 * 
 	 * @throws XmlFieldXPathException
 	 */
-	private Object doIsNull(final String methodName)
+	private Object doIsNull(final XmlFieldMethod method)
 			throws XmlFieldXPathException {
-		if (xmlField.isGetterCache() && cacheExists(methodName)) {
-			return getFromCache(methodName);
+		final XmlFieldDocumentCache cache = getCache();
+		int modificationCount = 0;
+		if (cache != null) {
+			modificationCount = cache.getModificationCount();
+			final Object cached = cache.get(node.getNode(), method);
+			if (cached != XmlFieldDocumentCache.NOT_CACHED) {
+				return cached;
+			}
 		}
 
-		final Object rawValue = getMethodDomValue("get"
-				+ methodName.substring(6));
+		final Object rawValue = getMethodDomValue(method.getTarget());
 
 		final Boolean isNull;
 		if (rawValue instanceof XmlFieldNode) {
 			isNull = ((XmlFieldNode) rawValue).getNode() == null;
-			setIntoCache(methodName, isNull);
-			return isNull;
+		} else {
+			isNull = rawValue == null;
 		}
-		isNull = rawValue == null;
-		setIntoCache(methodName, isNull);
+		setIntoCache(cache, method, isNull, modificationCount);
 		return isNull;
 	}
 
 	/**
 	 * invoque une méthode "<tt>addToXxx()</tt>".
 	 */
-	private Object doNew(final Object proxy, final Method method,
+	private Object doNew(final Object proxy, final XmlFieldMethod method,
 			final Class<?> type) throws Exception {
 		removeFromCache(method);
 
-		final String fieldXPath = getFieldXPath(method);
-
-		return add(proxy, fieldXPath, type);
+		return add(proxy, method.getFieldXPath(), type);
 	}
 
 	/**
 	 * Remove object from xml.
 	 */
-	private Object doRemoveFrom(Method method, Object obj) throws Exception {
+	private Object doRemoveFrom(XmlFieldMethod method, Object obj)
+			throws Exception {
 		removeFromCache(method);
 
 		XmlFieldUtils.remove(obj, xmlField);
@@ -629,11 +539,11 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 	 * 
 	 * @throws XmlFieldXPathException
 	 */
-	private Object doSet(final Method method, final Object value)
+	private Object doSet(final XmlFieldMethod method, final Object value)
 			throws XmlFieldXPathException {
 		removeFromCache(method);
 
-		final String fieldXPath = getFieldXPath(method);
+		final String fieldXPath = method.getFieldXPath();
 
 		final XmlFieldNode contextNode;
 
@@ -752,16 +662,8 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 				}
 
 				if (currentValue instanceof DateTime) {
-
-					final String pattern = getFieldFormat(method);
-
-					DateTimeFormatter formatter = ISODateTimeFormat.dateTime();
-					if (pattern != null) {
-						formatter = DateTimeFormat.forPattern(pattern)
-								.withChronology(ISOChronology.getInstanceUTC());
-					}
 					final DateTime d = (DateTime) currentValue;
-					stringValue = d.toString(formatter);
+					stringValue = d.toString(method.getFormatter());
 				} else {
 					stringValue = currentValue.toString();
 				}
@@ -793,10 +695,15 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 	 * 
 	 * @throws XmlFieldXPathException
 	 */
-	private Object doSizeOf(final String methodName)
+	private Object doSizeOf(final XmlFieldMethod method)
 			throws XmlFieldXPathException {
 
-		final Object value = getMethodValue("get" + methodName.substring(6));
+		if (method.getTarget() == null) {
+
+			return 0;
+		}
+
+		final Object value = getMethodValue(method.getTarget());
 
 		if (value == null) {
 
@@ -822,14 +729,9 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 
 		boolean start = true;
 
-		for (final String methodName : methodNames) {
-
-			if (!isMethodNameGetter(methodName)) {
-
-				continue;
-			}
+		for (final XmlFieldMethod getter : binding.getFieldGetters()) {
 
-			final Object value = getMethodValue(methodName);
+			final Object value = getMethodValue(getter);
 
 			if (value == null) {
 
@@ -845,6 +747,7 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 				sb.append(", ");
 			}
 
+			final String methodName = getter.getName();
 			sb.append(Character.toLowerCase(methodName.charAt(3)));
 			sb.append(methodName.substring(4));
 			sb.append(": ");
@@ -862,65 +765,56 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 	}
 
 	/**
-	 * Builds cache key from method name.<br/>
-	 * Method name can be either getter, setters or others. Normalize all these
-	 * names.
+	 * Invokes a getter.
 	 * 
-	 * @param methodName
-	 *            method name
-	 * @return cache key
+	 * @param method
+	 *            getter descriptor
+	 * @return getter value
+	 * @throws XmlFieldXPathException
 	 */
-	private String getCacheKey(final String methodName) {
-		final String[] prefixes = new String[] { "get", "set", "addTo",
-				"removeFrom", "new", "is" };
-		for (String p : prefixes) {
-			if (methodName.startsWith(p)) {
-				return methodName.substring(p.length());
-			}
+	public Object get(final XmlFieldMethod method)
+			throws XmlFieldXPathException {
+		final SampledCall call = enterSample(method);
+		try {
+			return doGet(method);
+		} finally {
+			exitSample(call);
 		}
-		throw new XmlFieldTechnicalException("Methode non cacheable: "
-				+ methodName);
+	}
+
+	public XmlFieldBinding getBinding() {
+		return binding;
 	}
 
 	/**
-	 * Retrieves a value from cache.
+	 * Returns the handler of an object obtained from XmlField.
 	 * 
-	 * @param methodName
-	 *            invoked method name.
-	 * @return value contained in cache.
+	 * @param object
+	 *            proxy or generated accessor
+	 * @return the handler, or <code>null</code> if the object is not bound by
+	 *         XmlField.
 	 */
-	private Object getFromCache(final String methodName) {
-		return cache.get(getCacheKey(methodName));
-	}
-
-	private Method getMethodByName(final String methodName) {
-
-		for (final Method method : type.getMethods()) {
-
-			if (methodName.equals(method.getName())) {
-
-				final Class<?>[] paramTypes = method.getParameterTypes();
-
-				if (paramTypes == null || paramTypes.length == 0) {
-
-					return method;
-				}
+	public static XmlFieldInvocationHandler getHandler(final Object object) {
+		if (object instanceof XmlFieldAccessor) {
+			return ((XmlFieldAccessor) object).handler;
+		}
+		if (object != null && Proxy.isProxyClass(object.getClass())) {
+			final InvocationHandler handler = Proxy.getInvocationHandler(object);
+			if (handler instanceof XmlFieldInvocationHandler) {
+				return (XmlFieldInvocationHandler) handler;
 			}
 		}
-
 		return null;
 	}
 
-	private Object getMethodDomValue(final String methodName)
+	private Object getMethodDomValue(final XmlFieldMethod method)
 			throws XmlFieldXPathException {
 
-		Method method = getMethodByName(methodName);
-
 		if (method == null) {
 			return null;
 		}
 
-		final String fieldXPath = getFieldXPath(method);
+		final String fieldXPath = method.getFieldXPath();
 
 		if (fieldXPath == null) {
 			return null;
@@ -928,7 +822,7 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 
 		final Object value;
 
-		final Class<?> xpathType = getFieldXPathType(method);
+		final Class<?> xpathType = method.getXPathType();
 
 		if (Number.class.equals(xpathType)) {
 
@@ -970,83 +864,91 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 	 * récupère de façon dynamique la valeur d'un champ repéré par une
 	 * expression XPath, donnée en annotation d'une méthode.
 	 * 
-	 * @param methodName
-	 *            le nom de la méthode.
+	 * @param method
+	 *            la méthode.
 	 * @return la valeur du champ repéré par le XPath donné en annotation de la
 	 *         méthode, ou <tt>null</tt> si le champ n'existe pas.
 	 * @throws XmlFieldXPathException
 	 */
-	private Object getMethodValue(final String methodName)
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Object getMethodValue(final XmlFieldMethod method)
 			throws XmlFieldXPathException {
 
-		final Object domValue = getMethodDomValue(methodName);
-
-		final Method method = getMethodByName(methodName);
+		final String methodName = method.getName();
 
 		final Class<?> fieldType = method.getReturnType();
 
-		final String fieldXPath = getFieldXPath(method);
-
-		// research Explicit collections
-		final Map<String, Class<?>> explicitAssociations = getExplicitCollections(method);
+		final String fieldXPath = method.getFieldXPath();
 
 		final Object value;
 
-		if (String.class.equals(fieldType)) {
-
-			value = parseString(domValue);
-
-		} else if (int.class.equals(fieldType)) {
-
-			value = parseInt(methodName, domValue, fieldXPath);
-
-		} else if (long.class.equals(fieldType)) {
-
-			value = parseLong(methodName, domValue, fieldXPath);
-
-		} else if (short.class.equals(fieldType)) {
-
-			value = parseShort(methodName, domValue, fieldXPath);
-
-		} else if (float.class.equals(fieldType)) {
-
-			value = parseFloat(methodName, domValue, fieldXPath);
-
-		} else if (double.class.equals(fieldType)) {
-
-			value = parseDouble(methodName, domValue, fieldXPath);
-
-		} else if (boolean.class.equals(fieldType)) {
-
-			value = parseBoolean(methodName, domValue, fieldXPath);
-
-		} else if (Number.class.isAssignableFrom(fieldType)) {
-
-			value = parseNumber(methodName, fieldType, domValue, fieldXPath);
-
-		} else if (DateTime.class.equals(fieldType)) {
-
-			value = parseDateTime(methodName, domValue, method, fieldXPath);
-
-		} else if (fieldType.isArray() && explicitAssociations.size() != 0) {
+		switch (method.getValueType()) {
+		case STRING:
+			value = parseString(getMethodDomValue(method));
+			break;
+
+		case INT:
+			value = parseInt(methodName, getMethodDomValue(method), fieldXPath);
+			break;
+
+		case LONG:
+			value = parseLong(methodName, getMethodDomValue(method), fieldXPath);
+			break;
+
+		case SHORT:
+			value = parseShort(methodName, getMethodDomValue(method),
+					fieldXPath);
+			break;
+
+		case FLOAT:
+			value = parseFloat(methodName, getMethodDomValue(method),
+					fieldXPath);
+			break;
+
+		case DOUBLE:
+			value = parseDouble(methodName, getMethodDomValue(method),
+					fieldXPath);
+			break;
+
+		case BOOLEAN:
+			value = parseBoolean(methodName, getMethodDomValue(method),
+					fieldXPath);
+			break;
+
+		case NUMBER:
+			value = parseNumber(methodName, fieldType,
+					getMethodDomValue(method), fieldXPath);
+			break;
+
+		case DATE_TIME:
+			value = parseDateTime(methodName, getMethodDomValue(method),
+					method, fieldXPath);
+			break;
+
+		case EXPLICIT_ARRAY:
 			// case of an explicit collection
 			value = xmlField.nodeToExplicitArray(fieldXPath, node,
-					explicitAssociations);
+					method.getExplicitAssociations());
+			break;
 
-		} else if (fieldType.isArray()) {
+		case ARRAY:
 			// cas nominal
 			value = xmlField.nodeToArray(fieldXPath, node,
 					fieldType.getComponentType());
+			break;
 
-		} else if (fieldType.isEnum()) {
-			value = parseEnum(domValue, (Class<? extends Enum>) fieldType);
-		} else if (isXmlFieldInterface(fieldType)) {
-			value = xmlField.nodeToObject(fieldXPath, node, fieldType);
+		case ENUM:
+			value = parseEnum(getMethodDomValue(method),
+					(Class<? extends Enum>) fieldType);
+			break;
 
-		} else {
+		case OBJECT:
+			value = xmlField.nodeToObject(fieldXPath, node, fieldType);
+			break;
 
+		default:
 			throw new NotImplementedException("fieldType: " + type
-					+ ", method: " + method);
+					+ ", method: " + method.getMethod());
 		}
 
 		return value;
@@ -1056,70 +958,107 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 		return node;
 	}
 
+	public Class<?> getType() {
+		return type;
+	}
+
 	@Override
 	public Object invoke(final Object proxy, final Method method,
 			final Object[] args) throws Throwable {
+		return invoke(proxy, binding.getMethod(method), args);
+	}
 
-		final String methodName = method.getName();
+	/**
+	 * Invokes a method on the bound node. The call is sampled if the
+	 * {@link XPathSampler} is enabled.
+	 * 
+	 * @param proxy
+	 *            the object the method was invoked on
+	 * @param m
+	 *            method descriptor
+	 * @param args
+	 *            method arguments
+	 * @return method result
+	 * @throws Throwable
+	 */
+	public Object invoke(final Object proxy, final XmlFieldMethod m,
+			final Object[] args) throws Throwable {
+		final SampledCall call = enterSample(m);
+		try {
+			return doInvoke(proxy, m, args);
+		} finally {
+			exitSample(call);
+		}
+	}
+
+	/**
+	 * Starts sampling a call of get, set or invoke, if the
+	 * {@link XPathSampler} is enabled and selects this call.
+	 * 
+	 * @return the sampled call, to give to {@link #exitSample(SampledCall)},
+	 *         or <code>null</code>.
+	 */
+	private SampledCall enterSample(final XmlFieldMethod m) {
+		final XPathSampler sampler = XPathSampler.getInstance();
+		if (sampler == null || !sampler.sample()) {
+			return null;
+		}
+		return new SampledCall(sampler, sampler.enter(type, m.getName()));
+	}
 
-		final boolean noArg = args == null || args.length == 0;
+	private static void exitSample(final SampledCall call) {
+		if (call != null) {
+			call.sampler.exit(call.previous);
+		}
+	}
 
-		if ("toString".equals(methodName) && noArg) {
+	private Object doInvoke(final Object proxy, final XmlFieldMethod m,
+			final Object[] args) throws Throwable {
 
+		switch (m.getKind()) {
+		case TO_STRING:
 			return doToString();
 
-		} else if ("hashCode".equals(methodName) && noArg) {
-
+		case HASH_CODE:
 			return doHashCode();
 
-		} else if ("equals".equals(methodName) && !noArg && args.length == 1) {
-
+		case EQUALS:
 			return doEquals(proxy, args[0]);
 
-		} else if ("toNode".equals(methodName) && noArg) {
-
+		case TO_NODE:
 			return node;
 
-		} else if (isMethodNameGetter(methodName) && noArg) {
+		case GET:
+			return doGet(m);
 
-			return doGet(methodName);
+		case SET:
+			return doSet(m, args[0]);
 
-		} else if (methodName.startsWith("set") && !noArg && args.length == 1) {
+		case ADD_TO:
+			return doAddTo(proxy, m, m.getReturnType());
 
-			return doSet(method, args[0]);
+		case ADD_TO_TYPE:
+			return doAddTo(proxy, m, args[0]);
 
-		} else if (methodName.startsWith("addTo") && noArg) {
-
-			return doAddTo(proxy, method, method.getReturnType());
-
-		} else if (methodName.startsWith("addTo") && !noArg) {
-
-			return doAddTo(proxy, method, args[0]);
-
-		} else if (methodName.startsWith("new") && noArg) {
-			Object presentObject = doGet(methodName);
+		case NEW:
+			Object presentObject = doGet(m);
 			if (presentObject != null) {
 				return presentObject;
 			}
-			return doNew(proxy, method, method.getReturnType());
-
-		} else if (methodName.startsWith("isNull") && noArg) {
+			return doNew(proxy, m, m.getReturnType());
 
-			return doIsNull(methodName);
+		case IS_NULL:
+			return doIsNull(m);
 
-		} else if (methodName.startsWith("sizeOf") && noArg) {
+		case SIZE_OF:
+			return doSizeOf(m);
 
-			return doSizeOf(methodName);
-		} else if (methodName.startsWith("removeFrom") && args.length == 1) {
+		case REMOVE_FROM:
+			return doRemoveFrom(m, args[0]);
 
-			return doRemoveFrom(method, args[0]);
+		default:
+			return null;
 		}
-
-		return null;
-	}
-
-	private boolean isXmlFieldInterface(final Class<?> fieldType) {
-		return XmlFieldUtils.getResourceXPath(fieldType) != null;
 	}
 
 	private boolean parseBoolean(final String methodName,
@@ -1144,7 +1083,8 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 	}
 
 	private DateTime parseDateTime(final String methodName,
-			final Object domValue, final Method method, final String fieldXPath) {
+			final Object domValue, final XmlFieldMethod method,
+			final String fieldXPath) {
 
 		final XmlFieldNode n = (XmlFieldNode) domValue;
 
@@ -1152,17 +1092,9 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 
 			final String textContent = n.getTextContent();
 
-			final String pattern = getFieldFormat(method);
-
-			DateTimeFormatter formatter = ISODateTimeFormat.dateTime();
-			if (pattern != null) {
-				formatter = DateTimeFormat.forPattern(pattern).withChronology(
-						ISOChronology.getInstanceUTC());
-			}
-
 			try {
 
-				return formatter.parseDateTime(textContent);
+				return method.getFormatter().parseDateTime(textContent);
 
 			} catch (final RuntimeException e) {
 
@@ -1388,35 +1320,55 @@ public class XmlFieldInvocationHandler implements InvocationHandler {
 	}
 
 	/**
-	 * Removes any value contained in cache for the specified invoked method.
+	 * Records a change made by the invoked method : cached values of the
+	 * document are removed.
 	 * 
 	 * @param method
 	 *            invoked method.
 	 */
-	private void removeFromCache(final Method method) {
-		removeFromCache(method.getName());
+	private void removeFromCache(final XmlFieldMethod method) {
+		final XmlFieldDocumentCache cache = getCache();
+		if (cache != null) {
+			cache.modified();
+		}
 	}
 
 	/**
-	 * Removes any value contained in cache for the specified invoked method
-	 * name.
+	 * Invokes a setter.
 	 * 
-	 * @param methodName
-	 *            invoked method name.
+	 * @param method
+	 *            setter descriptor
+	 * @param value
+	 *            new value
+	 * @throws XmlFieldXPathException
 	 */
-	private void removeFromCache(final String methodName) {
-		cache.remove(getCacheKey(methodName));
+	public void set(final XmlFieldMethod method, final Object value)
+			throws XmlFieldXPathException {
+		final SampledCall call = enterSample(method);
+		try {
+			doSet(method, value);
+		} finally {
+			exitSample(call);
+		}
 	}
 
 	/**
 	 * Put a value into cache.
 	 * 
-	 * @param methodName
-	 *            method name
+	 * @param cache
+	 *            document cache, or null if disabled
+	 * @param method
+	 *            invoked method
 	 * @param value
 	 *            value to put
+	 * @param modificationCount
+	 *            modification count of the document before reading the value
 	 */
-	private void setIntoCache(final String methodName, final Object value) {
-		cache.put(getCacheKey(methodName), value);
+	private void setIntoCache(final XmlFieldDocumentCache cache,
+			final XmlFieldMethod method, final Object value,
+			final int modificationCount) {
+		if (cache != null) {
+			cache.put(node.getNode(), method, value, modificationCount);
+		}
 	}
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.internal;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.lang.ClassUtils;
+import org.joda.time.DateTime;
+import org.joda.time.chrono.ISOChronology;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Precomputed description of a method of an XmlField interface.
+ * <p>
+ * Everything which only depends on the method declaration (kind of operation,
+ * xpath, xpath type, format and explicit associations) is resolved once when
+ * the {@link XmlFieldBinding} of the interface is built, so proxies do not
+ * have to use reflection or read annotations on each call.
+ * <p>
+ * Instances are immutable and thread safe.
+ *
+ * @author Nicolas Richeton
+ */
+public class XmlFieldMethod {
+
+	/**
+	 * Operations supported by XmlField proxies.
+	 */
+	public enum Kind {
+		ADD_TO, ADD_TO_TYPE, EQUALS, GET, HASH_CODE, IS_NULL, NEW, REMOVE_FROM, SET, SIZE_OF, TO_NODE, TO_STRING, UNKNOWN
+	}
+
+	/**
+	 * Conversions applied to the xpath result of a getter, depending on its
+	 * return type.
+	 */
+	public enum ValueType {
+		ARRAY, BOOLEAN, DATE_TIME, DOUBLE, ENUM, EXPLICIT_ARRAY, FLOAT, INT, LONG, NUMBER, OBJECT, SHORT, STRING, UNSUPPORTED
+	}
+
+	/**
+	 * Prefixes used to compute the cache key of a method.
+	 */
+	static Kind getKind(final String methodName, final int paramCount) {
+		final boolean noArg = paramCount == 0;
+
+		if ("toString".equals(methodName) && noArg) {
+			return Kind.TO_STRING;
+		} else if ("hashCode".equals(methodName) && noArg) {
+			return Kind.HASH_CODE;
+		} else if ("equals".equals(methodName) && paramCount == 1) {
+			return Kind.EQUALS;
+		} else if ("toNode".equals(methodName) && noArg) {
+			return Kind.TO_NODE;
+		} else if (isMethodNameGetter(methodName) && noArg) {
+			return Kind.GET;
+		} else if (methodName.startsWith("set") && paramCount == 1) {
+			return Kind.SET;
+		} else if (methodName.startsWith("addTo") && noArg) {
+			return Kind.ADD_TO;
+		} else if (methodName.startsWith("addTo")) {
+			return Kind.ADD_TO_TYPE;
+		} else if (methodName.startsWith("new") && noArg) {
+			return Kind.NEW;
+		} else if (methodName.startsWith("isNull") && noArg) {
+			return Kind.IS_NULL;
+		} else if (methodName.startsWith("sizeOf") && noArg) {
+			return Kind.SIZE_OF;
+		} else if (methodName.startsWith("removeFrom") && paramCount == 1) {
+			return Kind.REMOVE_FROM;
+		}
+		return Kind.UNKNOWN;
+	}
+
+	private static ValueType getValueType(final Class<?> fieldType,
+			final Map<String, Class<?>> explicitAssociations) {
+		if (String.class.equals(fieldType)) {
+			return ValueType.STRING;
+		} else if (int.class.equals(fieldType)) {
+			return ValueType.INT;
+		} else if (long.class.equals(fieldType)) {
+			return ValueType.LONG;
+		} else if (short.class.equals(fieldType)) {
+			return ValueType.SHORT;
+		} else if (float.class.equals(fieldType)) {
+			return ValueType.FLOAT;
+		} else if (double.class.equals(fieldType)) {
+			return ValueType.DOUBLE;
+		} else if (boolean.class.equals(fieldType)) {
+			return ValueType.BOOLEAN;
+		} else if (Number.class.isAssignableFrom(fieldType)) {
+			return ValueType.NUMBER;
+		} else if (DateTime.class.equals(fieldType)) {
+			return ValueType.DATE_TIME;
+		} else if (fieldType.isArray() && !explicitAssociations.isEmpty()) {
+			return ValueType.EXPLICIT_ARRAY;
+		} else if (fieldType.isArray()) {
+			return ValueType.ARRAY;
+		} else if (fieldType.isEnum()) {
+			return ValueType.ENUM;
+		} else if (XmlFieldUtils.getResourceXPath(fieldType) != null) {
+			return ValueType.OBJECT;
+		}
+		return ValueType.UNSUPPORTED;
+	}
+
+	/**
+	 * Checks if a method name is a getter name : <tt>"getXxx()"</tt>,
+	 * <tt>"hasXxx()"</tt> or <tt>"isXxx()"</tt>, but not
+	 * <tt>"isNullXxx()"</tt>.
+	 */
+	static boolean isMethodNameGetter(final String methodName) {
+		return methodName.startsWith("get") || methodName.startsWith("has")
+				|| methodName.startsWith("is")
+				&& !methodName.startsWith("isNull");
+	}
+
+	private final Class<?> boxedReturnType;
+	private final Map<String, Class<?>> explicitAssociations;
+	private final String fieldXPath;
+	private final String format;
+	private final DateTimeFormatter formatter;
+	private final Kind kind;
+	private final Method method;
+	private final String name;
+	private final Class<?> returnType;
+	private final XmlFieldMethod target;
+	private final ValueType valueType;
+	private final Class<?> xpathType;
+
+	XmlFieldMethod(final Method method, final XmlFieldMethod target) {
+		this.method = method;
+		this.target = target;
+		this.name = method.getName();
+		this.kind = getKind(name, method.getParameterTypes().length);
+		this.returnType = method.getReturnType();
+		this.boxedReturnType = returnType.isPrimitive() ? ClassUtils
+				.primitiveToWrapper(returnType) : returnType;
+
+		this.fieldXPath = XmlFieldUtils.getFieldXPath(method);
+		this.xpathType = XmlFieldUtils.getFieldXPathType(method);
+		this.format = XmlFieldUtils.getFieldFormat(method);
+		if (format == null) {
+			this.formatter = ISODateTimeFormat.dateTime();
+		} else {
+			this.formatter = DateTimeFormat.forPattern(format).withChronology(
+					ISOChronology.getInstanceUTC());
+		}
+
+		Map<String, Class<?>> associations = XmlFieldUtils
+				.getExplicitCollections(method);
+		if (associations == null) {
+			associations = Collections.emptyMap();
+		}
+		this.explicitAssociations = Collections.unmodifiableMap(associations);
+		this.valueType = getValueType(returnType, explicitAssociations);
+	}
+
+	/**
+	 * Returns the return type of the method, primitive types being replaced by
+	 * their wrapper class.
+	 */
+	public Class<?> getBoxedReturnType() {
+		return boxedReturnType;
+	}
+
+	/**
+	 * Returns the associations declared by @ExplicitCollection on this method
+	 * or its getter. Never <code>null</code>.
+	 */
+	public Map<String, Class<?>> getExplicitAssociations() {
+		return explicitAssociations;
+	}
+
+	/**
+	 * Returns the xpath declared by @FieldXPath on this method or its getter.
+	 */
+	public String getFieldXPath() {
+		return fieldXPath;
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * Returns the formatter used for {@link DateTime} values.
+	 */
+	public DateTimeFormatter getFormatter() {
+		return formatter;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Class<?> getReturnType() {
+		return returnType;
+	}
+
+	/**
+	 * Returns the getter used by <tt>isNullXxx()</tt> and <tt>sizeOfXxx()</tt>
+	 * methods, or <code>null</code> if there is no such getter.
+	 */
+	public XmlFieldMethod getTarget() {
+		return target;
+	}
+
+	public ValueType getValueType() {
+		return valueType;
+	}
+
+	public Class<?> getXPathType() {
+		return xpathType;
+	}
+
+	@Override
+	public String toString() {
+		return kind + " " + method;
+	}
+}
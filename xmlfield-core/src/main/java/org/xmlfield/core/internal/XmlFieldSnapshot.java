@@ -0,0 +1,301 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.core.internal;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.internal.XmlFieldMethod.Kind;
+
+/**
+ * Read only implementation of an xml field interface, with values read once
+ * from a bound object.
+ * <p>
+ * Every <tt>getXxx()</tt> method annotated with FieldXPath, and every
+ * <tt>isNullXxx()</tt> and <tt>sizeOfXxx()</tt> method, is evaluated when the
+ * snapshot is created. Nested objects and arrays of objects are copied as
+ * snapshots too. A snapshot does not reference the xml document.
+ * <p>
+ * Other methods throw UnsupportedOperationException. Snapshots are immutable :
+ * arrays are copied each time they are returned.
+ *
+ * @author Nicolas Richeton
+ */
+public class XmlFieldSnapshot implements InvocationHandler {
+
+	/**
+	 * Copies a tree of bound objects. Objects bound to the same node are
+	 * copied once, which keeps cycles.
+	 */
+	private static final class Builder {
+
+		private final ClassLoader classLoader;
+
+		/**
+		 * Snapshots by node, then by type.
+		 */
+		private final Map<Object, Map<Class<?>, Object>> snapshots = new IdentityHashMap<Object, Map<Class<?>, Object>>();
+
+		Builder(final ClassLoader classLoader) {
+			this.classLoader = classLoader;
+		}
+
+		private Object copyValue(final XmlFieldMethod method,
+				final Object value) {
+			if (value == null) {
+				return null;
+			}
+
+			switch (method.getValueType()) {
+			case OBJECT:
+				return snapshot(value, method.getReturnType());
+
+			case EXPLICIT_ARRAY:
+				final Object[] objects = ((Object[]) value).clone();
+				for (int i = 0; i < objects.length; i++) {
+					objects[i] = snapshot(objects[i],
+							getExplicitType(method, objects[i]));
+				}
+				return objects;
+
+			case ARRAY:
+				final Class<?> componentType = method.getReturnType()
+						.getComponentType();
+				if (XmlFieldUtils.getResourceXPath(componentType) == null) {
+					return value;
+				}
+				final Object[] items = (Object[]) Array.newInstance(
+						componentType, Array.getLength(value));
+				for (int i = 0; i < items.length; i++) {
+					items[i] = snapshot(Array.get(value, i), componentType);
+				}
+				return items;
+
+			default:
+				return value;
+			}
+		}
+
+		private Class<?> getExplicitType(final XmlFieldMethod method,
+				final Object object) {
+			for (final Class<?> type : method.getExplicitAssociations()
+					.values()) {
+				if (type.isInstance(object)) {
+					return type;
+				}
+			}
+			throw new IllegalArgumentException("No explicit type for "
+					+ object.getClass().getName() + " in " + method.getName());
+		}
+
+		Object snapshot(final Object object, final Class<?> type) {
+			if (object == null) {
+				return null;
+			}
+			final XmlFieldNode node = XmlFieldUtils.getXmlFieldNode(object);
+			if (node == null) {
+				throw new IllegalArgumentException("Not a bound object : "
+						+ object.getClass().getName());
+			}
+
+			Map<Class<?>, Object> byType = snapshots.get(node.getNode());
+			if (byType == null) {
+				byType = new HashMap<Class<?>, Object>(2);
+				snapshots.put(node.getNode(), byType);
+			}
+			Object snapshot = byType.get(type);
+			if (snapshot != null) {
+				return snapshot;
+			}
+
+			final XmlFieldSnapshot handler = new XmlFieldSnapshot(type);
+			snapshot = Proxy.newProxyInstance(classLoader,
+					new Class<?>[] { type }, handler);
+			// Register before reading values, for cycles.
+			byType.put(type, snapshot);
+
+			final XmlFieldBinding binding = XmlFieldBinding.getBinding(type);
+			for (final Method method : type.getMethods()) {
+				final XmlFieldMethod m = binding.getMethod(method);
+				final boolean field = m.getKind() == Kind.GET
+						&& m.getFieldXPath() != null;
+				if (field || m.getKind() == Kind.IS_NULL
+						|| m.getKind() == Kind.SIZE_OF) {
+					handler.values.put(method.getName(),
+							copyValue(m, invoke(object, method)));
+				}
+			}
+			return snapshot;
+		}
+	}
+
+	private static Object copyArray(final Object array) {
+		final int length = Array.getLength(array);
+		final Object copy = Array.newInstance(array.getClass()
+				.getComponentType(), length);
+		System.arraycopy(array, 0, copy, 0, length);
+		return copy;
+	}
+
+	private static Object invoke(final Object object, final Method method) {
+		try {
+			return method.invoke(object);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Creates a snapshot of a bound object.
+	 *
+	 * @param classLoader
+	 *            class loader used to create proxies
+	 * @param object
+	 *            object obtained from XmlField
+	 * @param type
+	 *            interface of the snapshot
+	 * @return the snapshot, or <code>null</code> if object is
+	 *         <code>null</code>
+	 */
+	public static <T> T newSnapshot(final ClassLoader classLoader,
+			final Object object, final Class<T> type) {
+		return type.cast(new Builder(classLoader).snapshot(object, type));
+	}
+
+	private final XmlFieldBinding binding;
+
+	private final Class<?> type;
+
+	/**
+	 * Values by method name. Only filled by the builder.
+	 */
+	private final Map<String, Object> values = new HashMap<String, Object>();
+
+	private XmlFieldSnapshot(final Class<?> type) {
+		this.type = type;
+		this.binding = XmlFieldBinding.getBinding(type);
+	}
+
+	private boolean doEquals(final Object ob) {
+		if (ob == null || !Proxy.isProxyClass(ob.getClass())) {
+			return false;
+		}
+		final InvocationHandler handler = Proxy.getInvocationHandler(ob);
+		if (!(handler instanceof XmlFieldSnapshot)
+				|| !type.equals(((XmlFieldSnapshot) handler).type)) {
+			return false;
+		}
+
+		final Map<String, Object> obValues = ((XmlFieldSnapshot) handler).values;
+		for (final XmlFieldMethod getter : binding.getFieldGetters()) {
+			if (!Arrays.deepEquals(new Object[] { values.get(getter.getName()) },
+					new Object[] { obValues.get(getter.getName()) })) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int doHashCode() {
+		int hash = 0;
+		for (final XmlFieldMethod getter : binding.getFieldGetters()) {
+			final Object value = values.get(getter.getName());
+			hash *= 5;
+			hash += getter.getName().hashCode();
+			hash *= 3;
+			if (value != null) {
+				hash += Arrays.deepHashCode(new Object[] { value });
+			}
+		}
+		return hash;
+	}
+
+	private String doToString() {
+		final StringBuilder sb = new StringBuilder("{");
+		boolean start = true;
+		for (final XmlFieldMethod getter : binding.getFieldGetters()) {
+			final Object value = values.get(getter.getName());
+			if (value == null) {
+				continue;
+			}
+			if (start) {
+				start = false;
+			} else {
+				sb.append(", ");
+			}
+
+			final String methodName = getter.getName();
+			sb.append(Character.toLowerCase(methodName.charAt(3)));
+			sb.append(methodName.substring(4));
+			sb.append(": ");
+
+			if (value.getClass().isArray()) {
+				sb.append(ArrayUtils.toString(value));
+			} else {
+				sb.append(value.toString());
+			}
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+
+	@Override
+	public Object invoke(final Object proxy, final Method method,
+			final Object[] args) {
+		final XmlFieldMethod m = binding.getMethod(method);
+		switch (m.getKind()) {
+		case TO_STRING:
+			return doToString();
+
+		case HASH_CODE:
+			return doHashCode();
+
+		case EQUALS:
+			return doEquals(args[0]);
+
+		case GET:
+		case IS_NULL:
+		case SIZE_OF:
+			if (values.containsKey(method.getName())) {
+				final Object value = values.get(method.getName());
+				if (value != null && value.getClass().isArray()) {
+					return copyArray(value);
+				}
+				return value;
+			}
+			break;
+
+		default:
+			break;
+		}
+		throw new UnsupportedOperationException(method.getName()
+				+ "() is not supported by snapshots of " + type.getName());
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.transform.OutputKeys;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlfield.annotations.FieldXPath;
+import org.xmlfield.annotations.ResourceXPath;
+
+/**
+ * Tests on {@link XmlFieldPool}
+ * 
+ * @author Nicolas Richeton <nicolas.richeton@capgemini.com>
+ */
+public class XmlFieldPoolTest {
+
+	@ResourceXPath("/Item")
+	public interface Item {
+		@FieldXPath("Name")
+		String getName();
+	}
+
+	@Test
+	public void testBound() throws Exception {
+		XmlFieldPool pool = new XmlFieldPool(2);
+
+		XmlFieldPool.Lease lease1 = pool.lease();
+		XmlFieldPool.Lease lease2 = pool.lease();
+		Assert.assertFalse(lease1.getXmlField() == lease2.getXmlField());
+		Assert.assertEquals(2, pool.getLeased());
+
+		// Pool is exhausted
+		Assert.assertNull(pool.lease(10, TimeUnit.MILLISECONDS));
+
+		// Closing twice returns the instance only once
+		lease1.close();
+		lease1.close();
+		Assert.assertEquals(1, pool.getLeased());
+		Assert.assertEquals(1, pool.getIdle());
+
+		XmlFieldPool.Lease lease3 = pool.lease(10, TimeUnit.MILLISECONDS);
+		Assert.assertNotNull(lease3);
+		Assert.assertNull(pool.lease(10, TimeUnit.MILLISECONDS));
+		lease2.close();
+		lease3.close();
+		Assert.assertEquals(2, pool.getCreated());
+		Assert.assertEquals(0, pool.getLeased());
+
+		pool.clear();
+		Assert.assertEquals(0, pool.getCreated());
+		Assert.assertEquals(0, pool.getIdle());
+	}
+
+	@Test
+	public void testClosedLease() throws Exception {
+		XmlFieldPool pool = new XmlFieldPool(1);
+		XmlFieldPool.Lease lease = pool.lease();
+		lease.close();
+		try {
+			lease.getXmlField();
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testConcurrentLeases() throws Exception {
+		final XmlFieldPool pool = new XmlFieldPool(4);
+		final Set<XmlField> instances = Collections
+				.synchronizedSet(Collections
+						.newSetFromMap(new IdentityHashMap<XmlField, Boolean>()));
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 200; i++) {
+			final String name = "item" + i;
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						XmlFieldPool.Lease lease = pool.lease();
+						try {
+							XmlField xf = lease.getXmlField();
+							instances.add(xf);
+							Item item = xf.xmlToObject("<Item><Name>" + name
+									+ "</Name></Item>", Item.class);
+							Assert.assertEquals(name, item.getName());
+						} finally {
+							lease.close();
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertNull(failure.get());
+		Assert.assertTrue(instances.size() <= 4);
+		Assert.assertEquals(instances.size(), pool.getCreated());
+		Assert.assertEquals(0, pool.getLeased());
+	}
+
+	@Test
+	public void testFactoryConfiguration() throws Exception {
+		XmlFieldFactory factory = new XmlFieldFactory();
+		Map<String, String> conf = new HashMap<String, String>();
+		conf.put(OutputKeys.INDENT, "true");
+		factory.setParserConfiguration(conf);
+		factory.setGetterCache(true);
+
+		XmlFieldPool pool = new XmlFieldPool(factory, 1);
+		XmlFieldPool.Lease lease = pool.lease();
+		XmlField xf = lease.getXmlField();
+		Assert.assertEquals("true",
+				xf.getParserConfiguration().get(OutputKeys.INDENT));
+		Assert.assertTrue(xf.isGetterCache());
+		lease.close();
+
+		// The same instance is reused
+		lease = pool.lease();
+		Assert.assertTrue(xf == lease.getXmlField());
+		lease.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testThreadLocalFactory() throws Exception {
+		new XmlFieldPool(new XmlFieldFactory(true), 1);
+	}
+}
@@ -3,9 +3,14 @@ package org.xmlfield.core.impl.dom;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactoryConfigurationError;
@@ -15,6 +20,7 @@ import org.w3c.dom.Node;
 import org.xmlfield.core.XmlField;
 import org.xmlfield.core.api.XmlFieldNode;
 import org.xmlfield.core.api.XmlFieldNodeParser;
+import org.xmlfield.core.exception.XmlFieldParsingException;
 import org.xmlfield.core.test.Catalog;
 
 public class XmlFieldDomNodeParserTest {
@@ -42,6 +48,73 @@ public class XmlFieldDomNodeParserTest {
 		assertThat(parser.nodeToXml(node), is(xml));
 	}
 
+	@Test
+	public void testNodeToBytes() throws Exception {
+		String xml = "<Catalog><Cd><Title>Tonight \u00e9</Title></Cd></Catalog>";
+		byte[] expected = xml.getBytes("UTF-8");
+		XmlFieldNode node = parser.xmlToNode(xml);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		parser.nodeToXml(node, out);
+		assertThat(out.toByteArray(), is(expected));
+
+		out = new ByteArrayOutputStream();
+		parser.nodeToXml(node, Channels.newChannel(out));
+		assertThat(out.toByteArray(), is(expected));
+
+		ByteBuffer buffer = ByteBuffer.allocate(100);
+		buffer.put((byte) 1);
+		parser.nodeToXml(node, buffer);
+		assertThat(buffer.position(), is(expected.length + 1));
+		buffer.flip();
+		buffer.get();
+		byte[] actual = new byte[buffer.remaining()];
+		buffer.get(actual);
+		assertThat(actual, is(expected));
+
+		try {
+			parser.nodeToXml(node, ByteBuffer.allocate(10));
+			fail("No exception thrown");
+		} catch (XmlFieldParsingException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testBufferTooSmall() throws Exception {
+		StringBuilder xml = new StringBuilder("<Catalog>");
+		for (int i = 0; i < 1000; i++) {
+			xml.append("<Cd><Title>Title ").append(i).append("</Title></Cd>");
+		}
+		xml.append("</Catalog>");
+
+		PrintStream err = System.err;
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(errors));
+		try {
+			// Pooled parsers reuse reset transformers.
+			XmlFieldNodeParser pooled = new PooledDomNodeParser();
+			for (XmlFieldNodeParser p : new XmlFieldNodeParser[] { parser,
+					pooled, pooled }) {
+				for (String s : new String[] { "<Catalog/>", xml.toString() }) {
+					XmlFieldNode node = p.xmlToNode(s);
+					ByteBuffer buffer = ByteBuffer.allocate(s.length() - 2);
+					buffer.position(3);
+					try {
+						p.nodeToXml(node, buffer);
+						fail("No exception thrown");
+					} catch (XmlFieldParsingException e) {
+						// Expected
+					}
+					assertThat(buffer.position(), is(3));
+				}
+			}
+		} finally {
+			System.setErr(err);
+		}
+		assertThat(errors.size(), is(0));
+	}
+
 	@Test
 	public void testParserWithObject() throws Exception {
 		String xml = "<Catalog><Cd> <Title>Empire Burlesque</Title> <Artist>Bob Dylan</Artist>  <Country>USA</Country>  <Company>Columbia</Company> <Price>10.90</Price>    <Year>1985</Year></Cd><Cd>  <Title>Hide your heart</Title>  <Artist>Bonnie Tyler</Artist>   <Country>UK</Country>   <Company>CBS Records</Company>  <Price>9.90</Price> <Year>1988</Year></Cd><Cd>  <Title>Greatest Hits</Title>    <Artist>Dolly Parton</Artist>   <Country>USA</Country>  <Company>RCA</Company>  <Price>9.90</Price> <Year>1982</Year></Cd><Cd>  <Title>Still got the blues</Title>  <Artist>Gary Moore</Artist> <Country>UK</Country>   <Company>Virgin records</Company>   <Price>10.20</Price>    <Year>1990</Year></Cd><Cd>  <Title>Eros</Title> <Artist>Eros Ramazzotti</Artist>    <Country>EU</Country>   <Company>BMG</Company>  <Price>9.90</Price> <Year>1997</Year></Cd><Cd>  <Title>One night only</Title>   <Artist>Bee Gees</Artist>   <Country>UK</Country>   <Company>Polydor</Company>  <Price>10.90</Price>    <Year>1998</Year></Cd><Cd>  <Title>Sylvias Mother</Title>   <Artist>Dr.Hook</Artist>    <Country>UK</Country>   <Company>CBS</Company>  <Price>8.10</Price> <Year>1973</Year></Cd><Cd>  <Title>Maggie May</Title>   <Artist>Rod Stewart</Artist>    <Country>UK</Country>   <Company>Pickwick</Company> <Price>8.50</Price> <Year>1990</Year></Cd><Cd>  <Title>Romanza</Title>  <Artist>Andrea Bocelli</Artist> <Country>EU</Country>   <Company>Polydor</Company>  <Price>10.80</Price>    <Year>1996</Year></Cd><Cd>  <Title>When a man loves a woman</Title> <Artist>Percy Sledge</Artist>   <Country>USA</Country>  <Company>Atlantic</Company> <Price>8.70</Price> <Year>1987</Year></Cd><Cd>  <Title>Black angel</Title>  <Artist>Savage Rose</Artist>    <Country>EU</Country>   <Company>Mega</Company> <Price>10.90</Price>    <Year>1995</Year></Cd><Cd>  <Title>1999 Grammy Nominees</Title> <Artist>Many</Artist>   <Country>USA</Country>  <Company>Grammy</Company>   <Price>10.20</Price>    <Year>1999</Year></Cd><Cd>  <Title>For the good times</Title>   <Artist>Kenny Rogers</Artist>   <Country>UK</Country>   <Company>Mucik Master</Company> <Price>8.70</Price> <Year>1995</Year></Cd><Cd>  <Title>Big Willie style</Title> <Artist>Will Smith</Artist> <Country>USA</Country>  <Company>Columbia</Company> <Price>9.90</Price> <Year>1997</Year></Cd><Cd>  <Title>Tupelo Honey</Title> <Artist>Van Morrison</Artist>   <Country>UK</Country>   <Company>Polydor</Company>  <Price>8.20</Price> <Year>1971</Year></Cd><Cd>  <Title>Soulsville</Title>   <Artist>Jorn Hoel</Artist>  <Country>Norway</Country>   <Company>WEA</Company>  <Price>7.90</Price> <Year>1996</Year></Cd><Cd>  <Title>The very best of</Title> <Artist>Cat Stevens</Artist>    <Country>UK</Country>   <Company>Island</Company>   <Price>8.90</Price> <Year>1990</Year></Cd><Cd>  <Title>Stop</Title> <Artist>Sam Brown</Artist>  <Country>UK</Country>   <Company>A and M</Company>  <Price>8.90</Price> <Year>1988</Year></Cd><Cd>  <Title>Bridge of Spies</Title>  <Artist>T'Pau</Artist>  <Country>UK</Country>   <Company>Siren</Company>    <Price>7.90</Price> <Year>1987</Year></Cd><Cd>  <Title>Private Dancer</Title>   <Artist>Tina Turner</Artist>    <Country>UK</Country>   <Company>Capitol</Company>  <Price>8.90</Price> <Year>1983</Year></Cd><Cd>  <Title>Midt om natten</Title>   <Artist>Kim Larsen</Artist> <Country>EU</Country>   <Company>Medley</Company>   <Price>7.80</Price> <Year>1983</Year></Cd><Cd>  <Title>Pavarotti Gala Concert</Title>   <Artist>Luciano Pavarotti</Artist>  <Country>UK</Country>   <Company>DECCA</Company>    <Price>9.90</Price> <Year>1991</Year></Cd><Cd>  <Title>The dock of the bay</Title>  <Artist>Otis Redding</Artist>   <Country>USA</Country>  <Company>Atlantic</Company> <Price>7.90</Price> <Year>1987</Year></Cd><Cd>  <Title>Picture book</Title> <Artist>Simply Red</Artist> <Country>EU</Country>   <Company>Elektra</Company>  <Price>7.20</Price> <Year>1985</Year></Cd><Cd>  <Title>Red</Title>  <Artist>The Communards</Artist> <Country>UK</Country>   <Company>London</Company>   <Price>7.80</Price> <Year>1987</Year></Cd><Cd>  <Title>Unchain my heart</Title> <Artist>Joe Cocker</Artist> <Country>USA</Country>  <Company>EMI</Company>  <Price>8.20</Price> <Year>1987</Year></Cd></Catalog>";
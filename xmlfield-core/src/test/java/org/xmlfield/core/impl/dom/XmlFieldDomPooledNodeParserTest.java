@@ -0,0 +1,87 @@
+package org.xmlfield.core.impl.dom;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactoryConfigurationError;
+
+import org.junit.Test;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldNode;
+
+public class XmlFieldDomPooledNodeParserTest extends XmlFieldDomNodeParserTest {
+
+	public XmlFieldDomPooledNodeParserTest()
+			throws TransformerConfigurationException,
+			TransformerFactoryConfigurationError {
+		parser = new PooledDomNodeParser();
+	}
+
+	@Test
+	public void testConcurrentUse() throws Exception {
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(PooledDomNodeParser.CONFIG_POOL_SIZE, "2");
+		final PooledDomNodeParser pooled = new PooledDomNodeParser(config);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 100; i++) {
+				final String xml = "<Catalog><Cd>" + i + "</Cd></Catalog>";
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return pooled.nodeToXml(pooled.xmlToNode(xml));
+					}
+				}));
+			}
+			for (int i = 0; i < 100; i++) {
+				assertThat(results.get(i).get(), is("<Catalog><Cd>" + i
+						+ "</Cd></Catalog>"));
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertThat(pooled.getIdleBuilders() <= 2, is(true));
+		assertThat(pooled.getIdleTransformers() <= 2, is(true));
+	}
+
+	@Test
+	public void testFactory() throws Exception {
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(OutputKeys.OMIT_XML_DECLARATION, "no");
+
+		// Same configuration, same parser.
+		XmlField xf = new XmlField(config);
+		assertThat(xf._getParser(), instanceOf(PooledDomNodeParser.class));
+		assertThat(new XmlField(new HashMap<String, String>(config))
+				._getParser(), sameInstance(xf._getParser()));
+		assertThat(new XmlField()._getParser(),
+				not(sameInstance(xf._getParser())));
+
+		// Transformer configuration is kept after reset.
+		XmlFieldNode node = xf.xmlToNode("<a/>");
+		for (int i = 0; i < 2; i++) {
+			assertThat(xf.nodeToXml(node).startsWith("<?xml"), is(true));
+		}
+
+		config.put(DomNodeParserFactory.CONFIG_POOLED_PARSER, "false");
+		assertThat(new XmlField(config)._getParser(),
+				not(instanceOf(PooledDomNodeParser.class)));
+	}
+}
@@ -0,0 +1,131 @@
+package org.xmlfield.core.impl.dom;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldNodeList;
+import org.xmlfield.core.internal.NamespaceMap;
+
+public class XmlFieldDomSimpleXPathTest {
+
+	private final DomJaxenSelector jaxen = new DomJaxenSelector(0, false);
+
+	private final NamespaceMap namespaces = new NamespaceMap(
+			"xmlns:m=\"http://music\"", "xmlns:x=\"http://xlink\"");
+
+	private XmlFieldNode node;
+
+	private final DomJaxenSelector selector = new DomJaxenSelector();
+
+	private final String xml = "<Catalog xmlns:m=\"http://music\" xmlns:x=\"http://xlink\" name=\"cat\">"
+			+ "<Cd type=\"single\" x:href=\"a\"><Title>Empire <b>Burlesque</b></Title><m:Year>1985</m:Year></Cd>"
+			+ "<Cd type=\"album\"><Title>Hide your heart</Title><m:Year>1988</m:Year></Cd>"
+			+ "<m:Cd type=\"single\"><Title>Greatest Hits</Title></m:Cd>"
+			+ "<Dvd xmlns=\"http://video\"><Title>Ghost</Title></Dvd>"
+			+ "</Catalog>";
+
+	private void assertSameResults(String xpath) throws Exception {
+		XmlFieldNodeList expected = jaxen.selectXPathToNodeList(namespaces,
+				xpath, node);
+		XmlFieldNodeList actual = selector.selectXPathToNodeList(namespaces,
+				xpath, node);
+		assertThat(xpath, actual.getLength(), is(expected.getLength()));
+		for (int i = 0; i < expected.getLength(); i++) {
+			assertThat(xpath, actual.item(i).getNode(), sameInstance(expected
+					.item(i).getNode()));
+		}
+
+		assertThat(xpath, selector.selectXPathToString(namespaces, xpath, node),
+				is(jaxen.selectXPathToString(namespaces, xpath, node)));
+		assertThat(xpath,
+				selector.selectXPathToBoolean(namespaces, xpath, node),
+				is(jaxen.selectXPathToBoolean(namespaces, xpath, node)));
+
+		XmlFieldNode expectedNode = jaxen.selectXPathToNode(namespaces, xpath,
+				node);
+		XmlFieldNode actualNode = selector.selectXPathToNode(namespaces,
+				xpath, node);
+		if (expectedNode == null) {
+			assertThat(xpath, actualNode, nullValue());
+		} else {
+			assertThat(xpath, actualNode.getNode(),
+					sameInstance(expectedNode.getNode()));
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		node = new DomNodeParser().xmlToNode(xml);
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		assertThat(SimpleXPath.compile(null, "a/b/@c"), notNullValue());
+		assertThat(SimpleXPath.compile(null, "item[@type='x']"), notNullValue());
+		assertThat(SimpleXPath.compile(null, "."), notNullValue());
+		assertThat(SimpleXPath.compile(namespaces, "/m:a/*[@x:b]"),
+				notNullValue());
+
+		assertThat(SimpleXPath.compile(null, ""), nullValue());
+		assertThat(SimpleXPath.compile(null, "/"), nullValue());
+		assertThat(SimpleXPath.compile(null, "//a"), nullValue());
+		assertThat(SimpleXPath.compile(null, "a//b"), nullValue());
+		assertThat(SimpleXPath.compile(null, "a/"), nullValue());
+		assertThat(SimpleXPath.compile(null, "a[1]"), nullValue());
+		assertThat(SimpleXPath.compile(null, "a[@b=1]"), nullValue());
+		assertThat(SimpleXPath.compile(null, "a[@b = 'c']"), nullValue());
+		assertThat(SimpleXPath.compile(null, "a/text()"), nullValue());
+		assertThat(SimpleXPath.compile(null, "count(a)"), nullValue());
+		assertThat(SimpleXPath.compile(null, "@a/b"), nullValue());
+		assertThat(SimpleXPath.compile(null, ".."), nullValue());
+		assertThat(SimpleXPath.compile(null, "child::a"), nullValue());
+		assertThat(SimpleXPath.compile(null, "a|b"), nullValue());
+		// Unknown prefixes are reported by Jaxen.
+		assertThat(SimpleXPath.compile(null, "m:a"), nullValue());
+	}
+
+	@Test
+	public void testSameResultsAsJaxen() throws Exception {
+		String[] xpaths = { ".", "Catalog", "/Catalog", "/Catalog/Cd",
+				"/Catalog/Cd/Title", "Catalog/Cd[@type='single']/Title",
+				"Catalog/Cd[@type=\"album\"]/m:Year", "Catalog/m:Cd",
+				"Catalog/m:Cd/@type", "Catalog/*", "Catalog/*/@*",
+				"Catalog/@name", "Catalog/@xmlns:m", "Catalog/Cd[@x:href]",
+				"Catalog/Cd[@x:href='b']", "Catalog/Cd[@type='single'][@x:href]",
+				"Catalog/Cd/@x:href", "Catalog/Dvd", "Catalog/Cd/./Title",
+				"Catalog/Unknown", "Catalog/Cd/@unknown" };
+		for (String xpath : xpaths) {
+			assertSameResults(xpath);
+		}
+
+		// Relative to an element
+		node = selector.selectXPathToNode(null, "/Catalog/Cd", node);
+		assertSameResults("Title");
+		assertSameResults(".");
+		assertSameResults("@type");
+		assertSameResults("/Catalog/m:Cd/Title");
+	}
+
+	@Test
+	public void testSelectorConfiguration() throws Exception {
+		assertThat(((DomJaxenSelector) new XmlField()._getSelector())
+				.isSimpleXPath(), is(true));
+
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(DomJaxenSelector.CONFIG_SIMPLE_XPATH, "false");
+		DomJaxenSelector configured = (DomJaxenSelector) new XmlField(config)
+				._getSelector();
+		assertThat(configured.isSimpleXPath(), is(false));
+		assertThat(configured.getXPathCache(), nullValue());
+	}
+}
@@ -0,0 +1,133 @@
+package org.xmlfield.core.impl.dom;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldSelector;
+import org.xmlfield.core.exception.XmlFieldException;
+
+public class XmlFieldDomXPathCacheTest {
+
+	private final String xml = "<Catalog><Cd><Title>Empire Burlesque</Title></Cd><Cd><Title>Hide your heart</Title></Cd></Catalog>";
+
+	@Test
+	public void testCacheEviction() throws Exception {
+		XPathCache<String> cache = new XPathCache<String>(2);
+
+		cache.put(null, "a", "A");
+		cache.put(null, "b", "B");
+		assertThat(cache.get(null, "a"), is("A"));
+		cache.put(null, "a", "A");
+
+		// "b" is the least recently used entry.
+		cache.put(null, "c", "C");
+		assertThat(cache.get(null, "b"), nullValue());
+		assertThat(cache.get(null, "a"), is("A"));
+		assertThat(cache.get(null, "c"), is("C"));
+
+		assertThat(cache.getHits(), is(3L));
+		assertThat(cache.getMisses(), is(1L));
+
+		cache.put(null, "a", "A");
+		cache.clear();
+		assertThat(cache.get(null, "a"), nullValue());
+	}
+
+	@Test
+	public void testCacheIsShared() throws Exception {
+		final XPathCache<String> cache = new XPathCache<String>(10);
+		cache.put(null, "a", "A");
+
+		final AtomicReference<String> other = new AtomicReference<String>();
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				other.set(cache.get(null, "a"));
+			}
+		};
+		t.start();
+		t.join();
+		assertThat(other.get(), is("A"));
+
+		// Leased by the other thread until it is given back.
+		assertThat(cache.get(null, "a"), nullValue());
+		cache.put(null, "a", other.get());
+		assertThat(cache.get(null, "a"), is("A"));
+	}
+
+	@Test
+	public void testSelectorSharedByThreads() throws Exception {
+		final DomJaxenSelector selector = new DomJaxenSelector(16);
+		final XmlFieldNode node = new XmlField().xmlToNode(xml);
+		assertThat(selector.selectXPathToString(null, "/Catalog/Cd[2]/Title",
+				node), is("Hide your heart"));
+
+		final AtomicReference<String> other = new AtomicReference<String>();
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				try {
+					other.set(selector.selectXPathToString(null,
+							"/Catalog/Cd[1]/Title",
+							new XmlField().xmlToNode(xml)));
+					other.set(selector.selectXPathToString(null,
+							"/Catalog/Cd[2]/Title",
+							new XmlField().xmlToNode(xml)));
+				} catch (XmlFieldException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		t.start();
+		t.join();
+
+		// The new thread reused the expression compiled by this one.
+		assertThat(other.get(), is("Hide your heart"));
+		assertThat(selector.getXPathCache().getMisses(), is(2L));
+		assertThat(selector.getXPathCache().getHits(), is(1L));
+	}
+
+	@Test
+	public void testSelectorConfiguration() throws Exception {
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(DomJaxenSelector.CONFIG_XPATH_CACHE, "true");
+		config.put(DomJaxenSelector.CONFIG_XPATH_CACHE_SIZE, "16");
+
+		XmlField xf = new XmlField(config);
+		XmlFieldSelector selector = xf._getSelector();
+		XPathCache<?> cache = ((DomJaxenSelector) selector).getXPathCache();
+		assertThat(cache.getMaxSize(), is(16));
+
+		// Selectors with the same configuration share their cache.
+		assertThat(new XmlField(config)._getSelector(), sameInstance(selector));
+
+		// Configuration keys are not forwarded to the transformer.
+		XmlFieldNode node = xf.xmlToNode(xml);
+		assertThat(xf.nodeToXml(node), is(xml));
+
+		long misses = cache.getMisses();
+		long hits = cache.getHits();
+		for (int i = 0; i < 3; i++) {
+			assertThat(selector.selectXPathToString(null, "/Catalog/Cd[2]/Title",
+					node), is("Hide your heart"));
+		}
+		assertThat(cache.getMisses(), is(misses + 1));
+		assertThat(cache.getHits(), is(hits + 2));
+	}
+
+	@Test
+	public void testSelectorWithoutCache() throws Exception {
+		assertThat(new DomJaxenSelector().getXPathCache(), nullValue());
+		assertThat(((DomJaxenSelector) new XmlField()._getSelector())
+				.getXPathCache(), nullValue());
+	}
+}
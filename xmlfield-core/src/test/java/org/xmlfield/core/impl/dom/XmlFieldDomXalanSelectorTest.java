@@ -0,0 +1,61 @@
+package org.xmlfield.core.impl.dom;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldSelector;
+import org.xmlfield.core.internal.NamespaceMap;
+
+/**
+ * Runs selector tests with {@link DomXalanSelector}.
+ */
+public class XmlFieldDomXalanSelectorTest extends XmlFieldDomSelectorTest {
+
+	public XmlFieldDomXalanSelectorTest() throws Exception {
+		super();
+	}
+
+	@Override
+	protected XmlFieldSelector newSelector() {
+		return new DomXalanSelector();
+	}
+
+	@Test
+	public void testExpressionCache() throws Exception {
+		DomXalanSelector selector = new DomXalanSelector(8);
+		XPathCache<?> cache = selector.getXPathCache();
+		NamespaceMap namespaces = new NamespaceMap(
+				"xmlns:a=http://www.w3.org/2005/Atom");
+
+		XmlFieldNode node = new DomNodeParser()
+				.xmlToNode("<a:feed xmlns:a=\"http://www.w3.org/2005/Atom\"><a:title>t</a:title></a:feed>");
+
+		for (int i = 0; i < 3; i++) {
+			assertThat(selector.selectXPathToString(namespaces,
+					"/a:feed/a:title", node), is("t"));
+			assertThat(selector.selectXPathToNumber(namespaces,
+					"count(/a:feed/a:title)", node), is(1.0));
+		}
+		assertThat(cache.getMisses(), is(2L));
+		assertThat(cache.getHits(), is(4L));
+	}
+
+	@Test
+	public void testFactory() throws Exception {
+		DomXalanSelectorFactory factory = new DomXalanSelectorFactory();
+		assertThat(factory.newSelector(null), sameInstance(factory.newSelector()));
+
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(DomJaxenSelector.CONFIG_XPATH_CACHE_SIZE, "12");
+		DomXalanSelector selector = (DomXalanSelector) factory
+				.newSelector(config);
+		assertThat(selector.getXPathCache().getMaxSize(), is(12));
+		assertThat(factory.newSelector(config), sameInstance((XmlFieldSelector) selector));
+	}
+}
@@ -0,0 +1,135 @@
+package org.xmlfield.core.impl.dom;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldNode;
+
+public class XmlFieldDomXmlWriterTest {
+
+	private void assertSameOutput(Map<String, String> config, String xml)
+			throws Exception {
+		DomNodeParser transformer = new DomNodeParser(config);
+		XmlFieldNode node = transformer.xmlToNode(xml);
+		assertSameOutput(config, node);
+	}
+
+	private void assertSameOutput(Map<String, String> config, XmlFieldNode node)
+			throws Exception {
+		String expected = new DomNodeParser(config).nodeToXml(node);
+
+		Map<String, String> streaming = new HashMap<String, String>();
+		if (config != null) {
+			streaming.putAll(config);
+		}
+		streaming.put(DomNodeParser.CONFIG_STREAMING_WRITER, "true");
+		assertThat(new DomNodeParser(streaming).nodeToXml(node), is(expected));
+	}
+
+	@Test
+	public void testBuffer() throws Exception {
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(DomXmlWriter.CONFIG_BUFFER_SIZE, "4");
+		DomXmlWriter writer = new DomXmlWriter(config);
+
+		String xml = "<Catalog><Cd type=\"single\">Empire Burlesque &amp; more</Cd></Catalog>";
+		XmlFieldNode node = new DomNodeParser().xmlToNode(xml);
+		StringWriter sw = new StringWriter();
+		writer.write((Element) node.getNode(), sw);
+		assertThat(sw.toString(), is(xml));
+	}
+
+	@Test
+	public void testEncoding() throws Exception {
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(OutputKeys.ENCODING, "ISO-8859-1");
+		config.put(OutputKeys.OMIT_XML_DECLARATION, "no");
+		DomXmlWriter writer = new DomXmlWriter(config);
+
+		XmlFieldNode node = new DomNodeParser()
+				.xmlToNode("<a b=\"\u20ac\">\u00e9\u20ac\ud83c\udfb5</a>");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.write((Element) node.getNode(), out);
+		assertThat(
+				out.toString("ISO-8859-1"),
+				is("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><a b=\"&#8364;\">\u00e9&#8364;&#127925;</a>"));
+	}
+
+	@Test
+	public void testIndent() throws Exception {
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(OutputKeys.INDENT, "yes");
+		config.put("{http://xml.apache.org/xslt}indent-amount", "2");
+		config.put(DomNodeParser.CONFIG_STREAMING_WRITER, "true");
+
+		DomNodeParser parser = new DomNodeParser(config);
+		XmlFieldNode node = parser
+				.xmlToNode("<Catalog><Cd><Title>Eros</Title><Year>1997</Year></Cd> <Cd/></Catalog>");
+		assertThat(parser.nodeToXml(node), is("<Catalog>\n" + "  <Cd>\n"
+				+ "    <Title>Eros</Title>\n" + "    <Year>1997</Year>\n"
+				+ "  </Cd>\n" + "  <Cd/>\n" + "</Catalog>"));
+	}
+
+	@Test
+	public void testNamespaceFixup() throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		Document doc = factory.newDocumentBuilder().newDocument();
+		Element root = doc.createElementNS("http://music", "m:Catalog");
+		Element cd = doc.createElementNS("http://music", "m:Cd");
+		cd.setAttributeNS("http://xlink", "x:href", "a");
+		root.appendChild(cd);
+		root.appendChild(doc.createElementNS(null, "Dvd"));
+		doc.appendChild(root);
+
+		StringWriter sw = new StringWriter();
+		new DomXmlWriter().write(root, sw);
+		assertThat(
+				sw.toString(),
+				is("<m:Catalog xmlns:m=\"http://music\"><m:Cd xmlns:x=\"http://xlink\" x:href=\"a\"/><Dvd/></m:Catalog>"));
+	}
+
+	@Test
+	public void testSameOutputAsTransformer() throws Exception {
+		String[] documents = {
+				"<Catalog><Cd> <Title>Empire Burlesque</Title> <Artist>Bob Dylan</Artist>  <Country>USA</Country></Cd><Cd/></Catalog>",
+				"<Catalog name=\"a &amp; b &lt; &quot;c&quot; &gt; d\">x &amp; y &lt; z &gt; w ' \"</Catalog>",
+				"<m:Catalog xmlns:m=\"http://music\" xmlns=\"http://default\"><m:Cd x:href=\"a\" xmlns:x=\"http://xlink\"><Title>t</Title></m:Cd></m:Catalog>",
+				"<Catalog><!-- comment --><?pi data?><![CDATA[<cdata> & ]]></Catalog>",
+				"<Catalog>\u00e9\u20ac</Catalog>" };
+
+		Map<String, String> declaration = new HashMap<String, String>();
+		declaration.put(OutputKeys.OMIT_XML_DECLARATION, "no");
+
+		for (String xml : documents) {
+			assertSameOutput(null, xml);
+			assertSameOutput(declaration, xml);
+		}
+	}
+
+	@Test
+	public void testXmlField() throws Exception {
+		Map<String, String> config = new HashMap<String, String>();
+		config.put(DomNodeParser.CONFIG_STREAMING_WRITER, "true");
+		XmlField xf = new XmlField(config);
+
+		String xml = "<Catalog><Cd><Title>Eros</Title></Cd></Catalog>";
+		assertThat(xf.nodeToXml(xf.xmlToNode(xml)), is(xml));
+
+		StringWriter sw = new StringWriter();
+		xf.nodeToXml(xf.xmlToNode(xml), sw);
+		assertThat(sw.toString(), is(xml));
+	}
+}
@@ -0,0 +1,88 @@
+package org.xmlfield.core.impl.dom.cleanup;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class XmlFieldEntitySanitizingTest {
+
+	/**
+	 * Returns at most one byte per read call.
+	 */
+	private static class SlowInputStream extends FilterInputStream {
+		SlowInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(len, 1));
+		}
+	}
+
+	private static String readBulk(InputStream in, int chunk)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[chunk];
+		int read;
+		while ((read = in.read(b, 0, chunk)) >= 0) {
+			out.write(b, 0, read);
+		}
+		return out.toString("UTF-8");
+	}
+
+	private static String readSingle(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int read;
+		while ((read = in.read()) >= 0) {
+			out.write(read);
+		}
+		return out.toString("UTF-8");
+	}
+
+	private void assertSanitized(String input, String expected)
+			throws Exception {
+		byte[] bytes = input.getBytes("UTF-8");
+
+		assertThat(readSingle(new EntitySanitizingInputStream(
+				new ByteArrayInputStream(bytes))), is(expected));
+
+		// Small buffers and slow streams, so entities span block boundaries.
+		for (int size = 1; size < 20; size++) {
+			assertThat(readBulk(new EntitySanitizingInputStream(
+					new ByteArrayInputStream(bytes), size), size), is(expected));
+			assertThat(readBulk(new EntitySanitizingInputStream(
+					new SlowInputStream(new ByteArrayInputStream(bytes)), size),
+					7), is(expected));
+		}
+	}
+
+	@Test
+	public void testHexEntities() throws Exception {
+		assertSanitized("<a>&#x19;&#x41;&#X19;&#x1F3B5;&#xFFFE;</a>",
+				"<a>&#65533;&#x41;&#X19;&#x1F3B5;&#65533;</a>");
+	}
+
+	@Test
+	public void testInvalidEntities() throws Exception {
+		assertSanitized("<a>&#25;&amp;&#0;&#65;&#55296;&#1114112;</a>",
+				"<a>&#65533;&amp;&#65533;&#65;&#65533;&#65533;</a>");
+	}
+
+	@Test
+	public void testNotEntities() throws Exception {
+		assertSanitized("&", "&");
+		assertSanitized("&#", "&#");
+		assertSanitized("&#25", "&#25");
+		assertSanitized("&#;&#x;&&&#25;", "&#;&#x;&&&#65533;");
+		assertSanitized("<a>\u00e9&#1234567890123;</a>",
+				"<a>\u00e9&#1234567890123;</a>");
+	}
+}
@@ -0,0 +1,48 @@
+package org.xmlfield.core.impl.dom.cleanup;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class XmlFieldInputSanitizerTest {
+
+	@Test
+	public void testSanitizeText() throws Exception {
+		assertThat(InputSanitizer.sanitizeText(null), nullValue());
+
+		// Clean inputs are returned as is.
+		String clean = "Tab\tnew line\r\n \u00e9\ud83c\udfb5 &#25;";
+		assertThat(InputSanitizer.sanitizeText(clean), sameInstance(clean));
+
+		assertThat(InputSanitizer.sanitizeText("Test" + (char) 25),
+				is("Test\ufffd"));
+		assertThat(InputSanitizer.sanitizeText("\u0000a\u0001\ufffe\uffff"),
+				is("\ufffda\ufffd\ufffd\ufffd"));
+
+		// Unpaired surrogates
+		assertThat(InputSanitizer.sanitizeText("a\ud83c"), is("a\ufffd"));
+		assertThat(InputSanitizer.sanitizeText("\udfb5\ud83c\udfb5"),
+				is("\ufffd\ud83c\udfb5"));
+	}
+
+	@Test
+	public void testSanitizeXml() throws Exception {
+		assertThat(InputSanitizer.sanitizeXml(null), nullValue());
+
+		String clean = "<a b=\"&amp;\">&#65;&#x41;&#x1F3B5;&#9;&\u00e9</a>";
+		assertThat(InputSanitizer.sanitizeXml(clean), sameInstance(clean));
+
+		assertThat(InputSanitizer.sanitizeXml("<a>&#25;</a>"),
+				is("<a>&#65533;</a>"));
+		assertThat(InputSanitizer
+				.sanitizeXml("&#0;&#x19;&#55296;&#xFFFE;&#99999999999999999;"),
+				is("&#65533;&#65533;&#65533;&#65533;&#65533;"));
+
+		// Not numeric entities
+		String other = "&#;&#x;&#25&#X19;";
+		assertThat(InputSanitizer.sanitizeXml(other), sameInstance(other));
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.tests.binding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.Test;
+import org.xmlfield.annotations.FieldXPath;
+import org.xmlfield.annotations.Namespaces;
+import org.xmlfield.annotations.ResourceXPath;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.internal.NamespaceMap;
+import org.xmlfield.core.internal.XmlFieldBinding;
+
+/**
+ * Test the metadata cached by XmlFieldBinding.
+ * 
+ * @author Nicolas Richeton
+ */
+public class XmlFieldBindingTest {
+
+	@Namespaces("xmlns:a=\"http://www.w3.org/2005/Atom\"")
+	public interface AtomResource {
+	}
+
+	@ResourceXPath("/a:feed")
+	@Namespaces("xmlns:m=\"http://www.example.com/media\"")
+	public interface Feed extends AtomResource {
+		@FieldXPath("a:title")
+		String getTitle();
+
+		@FieldXPath("m:rating")
+		int getRating();
+	}
+
+	@ResourceXPath("/Item")
+	public interface Item {
+		@FieldXPath("Name")
+		String getName();
+	}
+
+	@Test
+	public void testBinding() throws Exception {
+		XmlFieldBinding binding = XmlFieldBinding.getBinding(Feed.class);
+		assertSame(binding, XmlFieldBinding.getBinding(Feed.class));
+		assertEquals("/a:feed", binding.getResourceXPath());
+
+		// Namespaces of super interfaces are merged
+		NamespaceMap namespaces = binding.getNamespaces();
+		assertEquals("http://www.w3.org/2005/Atom", namespaces.get("a"));
+		assertEquals("http://www.example.com/media", namespaces.get("m"));
+		assertSame(namespaces, XmlFieldBinding.getBinding(Feed.class)
+				.getNamespaces());
+		assertEquals(2, binding.getFieldGetters().size());
+
+		assertNull(XmlFieldBinding.getBinding(Item.class).getNamespaces());
+
+		XmlField xf = new XmlField();
+		Feed feed = xf.xmlToObject(
+				"<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:m=\"http://www.example.com/media\">"
+						+ "<title>News</title><m:rating>4</m:rating></feed>",
+				Feed.class);
+		assertEquals("News", feed.getTitle());
+		assertEquals(4, feed.getRating());
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		URL classes = XmlFieldBindingTest.class.getProtectionDomain()
+				.getCodeSource().getLocation();
+		URLClassLoader classLoader = new URLClassLoader(new URL[] { classes },
+				null);
+		Class<?> type = classLoader.loadClass(Item.class.getName());
+		assertNotSame(Item.class, type);
+
+		XmlFieldBinding binding = XmlFieldBinding.getBinding(type);
+		XmlFieldBinding itemBinding = XmlFieldBinding.getBinding(Item.class);
+
+		// Other class loaders are not affected
+		XmlFieldBinding.clear(new URLClassLoader(new URL[0], null));
+		assertSame(binding, XmlFieldBinding.getBinding(type));
+
+		XmlFieldBinding.clear(classLoader);
+		assertNotSame(binding, XmlFieldBinding.getBinding(type));
+		assertSame(itemBinding, XmlFieldBinding.getBinding(Item.class));
+		XmlFieldBinding.clear(classLoader);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.tests.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.internal.XmlFieldCachedNode;
+import org.xmlfield.core.internal.XmlFieldDocumentCache;
+import org.xmlfield.tests.pack1.Catalog;
+import org.xmlfield.tests.pack1.Cd;
+
+/**
+ * Test the document getter cache.
+ * 
+ * @author Nicolas Richeton
+ */
+public class GetterCacheTest {
+
+	private static final String XML = "<Catalog><Cd><Title>Empire Burlesque</Title><Price>10.90</Price></Cd><Cd><Title>Eros</Title></Cd></Catalog>";
+
+	private static XmlFieldDocumentCache cache(XmlFieldNode node) {
+		return ((XmlFieldCachedNode) node).getDocumentCache();
+	}
+
+	private final XmlField xf = new XmlField();
+
+	@Before
+	public void setUp() {
+		xf.setGetterCache(true);
+	}
+
+	@Test
+	public void testAliases() throws Exception {
+		XmlFieldNode node = xf.xmlToNode(XML);
+		Catalog catalog = xf.nodeToObject(node, Catalog.class);
+
+		// Two objects bound to the same node.
+		Cd first = catalog.getCd()[0];
+		Cd alias = xf.nodeToObject(node, Catalog.class).getCd()[0];
+		assertEquals("Empire Burlesque", first.getTitle());
+		assertEquals("Empire Burlesque", alias.getTitle());
+
+		XmlFieldDocumentCache cache = cache(node);
+		assertTrue(cache.size() > 0);
+
+		alias.setTitle("Changed");
+		assertEquals(0, cache.size());
+		assertEquals("Changed", first.getTitle());
+		assertEquals("Changed", catalog.getCd()[0].getTitle());
+	}
+
+	@Test
+	public void testArrays() throws Exception {
+		XmlFieldNode node = xf.xmlToNode(XML);
+		Catalog catalog = xf.nodeToObject(node, Catalog.class);
+		Catalog alias = xf.nodeToObject(node, Catalog.class);
+
+		Cd[] cds = catalog.getCd();
+		assertTrue(cache(node).size() > 0);
+		cds[0] = null;
+		assertNotNull(catalog.getCd()[0]);
+
+		// Cached array.
+		alias.getCd()[1] = null;
+		assertNotNull(catalog.getCd()[1]);
+		assertNotSame(catalog.getCd(), alias.getCd());
+	}
+
+	@Test
+	public void testCollections() throws Exception {
+		Catalog catalog = xf.xmlToObject(XML, Catalog.class);
+		assertEquals(2, catalog.sizeOfCd());
+
+		catalog.addToCd().setTitle("New");
+		assertEquals(3, catalog.sizeOfCd());
+		assertEquals("New", catalog.getCd()[2].getTitle());
+
+		catalog.removeFromCd(catalog.getCd()[0]);
+		assertEquals(2, catalog.sizeOfCd());
+		assertEquals("Eros", catalog.getCd()[0].getTitle());
+	}
+
+	@Test
+	public void testDocuments() throws Exception {
+		XmlFieldNode node = xf.xmlToNode(XML);
+		XmlFieldNode other = xf.xmlToNode(XML);
+		Cd cd = xf.nodeToObject(node, Catalog.class).getCd()[1];
+		Cd otherCd = xf.nodeToObject(other, Catalog.class).getCd()[1];
+		assertEquals("Eros", cd.getTitle());
+
+		otherCd.setTitle("Changed");
+		assertEquals("Eros", cd.getTitle());
+		assertEquals("Changed", otherCd.getTitle());
+		assertTrue(cache(other).getModificationCount() > 0);
+		assertTrue(cache(node).size() > 0);
+		assertEquals(0, cache(node).getModificationCount());
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.tests.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldNodeModifier;
+import org.xmlfield.core.api.XmlFieldNodeParser;
+import org.xmlfield.core.api.XmlFieldSelector;
+import org.xmlfield.core.exception.XmlFieldParsingException;
+import org.xmlfield.core.impl.index.IndexNodeModifierFactory;
+import org.xmlfield.core.impl.index.IndexNodeParserFactory;
+import org.xmlfield.core.impl.index.IndexSelectorFactory;
+import org.xmlfield.tests.pack1.Catalog;
+
+/**
+ * Test reading xml files and byte buffers.
+ *
+ * @author Nicolas Richeton
+ */
+public class FileInputTest {
+
+	private static final String XML = "<Catalog><Cd><Title>Les Misérables</Title><Price>9.9</Price></Cd></Catalog>";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final XmlField index = new XmlField() {
+		private final XmlFieldNodeModifier modifier = new IndexNodeModifierFactory()
+				.newModifier();
+		private final XmlFieldNodeParser parser = new IndexNodeParserFactory()
+				.newParser(null);
+		private final XmlFieldSelector selector = new IndexSelectorFactory()
+				.newSelector();
+
+		@Override
+		public XmlFieldNodeModifier _getModifier() {
+			return modifier;
+		}
+
+		@Override
+		public XmlFieldNodeParser _getParser() {
+			return parser;
+		}
+
+		@Override
+		public XmlFieldSelector _getSelector() {
+			return selector;
+		}
+	};
+
+	private void assertCatalog(final Catalog catalog) {
+		assertEquals(1, catalog.sizeOfCd());
+		assertEquals("Les Misérables", catalog.getCd()[0].getTitle());
+		assertEquals(9.9f, catalog.getCd()[0].getPrice(), 0f);
+	}
+
+	private File write(final String xml, final String encoding)
+			throws Exception {
+		final File file = folder.newFile();
+		FileUtils.writeByteArrayToFile(file, xml.getBytes(encoding));
+		return file;
+	}
+
+	@Test
+	public void testByteBuffer() throws Exception {
+		for (XmlField xf : new XmlField[] { new XmlField(), index }) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+			buffer.put("garbage".getBytes("UTF-8"));
+			int position = buffer.position();
+			buffer.put(XML.getBytes("UTF-8"));
+			buffer.flip().position(position);
+
+			assertCatalog(xf.nodeToObject(xf.xmlToNode(buffer), Catalog.class));
+			assertEquals(position, buffer.position());
+		}
+	}
+
+	@Test
+	public void testEncodings() throws Exception {
+		File utf8 = write(XML, "UTF-8");
+		File latin1 = write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"
+				+ XML, "ISO-8859-1");
+		File utf16 = write(XML, "UTF-16");
+
+		for (XmlField xf : new XmlField[] { new XmlField(), index }) {
+			assertCatalog(xf.xmlToObject(utf8, Catalog.class));
+			assertCatalog(xf.xmlToObject(latin1, Catalog.class));
+			assertCatalog(xf.xmlToObject(utf16, Catalog.class));
+		}
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		File invalid = write("<Catalog>", "UTF-8");
+		File missing = new File(folder.getRoot(), "missing.xml");
+		for (XmlField xf : new XmlField[] { new XmlField(), index }) {
+			for (File file : new File[] { invalid, missing }) {
+				try {
+					xf.xmlToNode(file);
+					fail(file.getName());
+				} catch (XmlFieldParsingException e) {
+					// Expected
+				}
+			}
+		}
+	}
+}
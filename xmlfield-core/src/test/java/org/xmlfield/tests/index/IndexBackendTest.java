@@ -0,0 +1,277 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.tests.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldNodeModifier;
+import org.xmlfield.core.api.XmlFieldNodeParser;
+import org.xmlfield.core.api.XmlFieldSelector;
+import org.xmlfield.core.exception.XmlFieldParsingException;
+import org.xmlfield.core.impl.index.IndexNode;
+import org.xmlfield.core.impl.index.IndexNodeModifierFactory;
+import org.xmlfield.core.impl.index.IndexNodeParser;
+import org.xmlfield.core.impl.index.IndexNodeParserFactory;
+import org.xmlfield.core.impl.index.IndexSelectorFactory;
+import org.xmlfield.tests.pack1.Catalog;
+import org.xmlfield.tests.pack1.Cd;
+import org.xmlfield.tests.pack2.AtomCd;
+import org.xmlfield.tests.performance.shakspeare.Act;
+import org.xmlfield.tests.performance.shakspeare.Play;
+import org.xmlfield.tests.performance.shakspeare.Scene;
+import org.xmlfield.tests.performance.shakspeare.Speech;
+
+/**
+ * Test the read only index document backend.
+ *
+ * @author Nicolas Richeton
+ */
+public class IndexBackendTest {
+
+	private static final XmlFieldNodeModifier modifier = new IndexNodeModifierFactory()
+			.newModifier();
+
+	private static final XmlFieldNodeParser parser = new IndexNodeParserFactory()
+			.newParser(null);
+
+	private static final XmlFieldSelector selector = new IndexSelectorFactory()
+			.newSelector();
+
+	private final XmlField dom = new XmlField();
+
+	private final XmlField xf = newBinder(parser);
+
+	private void assertSameAsDom(XmlField binder, String xml) throws Exception {
+		Play indexPlay = binder.xmlToObject(xml, Play.class);
+		Play domPlay = dom.xmlToObject(xml, Play.class);
+
+		Act[] indexActs = indexPlay.getActs();
+		Act[] domActs = domPlay.getActs();
+		assertEquals(domActs.length, indexActs.length);
+		for (int a = 0; a < domActs.length; a++) {
+			assertEquals(domActs[a].getPrologueTitle(),
+					indexActs[a].getPrologueTitle());
+			Scene[] indexScenes = indexActs[a].getScenes();
+			Scene[] domScenes = domActs[a].getScenes();
+			assertEquals(domScenes.length, indexScenes.length);
+			for (int s = 0; s < domScenes.length; s++) {
+				assertEquals(domScenes[s].getTitle(), indexScenes[s].getTitle());
+				assertEquals(domScenes[s].getStageDir(),
+						indexScenes[s].getStageDir());
+				Speech[] indexSpeeches = indexScenes[s].getSpeeches();
+				Speech[] domSpeeches = domScenes[s].getSpeeches();
+				assertEquals(domSpeeches.length, indexSpeeches.length);
+				for (int i = 0; i < domSpeeches.length; i++) {
+					assertEquals(domSpeeches[i].getSpeaker(),
+							indexSpeeches[i].getSpeaker());
+					assertEquals(domSpeeches[i].getLines().length,
+							indexSpeeches[i].getLines().length);
+				}
+			}
+		}
+
+		XmlFieldNode indexRoot = binder.xmlToNode(xml);
+		XmlFieldNode domRoot = dom.xmlToNode(xml);
+		String[] xpaths = { "count(//SPEECH)", "count(//LINE[contains(., 'love')])",
+				"string(/PLAY/PERSONAE/PGROUP[2]/GRPDESCR)",
+				"count(//SPEECH[SPEAKER='ROMEO']/following-sibling::SPEECH)",
+				"sum(//ACT/SCENE/@id) + count(//@*)", "name(/*)" };
+		for (String xpath : xpaths) {
+			assertEquals(xpath, dom._getSelector().selectXPathToString(null,
+					xpath, domRoot), binder._getSelector().selectXPathToString(null,
+					xpath, indexRoot));
+		}
+	}
+
+	private XmlField newBinder(final XmlFieldNodeParser indexParser) {
+		return new XmlField() {
+			@Override
+			public XmlFieldNodeModifier _getModifier() {
+				return modifier;
+			}
+
+			@Override
+			public XmlFieldNodeParser _getParser() {
+				return indexParser;
+			}
+
+			@Override
+			public XmlFieldSelector _getSelector() {
+				return selector;
+			}
+		};
+	}
+
+	private String readPlay() throws Exception {
+		InputStream in = IndexBackendTest.class
+				.getResourceAsStream("/r_and_j.xml");
+		try {
+			return IOUtils.toString(in, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testBinding() throws Exception {
+		Catalog catalog = xf.xmlToObject(
+				"<Catalog><Cd><Title>Empire Burlesque</Title><Price>10.90</Price></Cd>"
+						+ "<Cd><Title>Hide your heart</Title><Price>9.90</Price></Cd></Catalog>",
+				Catalog.class);
+		assertTrue(xf.objectToNode(catalog) instanceof IndexNode);
+		assertEquals(2, catalog.sizeOfCd());
+		Cd[] cds = catalog.getCd();
+		assertEquals("Empire Burlesque", cds[0].getTitle());
+		assertEquals(9.9f, cds[1].getPrice(), 0f);
+		assertEquals(0, catalog.getOtherCd().length);
+
+		// Read only
+		try {
+			cds[0].setTitle("title");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+		try {
+			catalog.addToCd();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+		assertEquals("Empire Burlesque", cds[0].getTitle());
+	}
+
+	@Test
+	public void testInvalidDocuments() throws Exception {
+		String[] invalid = { "", "<a>", "<a></b>", "<a/><b/>", "text<a/>",
+				"<a>&unknown;</a>", "<a>&#0;</a>", "<a b='1' b='2'/>",
+				"<p:a/>", "<a b=1/>", "<a>&#+65;</a>", "<a>&#x+41;</a>",
+				"<a b='&#-65;'/>", "<a>&#;</a>", "<a>&#x;</a>" };
+		for (String xml : invalid) {
+			try {
+				parser.xmlToNode(xml);
+				fail(xml);
+			} catch (XmlFieldParsingException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testNamespaces() throws Exception {
+		String xml = "<a:entry xmlns:a='http://www.w3.org/2005/Atom' xmlns:x=\"http://www.w3.org/1999/xhtml\">"
+				+ "<x:div class='cd'><x:span class=\"title\">T1</x:span>"
+				+ "<x:span class='price'>10.5</x:span></x:div></a:entry>";
+
+		Iterator<AtomCd> cds = xf.streamObjects(new ByteArrayInputStream(
+				xml.getBytes("UTF-8")), AtomCd.class);
+		assertTrue(cds.hasNext());
+		AtomCd cd = cds.next();
+		assertFalse(cds.hasNext());
+		assertEquals("T1", cd.getTitle());
+		assertEquals(10.5f, cd.getPrice(), 0f);
+
+		// Serialized elements keep the namespaces of their ancestors.
+		assertEquals(
+				"<x:div xmlns:a=\"http://www.w3.org/2005/Atom\" xmlns:x=\"http://www.w3.org/1999/xhtml\" class='cd'><x:span class=\"title\">T1</x:span><x:span class='price'>10.5</x:span></x:div>",
+				xf.objectToXml(cd));
+		AtomCd copy = dom.nodeToObject(null,
+				dom.xmlToNode(xf.objectToXml(cd)), AtomCd.class);
+		assertEquals("T1", copy.getTitle());
+	}
+
+	@Test
+	public void testOffHeapStorage() throws Exception {
+		String xml = readPlay();
+		XmlFieldNode domRoot = dom.xmlToNode(xml);
+		for (String storage : new String[] { "direct", "mapped" }) {
+			XmlFieldNodeParser offHeap = new IndexNodeParserFactory()
+					.newParser(Collections.singletonMap(
+							IndexNodeParser.CONFIG_STORAGE, storage));
+			XmlField binder = newBinder(offHeap);
+			assertSameAsDom(binder, xml);
+
+			XmlFieldNode root = binder.xmlToNode(xml);
+			XmlFieldNode title = selector.selectXPathToNode(null, "TITLE",
+					root);
+			assertSame(title, selector.selectXPathToNode(null, "TITLE", root));
+			assertEquals(dom.nodeToXml(dom._getSelector().selectXPathToNode(
+					null, "//SCENE[last()]", domRoot)),
+					binder.nodeToXml(selector.selectXPathToNode(null,
+							"//SCENE[last()]", root)));
+		}
+
+		try {
+			new IndexNodeParserFactory().newParser(Collections.singletonMap(
+					IndexNodeParser.CONFIG_STORAGE, "disk"));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testSameAsDom() throws Exception {
+		assertSameAsDom(xf, readPlay());
+	}
+
+	@Test
+	public void testValues() throws Exception {
+		String xml = "<?xml version='1.0' encoding='UTF-8'?>\r\n<!DOCTYPE a [<!ENTITY e 'e'>]>"
+				+ "<!-- comment --><a b='x &amp; y' c='1\r\n2' xml:lang='fr'>"
+				+ "l&#xE9;&lt;t<![CDATA[<&>]]>\r\n<?pi data?><d>café</d></a>";
+		XmlFieldNode root = parser.xmlToNode(new ByteArrayInputStream(xml
+				.getBytes("UTF-8")));
+		assertEquals("a", root.getNodeName());
+		assertTrue(root.hasAttributes());
+		assertSame(root, root.getDocumentNode());
+		assertEquals("lé<t<&>\ncafé", root.getTextContent());
+
+		XmlFieldNode b = selector.selectXPathToNode(null, "@b", root);
+		assertEquals(XmlFieldNode.ATTRIBUTE_NODE, b.getNodeType());
+		assertEquals("x & y", b.getTextContent());
+		assertSame(root, b.getParentNode());
+		assertEquals("1 2", selector.selectXPathToString(null, "@c", root));
+		assertEquals("fr", selector.selectXPathToString(null,
+				"@xml:lang", root));
+		assertEquals(" comment ", selector.selectXPathToString(null,
+				"/comment()", root));
+		assertEquals("data", selector.selectXPathToString(null,
+				"processing-instruction('pi')", root));
+		assertEquals(Double.valueOf(3), selector.selectXPathToNumber(null,
+				"count(text())", root));
+		assertNull(selector.selectXPathToNode(null, "e", root));
+		assertSame(selector.selectXPathToNode(null, "d", root),
+				selector.selectXPathToNode(null, "d", root));
+
+		assertEquals("<d>café</d>", parser.nodeToXml(selector
+				.selectXPathToNode(null, "d", root)));
+	}
+}
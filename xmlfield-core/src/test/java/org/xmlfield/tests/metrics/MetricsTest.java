@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.tests.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldMetrics;
+import org.xmlfield.core.impl.dom.DomJaxenSelector;
+import org.xmlfield.core.impl.metrics.InMemoryXmlFieldMetrics;
+import org.xmlfield.core.impl.metrics.InMemoryXmlFieldMetrics.Histogram;
+import org.xmlfield.core.impl.metrics.InMemoryXmlFieldMetrics.XPathStatistics;
+import org.xmlfield.core.impl.metrics.MeteredSelector;
+import org.xmlfield.tests.pack1.Catalog;
+import org.xmlfield.tests.pack1.Cd;
+
+/**
+ * Test metrics sent by XmlField.
+ * 
+ * @author Nicolas Richeton
+ */
+public class MetricsTest {
+
+	private static final String XML = "<Catalog><Cd><Title>Empire Burlesque</Title></Cd><Cd><Title>Eros</Title></Cd></Catalog>";
+
+	private InMemoryXmlFieldMetrics metrics;
+
+	@Test
+	public void testDefault() {
+		XmlFieldMetrics.setInstance(null);
+		assertFalse(XmlFieldMetrics.getInstance().isEnabled());
+		assertFalse(new XmlField()._getSelector() instanceof MeteredSelector);
+	}
+
+	@Test
+	public void testHistogram() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(1, histogram.getMin());
+		assertEquals(100, histogram.getMax());
+		assertEquals(50, histogram.getMean());
+		// Upper bound of the 32-63 bucket.
+		assertEquals(63, histogram.getPercentile(50));
+		assertEquals(100, histogram.getPercentile(99));
+	}
+
+	@Test
+	public void testParseAndSerialize() throws Exception {
+		XmlField xf = new XmlField();
+		xf.xmlToNode(new ByteArrayInputStream(XML.getBytes("UTF-8")));
+		Catalog catalog = xf.xmlToObject(XML, Catalog.class);
+
+		// Sizes are in bytes, and only known for streams.
+		assertEquals(2, metrics.getParseDurations().getCount());
+		assertEquals(1, metrics.getParseSizes().getCount());
+		assertEquals(XML.getBytes("UTF-8").length, metrics.getParseSizes()
+				.getMax());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		xf.objectToXml(catalog, out);
+		xf.objectToXml(catalog);
+		assertEquals(2, metrics.getSerializeDurations().getCount());
+		assertEquals(1, metrics.getSerializeSizes().getCount());
+		assertEquals(out.size(), metrics.getSerializeSizes().getMax());
+	}
+
+	@Test
+	public void testXPath() throws Exception {
+		XmlField xf = new XmlField();
+		assertTrue(xf._getSelector() instanceof MeteredSelector);
+
+		Catalog catalog = xf.xmlToObject(XML, Catalog.class);
+		for (Cd cd : catalog.getCd()) {
+			cd.getTitle();
+		}
+
+		assertEquals(2, metrics.getProxyCount(Cd.class));
+		assertEquals(1, metrics.getProxyCount(Catalog.class));
+
+		XPathStatistics title = metrics.getXPathStatistics("Title");
+		assertNotNull(title);
+		assertEquals(2, title.getDurations().getCount());
+		// Simple paths are not compiled by Jaxen.
+		assertEquals(0, title.getCacheHits() + title.getCacheMisses());
+		assertTrue(metrics.getHotXPaths(10).contains("Title"));
+		assertEquals(1, metrics.getHotXPaths(1).size());
+
+		// Compiled expressions cache
+		Map<String, String> configuration = new HashMap<String, String>();
+		configuration.put(DomJaxenSelector.CONFIG_XPATH_CACHE, "true");
+		XmlField cached = new XmlField(configuration);
+		for (int i = 0; i < 2; i++) {
+			assertEquals(2, cached._getSelector().selectXPathToNumber(null,
+					"count(Cd)", xf.objectToNode(catalog)).intValue());
+		}
+		// One lookup per evaluation. The selector, and its cache, may be
+		// shared with other tests.
+		XPathStatistics count = metrics.getXPathStatistics("count(Cd)");
+		assertEquals(2, count.getCacheHits() + count.getCacheMisses());
+		assertTrue(count.getCacheHits() >= 1);
+	}
+
+	@Before
+	public void setUp() {
+		metrics = new InMemoryXmlFieldMetrics();
+		XmlFieldMetrics.setInstance(metrics);
+	}
+
+	@After
+	public void tearDown() {
+		XmlFieldMetrics.setInstance(null);
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.tests.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.xmlfield.annotations.FieldXPath;
+import org.xmlfield.annotations.ResourceXPath;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.impl.metrics.MeteredSelector;
+import org.xmlfield.core.impl.metrics.XPathSampler;
+import org.xmlfield.core.impl.metrics.XPathSampler.Sample;
+import org.xmlfield.core.internal.XmlFieldAccessor;
+
+/**
+ * Test the xpath sampler.
+ * 
+ * @author Nicolas Richeton
+ */
+public class XPathSamplerTest {
+
+	@ResourceXPath("/Catalog")
+	public interface Catalog {
+		@FieldXPath("//Title")
+		String[] getAllTitles();
+
+		@FieldXPath("Name")
+		String getName();
+
+		void setName(String name);
+	}
+
+	private static final String XML = "<Catalog><Name>Catalog</Name><Cd><Title>Empire Burlesque</Title></Cd><Cd><Title>Eros</Title></Cd></Catalog>";
+
+	@Test
+	public void testGeneratedAccessors() throws Exception {
+		XPathSampler sampler = new XPathSampler(1);
+		XPathSampler.setInstance(sampler);
+
+		XmlField xf = new XmlField();
+		xf.setGeneratedAccessors(true);
+		Catalog catalog = xf.xmlToObject(XML, Catalog.class);
+		assertTrue(catalog instanceof XmlFieldAccessor);
+		for (int i = 0; i < 3; i++) {
+			catalog.getName();
+		}
+		catalog.setName("Other");
+
+		List<Sample> report = sampler.getReport(10);
+		Sample getter = null;
+		Sample setter = null;
+		for (Sample sample : report) {
+			if ("getName".equals(sample.getMethod())) {
+				getter = sample;
+			} else if ("setName".equals(sample.getMethod())) {
+				setter = sample;
+			}
+		}
+		assertEquals(Catalog.class, getter.getType());
+		assertEquals("Name", getter.getXPath());
+		assertEquals(3, getter.getCount());
+		assertTrue(setter.getCount() > 0);
+	}
+
+	@Test
+	public void testInterval() throws Exception {
+		XPathSampler sampler = new XPathSampler(10);
+		XPathSampler.setInstance(sampler);
+
+		Catalog catalog = new XmlField().xmlToObject(XML, Catalog.class);
+		for (int i = 0; i < 100; i++) {
+			catalog.getName();
+		}
+
+		List<Sample> report = sampler.getReport(10);
+		assertEquals(1, report.size());
+		assertEquals(10, report.get(0).getCount());
+	}
+
+	@Test
+	public void testReport() throws Exception {
+		XPathSampler sampler = new XPathSampler(1);
+		XPathSampler.setInstance(sampler);
+
+		XmlField xf = new XmlField();
+		assertTrue(xf._getSelector() instanceof MeteredSelector);
+		Catalog catalog = xf.xmlToObject(XML, Catalog.class);
+		for (int i = 0; i < 5; i++) {
+			catalog.getAllTitles();
+			catalog.getName();
+		}
+
+		List<Sample> report = sampler.getReport(10);
+		assertEquals(2, report.size());
+		Sample titles = null;
+		for (Sample sample : report) {
+			if ("//Title".equals(sample.getXPath())) {
+				titles = sample;
+			}
+		}
+		assertEquals(Catalog.class, titles.getType());
+		assertEquals("getAllTitles", titles.getMethod());
+		assertEquals(5, titles.getCount());
+		assertEquals(10, titles.getNodes());
+		assertTrue(titles.getNanos() > 0);
+		assertEquals(1, sampler.getReport(1).size());
+
+		sampler.log(10);
+		sampler.reset();
+		assertEquals(0, sampler.getReport(10).size());
+
+		// Disabled
+		XPathSampler.setInstance(null);
+		assertTrue(!(xf._getSelector() instanceof MeteredSelector));
+		catalog.getName();
+		assertEquals(0, sampler.getReport(10).size());
+	}
+
+	@After
+	public void tearDown() {
+		XPathSampler.setInstance(null);
+	}
+}
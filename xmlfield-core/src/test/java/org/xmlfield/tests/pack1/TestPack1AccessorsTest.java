@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.tests.pack1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldObject;
+import org.xmlfield.core.internal.XmlFieldAccessor;
+
+/**
+ * Test basic xmlfield usage with generated accessors instead of proxies.
+ *
+ * @author Nicolas Richeton
+ */
+public class TestPack1AccessorsTest {
+
+	private XmlField newBinder() {
+		XmlField binder = new XmlField();
+		binder.setGeneratedAccessors(true);
+		return binder;
+	}
+
+	@Test
+	public void testAddAndRemoveCd() throws Exception {
+		XmlField binder = newBinder();
+		final XmlFieldNode node = binder.xmlToNode("<Catalog><Others/></Catalog>");
+
+		final Catalog catalog = binder.nodeToObject(node, Catalog.class);
+		assertTrue(catalog instanceof XmlFieldAccessor);
+		assertFalse(Proxy.isProxyClass(catalog.getClass()));
+		assertEquals(0, catalog.getCd().length);
+
+		Cd cd = catalog.addToCd();
+		assertTrue(cd instanceof XmlFieldAccessor);
+		cd.setTitle("title");
+		cd.setPrice(12);
+		assertEquals("title", cd.getTitle());
+		assertEquals(12f, cd.getPrice(), 0f);
+		assertEquals(1, catalog.sizeOfCd());
+
+		OtherCd oCd = catalog.addToOtherCd();
+		oCd.setTitle("other title");
+
+		assertEquals(
+				"<Catalog><Others><Misc1><Misc2><Misc3><Cd><Titles><Title>other title</Title></Titles></Cd></Misc3></Misc2></Misc1></Others><Cd><Title>title</Title><Price>12.0</Price></Cd></Catalog>",
+				binder.nodeToXml(node));
+
+		catalog.removeFromCd(cd);
+		assertEquals(0, catalog.sizeOfCd());
+		assertEquals(
+				"<Catalog><Others><Misc1><Misc2><Misc3><Cd><Titles><Title>other title</Title></Titles></Cd></Misc3></Misc2></Misc1></Others></Catalog>",
+				binder.nodeToXml(node));
+	}
+
+	@Test
+	public void testObjectMethods() throws Exception {
+		XmlField binder = newBinder();
+		String xml = "<list><Cd><Title>a</Title></Cd><Cd><Title>a</Title></Cd><Cd><Title>b</Title></Cd></list>";
+
+		Cd[] cds = binder.xmlToArray(xml, Cd.class);
+		assertEquals(3, cds.length);
+		assertSame(cds[0].getClass(), cds[2].getClass());
+
+		assertEquals(cds[0], cds[1]);
+		assertEquals(cds[0].hashCode(), cds[1].hashCode());
+		assertFalse(cds[0].equals(cds[2]));
+		assertEquals(new XmlField().xmlToArray(xml, Cd.class)[2].toString(),
+				cds[2].toString());
+
+		XmlFieldNode node = ((XmlFieldObject) cds[2]).toNode();
+		assertEquals("<Cd><Title>b</Title></Cd>", binder.nodeToXml(node));
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.tests.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldMapper;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.api.XmlFieldNodeModifier;
+import org.xmlfield.core.exception.XmlFieldXPathException;
+import org.xmlfield.core.impl.dom.DomNodeModifier;
+import org.xmlfield.tests.pack2.AtomCd;
+import org.xmlfield.tests.pack8.Cd;
+
+/**
+ * Test XmlField#parallelMap.
+ * 
+ * @author Nicolas Richeton
+ */
+public class ParallelMapTest {
+
+	private static final XmlFieldMapper<Cd, String> TITLE = new XmlFieldMapper<Cd, String>() {
+		@Override
+		public String map(Cd cd) {
+			return cd.getTitle();
+		}
+	};
+
+	private static String catalog(int count) {
+		StringBuilder sb = new StringBuilder("<Catalog>");
+		for (int i = 0; i < count; i++) {
+			sb.append("<Cd><Title>Title ").append(i).append("</Title></Cd>");
+		}
+		return sb.append("</Catalog>").toString();
+	}
+
+	private final XmlField xf = new XmlField();
+
+	@Test
+	public void testCopiesAreUsed() throws Exception {
+		XmlFieldNode node = xf.xmlToNode(catalog(10));
+		xf.parallelMap("Cd", node, Cd.class, new XmlFieldMapper<Cd, Void>() {
+			@Override
+			public Void map(Cd cd) {
+				cd.setArtist("Unknown");
+				return null;
+			}
+		});
+		assertEquals(catalog(10), xf.nodeToXml(node));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testException() throws Exception {
+		xf.parallelMap("Cd", xf.xmlToNode(catalog(100)), Cd.class,
+				new XmlFieldMapper<Cd, String>() {
+					@Override
+					public String map(Cd cd) {
+						if (cd.getTitle().equals("Title 50")) {
+							throw new IllegalArgumentException();
+						}
+						return cd.getTitle();
+					}
+				});
+	}
+
+	@Test
+	public void testExecutor() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			xf.setExecutor(executor);
+			List<String> titles = xf.parallelMap("Cd",
+					xf.xmlToNode(catalog(1000)), Cd.class, TITLE);
+			assertEquals(1000, titles.size());
+		} finally {
+			xf.setExecutor(null);
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testBoundedCopies() throws Exception {
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+		final AtomicInteger maxQueued = new AtomicInteger();
+		try {
+			xf.setExecutor(executor);
+			List<String> titles = xf.parallelMap("Cd",
+					xf.xmlToNode(catalog(1000)), Cd.class,
+					new XmlFieldMapper<Cd, String>() {
+						@Override
+						public String map(Cd cd) {
+							int queued = executor.getQueue().size();
+							if (queued > maxQueued.get()) {
+								maxQueued.set(queued);
+							}
+							return cd.getTitle();
+						}
+					});
+			assertEquals(1000, titles.size());
+		} finally {
+			xf.setExecutor(null);
+			executor.shutdown();
+		}
+
+		// Copies are made as chunks are processed.
+		int maxPending = Runtime.getRuntime().availableProcessors() * 2;
+		assertTrue(String.valueOf(maxQueued.get()),
+				maxQueued.get() < maxPending);
+	}
+
+	@Test(timeout = 10000)
+	public void testNested() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			xf.setExecutor(executor);
+			List<Integer> counts = xf.parallelMap("Cd",
+					xf.xmlToNode(catalog(10)), Cd.class,
+					new XmlFieldMapper<Cd, Integer>() {
+						@Override
+						public Integer map(Cd cd) {
+							XmlField nested = new XmlField();
+							nested.setExecutor(executor);
+							try {
+								return nested.parallelMap("Title",
+										nested.objectToNode(cd), Cd.class,
+										TITLE).size();
+							} catch (XmlFieldXPathException e) {
+								throw new IllegalStateException(e);
+							}
+						}
+					});
+			assertEquals(10, counts.size());
+			assertEquals(Integer.valueOf(1), counts.get(9));
+		} finally {
+			xf.setExecutor(null);
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testShutdownDefaultExecutor() throws Exception {
+		XmlField.shutdownDefaultExecutor();
+
+		final ClassLoader contextClassLoader = Thread.currentThread()
+				.getContextClassLoader();
+		final ClassLoader appClassLoader = new URLClassLoader(new URL[0],
+				contextClassLoader);
+		final List<ClassLoader> loaders = new CopyOnWriteArrayList<ClassLoader>();
+		Thread.currentThread().setContextClassLoader(appClassLoader);
+		try {
+			xf.parallelMap("Cd", xf.xmlToNode(catalog(100)), Cd.class,
+					new XmlFieldMapper<Cd, Void>() {
+						@Override
+						public Void map(Cd cd) {
+							loaders.add(Thread.currentThread()
+									.getContextClassLoader());
+							return null;
+						}
+					});
+		} finally {
+			Thread.currentThread().setContextClassLoader(contextClassLoader);
+			XmlField.shutdownDefaultExecutor();
+		}
+
+		// Threads do not reference the loader of the calling application.
+		assertEquals(100, loaders.size());
+		assertFalse(loaders.contains(appClassLoader));
+
+		// A new executor is created.
+		assertEquals(10, xf.parallelMap("Cd", xf.xmlToNode(catalog(10)),
+				Cd.class, TITLE).size());
+	}
+
+	@Test
+	public void testModifierWithoutCopier() throws Exception {
+		// Modifiers which do not implement XmlFieldNodeCopier.
+		final XmlFieldNodeModifier modifier = new DomNodeModifier();
+		Field field = XmlField.class.getDeclaredField("modifier");
+		field.setAccessible(true);
+		field.set(xf, Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { XmlFieldNodeModifier.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						return method.invoke(modifier, args);
+					}
+				}));
+
+		XmlFieldNode node = xf.xmlToNode(catalog(100));
+		List<String> titles = xf.parallelMap("Cd", node, Cd.class, TITLE);
+		assertEquals(100, titles.size());
+		assertEquals("Title 99", titles.get(99));
+
+		Cd cd = xf.newObject(Cd.class);
+		cd.setArtist("New");
+		assertEquals("New", cd.getArtist());
+		assertNull(xf.newObject(Cd.class).getArtist());
+	}
+
+	@Test
+	public void testIterator() throws Exception {
+		List<String> titles = xf.parallelMap(
+				xf.streamObjects(
+						new ByteArrayInputStream(catalog(10000).getBytes()),
+						Cd.class), TITLE);
+		assertEquals(10000, titles.size());
+		for (int i = 0; i < titles.size(); i++) {
+			assertEquals("Title " + i, titles.get(i));
+		}
+	}
+
+	@Test
+	public void testNamespaces() throws Exception {
+		String xml = "<a:entry xmlns:a=\"http://www.w3.org/2005/Atom\" xmlns:x=\"http://www.w3.org/1999/xhtml\">"
+				+ "<x:div class=\"cd\"><x:span class=\"title\">T1</x:span></x:div>"
+				+ "<x:div class=\"dvd\"><x:span class=\"title\">D1</x:span></x:div>"
+				+ "<x:div class=\"cd\"><x:span class=\"title\">T2</x:span></x:div>"
+				+ "</a:entry>";
+
+		List<String> titles = xf.parallelMap("x:div[@class='cd']",
+				xf.xmlToNode(xml), AtomCd.class,
+				new XmlFieldMapper<AtomCd, String>() {
+					@Override
+					public String map(AtomCd cd) {
+						return cd.getTitle();
+					}
+				});
+		assertEquals(2, titles.size());
+		assertEquals("T1", titles.get(0));
+		assertEquals("T2", titles.get(1));
+	}
+
+	@Test
+	public void testOrder() throws Exception {
+		XmlFieldNode node = xf.xmlToNode(catalog(10000));
+		List<String> titles = xf.parallelMap("Cd", node, Cd.class, TITLE);
+		assertEquals(10000, titles.size());
+		for (int i = 0; i < titles.size(); i++) {
+			assertEquals("Title " + i, titles.get(i));
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.tests.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldObject;
+import org.xmlfield.tests.pack1.Catalog;
+import org.xmlfield.tests.pack1.Cd;
+
+/**
+ * Test XmlField#snapshot.
+ * 
+ * @author Nicolas Richeton
+ */
+public class SnapshotTest {
+
+	private final XmlField xf = new XmlField();
+
+	@Test
+	public void testCycles() throws Exception {
+		Folder folder = xf.snapshot(xf.xmlToObject(
+				"<Folder name=\"f\"><Item name=\"a\"/><Item name=\"b\"/></Folder>",
+				Folder.class), Folder.class);
+
+		assertEquals(2, folder.getItems().length);
+		assertEquals("b", folder.getItems()[1].getName());
+		assertSame(folder, folder.getItems()[0].getFolder());
+		assertSame(folder, folder.getItems()[1].getFolder());
+	}
+
+	@Test
+	public void testExplicitCollection() throws Exception {
+		org.xmlfield.tests.pack6.association.Catalog catalog = xf.snapshot(
+				xf.xmlToObject(
+						"<Catalog><goods><Cd><Title>c</Title></Cd><Book><Title>b</Title></Book></goods></Catalog>",
+						org.xmlfield.tests.pack6.association.Catalog.class),
+				org.xmlfield.tests.pack6.association.Catalog.class);
+
+		Object[] goods = catalog.getGoods();
+		assertEquals(2, goods.length);
+		assertEquals("c",
+				((org.xmlfield.tests.pack6.association.Cd) goods[0]).getTitle());
+		assertEquals("b",
+				((org.xmlfield.tests.pack6.association.Book) goods[1])
+						.getTitle());
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		String xml = "<Catalog><Cd><Title>Empire Burlesque</Title><Price>10.90</Price></Cd><Cd><Title>Eros</Title></Cd></Catalog>";
+		Catalog bound = xf.xmlToObject(xml, Catalog.class);
+		Catalog catalog = xf.snapshot(bound, Catalog.class);
+
+		assertTrue(!(catalog instanceof XmlFieldObject));
+		assertEquals(2, catalog.sizeOfCd());
+		assertEquals("Empire Burlesque", catalog.getCd()[0].getTitle());
+		assertEquals(10.9f, catalog.getCd()[0].getPrice(), 0);
+		assertEquals(0, catalog.getOtherCd().length);
+		assertEquals(bound.toString(), catalog.toString());
+
+		// Later changes are not visible.
+		bound.getCd()[0].setTitle("Changed");
+		assertEquals("Empire Burlesque", catalog.getCd()[0].getTitle());
+
+		// Arrays are copied.
+		catalog.getCd()[0] = null;
+		assertEquals("Empire Burlesque", catalog.getCd()[0].getTitle());
+		assertNotSame(catalog.getCd(), catalog.getCd());
+	}
+
+	@Test
+	public void testEquals() throws Exception {
+		String xml = "<Catalog><Cd><Title>Eros</Title></Cd></Catalog>";
+		Cd first = xf.snapshot(xf.xmlToObject(xml, Catalog.class).getCd()[0],
+				Cd.class);
+		Cd second = xf.snapshot(xf.xmlToObject(xml, Catalog.class).getCd()[0],
+				Cd.class);
+		assertEquals(first, second);
+		assertEquals(first.hashCode(), second.hashCode());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnly() throws Exception {
+		Cd cd = xf.snapshot(
+				xf.xmlToObject("<Cd><Title>Eros</Title></Cd>", Cd.class),
+				Cd.class);
+		cd.setTitle("Changed");
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.tests.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldIterator;
+import org.xmlfield.core.exception.XmlFieldParsingException;
+import org.xmlfield.core.impl.dom.PooledDomNodeParser;
+import org.xmlfield.tests.pack2.AtomCd;
+import org.xmlfield.tests.pack8.Cd;
+import org.xmlfield.tests.performance.shakspeare.Act;
+import org.xmlfield.tests.performance.shakspeare.Play;
+
+/**
+ * Test streaming of entities with XmlField#streamObjects.
+ * 
+ * @author Nicolas Richeton
+ */
+public class StreamObjectsTest {
+
+	/**
+	 * Generates a catalog with count Cd elements, without keeping the whole
+	 * document in memory.
+	 */
+	private static InputStream catalog(final int count) {
+		return new SequenceInputStream(new Enumeration<InputStream>() {
+			private int i = -1;
+
+			@Override
+			public boolean hasMoreElements() {
+				return i <= count;
+			}
+
+			@Override
+			public InputStream nextElement() {
+				String s;
+				if (i < 0) {
+					s = "<Catalog>";
+				} else if (i == count) {
+					s = "</Catalog>";
+				} else {
+					s = "<Cd><Title>Title " + i + "</Title><Price>" + i
+							+ "</Price></Cd>";
+				}
+				i++;
+				return new ByteArrayInputStream(s.getBytes());
+			}
+		});
+	}
+
+	private final XmlField xf = new XmlField();
+
+	@Test
+	public void testClose() throws Exception {
+		// Own pool of document builders.
+		Map<String, String> configuration = new HashMap<String, String>();
+		configuration.put("xmlfield.test.streamClose", "true");
+		XmlField pooled = new XmlField(configuration);
+		PooledDomNodeParser parser = (PooledDomNodeParser) pooled
+				._getParser();
+		assertEquals(0, parser.getIdleBuilders());
+
+		XmlFieldIterator<Cd> cds = pooled.streamObjects(catalog(1000),
+				Cd.class);
+		assertEquals("Title 0", cds.next().getTitle());
+		cds.close();
+		assertFalse(cds.hasNext());
+		assertEquals(1, parser.getIdleBuilders());
+
+		// Closing twice has no effect.
+		cds.close();
+		assertEquals(1, parser.getIdleBuilders());
+
+		// Reading errors release the builder.
+		cds = pooled.streamObjects(new ByteArrayInputStream(
+				"<Catalog><Cd><Title>".getBytes()), Cd.class);
+		assertEquals(0, parser.getIdleBuilders());
+		try {
+			cds.hasNext();
+			fail("No exception thrown");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		assertEquals(1, parser.getIdleBuilders());
+	}
+
+	@Test
+	public void testHugeDocument() throws Exception {
+		Iterator<Cd> cds = xf.streamObjects(catalog(100000), Cd.class);
+		int count = 0;
+		while (cds.hasNext()) {
+			Cd cd = cds.next();
+			assertEquals("Title " + count, cd.getTitle());
+			assertEquals(count, cd.getPrice(), 0);
+			count++;
+		}
+		assertEquals(100000, count);
+		assertFalse(cds.hasNext());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testNoMoreElements() throws Exception {
+		Iterator<Cd> cds = xf.streamObjects(catalog(0), Cd.class);
+		assertFalse(cds.hasNext());
+		cds.next();
+	}
+
+	@Test
+	public void testNamespacesAndSelector() throws Exception {
+		String xml = "<a:entry xmlns:a=\"http://www.w3.org/2005/Atom\" xmlns:x=\"http://www.w3.org/1999/xhtml\">"
+				+ "<x:div class=\"cd\"><x:span class=\"title\">T1</x:span></x:div>"
+				+ "<x:div class=\"dvd\"><x:span class=\"title\">D1</x:span></x:div>"
+				+ "<x:div class=\"cd\"><x:span class=\"title\">T2</x:span>"
+				+ "<x:div class=\"cd\"/></x:div>"
+				+ "<a:div class=\"cd\"><x:span class=\"title\">A1</x:span></a:div>"
+				+ "</a:entry>";
+
+		Iterator<AtomCd> cds = xf.streamObjects(
+				new ByteArrayInputStream(xml.getBytes("UTF-8")), AtomCd.class);
+		assertTrue(cds.hasNext());
+		AtomCd cd = cds.next();
+		assertEquals("T1", cd.getTitle());
+
+		// Elements keep the namespaces declared by their ancestors.
+		assertEquals(
+				"<x:div xmlns:x=\"http://www.w3.org/1999/xhtml\" xmlns:a=\"http://www.w3.org/2005/Atom\" class=\"cd\"><x:span class=\"title\">T1</x:span></x:div>",
+				xf.objectToXml(cd));
+
+		assertEquals("T2", cds.next().getTitle());
+		assertFalse(cds.hasNext());
+	}
+
+	@Test
+	public void testSameAsArray() throws Exception {
+		InputStream in = StreamObjectsTest.class
+				.getResourceAsStream("/r_and_j.xml");
+		Iterator<Act> acts;
+		try {
+			acts = xf.streamObjects(in, Act.class);
+			Act[] expected = xf.xmlToObject(
+					StreamObjectsTest.class.getResourceAsStream("/r_and_j.xml"),
+					Play.class).getActs();
+
+			for (Act act : expected) {
+				assertTrue(acts.hasNext());
+				Act streamed = acts.next();
+				assertEquals(act.getPrologueTitle(), streamed.getPrologueTitle());
+				assertEquals(act.getScenes().length,
+						streamed.getScenes().length);
+			}
+			assertFalse(acts.hasNext());
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test(expected = XmlFieldParsingException.class)
+	public void testUnsupportedPath() throws Exception {
+		xf.streamObjects(catalog(1), Unsupported.class);
+	}
+}
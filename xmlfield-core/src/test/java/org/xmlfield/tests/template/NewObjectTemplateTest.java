@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.tests.template;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.internal.XmlFieldUtils;
+import org.xmlfield.tests.pack2.AtomCatalog;
+import org.xmlfield.tests.pack8.Cd;
+
+/**
+ * Test XmlField#newObject with template documents.
+ * 
+ * @author Nicolas Richeton
+ */
+public class NewObjectTemplateTest {
+
+	private final XmlField xf = new XmlField();
+
+	@Test
+	public void testConcurrentUse() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 200; i++) {
+				final String artist = "Artist " + i;
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						Cd cd = xf.newObject(Cd.class);
+						cd.setArtist(artist);
+						return xf.objectToXml(cd);
+					}
+				}));
+			}
+			for (int i = 0; i < 200; i++) {
+				assertEquals("<Cd><Artist>Artist " + i + "</Artist></Cd>",
+						results.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testIndependentDocuments() throws Exception {
+		Cd first = xf.newObject(Cd.class);
+		first.setArtist("Bob Dylan");
+		Cd second = xf.newObject(Cd.class);
+
+		assertNotSame(XmlFieldUtils.getXmlFieldNode(first).getNode(),
+				XmlFieldUtils.getXmlFieldNode(second).getNode());
+		assertEquals("<Cd><Artist>Bob Dylan</Artist></Cd>",
+				xf.objectToXml(first));
+		assertEquals("<Cd/>", xf.objectToXml(second));
+	}
+
+	@Test
+	public void testNamespaces() throws Exception {
+		String expected = xf.objectToXml(xf.xmlToObject(XmlFieldUtils.emptyTag(
+				"a:entry", XmlFieldUtils.getResourceNamespaces(AtomCatalog.class)),
+				AtomCatalog.class));
+
+		xf.newObject(AtomCatalog.class);
+		assertEquals(expected, xf.objectToXml(xf.newObject(AtomCatalog.class)));
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.pipeline;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes documents to a directory, with the name of the file they were read
+ * from.
+ *
+ * @author Nicolas Richeton
+ */
+public class DirectoryOutput implements PipelineOutput {
+
+	private final File directory;
+
+	/**
+	 * @param directory
+	 *            destination directory, created if needed.
+	 */
+	public DirectoryOutput(final File directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public OutputStream open(final File input) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()
+				&& !directory.isDirectory()) {
+			throw new IOException("Unable to create directory " + directory);
+		}
+		return new BufferedOutputStream(new FileOutputStream(new File(
+				directory, input.getName())));
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.pipeline;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+
+import org.xmlfield.validation.handlers.ConstraintViolation;
+
+/**
+ * Document which could not go through a pipeline : the stage which failed,
+ * with the exception or the constraint violations.
+ *
+ * @author Nicolas Richeton
+ */
+public class PipelineError {
+
+	private final Throwable exception;
+
+	private final File file;
+
+	private final PipelineStage stage;
+
+	private final Set<ConstraintViolation<Object>> violations;
+
+	PipelineError(final File file, final PipelineStage stage,
+			final Throwable exception) {
+		this.file = file;
+		this.stage = stage;
+		this.exception = exception;
+		this.violations = Collections.emptySet();
+	}
+
+	PipelineError(final File file,
+			final Set<ConstraintViolation<Object>> violations) {
+		this.file = file;
+		this.stage = PipelineStage.VALIDATE;
+		this.exception = null;
+		this.violations = violations;
+	}
+
+	/**
+	 * Returns the exception or error, or <code>null</code> for validation
+	 * errors.
+	 */
+	public Throwable getException() {
+		return exception;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public PipelineStage getStage() {
+		return stage;
+	}
+
+	/**
+	 * Returns the constraint violations of a document which is not valid.
+	 */
+	public Set<ConstraintViolation<Object>> getViolations() {
+		return violations;
+	}
+
+	@Override
+	public String toString() {
+		return "PipelineError [file=" + file + ", stage=" + stage
+				+ (exception == null ? ", violations=" + violations.size()
+						: ", exception=" + exception) + "]";
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Destination of the documents written by the
+ * {@link PipelineStage#SERIALIZE} stage.
+ * <p>
+ * Implementations are called from several threads at the same time and must
+ * be thread safe.
+ *
+ * @author Nicolas Richeton
+ * @see DirectoryOutput
+ */
+public interface PipelineOutput {
+
+	/**
+	 * Opens the output of a document. The stream is closed by the pipeline.
+	 *
+	 * @param input
+	 *            file the document was read from
+	 * @return output stream
+	 */
+	OutputStream open(File input) throws IOException;
+}
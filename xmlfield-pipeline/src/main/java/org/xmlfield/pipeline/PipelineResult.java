@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.pipeline;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of {@link XmlFieldPipeline#run}.
+ *
+ * @author Nicolas Richeton
+ */
+public class PipelineResult {
+
+	private final long completed;
+
+	private final List<PipelineError> errors;
+
+	private final Map<PipelineStage, StageStatistics> statistics;
+
+	PipelineResult(final long completed, final List<PipelineError> errors,
+			final Map<PipelineStage, StageStatistics> statistics) {
+		this.completed = completed;
+		this.errors = Collections.unmodifiableList(errors);
+		this.statistics = Collections.unmodifiableMap(statistics);
+	}
+
+	/**
+	 * Returns the number of documents which went through all the stages.
+	 */
+	public long getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * Returns the documents which failed, in no particular order.
+	 */
+	public List<PipelineError> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Returns the statistics of the stages which were run.
+	 */
+	public Map<PipelineStage, StageStatistics> getStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public String toString() {
+		return "PipelineResult [completed=" + completed + ", errors="
+				+ errors.size() + ", statistics=" + statistics.values() + "]";
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.pipeline;
+
+/**
+ * Stages of an {@link XmlFieldPipeline}, in processing order.
+ *
+ * @author Nicolas Richeton
+ */
+public enum PipelineStage {
+
+	/**
+	 * Reads the file and builds the document.
+	 */
+	PARSE,
+
+	/**
+	 * Selects the resource node of the type.
+	 */
+	BIND,
+
+	/**
+	 * Checks the validation annotations of the type. Only when validation is
+	 * enabled.
+	 */
+	VALIDATE,
+
+	/**
+	 * Calls the transformer. Only when a transformer is set.
+	 */
+	TRANSFORM,
+
+	/**
+	 * Writes the document. Only when an output is set.
+	 */
+	SERIALIZE
+}
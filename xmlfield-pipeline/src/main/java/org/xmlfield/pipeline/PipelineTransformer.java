@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.pipeline;
+
+/**
+ * Changes applied to each object by the {@link PipelineStage#TRANSFORM} stage.
+ * <p>
+ * Implementations are called from several threads at the same time and must
+ * be thread safe.
+ *
+ * @author Nicolas Richeton
+ *
+ * @param <T>
+ *            xml field object type
+ */
+public interface PipelineTransformer<T> {
+
+	/**
+	 * Changes an object, usually with its setters.
+	 *
+	 * @param object
+	 *            xml field object
+	 * @throws Exception
+	 *             reported as an error of the document.
+	 */
+	void transform(T object) throws Exception;
+}
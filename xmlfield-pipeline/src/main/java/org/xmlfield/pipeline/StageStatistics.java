@@ -0,0 +1,157 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.pipeline;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of a pipeline stage. Counters are updated while the pipeline
+ * runs.
+ * <p>
+ * StageStatistics is thread safe.
+ *
+ * @author Nicolas Richeton
+ */
+public class StageStatistics {
+
+	private final AtomicLong busyNanos = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private volatile long firstStart = 0;
+
+	private final Queue<?> input;
+
+	private volatile long lastEnd = 0;
+
+	private final AtomicLong processed = new AtomicLong();
+
+	private final PipelineStage stage;
+
+	private final int workers;
+
+	StageStatistics(final PipelineStage stage, final int workers,
+			final Queue<?> input) {
+		this.stage = stage;
+		this.workers = workers;
+		this.input = input;
+	}
+
+	/**
+	 * Returns the mean time spent on a document, in nanoseconds.
+	 */
+	public long getAverageNanos() {
+		final long count = processed.get();
+		return count == 0 ? 0 : busyNanos.get() / count;
+	}
+
+	/**
+	 * Returns the time spent by all workers on documents, in nanoseconds.
+	 */
+	public long getBusyNanos() {
+		return busyNanos.get();
+	}
+
+	/**
+	 * Returns the number of documents which failed in this stage.
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Returns the number of documents processed by this stage, including
+	 * failed ones.
+	 */
+	public long getProcessed() {
+		return processed.get();
+	}
+
+	/**
+	 * Returns the number of documents waiting for this stage.
+	 */
+	public int getQueued() {
+		return input.size();
+	}
+
+	public PipelineStage getStage() {
+		return stage;
+	}
+
+	/**
+	 * Returns the number of documents processed by second, from the first
+	 * document to the last one.
+	 */
+	public double getThroughput() {
+		final long start = firstStart;
+		final long elapsed = lastEnd - start;
+		if (start == 0 || elapsed <= 0) {
+			return 0;
+		}
+		return processed.get() * (double) TimeUnit.SECONDS.toNanos(1)
+				/ elapsed;
+	}
+
+	/**
+	 * Returns the part of the time the workers of this stage were busy,
+	 * between 0 and 1.
+	 */
+	public double getUtilization() {
+		final long elapsed = lastEnd - firstStart;
+		if (firstStart == 0 || elapsed <= 0) {
+			return 0;
+		}
+		return Math.min(1, busyNanos.get() / ((double) elapsed * workers));
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Records a document.
+	 */
+	void record(final long start, final long end, final boolean success) {
+		if (firstStart == 0) {
+			synchronized (this) {
+				if (firstStart == 0) {
+					firstStart = start;
+				}
+			}
+		}
+		busyNanos.addAndGet(end - start);
+		processed.incrementAndGet();
+		if (!success) {
+			failed.incrementAndGet();
+		}
+		synchronized (this) {
+			if (end > lastEnd) {
+				lastEnd = end;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "StageStatistics [stage=" + stage + ", workers=" + workers
+				+ ", processed=" + processed + ", failed=" + failed
+				+ ", throughput=" + String.format("%.1f/s", getThroughput())
+				+ ", utilization="
+				+ String.format("%.0f%%", getUtilization() * 100) + "]";
+	}
+}
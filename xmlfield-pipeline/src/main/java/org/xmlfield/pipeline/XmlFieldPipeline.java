@@ -0,0 +1,548 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.pipeline;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.exception.XmlFieldParsingException;
+import org.xmlfield.validation.XmlFieldValidator;
+import org.xmlfield.validation.handlers.ConstraintViolation;
+
+/**
+ * Processes many xml files with several threads : each file is parsed, bound
+ * to a type, validated, transformed and written, in separate stages.
+ * <p>
+ * Stages are connected by bounded queues : when a stage is slower than the
+ * previous one, its queue fills up and the previous stage waits, so that only
+ * a limited number of documents is in memory at once. Each stage has its own
+ * workers, and each worker thread has its own XmlField and validator. A
+ * document is only used by one stage at a time, and each stage binds its own
+ * object to the document.
+ * <p>
+ * Failures do not stop the pipeline : the document is dropped and reported in
+ * {@link PipelineResult#getErrors()}. If a worker dies, the other workers are
+ * stopped and {@link #run(Iterator)} throws the failure.
+ * 
+ * <pre>
+ * XmlFieldPipeline&lt;Catalog&gt; pipeline = new XmlFieldPipeline&lt;Catalog&gt;(Catalog.class);
+ * pipeline.setValidation(true);
+ * pipeline.setTransformer(new PipelineTransformer&lt;Catalog&gt;() {
+ * 	public void transform(Catalog catalog) {
+ * 		catalog.setName(&quot;updated&quot;);
+ * 	}
+ * });
+ * pipeline.setOutput(new DirectoryOutput(outputDirectory));
+ * PipelineResult result = pipeline.run(inputDirectory);
+ * </pre>
+ * <p>
+ * The configuration must not be changed while the pipeline is running.
+ *
+ * @author Nicolas Richeton
+ * 
+ * @param <T>
+ *            xml field object type
+ */
+public class XmlFieldPipeline<T> {
+
+	/**
+	 * Document and its current node.
+	 */
+	private static final class Item {
+		private final File file;
+		private XmlFieldNode node;
+
+		Item(final File file) {
+			this.file = file;
+		}
+	}
+
+	/**
+	 * Thread of a stage.
+	 */
+	private final class Worker extends Thread {
+
+		private final BlockingQueue<Item> input;
+
+		/**
+		 * Input of the next stage, or <code>null</code> for the last stage.
+		 */
+		private final BlockingQueue<Item> next;
+
+		/**
+		 * Number of workers of the next stage.
+		 */
+		private final int nextWorkers;
+
+		private final PipelineStage stage;
+
+		private final StageStatistics statistics;
+
+		/**
+		 * Number of running workers of the stage.
+		 */
+		private final AtomicInteger running;
+
+		private final Run run;
+
+		private XmlField xmlField;
+
+		private XmlFieldValidator validator;
+
+		Worker(final Run run, final PipelineStage stage, final int index,
+				final BlockingQueue<Item> input,
+				final BlockingQueue<Item> next, final int nextWorkers,
+				final AtomicInteger running, final StageStatistics statistics) {
+			super("xmlfield-pipeline-" + stage.name().toLowerCase() + "-"
+					+ index);
+			setDaemon(true);
+			this.run = run;
+			this.stage = stage;
+			this.input = input;
+			this.next = next;
+			this.nextWorkers = nextWorkers;
+			this.running = running;
+			this.statistics = statistics;
+		}
+
+		private T bind(final Item item) {
+			return xmlField.nodeToObject(null, item.node, type);
+		}
+
+		/**
+		 * Processes a document.
+		 * 
+		 * @return false if the document has been dropped.
+		 */
+		private boolean process(final Item item) throws Exception {
+			switch (stage) {
+			case PARSE:
+				item.node = xmlField.xmlToNode(item.file);
+				return true;
+
+			case BIND:
+				final T object = xmlField.nodeToObject(item.node, type);
+				if (object == null) {
+					throw new XmlFieldParsingException("Document does not match "
+							+ type.getName());
+				}
+				item.node = xmlField.objectToNode(object);
+				return true;
+
+			case VALIDATE:
+				final Set<ConstraintViolation<Object>> violations = validator
+						.validate(bind(item), validationGroup);
+				if (!violations.isEmpty()) {
+					run.errors.add(new PipelineError(item.file, violations));
+					return false;
+				}
+				return true;
+
+			case TRANSFORM:
+				transformer.transform(bind(item));
+				return true;
+
+			case SERIALIZE:
+				final OutputStream out = output.open(item.file);
+				try {
+					xmlField.nodeToXml(item.node, out);
+				} finally {
+					out.close();
+				}
+				return true;
+
+			default:
+				throw new IllegalStateException("Unknown stage " + stage);
+			}
+		}
+
+		@Override
+		public void run() {
+			xmlField = newXmlField();
+			validator = new XmlFieldValidator();
+			try {
+				while (true) {
+					final Item item = input.take();
+					if (item == END) {
+						return;
+					}
+
+					final long start = System.nanoTime();
+					boolean success;
+					try {
+						success = process(item);
+					} catch (Throwable e) {
+						run.errors.add(new PipelineError(item.file, stage, e));
+						success = false;
+					}
+					statistics.record(start, System.nanoTime(), success);
+
+					if (success) {
+						if (next == null) {
+							run.completed.incrementAndGet();
+						} else {
+							next.put(item);
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				// Pipeline cancelled.
+				return;
+			} catch (Throwable e) {
+				// Documents of the stage cannot be processed anymore.
+				run.fail(e);
+			} finally {
+				// The last worker of the stage ends the next stage.
+				if (running.decrementAndGet() == 0 && next != null) {
+					try {
+						for (int i = 0; i < nextWorkers; i++) {
+							next.put(END);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * State of a run.
+	 */
+	private static final class Run {
+		private final Thread caller = Thread.currentThread();
+		private final AtomicLong completed = new AtomicLong();
+		private final List<PipelineError> errors = Collections
+				.synchronizedList(new ArrayList<PipelineError>());
+		private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		private final List<Thread> workers = new ArrayList<Thread>();
+
+		/**
+		 * Stops the run after the death of a worker : other workers and the
+		 * thread waiting for the run are interrupted.
+		 */
+		void fail(final Throwable e) {
+			if (failure.compareAndSet(null, e)) {
+				for (final Thread worker : workers) {
+					worker.interrupt();
+				}
+				caller.interrupt();
+			}
+		}
+
+		/**
+		 * Throws the failure of a worker, if any.
+		 */
+		void checkFailure() {
+			final Throwable e = failure.get();
+			if (e == null) {
+				return;
+			}
+			// Interrupted by fail.
+			Thread.interrupted();
+			if (e instanceof Error) {
+				throw (Error) e;
+			}
+			throw new IllegalStateException("Pipeline worker failed", e);
+		}
+	}
+
+	/**
+	 * Default capacity of the queues between stages.
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 16;
+
+	/**
+	 * Marks the end of the input of a stage.
+	 */
+	private static final Item END = new Item(null);
+
+	private static final FileFilter XML_FILES = new FileFilter() {
+		@Override
+		public boolean accept(final File file) {
+			return file.isFile()
+					&& file.getName().toLowerCase().endsWith(".xml");
+		}
+	};
+
+	private PipelineOutput output = null;
+
+	private final Map<String, String> parserConfiguration;
+
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+
+	private volatile Map<PipelineStage, StageStatistics> statistics = Collections
+			.emptyMap();
+
+	private PipelineTransformer<? super T> transformer = null;
+
+	private final Class<T> type;
+
+	private boolean validation = false;
+
+	private Class<?> validationGroup = null;
+
+	private final Map<PipelineStage, Integer> workers = new EnumMap<PipelineStage, Integer>(
+			PipelineStage.class);
+
+	/**
+	 * Creates a pipeline with the default XmlField configuration.
+	 * 
+	 * @param type
+	 *            interface documents are bound to.
+	 */
+	public XmlFieldPipeline(final Class<T> type) {
+		this(type, null);
+	}
+
+	/**
+	 * Creates a pipeline.
+	 * 
+	 * @param type
+	 *            interface documents are bound to.
+	 * @param parserConfiguration
+	 *            configuration of the XmlField objects of the workers, see
+	 *            {@link XmlField#XmlField(Map)}. May be <code>null</code>.
+	 */
+	public XmlFieldPipeline(final Class<T> type,
+			final Map<String, String> parserConfiguration) {
+		this.type = type;
+		this.parserConfiguration = parserConfiguration;
+	}
+
+	/**
+	 * Returns the stages run by this pipeline, according to its
+	 * configuration.
+	 */
+	public List<PipelineStage> getStages() {
+		final List<PipelineStage> stages = new ArrayList<PipelineStage>();
+		stages.add(PipelineStage.PARSE);
+		stages.add(PipelineStage.BIND);
+		if (validation) {
+			stages.add(PipelineStage.VALIDATE);
+		}
+		if (transformer != null) {
+			stages.add(PipelineStage.TRANSFORM);
+		}
+		if (output != null) {
+			stages.add(PipelineStage.SERIALIZE);
+		}
+		return stages;
+	}
+
+	/**
+	 * Returns the statistics of the current or last run.
+	 */
+	public Map<PipelineStage, StageStatistics> getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Returns the number of workers of a stage. By default, there is a worker
+	 * per processor for {@link PipelineStage#PARSE}, and a single worker for
+	 * other stages.
+	 */
+	public int getWorkers(final PipelineStage stage) {
+		final Integer count = workers.get(stage);
+		if (count != null) {
+			return count;
+		}
+		return stage == PipelineStage.PARSE ? Runtime.getRuntime()
+				.availableProcessors() : 1;
+	}
+
+	private XmlField newXmlField() {
+		return parserConfiguration == null ? new XmlField() : new XmlField(
+				parserConfiguration);
+	}
+
+	/**
+	 * Processes the xml files of a directory (files ending with .xml), in
+	 * name order.
+	 * 
+	 * @see #run(Iterator)
+	 */
+	public PipelineResult run(final File directory) throws IOException,
+			InterruptedException {
+		final File[] files = directory.listFiles(XML_FILES);
+		if (files == null) {
+			throw new IOException("Unable to list files of " + directory);
+		}
+		Arrays.sort(files);
+		return run(Arrays.asList(files).iterator());
+	}
+
+	/**
+	 * Processes files. The iterator is read in the current thread, as the
+	 * first stage accepts files, and the method returns when all the files
+	 * have been processed.
+	 * 
+	 * @param files
+	 *            xml files
+	 * @return completed documents, errors and statistics.
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted. Workers are stopped.
+	 * @throws IllegalStateException
+	 *             if a worker died, with its failure as cause. Errors are
+	 *             thrown as is.
+	 */
+	public PipelineResult run(final Iterator<File> files)
+			throws InterruptedException {
+		final List<PipelineStage> stages = getStages();
+		final Run run = new Run();
+
+		// Queues : input of each stage.
+		final List<BlockingQueue<Item>> queues = new ArrayList<BlockingQueue<Item>>();
+		final Map<PipelineStage, StageStatistics> runStatistics = new EnumMap<PipelineStage, StageStatistics>(
+				PipelineStage.class);
+		for (final PipelineStage stage : stages) {
+			final BlockingQueue<Item> queue = new ArrayBlockingQueue<Item>(
+					queueSize);
+			queues.add(queue);
+			runStatistics.put(stage, new StageStatistics(stage,
+					getWorkers(stage), queue));
+		}
+		statistics = runStatistics;
+
+		final List<Worker> threads = new ArrayList<Worker>();
+		for (int s = 0; s < stages.size(); s++) {
+			final PipelineStage stage = stages.get(s);
+			final boolean last = s == stages.size() - 1;
+			final AtomicInteger running = new AtomicInteger(getWorkers(stage));
+			for (int i = 0; i < getWorkers(stage); i++) {
+				threads.add(new Worker(run, stage, i + 1, queues.get(s),
+						last ? null : queues.get(s + 1), last ? 0
+								: getWorkers(stages.get(s + 1)), running,
+						runStatistics.get(stage)));
+			}
+		}
+		run.workers.addAll(threads);
+		for (final Worker thread : threads) {
+			thread.start();
+		}
+
+		try {
+			// Blocks when the first stage is late.
+			final BlockingQueue<Item> first = queues.get(0);
+			while (files.hasNext()) {
+				first.put(new Item(files.next()));
+			}
+			for (int i = 0; i < getWorkers(stages.get(0)); i++) {
+				first.put(END);
+			}
+			for (final Worker thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			for (final Worker thread : threads) {
+				thread.interrupt();
+			}
+			run.checkFailure();
+			throw e;
+		} catch (RuntimeException e) {
+			for (final Worker thread : threads) {
+				thread.interrupt();
+			}
+			throw e;
+		}
+
+		run.checkFailure();
+		return new PipelineResult(run.completed.get(),
+				new ArrayList<PipelineError>(run.errors), runStatistics);
+	}
+
+	/**
+	 * Writes documents after the other stages. Disabled by default.
+	 * 
+	 * @param output
+	 *            destination, or <code>null</code> to disable serialization.
+	 */
+	public void setOutput(final PipelineOutput output) {
+		this.output = output;
+	}
+
+	/**
+	 * Sets the capacity of the queues between stages. Default is
+	 * {@link #DEFAULT_QUEUE_SIZE}.
+	 */
+	public void setQueueSize(final int queueSize) {
+		if (queueSize < 1) {
+			throw new IllegalArgumentException("Invalid queue size "
+					+ queueSize);
+		}
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * Changes documents after validation. Disabled by default.
+	 * 
+	 * @param transformer
+	 *            thread safe transformer, or <code>null</code> to disable the
+	 *            stage.
+	 */
+	public void setTransformer(final PipelineTransformer<? super T> transformer) {
+		this.transformer = transformer;
+	}
+
+	/**
+	 * Checks the validation annotations of the type, with XmlFieldValidator.
+	 * Documents which are not valid are reported as errors. Disabled by
+	 * default.
+	 */
+	public void setValidation(final boolean validation) {
+		this.validation = validation;
+	}
+
+	/**
+	 * Sets the validation group.
+	 * 
+	 * @param validationGroup
+	 *            group, or <code>null</code> for the default group.
+	 */
+	public void setValidationGroup(final Class<?> validationGroup) {
+		this.validationGroup = validationGroup;
+	}
+
+	/**
+	 * Sets the number of workers of a stage.
+	 * 
+	 * @see #getWorkers(PipelineStage)
+	 */
+	public void setWorkers(final PipelineStage stage, final int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("Invalid worker count " + count
+					+ " for " + stage);
+		}
+		workers.put(stage, count);
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ */
+package org.xmlfield.pipeline.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xmlfield.annotations.FieldXPath;
+import org.xmlfield.annotations.ResourceXPath;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.pipeline.DirectoryOutput;
+import org.xmlfield.pipeline.PipelineError;
+import org.xmlfield.pipeline.PipelineResult;
+import org.xmlfield.pipeline.PipelineStage;
+import org.xmlfield.pipeline.PipelineTransformer;
+import org.xmlfield.pipeline.StageStatistics;
+import org.xmlfield.pipeline.XmlFieldPipeline;
+import org.xmlfield.validation.annotations.NotEmpty;
+
+/**
+ * Test the processing of files with XmlFieldPipeline.
+ * 
+ * @author Nicolas Richeton
+ */
+public class XmlFieldPipelineTest {
+
+	@ResourceXPath("/Catalog")
+	public interface Catalog {
+		@FieldXPath("Name")
+		@NotEmpty
+		String getName();
+
+		@FieldXPath("Status")
+		String getStatus();
+
+		void setStatus(String status);
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File createFiles(int count, boolean errors) throws IOException {
+		File input = folder.newFolder("input");
+		for (int i = 0; i < count; i++) {
+			String xml = "<Catalog><Name>catalog " + i + "</Name></Catalog>";
+			if (errors && i == 3) {
+				// Not valid
+				xml = "<Catalog><Name></Name></Catalog>";
+			} else if (errors && i == 5) {
+				// Not well formed
+				xml = "<Catalog>";
+			} else if (errors && i == 7) {
+				// Does not match the type
+				xml = "<Other/>";
+			}
+			FileOutputStream out = new FileOutputStream(new File(input, String
+					.format("catalog-%03d.xml", i)));
+			try {
+				out.write(xml.getBytes("UTF-8"));
+			} finally {
+				out.close();
+			}
+		}
+		return input;
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		File input = createFiles(50, false);
+		final List<File> files = new ArrayList<File>();
+		for (File file : input.listFiles()) {
+			files.add(file);
+		}
+		final AtomicInteger read = new AtomicInteger();
+		final AtomicInteger transformed = new AtomicInteger();
+		final AtomicInteger maxPending = new AtomicInteger();
+
+		XmlFieldPipeline<Catalog> pipeline = new XmlFieldPipeline<Catalog>(
+				Catalog.class);
+		pipeline.setQueueSize(1);
+		pipeline.setWorkers(PipelineStage.PARSE, 1);
+		pipeline.setTransformer(new PipelineTransformer<Catalog>() {
+			@Override
+			public void transform(Catalog catalog) throws Exception {
+				int pending = read.get() - transformed.incrementAndGet();
+				if (pending > maxPending.get()) {
+					maxPending.set(pending);
+				}
+				Thread.sleep(1);
+			}
+		});
+
+		final Iterator<File> it = files.iterator();
+		PipelineResult result = pipeline.run(new Iterator<File>() {
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public File next() {
+				read.incrementAndGet();
+				return it.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		});
+
+		assertEquals(50, result.getCompleted());
+		// 3 queues of 1 document, 2 workers and the document being queued.
+		assertTrue(String.valueOf(maxPending.get()), maxPending.get() <= 6);
+	}
+
+	@Test(timeout = 10000)
+	public void testError() throws Exception {
+		File input = createFiles(20, false);
+
+		XmlFieldPipeline<Catalog> pipeline = new XmlFieldPipeline<Catalog>(
+				Catalog.class);
+		pipeline.setQueueSize(1);
+		pipeline.setTransformer(new PipelineTransformer<Catalog>() {
+			@Override
+			public void transform(Catalog catalog) {
+				if (catalog.getName().equals("catalog 4")) {
+					throw new AssertionError("failed");
+				}
+			}
+		});
+
+		// The single worker of the stage keeps running.
+		PipelineResult result = pipeline.run(input);
+		assertEquals(19, result.getCompleted());
+		assertEquals(1, result.getErrors().size());
+		PipelineError error = result.getErrors().get(0);
+		assertEquals(PipelineStage.TRANSFORM, error.getStage());
+		assertTrue(error.getException() instanceof AssertionError);
+	}
+
+	@Test
+	public void testRun() throws Exception {
+		File input = createFiles(20, true);
+		File output = new File(folder.getRoot(), "output");
+
+		XmlFieldPipeline<Catalog> pipeline = new XmlFieldPipeline<Catalog>(
+				Catalog.class);
+		pipeline.setWorkers(PipelineStage.PARSE, 4);
+		pipeline.setWorkers(PipelineStage.SERIALIZE, 2);
+		pipeline.setValidation(true);
+		pipeline.setTransformer(new PipelineTransformer<Catalog>() {
+			@Override
+			public void transform(Catalog catalog) {
+				catalog.setStatus("done");
+			}
+		});
+		pipeline.setOutput(new DirectoryOutput(output));
+		assertEquals(5, pipeline.getStages().size());
+
+		PipelineResult result = pipeline.run(input);
+		assertEquals(17, result.getCompleted());
+		assertEquals(3, result.getErrors().size());
+
+		Map<String, PipelineError> errors = new HashMap<String, PipelineError>();
+		for (PipelineError error : result.getErrors()) {
+			errors.put(error.getFile().getName(), error);
+		}
+		PipelineError invalid = errors.get("catalog-003.xml");
+		assertEquals(PipelineStage.VALIDATE, invalid.getStage());
+		assertNull(invalid.getException());
+		assertEquals(1, invalid.getViolations().size());
+		assertEquals(PipelineStage.PARSE, errors.get("catalog-005.xml")
+				.getStage());
+		assertEquals(PipelineStage.BIND, errors.get("catalog-007.xml")
+				.getStage());
+
+		// Output
+		assertEquals(17, output.listFiles().length);
+		XmlField xf = new XmlField();
+		Catalog catalog = xf.xmlToObject(new File(output, "catalog-012.xml"),
+				Catalog.class);
+		assertEquals("catalog 12", catalog.getName());
+		assertEquals("done", catalog.getStatus());
+
+		// Statistics
+		StageStatistics parse = result.getStatistics().get(PipelineStage.PARSE);
+		assertEquals(4, parse.getWorkers());
+		assertEquals(20, parse.getProcessed());
+		assertEquals(1, parse.getFailed());
+		assertTrue(parse.getThroughput() > 0);
+		StageStatistics serialize = result.getStatistics().get(
+				PipelineStage.SERIALIZE);
+		assertEquals(17, serialize.getProcessed());
+		assertEquals(0, serialize.getQueued());
+		assertEquals(result.getStatistics(), pipeline.getStatistics());
+	}
+}
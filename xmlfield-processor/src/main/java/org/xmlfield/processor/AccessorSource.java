@@ -0,0 +1,249 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+
+import org.xmlfield.core.internal.XmlFieldAccessor;
+import org.xmlfield.core.internal.XmlFieldAccessorGenerator;
+import org.xmlfield.core.internal.XmlFieldInvocationHandler;
+import org.xmlfield.core.internal.XmlFieldMethod;
+
+/**
+ * Java source of the accessor of an XmlField interface.
+ * <p>
+ * The generated class has the same behavior as the classes generated at
+ * runtime by {@link XmlFieldAccessorGenerator} : getters and setters call the
+ * invocation handler directly, other methods go through
+ * {@link XmlFieldInvocationHandler#invoke(Object, XmlFieldMethod, Object[])}.
+ *
+ * @author Nicolas Richeton
+ */
+class AccessorSource {
+
+	private static boolean isGetter(final String name) {
+		return name.startsWith("get") || name.startsWith("has")
+				|| name.startsWith("is") && !name.startsWith("isNull");
+	}
+
+	/**
+	 * Methods already implemented by {@link XmlFieldAccessor}.
+	 */
+	private static boolean isImplemented(final ExecutableElement method) {
+		final String name = method.getSimpleName().toString();
+		final int params = method.getParameters().size();
+
+		if (params == 0) {
+			return "toString".equals(name) || "hashCode".equals(name)
+					|| "toNode".equals(name);
+		}
+		return params == 1 && "equals".equals(name);
+	}
+
+	private final String className;
+	private final ProcessingEnvironment env;
+	private final String packageName;
+	private final TypeElement type;
+
+	AccessorSource(final ProcessingEnvironment env, final TypeElement type) {
+		this.env = env;
+		this.type = type;
+		this.packageName = env.getElementUtils().getPackageOf(type)
+				.getQualifiedName().toString();
+
+		final String binaryName = env.getElementUtils().getBinaryName(type)
+				.toString();
+		this.className = (packageName.length() == 0 ? binaryName : binaryName
+				.substring(packageName.length() + 1))
+				+ XmlFieldAccessorGenerator.CLASS_SUFFIX;
+	}
+
+	private String boxed(final TypeMirror t) {
+		if (t.getKind().isPrimitive()) {
+			return env.getTypeUtils().boxedClass((PrimitiveType) t)
+					.getQualifiedName().toString();
+		}
+		return t.toString();
+	}
+
+	private String classLiteral(final TypeMirror t) {
+		final TypeMirror erased = env.getTypeUtils().erasure(t);
+		if (erased.getKind() == TypeKind.DECLARED) {
+			return ((TypeElement) ((DeclaredType) erased).asElement())
+					.getQualifiedName() + ".class";
+		}
+		if (erased.getKind() == TypeKind.ARRAY) {
+			return classLiteral(((ArrayType) erased).getComponentType())
+					.replace(".class", "[].class");
+		}
+		return erased + ".class";
+	}
+
+	/**
+	 * Returns the abstract methods of the interface and its super interfaces,
+	 * without duplicates.
+	 */
+	private List<ExecutableElement> getMethods() {
+		final List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+		final Set<String> signatures = new HashSet<String>();
+
+		for (ExecutableElement method : ElementFilter.methodsIn(env
+				.getElementUtils().getAllMembers(type))) {
+			if (method.getEnclosingElement().getKind() != ElementKind.INTERFACE
+					|| !method.getModifiers().contains(Modifier.ABSTRACT)
+					|| isImplemented(method)) {
+				continue;
+			}
+
+			final StringBuilder signature = new StringBuilder(method
+					.getSimpleName());
+			for (VariableElement p : method.getParameters()) {
+				signature.append(',').append(classLiteral(p.asType()));
+			}
+			if (signatures.add(signature.toString())) {
+				methods.add(method);
+			}
+		}
+		return methods;
+	}
+
+	String getQualifiedClassName() {
+		return packageName.length() == 0 ? className : packageName + "."
+				+ className;
+	}
+
+	void write(final Writer w) throws IOException {
+		final Types types = env.getTypeUtils();
+		final String typeName = type.getQualifiedName().toString();
+		final List<ExecutableElement> methods = getMethods();
+
+		if (packageName.length() > 0) {
+			w.write("package " + packageName + ";\n\n");
+		}
+		w.write("/**\n * Accessor of {@link " + typeName + "}.\n * <p>\n"
+				+ " * Generated by " + XmlFieldProcessor.class.getName()
+				+ ", do not edit.\n */\n");
+		w.write("@SuppressWarnings(\"unchecked\")\n");
+		w.write("public class " + className + " extends "
+				+ XmlFieldAccessor.class.getName() + " implements "
+				+ typeName + " {\n\n");
+
+		for (int i = 0; i < methods.size(); i++) {
+			final ExecutableElement method = methods.get(i);
+			w.write("\tprivate static final " + XmlFieldMethod.class.getName()
+					+ " m" + i + " = method(" + typeName + ".class, \""
+					+ method.getSimpleName() + "\"");
+			for (VariableElement p : method.getParameters()) {
+				w.write(", " + classLiteral(p.asType()));
+			}
+			w.write(");\n");
+		}
+
+		w.write("\n\tpublic " + className + "("
+				+ XmlFieldInvocationHandler.class.getName()
+				+ " handler) {\n\t\tsuper(handler);\n\t}\n");
+
+		for (int i = 0; i < methods.size(); i++) {
+			final ExecutableElement method = methods.get(i);
+			final ExecutableType methodType = (ExecutableType) types
+					.asMemberOf((DeclaredType) type.asType(), method);
+			writeMethod(w, method, methodType, "m" + i);
+		}
+
+		w.write("}\n");
+	}
+
+	private void writeMethod(final Writer w, final ExecutableElement method,
+			final ExecutableType methodType, final String field)
+			throws IOException {
+		final String name = method.getSimpleName().toString();
+		final TypeMirror returnType = methodType.getReturnType();
+		final List<? extends TypeMirror> params = methodType
+				.getParameterTypes();
+		final boolean isVoid = returnType.getKind() == TypeKind.VOID;
+
+		w.write("\n\tpublic ");
+		if (!method.getTypeParameters().isEmpty()) {
+			w.write("<");
+			String sep = "";
+			for (TypeParameterElement tp : method.getTypeParameters()) {
+				w.write(sep + tp.getSimpleName());
+				String boundSep = " extends ";
+				for (TypeMirror bound : tp.getBounds()) {
+					if (!"java.lang.Object".equals(bound.toString())) {
+						w.write(boundSep + bound);
+						boundSep = " & ";
+					}
+				}
+				sep = ", ";
+			}
+			w.write("> ");
+		}
+		w.write(returnType + " " + name + "(");
+		for (int i = 0; i < params.size(); i++) {
+			String paramType = params.get(i).toString();
+			if (method.isVarArgs() && i == params.size() - 1) {
+				paramType = ((ArrayType) params.get(i)).getComponentType()
+						+ "...";
+			}
+			w.write((i > 0 ? ", " : "") + paramType + " p" + i);
+		}
+		w.write(") {\n\t\t");
+
+		if (params.isEmpty() && !isVoid && isGetter(name)) {
+			w.write("return (" + boxed(returnType) + ") get(" + field + ");");
+		} else if (params.size() == 1 && isVoid && name.startsWith("set")) {
+			w.write("set(" + field + ", p0);");
+		} else {
+			final StringBuilder args = new StringBuilder();
+			if (params.isEmpty()) {
+				args.append("null");
+			} else {
+				args.append("new Object[] { ");
+				for (int i = 0; i < params.size(); i++) {
+					args.append(i > 0 ? ", p" : "p").append(i);
+				}
+				args.append(" }");
+			}
+			if (!isVoid) {
+				w.write("return (" + boxed(returnType) + ") ");
+			}
+			w.write("invoke(" + field + ", " + args + ");");
+		}
+		w.write("\n\t}\n");
+	}
+}
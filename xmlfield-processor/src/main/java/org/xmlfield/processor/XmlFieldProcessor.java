@@ -0,0 +1,252 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import org.jaxen.JaxenException;
+import org.jaxen.dom.DOMXPath;
+import org.xmlfield.annotations.FieldXPath;
+import org.xmlfield.annotations.ResourceXPath;
+import org.xmlfield.core.internal.XmlFieldAccessorRegistry;
+
+/**
+ * Annotation processor generating XmlField accessors at build time.
+ * <p>
+ * For each interface annotated with @{@link ResourceXPath} or declaring
+ * methods annotated with @{@link FieldXPath}, the processor :
+ * <ul>
+ * <li>checks the syntax of the xpath expressions,
+ * <li>generates an accessor class, used by XmlField instead of a dynamic
+ * proxy,
+ * <li>lists the accessors in a generated {@link XmlFieldAccessorRegistry},
+ * declared as a service.
+ * </ul>
+ * <p>
+ * The registry class name can be set with the <tt>xmlfield.registry</tt>
+ * option. By default, it is <tt>XmlFieldAccessors</tt> in the package of the
+ * first interface.
+ *
+ * @author Nicolas Richeton
+ */
+@SupportedAnnotationTypes({ "org.xmlfield.annotations.ResourceXPath",
+		"org.xmlfield.annotations.FieldXPath" })
+@SupportedOptions(XmlFieldProcessor.OPTION_REGISTRY)
+public class XmlFieldProcessor extends AbstractProcessor {
+
+	public static final String OPTION_REGISTRY = "xmlfield.registry";
+
+	private static final String DEFAULT_REGISTRY = "XmlFieldAccessors";
+
+	/**
+	 * Generated accessors, by interface name.
+	 */
+	private final TreeMap<String, String> accessors = new TreeMap<String, String>();
+
+	private boolean registryWritten = false;
+
+	private void checkXPath(final Element element, final String xpath,
+			final Class<?> annotation) {
+		try {
+			new DOMXPath(xpath);
+		} catch (JaxenException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR,
+					"Invalid xpath \"" + xpath + "\" : " + e.getMessage(),
+					element, getAnnotationMirror(element, annotation));
+		}
+	}
+
+	private AnnotationMirror getAnnotationMirror(final Element element,
+			final Class<?> annotation) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (((TypeElement) mirror.getAnnotationType().asElement())
+					.getQualifiedName().contentEquals(annotation.getName())) {
+				return mirror;
+			}
+		}
+		return null;
+	}
+
+	private String getRegistryName() {
+		final String name = processingEnv.getOptions().get(OPTION_REGISTRY);
+		if (name != null && name.length() > 0) {
+			return name;
+		}
+
+		final TypeElement first = processingEnv.getElementUtils()
+				.getTypeElement(accessors.firstKey());
+		final String pkg = processingEnv.getElementUtils()
+				.getPackageOf(first).getQualifiedName().toString();
+		return pkg.length() == 0 ? DEFAULT_REGISTRY : pkg + "."
+				+ DEFAULT_REGISTRY;
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	/**
+	 * Checks if an accessor can be generated for an interface : it must not be
+	 * generic nor private.
+	 */
+	private boolean isSupported(final TypeElement type) {
+		if (!type.getTypeParameters().isEmpty()) {
+			processingEnv.getMessager().printMessage(Kind.NOTE,
+					"No accessor generated for generic interface", type);
+			return false;
+		}
+		for (Element e = type; e instanceof TypeElement; e = e
+				.getEnclosingElement()) {
+			if (e.getModifiers().contains(Modifier.PRIVATE)) {
+				processingEnv.getMessager().printMessage(Kind.NOTE,
+						"No accessor generated for private interface", type);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations,
+			final RoundEnvironment roundEnv) {
+
+		final Set<TypeElement> types = new LinkedHashSet<TypeElement>();
+
+		for (Element element : roundEnv
+				.getElementsAnnotatedWith(ResourceXPath.class)) {
+			checkXPath(element, element.getAnnotation(ResourceXPath.class)
+					.value(), ResourceXPath.class);
+			if (element.getKind() == ElementKind.INTERFACE) {
+				types.add((TypeElement) element);
+			}
+		}
+
+		for (Element element : roundEnv
+				.getElementsAnnotatedWith(FieldXPath.class)) {
+			checkXPath(element, element.getAnnotation(FieldXPath.class)
+					.value(), FieldXPath.class);
+			final Element enclosing = element.getEnclosingElement();
+			if (enclosing.getKind() == ElementKind.INTERFACE) {
+				types.add((TypeElement) enclosing);
+			}
+		}
+
+		if (roundEnv.errorRaised()) {
+			return false;
+		}
+
+		for (TypeElement type : types) {
+			final String name = type.getQualifiedName().toString();
+			if (accessors.containsKey(name) || !isSupported(type)) {
+				continue;
+			}
+			try {
+				accessors.put(name, writeAccessor(type));
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Kind.ERROR,
+						"Unable to write accessor : " + e.getMessage(), type);
+			}
+		}
+
+		// Registry is written once all accessors are known, in the round
+		// following their generation.
+		if (types.isEmpty() && !accessors.isEmpty() && !registryWritten
+				&& !roundEnv.processingOver()) {
+			registryWritten = true;
+			try {
+				writeRegistry(getRegistryName());
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Kind.ERROR,
+						"Unable to write accessor registry : " + e.getMessage());
+			}
+		}
+
+		return false;
+	}
+
+	private String writeAccessor(final TypeElement type) throws IOException {
+		final AccessorSource source = new AccessorSource(processingEnv, type);
+		final String className = source.getQualifiedClassName();
+
+		final JavaFileObject file = processingEnv.getFiler().createSourceFile(
+				className, type);
+		final Writer writer = file.openWriter();
+		try {
+			source.write(writer);
+		} finally {
+			writer.close();
+		}
+		return className;
+	}
+
+	private void writeRegistry(final String registryName) throws IOException {
+		final int dot = registryName.lastIndexOf('.');
+		final String pkg = dot < 0 ? null : registryName.substring(0, dot);
+		final String simpleName = registryName.substring(dot + 1);
+
+		final JavaFileObject file = processingEnv.getFiler().createSourceFile(
+				registryName);
+		final Writer writer = file.openWriter();
+		try {
+			if (pkg != null) {
+				writer.write("package " + pkg + ";\n\n");
+			}
+			writer.write("/**\n * Generated by " + getClass().getName()
+					+ ".\n */\n");
+			writer.write("public class " + simpleName + " implements "
+					+ XmlFieldAccessorRegistry.class.getName() + " {\n\n");
+			writer.write("\tpublic java.util.Map<Class<?>, Class<? extends org.xmlfield.core.internal.XmlFieldAccessor>> getAccessors() {\n");
+			writer.write("\t\tjava.util.Map<Class<?>, Class<? extends org.xmlfield.core.internal.XmlFieldAccessor>> accessors = new java.util.HashMap<Class<?>, Class<? extends org.xmlfield.core.internal.XmlFieldAccessor>>();\n");
+			for (String type : accessors.keySet()) {
+				writer.write("\t\taccessors.put(" + type + ".class, "
+						+ accessors.get(type) + ".class);\n");
+			}
+			writer.write("\t\treturn accessors;\n\t}\n}\n");
+		} finally {
+			writer.close();
+		}
+
+		final FileObject services = processingEnv.getFiler().createResource(
+				StandardLocation.CLASS_OUTPUT, "",
+				"META-INF/services/" + XmlFieldAccessorRegistry.class.getName());
+		final Writer servicesWriter = services.openWriter();
+		try {
+			servicesWriter.write(registryName + "\n");
+		} finally {
+			servicesWriter.close();
+		}
+	}
+}
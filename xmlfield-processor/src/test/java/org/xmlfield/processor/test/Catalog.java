@@ -0,0 +1,53 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.processor.test;
+
+import org.xmlfield.annotations.FieldXPath;
+import org.xmlfield.annotations.ResourceXPath;
+
+@ResourceXPath("/Catalog")
+public interface Catalog {
+
+	/**
+	 * Cd with an attribute.
+	 */
+	interface Single extends Cd {
+		@FieldXPath("@single")
+		boolean isSingle();
+
+		void setSingle(boolean single);
+	}
+
+	@FieldXPath("Cd")
+	Cd[] getCd();
+
+	@FieldXPath("Cd[@single='true']")
+	Single[] getSingles();
+
+	@FieldXPath("@name")
+	String getName();
+
+	void setName(String name);
+
+	Cd addToCd();
+
+	void removeFromCd(Cd cd);
+
+	int sizeOfCd();
+
+	@Override
+	String toString();
+}
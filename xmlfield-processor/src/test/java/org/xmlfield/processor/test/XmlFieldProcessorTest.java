@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010 Capgemini
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.xmlfield.processor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+import org.xmlfield.core.XmlField;
+import org.xmlfield.core.api.XmlFieldNode;
+import org.xmlfield.core.internal.XmlFieldAccessor;
+import org.xmlfield.processor.XmlFieldProcessor;
+
+/**
+ * Test accessors generated by {@link XmlFieldProcessor} when compiling the
+ * entities of this package.
+ *
+ * @author Nicolas Richeton
+ */
+public class XmlFieldProcessorTest {
+
+	private static class Source extends SimpleJavaFileObject {
+		private final String content;
+
+		Source(String className, String content) {
+			super(URI.create("string:///" + className.replace('.', '/')
+					+ Kind.SOURCE.extension), Kind.SOURCE);
+			this.content = content;
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return content;
+		}
+	}
+
+	@Test
+	public void testGeneratedAccessors() throws Exception {
+		XmlField xf = new XmlField();
+		XmlFieldNode node = xf
+				.xmlToNode("<Catalog name=\"c\"><Cd single=\"true\"><Title>t</Title></Cd></Catalog>");
+
+		Catalog catalog = xf.nodeToObject(node, Catalog.class);
+		assertTrue(catalog instanceof XmlFieldAccessor);
+		assertEquals(Catalog.class.getName() + "$$XmlFieldAccessor", catalog
+				.getClass().getName());
+		assertEquals("c", catalog.getName());
+
+		Cd[] cds = catalog.getCd();
+		assertEquals(1, cds.length);
+		assertTrue(cds[0] instanceof XmlFieldAccessor);
+		assertEquals("t", cds[0].getTitle());
+		assertTrue(cds[0].isNullPrice());
+
+		Catalog.Single[] singles = catalog.getSingles();
+		assertEquals(1, singles.length);
+		assertTrue(singles[0] instanceof XmlFieldAccessor);
+		assertTrue(singles[0].isSingle());
+
+		Cd cd = catalog.addToCd();
+		cd.setTitle("t2");
+		cd.setPrice(3);
+		catalog.setName("c2");
+		assertEquals(2, catalog.sizeOfCd());
+		assertEquals(3f, catalog.getCd()[1].getPrice(), 0f);
+		assertFalse(cd.isNullPrice());
+
+		catalog.removeFromCd(cds[0]);
+		assertEquals(
+				"<Catalog name=\"c2\"><Cd><Title>t2</Title><Price>3.0</Price></Cd></Catalog>",
+				xf.nodeToXml(node));
+	}
+
+	@Test
+	public void testInvalidXPath() throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+
+		String source = "package invalid;\n" //
+				+ "@org.xmlfield.annotations.ResourceXPath(\"/Catalog\")\n"
+				+ "public interface Invalid {\n"
+				+ "  @org.xmlfield.annotations.FieldXPath(\"Cd[@title=]\")\n"
+				+ "  String getTitle();\n" + "}\n";
+
+		File out = new File("target/processor-test");
+		out.mkdirs();
+
+		CompilationTask task = compiler.getTask(null, null, diagnostics,
+				Arrays.asList("-proc:only", "-d", out.getPath(), "-classpath",
+						System.getProperty("java.class.path")), null, Arrays
+						.asList(new Source("invalid.Invalid", source)));
+		task.setProcessors(Arrays.asList(new XmlFieldProcessor()));
+
+		assertFalse(task.call());
+
+		boolean found = false;
+		for (Diagnostic<? extends JavaFileObject> d : diagnostics
+				.getDiagnostics()) {
+			if (d.getKind() == Diagnostic.Kind.ERROR
+					&& d.getMessage(Locale.ENGLISH).contains("Cd[@title=]")) {
+				found = true;
+			}
+		}
+		assertTrue(diagnostics.getDiagnostics().toString(), found);
+	}
+}